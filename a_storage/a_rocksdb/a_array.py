@@ -1,4 +1,4 @@
-import logging
+import json, logging
 
 from .a_schema import ASchema
 from .a_fasta_schema import AFastaSchema
@@ -43,14 +43,30 @@ class AArray:
         return iter(self.mSchemaSeq)
 
     def request(self, rq_args, rq_descr):
-        chrom, str_pos = rq_args["loc"].split(':')
         rq_descr.append("loc=" + rq_args["loc"])
+        return self._getLocRecord(rq_args["loc"], rq_args, rq_descr)
+
+    def requestBatch(self, rq_args, rq_descr):
+        # Several locations in one call, records are returned in the
+        # order of locations; filtering properties apply to all of them
+        if "@request" in rq_args:
+            rq_info = rq_args["@request"]
+            locations = rq_info["locs"]
+        else:
+            rq_info = rq_args
+            locations = json.loads(rq_args["locs"])
+        rq_descr.append("locs=%d" % len(locations))
+        return [self._getLocRecord(loc, rq_info, rq_descr)
+            for loc in locations]
+
+    def _getLocRecord(self, loc, rq_args, rq_descr):
+        chrom, str_pos = loc.split(':')
         if not chrom.startswith("chr"):
             chrom = "chr" + chrom
         if '-' in str_pos:
             assert self.mUseLastPos, (
                 "Array %s: last position in diapason not supported: %s"
-                % (self.mName, rq_args["loc"]))
+                % (self.mName, loc))
             vpos, _, vlast = str_pos.partition('-')
             pos, last_pos = sorted([int(vpos), int(vlast)])
         else:
@@ -82,6 +82,16 @@ class AStorageApp:
                 return serv_h.makeResponse("Array not found: "
                     + str(rq_args.get("array")), error = 404)
             report = array_h.request(rq_args, rq_descr)
+        elif rq_path == "/get-batch":
+            if "@request" in rq_args:
+                array_name = rq_args["@request"].get("array")
+            else:
+                array_name = rq_args.get("array")
+            array_h = cls.sArrays.get(array_name)
+            if array_h is None:
+                return serv_h.makeResponse("Array not found: "
+                    + str(array_name), error = 404)
+            report = array_h.requestBatch(rq_args, rq_descr)
         elif rq_path == "/collect":
             report = cls.sCollect.request(rq_args, rq_descr)
         elif rq_path == "/meta":
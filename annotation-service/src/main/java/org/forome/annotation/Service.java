@@ -45,6 +45,8 @@ import org.forome.annotation.exception.AnnotatorException;
 import org.forome.annotation.exception.QueryPoolExceptionBuilder;
 import org.forome.annotation.network.NetworkService;
 import org.forome.annotation.network.component.UserEditableComponent;
+import org.forome.annotation.processing.Processing;
+import org.forome.annotation.processing.TypeQuery;
 import org.forome.annotation.service.database.DatabaseConnectService;
 import org.forome.annotation.service.ensemblvep.EnsemblVepService;
 import org.forome.annotation.service.ensemblvep.external.EnsemblVepExternalService;
@@ -53,9 +55,13 @@ import org.forome.annotation.service.source.SourceService;
 import org.forome.annotation.service.ssh.SSHConnectService;
 import org.forome.annotation.utils.ArgumentParser;
 import org.forome.astorage.core.liftover.LiftoverConnector;
+import org.forome.core.struct.Assembly;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.EnumMap;
+import java.util.Map;
+
 //
 //vulitin@ip-172-31-24-96:~$ PYTHONPATH=/data/bgm/versions/master/anfisa python -m annotations.singleton -a gnomad 1:103471457 "CCATCAT>CCAT"
 //		Namespace(annotations='gnomad', input=['1:103471457', 'CCATCAT>CCAT'], test=1)
@@ -115,6 +121,7 @@ public class Service {
 //	private final AStorageHttp sourceHttp38;
 	private final EnsemblVepService ensemblVepService;
 	private final AnfisaConnector anfisaConnector;
+	private final Map<TypeQuery, Processing> processings;
 
 
 	private final NotificationService notificationService;
@@ -205,6 +212,15 @@ public class Service {
 //				sourceHttp38
 		);
 
+		//Схема и запросы строятся один раз при старте, экземпляры общие для всех запросов
+		this.processings = new EnumMap<>(TypeQuery.class);
+		for (TypeQuery typeQuery : TypeQuery.values()) {
+			processings.put(
+					typeQuery,
+					new Processing(sourceService.dataSource.getSource(Assembly.GRCh37), anfisaConnector, typeQuery)
+			);
+		}
+
 		queryPool.execute(this.databaseService.getDomainObjectSource(), new Query<Void>() {
 
 			private ReadableResource<UserReadable> userReadableResource;
@@ -278,6 +294,10 @@ public class Service {
 		return anfisaConnector;
 	}
 
+	public Processing getProcessing(TypeQuery typeQuery) {
+		return processings.get(typeQuery);
+	}
+
 	public NotificationService getNotificationService() {
 		return notificationService;
 	}
@@ -291,6 +311,7 @@ public class Service {
 		spliceAIConnector.close();
 		gnomadConnector.close();
 		ensemblVepService.close();
+		sourceService.close();
 
 		databaseConnectService.close();
 		sshTunnelService.close();
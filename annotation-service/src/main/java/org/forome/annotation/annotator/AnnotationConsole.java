@@ -20,6 +20,9 @@ package org.forome.annotation.annotator;
 
 import org.apache.commons.lang3.exception.ExceptionUtils;
 import org.forome.annotation.Main;
+import org.forome.annotation.annotator.executor.PipelineConfig;
+import org.forome.annotation.annotator.recovery.Checkpoint;
+import org.forome.annotation.annotator.recovery.FileStamp;
 import org.forome.annotation.annotator.recovery.Recovery;
 import org.forome.annotation.annotator.recovery.RecoveryResult;
 import org.forome.annotation.annotator.struct.AnnotatorResult;
@@ -43,8 +46,11 @@ import org.forome.annotation.data.pharmgkb.mysql.PharmGKBConnectorMysql;
 import org.forome.annotation.data.spliceai.SpliceAIConnector;
 import org.forome.annotation.data.spliceai.SpliceAIConnectorImpl;
 import org.forome.annotation.data.spliceai.datasource.http.SpliceAIDataSourceHttp;
+import org.forome.annotation.iterator.vcf.VCFShard;
+import org.forome.annotation.output.CheckpointOutputStream;
 import org.forome.annotation.processing.Processing;
 import org.forome.annotation.processing.TypeQuery;
+import org.forome.annotation.processing.struct.ProcessingResult;
 import org.forome.annotation.service.database.DatabaseConnectService;
 import org.forome.annotation.service.ensemblvep.EnsemblVepService;
 import org.forome.annotation.service.ensemblvep.external.EnsemblVepExternalService;
@@ -64,19 +70,26 @@ import java.io.*;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
 import java.time.Instant;
 import java.time.ZoneId;
 import java.time.format.DateTimeFormatter;
+import java.util.AbstractMap;
+import java.util.Collections;
 import java.util.Comparator;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Supplier;
 import java.util.zip.GZIPInputStream;
-import java.util.zip.GZIPOutputStream;
 
 public class AnnotationConsole {
 
 	private final static Logger log = LoggerFactory.getLogger(AnnotationConsole.class);
 
+	/**
+	 * Кол-во записей vcf-файла между контрольными точками
+	 */
+	private static final int CHECKPOINT_INTERVAL = 10000;
+
 	private final String caseName;
 
 	private final Assembly assembly;
@@ -93,6 +106,13 @@ public class AnnotationConsole {
 	private final Path cnvFile;
 
 	private final int startPosition;
+	private final boolean sharded;
+	private final int shardSize;
+	private final VCFShard region;
+	private final Path vepJsonIndexFile;
+	private final int gzipThreads;
+	private final PipelineConfig pipelineConfig;
+	private final boolean fieldStatistics;
 
 	private final Path outFile;
 	private final Path recoveryAnfisaJson;
@@ -131,6 +151,12 @@ public class AnnotationConsole {
 			Path vcfFile, Path vepJsonFile,
 			Path cnvFile,
 			int startPosition,
+			boolean sharded,
+			int shardSize,
+			VCFShard region, Path vepJsonIndexFile,
+			int gzipThreads,
+			PipelineConfig pipelineConfig,
+			boolean fieldStatistics,
 			Path outFile,
 			Path recoveryAnfisaJson,
 			Supplier<String> arguments
@@ -151,6 +177,13 @@ public class AnnotationConsole {
 		this.cnvFile = cnvFile;
 
 		this.startPosition = startPosition;
+		this.sharded = sharded;
+		this.shardSize = shardSize;
+		this.region = region;
+		this.vepJsonIndexFile = vepJsonIndexFile;
+		this.gzipThreads = gzipThreads;
+		this.pipelineConfig = pipelineConfig;
+		this.fieldStatistics = fieldStatistics;
 
 		this.outFile = outFile;
 		this.recoveryAnfisaJson = recoveryAnfisaJson;
@@ -235,7 +268,7 @@ public class AnnotationConsole {
 
 			Source source = sourceService.dataSource.getSource(assembly);
 
-			processing = new Processing(source, anfisaConnector, TypeQuery.PATIENT_HG19);
+			processing = new Processing(source, anfisaConnector, TypeQuery.PATIENT_HG19, true, fieldStatistics);
 		} catch (Throwable e) {
 			fail(e, null, arguments);
 		}
@@ -252,8 +285,21 @@ public class AnnotationConsole {
 			log.info("Input start position: {}", startPosition);
 			log.info("Input vepJsonFile: {}", inputVepJsonFile);
 			log.info("Input cnvFile: {}", cnvFile);
+			log.info("Input pipeline: {}", pipelineConfig);
+			log.info("Input field statistics: {}", fieldStatistics);
 
-			if (!inputVcfFile.getFileName().toString().endsWith(".gz")) {
+			if (region != null) {
+				checkShardedMode("Region");
+				log.info("Input region: {}", region);
+				log.info("Input vepJsonIndexFile: {}", vepJsonIndexFile);
+				vcfFile = inputVcfFile;
+			} else if (sharded) {
+				checkShardedMode("Sharded mode");
+				log.info("Sharded mode: indexed vcf file is annotated by shards in parallel, shard size: {}",
+						(shardSize == 0) ? "chromosome" : shardSize
+				);
+				vcfFile = inputVcfFile;
+			} else if (!inputVcfFile.getFileName().toString().endsWith(".gz")) {
 				vcfFile = inputVcfFile;
 			} else {
 				Path pathDir = outFile.getParent();
@@ -272,10 +318,38 @@ public class AnnotationConsole {
 				vepJson = buildVepJson(vcfFile, pathDirVepJson);
 			}
 
-			Files.deleteIfExists(outFile);
-			Files.createFile(outFile);
+			//Контрольные точки возможны только при последовательном чтении файла без cnv и с готовым vep.json:
+			//сгенерированный vep.json создается заново при каждом запуске, и его отпечаток никогда не совпадет
+			boolean checkpointing = (!sharded && region == null && cnvFile == null && inputVepJsonFile != null);
+			Path pathCheckpoint = Checkpoint.getPath(outFile);
 
-			OutputStream os = buildOutputStream(outFile);
+			//Отпечатки сверяются по исходным файлам: распакованная копия vcf создается заново при каждом запуске
+			FileStamp vcfFileStamp = (checkpointing) ? FileStamp.build(inputVcfFile) : null;
+			FileStamp vepJsonStamp = (checkpointing && vepJson != null) ? FileStamp.build(vepJson) : null;
+
+			Checkpoint checkpoint = null;
+			if (recoveryAnfisaJson != null && checkpointing) {
+				checkpoint = readCheckpoint(inputVcfFile, vepJson);
+			}
+
+			CheckpointOutputStream os;
+			if (checkpoint != null) {
+				log.info("Recovery from checkpoint, variants: {}, records: {}", checkpoint.countVariants, checkpoint.countRecords);
+				if (!Files.exists(outFile) || !Files.isSameFile(recoveryAnfisaJson, outFile)) {
+					Files.move(recoveryAnfisaJson, outFile, StandardCopyOption.REPLACE_EXISTING);
+				}
+				os = new CheckpointOutputStream(outFile, checkpoint.outputOffset, gzipThreads);
+				//Файл обрезан до контрольной точки - она остается точкой продолжения до записи следующей
+				Path pathRecoveryCheckpoint = Checkpoint.getPath(recoveryAnfisaJson);
+				checkpoint.write(pathCheckpoint);
+				if (!pathRecoveryCheckpoint.toAbsolutePath().normalize().equals(pathCheckpoint.toAbsolutePath().normalize())) {
+					Files.deleteIfExists(pathRecoveryCheckpoint);
+				}
+			} else {
+				Files.deleteIfExists(outFile);
+				Files.deleteIfExists(pathCheckpoint);
+				os = new CheckpointOutputStream(outFile, 0, gzipThreads);
+			}
 			BufferedOutputStream bos = new BufferedOutputStream(os);
 
 			Annotator annotator = new Annotator(
@@ -289,12 +363,20 @@ public class AnnotationConsole {
 			);
 
 			String outMetadata = annotator.buildMetadata().toJSON().toJSONString();
-			bos.write(outMetadata.getBytes(StandardCharsets.UTF_8));
-			bos.write(System.lineSeparator().getBytes(StandardCharsets.UTF_8));
+			if (region != null) {
+				//Участок - фрагмент итогового файла, метаданные записывает координатор
+				Files.write(getPathMetadata(outFile), (outMetadata + System.lineSeparator()).getBytes(StandardCharsets.UTF_8));
+			} else if (checkpoint == null) {
+				bos.write(outMetadata.getBytes(StandardCharsets.UTF_8));
+				bos.write(System.lineSeparator().getBytes(StandardCharsets.UTF_8));
+			}
 
 			int offset;
 			AtomicInteger countRecords;
-			if (recoveryAnfisaJson != null) {
+			if (checkpoint != null) {
+				offset = checkpoint.countVariants;
+				countRecords = new AtomicInteger(checkpoint.countRecords);
+			} else if (recoveryAnfisaJson != null) {
 				Recovery recovery = new Recovery(vcfFile, recoveryAnfisaJson);
 				RecoveryResult recoveryResult = recovery.execute(bos);
 				offset = recoveryResult.offset;
@@ -304,18 +386,40 @@ public class AnnotationConsole {
 				countRecords = new AtomicInteger();
 			}
 
-			AnnotatorResult annotatorResult = annotator.exec(
-					cnvFile,
-					offset
-			);
-			annotatorResult.observableAnfisaResult.blockingSubscribe(
-					processingResult -> {
-						String out = processingResult.toJSON().toJSONString();
-						bos.write(out.getBytes(StandardCharsets.UTF_8));
-						bos.write(System.lineSeparator().getBytes(StandardCharsets.UTF_8));
-
-						if (countRecords.getAndIncrement() % 100 == 0) {
-							log.debug("progress (records): {}", countRecords.get());
+			AnnotatorResult annotatorResult;
+			if (region != null) {
+				annotatorResult = annotator.execSharded(Collections.singletonList(region), vepJsonIndexFile, pipelineConfig);
+			} else if (sharded) {
+				annotatorResult = annotator.execSharded(shardSize, pipelineConfig);
+			} else {
+				annotatorResult = annotator.exec(
+						cnvFile,
+						offset,
+						checkpoint,
+						pipelineConfig
+				);
+			}
+			byte[] lineSeparator = System.lineSeparator().getBytes(StandardCharsets.UTF_8);
+			annotatorResult.observableVariantResult.blockingSubscribe(
+					variantResult -> {
+						for (ProcessingResult processingResult : variantResult.processingResults) {
+							processingResult.writeTo(bos);
+							bos.write(lineSeparator);
+
+							if (countRecords.getAndIncrement() % 100 == 0) {
+								log.debug("progress (records): {}", countRecords.get());
+							}
+						}
+
+						int countVariants = variantResult.position + 1;
+						if (checkpointing && countVariants % CHECKPOINT_INTERVAL == 0 && variantResult.vcfOffset >= 0) {
+							bos.flush();
+							new Checkpoint(
+									vcfFileStamp, variantResult.vcfOffset,
+									vepJsonStamp, variantResult.vepJsonOffset,
+									os.checkpoint(),
+									countVariants, countRecords.get()
+							).write(pathCheckpoint);
 						}
 					},
 					e -> fail(e, finalVcfFile, arguments),
@@ -334,18 +438,24 @@ public class AnnotationConsole {
 						log.debug("pharmGKB diseases: {}", anfisaConnector.pharmGKBConnector.getStatisticDiseases().getStat());
 						log.debug("pharmGKB chemicals: {}", anfisaConnector.pharmGKBConnector.getStatisticChemicals().getStat());
 						log.debug("anfisa: {}", processing.anfisaStatistics.getStat());
+						log.debug("anfisa site cache: {}, persistent: {}", anfisaConnector.getSiteCacheStats(), anfisaConnector.getPersistentSiteCacheStats());
 						log.debug("graphql: {}", processing.graphqlStatistics.getStat());
-						processing.statisticsInstrumentation.statistics.entrySet().stream()
-								.sorted(Comparator.comparingLong(o -> o.getValue().getStat().fullMillisTime))
+						processing.statisticsInstrumentation.statistics.values().stream()
+								.map(histogram -> new AbstractMap.SimpleEntry<>(histogram.name, histogram.getStat()))
+								.sorted(Comparator.comparingLong(o -> o.getValue().totalNanos))
 								.forEach(entry -> {
-									log.debug("graphql: {}, {}", entry.getKey(), entry.getValue().getStat());
+									log.debug("graphql: {}, {}", entry.getKey(), entry.getValue());
 								});
 
 						bos.close();
 						os.close();
+						Files.deleteIfExists(pathCheckpoint);
 						anfisaConnector.close();
+						sourceService.close();
 						clear(finalVcfFile);
-						sendNotification(null, arguments);
+						if (region == null) {
+							sendNotification(null, arguments);
+						}
 						System.exit(0);
 					}
 			);
@@ -354,6 +464,47 @@ public class AnnotationConsole {
 		}
 	}
 
+	public static Path getPathMetadata(Path outFile) {
+		return outFile.resolveSibling(outFile.getFileName().toString() + ".metadata");
+	}
+
+	/**
+	 * Шардированный режим (-sharded, -region): индексированный bgzip-файл читается напрямую, без распаковки
+	 * во временный файл, параллельно по участкам. Несовместим с продолжением с позиции, восстановлением и cnv-файлом
+	 */
+	private void checkShardedMode(String mode) {
+		if (!inputVcfFile.getFileName().toString().endsWith(".vcf.gz")) {
+			throw new IllegalArgumentException(mode + " requires *.vcf.gz file: " + inputVcfFile);
+		}
+		if (!Files.exists(inputVcfFile.resolveSibling(inputVcfFile.getFileName().toString() + ".tbi"))) {
+			throw new IllegalArgumentException(mode + " requires index (*.tbi) of vcf file: " + inputVcfFile);
+		}
+		if (startPosition != 0 || recoveryAnfisaJson != null || cnvFile != null) {
+			throw new IllegalArgumentException(mode + " does not support start position, recovery or cnv file");
+		}
+		if (inputVepJsonFile != null && inputVepJsonFile.getFileName().toString().endsWith(".gz")) {
+			throw new IllegalArgumentException(mode + " does not support compressed vep.json file: " + inputVepJsonFile);
+		}
+	}
+
+	/**
+	 * Контрольная точка, сохраненная рядом с файлом восстановления, если она построена по тем же входным файлам.
+	 * Иначе - восстановление повторным чтением (см. {@link Recovery})
+	 */
+	private Checkpoint readCheckpoint(Path vcfFile, Path vepJson) throws IOException {
+		Path pathCheckpoint = Checkpoint.getPath(recoveryAnfisaJson);
+		if (!Files.exists(pathCheckpoint)) {
+			log.info("Checkpoint for recovery file not found: {}", pathCheckpoint);
+			return null;
+		}
+		Checkpoint checkpoint = Checkpoint.read(pathCheckpoint);
+		if (!checkpoint.isMatch(vcfFile, vepJson)) {
+			log.warn("Checkpoint does not match input files, ignore: {}", pathCheckpoint);
+			return null;
+		}
+		return checkpoint;
+	}
+
 	private void fail(Throwable e, Path vcfFile, Supplier<String> arguments) {
 		if (Files.exists(outFile)) {
 			String newFileName = new StringBuilder()
@@ -361,7 +512,13 @@ public class AnnotationConsole {
 					.append("_invalid_").append(timeStart.toEpochMilli())
 					.toString();
 			try {
-				Files.move(outFile, outFile.getParent().resolve(newFileName));
+				Path newFile = outFile.getParent().resolve(newFileName);
+				Files.move(outFile, newFile);
+				//Контрольная точка остается рядом с файлом, для последующего восстановления
+				Path pathCheckpoint = Checkpoint.getPath(outFile);
+				if (Files.exists(pathCheckpoint)) {
+					Files.move(pathCheckpoint, Checkpoint.getPath(newFile));
+				}
 			} catch (Throwable e1) {
 				log.error("Exception clear file: " + outFile, e);
 			}
@@ -420,14 +577,6 @@ public class AnnotationConsole {
 		}
 	}
 
-	private static OutputStream buildOutputStream(Path pathOutput) throws IOException {
-		if (pathOutput.getFileName().toString().endsWith(".gz")) {
-			return new GZIPOutputStream(Files.newOutputStream(pathOutput));
-		} else {
-			return Files.newOutputStream(pathOutput);
-		}
-	}
-
 	private static Path gunzipVcfFile(Path vcfFile, Path pathDir) throws IOException {
 		if (!vcfFile.getFileName().toString().endsWith(".vcf.gz")) {
 			throw new RuntimeException("VcfFile does not *.vcf.gz" + vcfFile.toAbsolutePath());
@@ -462,15 +611,15 @@ public class AnnotationConsole {
 	private static Path buildVepJson(Path vcfFile, Path pathDirVepJson) {
 		String fileNameVcf = vcfFile.getFileName().toString();
 		String fileNameVepJson;
-		if (fileNameVcf.endsWith(".vcf")) {
-			String s = fileNameVcf.substring(0, fileNameVcf.length() - ".vcf".length());
+		if (fileNameVcf.endsWith(".vcf") || fileNameVcf.endsWith(".vcf.gz")) {
+			String s = fileNameVcf.substring(0, fileNameVcf.lastIndexOf(".vcf"));
 			fileNameVepJson = s + ".vep.json";
 			int i = 0;
 			while (Files.exists(pathDirVepJson.resolve(fileNameVepJson))) {
 				fileNameVepJson = String.format("%s(%s).vep.json", s, ++i);
 			}
 		} else {
-			throw new IllegalArgumentException("Bad vcf filename (Need *.vcf): " + vcfFile.toAbsolutePath());
+			throw new IllegalArgumentException("Bad vcf filename (Need *.vcf or *.vcf.gz): " + vcfFile.toAbsolutePath());
 		}
 		Path pathVepJson = pathDirVepJson.resolve(fileNameVepJson).toAbsolutePath();
 
@@ -39,10 +39,14 @@ package org.forome.annotation.annotator;
 import io.reactivex.Observable;
 import net.minidev.json.parser.ParseException;
 import org.forome.annotation.annotator.executor.AnnotatorExecutor;
+import org.forome.annotation.annotator.executor.PipelineConfig;
 import org.forome.annotation.annotator.executor.Result;
+import org.forome.annotation.annotator.recovery.Checkpoint;
 import org.forome.annotation.annotator.struct.AnnotatorResult;
 import org.forome.annotation.annotator.struct.AnnotatorResultMetadata;
+import org.forome.annotation.annotator.struct.AnnotatorVariantResult;
 import org.forome.annotation.annotator.utils.CaseUtils;
+import org.forome.annotation.iterator.vcf.VCFShard;
 import org.forome.annotation.processing.Processing;
 import org.forome.annotation.processing.struct.ProcessingResult;
 import org.forome.annotation.service.ensemblvep.EnsemblVepService;
@@ -57,6 +61,7 @@ import java.io.InputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.List;
+import java.util.function.Function;
 
 //curl "localhost:8290/get?array=hg38&loc=12:885081&alt=G"
 
@@ -101,8 +106,8 @@ public class Annotator {
 		if (!Files.exists(pathVcf)) {
 			throw new RuntimeException("Vcf file does not exists: " + pathVcf.toAbsolutePath());
 		}
-		if (!pathVcf.getFileName().toString().endsWith(".vcf")) {
-			throw new IllegalArgumentException("Bad name vcf file (Need *.vcf): " + pathVcf.toAbsolutePath());
+		if (!pathVcf.getFileName().toString().endsWith(".vcf") && !pathVcf.getFileName().toString().endsWith(".vcf.gz")) {
+			throw new IllegalArgumentException("Bad name vcf file (Need *.vcf or *.vcf.gz): " + pathVcf.toAbsolutePath());
 		}
 
 		if (!Files.exists(pathFam)) {
@@ -132,19 +137,64 @@ public class Annotator {
 			Path cnvFile,
 			int startPosition
 	) {
+		return exec(cnvFile, startPosition, null, PipelineConfig.DEFAULT);
+	}
+
+	/**
+	 * @param checkpoint     контрольная точка, с которой продолжается аннотация, либо null
+	 * @param pipelineConfig параметры стадий конвейера аннотации
+	 */
+	public AnnotatorResult exec(
+			Path cnvFile,
+			int startPosition,
+			Checkpoint checkpoint,
+			PipelineConfig pipelineConfig
+	) {
+		return exec(uncaughtExceptionHandler -> new AnnotatorExecutor(
+				ensemblVepService, processing,
+				mCase,
+				pathVcf, pathVepJson,
+				cnvFile,
+				startPosition, checkpoint,
+				pipelineConfig, getThreads(mCase),
+				uncaughtExceptionHandler
+		));
+	}
+
+	/**
+	 * Параллельная аннотация участков индексированного (bgzip + tabix) vcf-файла,
+	 * результат выдается в порядке файла
+	 *
+	 * @param shardSize размер участка, если 0 - участок равен хромосоме
+	 */
+	public AnnotatorResult execSharded(int shardSize, PipelineConfig pipelineConfig) {
+		List<VCFShard> shards = VCFShard.build(pathVcf, shardSize);
+		log.info("Vcf shards: {}", shards.size());
+		return execSharded(shards, null, pipelineConfig);
+	}
+
+	/**
+	 * @param pathVepJsonIndex сохраненный координатором индекс vep.json, либо null
+	 */
+	public AnnotatorResult execSharded(List<VCFShard> shards, Path pathVepJsonIndex, PipelineConfig pipelineConfig) {
+		return exec(uncaughtExceptionHandler -> new AnnotatorExecutor(
+				ensemblVepService, processing,
+				mCase,
+				pathVcf, pathVepJson, pathVepJsonIndex,
+				shards,
+				Runtime.getRuntime().availableProcessors(),
+				pipelineConfig, getThreads(mCase),
+				uncaughtExceptionHandler
+		));
+	}
+
+	private AnnotatorResult exec(Function<Thread.UncaughtExceptionHandler, AnnotatorExecutor> buildExecutor) {
 		return new AnnotatorResult(
 				Observable.create(o -> {
 					new Thread(new Runnable() {
 						@Override
 						public void run() {
-							try (AnnotatorExecutor annotatorExecutor = new AnnotatorExecutor(
-									ensemblVepService, processing,
-									mCase,
-									pathVcf, pathVepJson,
-									cnvFile,
-									startPosition, getThreads(mCase),
-									(t, e) -> o.tryOnError(e)
-							)) {
+							try (AnnotatorExecutor annotatorExecutor = buildExecutor.apply((t, e) -> o.tryOnError(e))) {
 								boolean run = true;
 								while (run) {
 									Result result = annotatorExecutor.next();
@@ -152,9 +202,10 @@ public class Annotator {
 									try {
 										processingResults = result.future.get();
 										if (processingResults != null) {
-											for (ProcessingResult processingResult : processingResults) {
-												o.onNext(processingResult);
-											}
+											o.onNext(new AnnotatorVariantResult(
+													result.position, processingResults,
+													result.vcfOffset, result.vepJsonOffset
+											));
 										} else {
 											run = false;
 										}
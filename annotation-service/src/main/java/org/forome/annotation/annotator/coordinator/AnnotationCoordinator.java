@@ -0,0 +1,433 @@
+/*
+ Copyright (c) 2019. Vladimir Ulitin, Partners Healthcare and members of Forome Association
+
+ Developed by Vladimir Ulitin and Michael Bouzinier
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+	 http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+*/
+
+package org.forome.annotation.annotator.coordinator;
+
+import net.minidev.json.JSONObject;
+import net.minidev.json.JSONValue;
+import org.forome.annotation.annotator.AnnotationConsole;
+import org.forome.annotation.annotator.main.AnnotatorMain;
+import org.forome.annotation.annotator.main.argument.ArgumentsCoordinator;
+import org.forome.annotation.annotator.recovery.FileStamp;
+import org.forome.annotation.iterator.vcf.VCFShard;
+import org.forome.annotation.iterator.vepjson.VepJsonShardIndex;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Координатор аннотации большого кейса: vcf-файл разбивается на участки, каждый участок
+ * аннотируется отдельным процессом AnnotatorMain (-region), результаты склеиваются в один файл
+ * с единственной записью метаданных.
+ * Состояние участков хранится в рабочей директории (*.lock, *.done, *.failed), поэтому
+ * координаторы, запущенные на нескольких хостах с общей файловой системой, делят участки между собой
+ * (на каждом хосте - один координатор).
+ * Координатор обновляет время изменения своих блокировок, блокировку остановившегося координатора
+ * захватывает заново координатор, ожидающий участок
+ */
+public class AnnotationCoordinator {
+
+	private final static Logger log = LoggerFactory.getLogger(AnnotationCoordinator.class);
+
+	private static final long WAIT_SHARDS_MILLIS = 10_000L;
+
+	private static final long LOCK_EXPIRE_MILLIS = 10 * 60 * 1000L;
+
+	private final ArgumentsCoordinator arguments;
+	private final String workerMainClass;
+	private final Path workDir;
+	private final String host;
+
+	/**
+	 * Уникален для запуска координатора: два координатора, захватившие один участок, пишут в разные файлы
+	 */
+	private final String token;
+
+	private final long lockExpireMillis;
+
+	private final Set<Path> heldLocks;
+	private final Map<Path, LockObservation> observedLocks;
+
+	public AnnotationCoordinator(ArgumentsCoordinator arguments) {
+		this(arguments, AnnotatorMain.class.getName(), LOCK_EXPIRE_MILLIS);
+	}
+
+	/**
+	 * @param workerMainClass класс процесса-исполнителя, принимающего аргументы AnnotatorMain
+	 * @param lockExpireMillis время, после которого не обновляемая блокировка участка считается оставленной
+	 */
+	AnnotationCoordinator(ArgumentsCoordinator arguments, String workerMainClass, long lockExpireMillis) {
+		this.arguments = arguments;
+		this.workerMainClass = workerMainClass;
+		this.workDir = arguments.workDir;
+		this.host = getHost();
+		this.token = UUID.randomUUID().toString().substring(0, 8);
+		this.lockExpireMillis = lockExpireMillis;
+		this.heldLocks = ConcurrentHashMap.newKeySet();
+		this.observedLocks = new ConcurrentHashMap<>();
+	}
+
+	public void execute() {
+		try {
+			run();
+		} catch (Throwable e) {
+			log.error("Coordinator failed", e);
+			System.exit(1);
+		}
+	}
+
+	void run() throws Exception {
+		Files.createDirectories(workDir);
+		checkInputs();
+
+		List<VCFShard> shards = VCFShard.build(arguments.pathVcf, arguments.shardSize);
+		log.info("Coordinator: {} shards, {} workers, work dir: {}", shards.size(), arguments.workers, workDir);
+
+		releaseOwnLocks(shards);
+
+		//Индекс vep.json строится один раз, исполнители читают только смещения своего участка
+		Path pathVepJsonIndex = workDir.resolve("vep.json.index");
+		if (!Files.exists(pathVepJsonIndex)) {
+			VepJsonShardIndex.build(arguments.pathVepJson, shards).write(pathVepJsonIndex);
+			log.info("Coordinator: vep.json index {}", pathVepJsonIndex);
+		}
+
+		long heartbeatMillis = lockExpireMillis / 10;
+		ScheduledExecutorService heartbeat = Executors.newSingleThreadScheduledExecutor();
+		heartbeat.scheduleWithFixedDelay(this::touchLocks, heartbeatMillis, heartbeatMillis, TimeUnit.MILLISECONDS);
+		ExecutorService executor = Executors.newFixedThreadPool(arguments.workers);
+		try {
+			//Участки, захваченные координаторами на других хостах, ожидаются до завершения или истечения блокировки
+			while (!annotateShards(executor, shards, pathVepJsonIndex)) {
+				Thread.sleep(Math.min(WAIT_SHARDS_MILLIS, lockExpireMillis / 2));
+			}
+		} finally {
+			executor.shutdownNow();
+			heartbeat.shutdownNow();
+		}
+
+		if (claim(workDir.resolve("output.lock"))) {
+			List<Path> outputs = new ArrayList<>();
+			for (int i = 0; i < shards.size(); i++) {
+				outputs.add(getPathOutput(i));
+			}
+			concat(AnnotationConsole.getPathMetadata(getPathOutput(0)), outputs, arguments.pathOutput);
+			log.info("Coordinator: result {}", arguments.pathOutput);
+		}
+	}
+
+	/**
+	 * Аннотация незавершенных участков, которые удалось захватить
+	 *
+	 * @return true - завершены все участки
+	 */
+	private boolean annotateShards(ExecutorService executor, List<VCFShard> shards, Path pathVepJsonIndex) throws Exception {
+		List<Future<?>> futures = new ArrayList<>();
+		for (int i = 0; i < shards.size(); i++) {
+			if (!Files.exists(getPathStatus(i, "done"))) {
+				int index = i;
+				futures.add(executor.submit(() -> {
+					annotateShard(index, shards.get(index), pathVepJsonIndex);
+					return null;
+				}));
+			}
+		}
+		for (Future<?> future : futures) {
+			future.get();
+		}
+
+		int done = 0;
+		List<String> failed = new ArrayList<>();
+		for (int i = 0; i < shards.size(); i++) {
+			Path pathFailed = getPathStatus(i, "failed");
+			if (Files.exists(pathFailed)) {
+				failed.add(shards.get(i) + " (" + new String(Files.readAllBytes(pathFailed), StandardCharsets.UTF_8) + ")");
+			} else if (Files.exists(getPathStatus(i, "done"))) {
+				done++;
+			}
+		}
+		if (!failed.isEmpty()) {
+			throw new RuntimeException("Failed shards: " + failed);
+		}
+		log.info("Coordinator: progress: {}/{}", done, shards.size());
+		return (done == shards.size());
+	}
+
+	/**
+	 * Участок аннотируется во временный файл этого координатора и переносится на место результата
+	 * только после успешного завершения исполнителя. Если участок одновременно аннотировали два координатора
+	 * (блокировка перезахвачена у живого координатора), результат одинаков и просто перезаписывается
+	 */
+	private void annotateShard(int index, VCFShard shard, Path pathVepJsonIndex) throws IOException, InterruptedException {
+		Path lock = getPathStatus(index, "lock");
+		if (!claim(lock) && !reclaim(lock)) {
+			return;
+		}
+		heldLocks.add(lock);
+		try {
+			//Блокировка завершенного участка больше не обновляется и могла быть перезахвачена
+			if (Files.exists(getPathStatus(index, "done"))) {
+				return;
+			}
+			Path output = getPathOutput(index);
+			Path attemptOutput = getPathOutput(index, token);
+			for (int attempt = 0; attempt <= arguments.retries; attempt++) {
+				Files.deleteIfExists(attemptOutput);
+				Files.deleteIfExists(AnnotationConsole.getPathMetadata(attemptOutput));
+
+				log.info("Shard {} ({}) start, attempt: {}", index, shard, attempt + 1);
+				int exitCode = runWorker(shard, pathVepJsonIndex, attemptOutput, workDir.resolve(String.format("shard-%05d.log", index)));
+				if (exitCode == 0 && Files.exists(attemptOutput) && Files.exists(AnnotationConsole.getPathMetadata(attemptOutput))) {
+					Files.move(AnnotationConsole.getPathMetadata(attemptOutput), AnnotationConsole.getPathMetadata(output),
+							StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+					Files.move(attemptOutput, output, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+					try {
+						Files.createFile(getPathStatus(index, "done"));
+					} catch (FileAlreadyExistsException ignore) {
+					}
+					log.info("Shard {} ({}) completed", index, shard);
+					return;
+				}
+				log.warn("Shard {} ({}) failed, exit code: {}", index, shard, exitCode);
+			}
+
+			Files.write(getPathStatus(index, "failed"), host.getBytes(StandardCharsets.UTF_8));
+		} finally {
+			heldLocks.remove(lock);
+		}
+	}
+
+	private int runWorker(VCFShard shard, Path pathVepJsonIndex, Path output, Path pathLog) throws IOException, InterruptedException {
+		List<String> command = new ArrayList<>();
+		command.add(Paths.get(System.getProperty("java.home")).resolve("bin").resolve("java").toString());
+		command.add("-cp");
+		command.add(System.getProperty("java.class.path"));
+		command.add(workerMainClass);
+		command.addAll(arguments.buildWorkerArguments(shard, pathVepJsonIndex, output));
+
+		ProcessBuilder processBuilder = new ProcessBuilder(command);
+		processBuilder.directory(Paths.get("").toAbsolutePath().toFile());
+		processBuilder.redirectErrorStream(true);
+		processBuilder.redirectOutput(pathLog.toFile());
+		Process process = processBuilder.start();
+		return process.waitFor();
+	}
+
+	/**
+	 * Рабочая директория (по умолчанию <output>.shards) относится к одним входным файлам и размеру участков:
+	 * состояние участков и индекс vep.json другого запуска недействительны
+	 */
+	private void checkInputs() throws IOException {
+		FileStamp vcfFile = FileStamp.build(arguments.pathVcf);
+		FileStamp vepJsonFile = FileStamp.build(arguments.pathVepJson);
+
+		Path pathInputs = workDir.resolve("inputs.json");
+		if (!Files.exists(pathInputs)) {
+			JSONObject inputs = new JSONObject();
+			inputs.put("vcf_file", vcfFile.toJSON());
+			inputs.put("vep_json_file", vepJsonFile.toJSON());
+			inputs.put("shard_size", arguments.shardSize);
+			Path pathTmp = workDir.resolve("inputs.json." + token);
+			Files.write(pathTmp, inputs.toJSONString().getBytes(StandardCharsets.UTF_8));
+			try {
+				Files.move(pathTmp, pathInputs);
+			} catch (FileAlreadyExistsException e) {
+				Files.delete(pathTmp);
+			}
+		}
+
+		JSONObject inputs = (JSONObject) JSONValue.parse(new String(Files.readAllBytes(pathInputs), StandardCharsets.UTF_8));
+		if (!vcfFile.equals(FileStamp.parse((JSONObject) inputs.get("vcf_file")))
+				|| !vepJsonFile.equals(FileStamp.parse((JSONObject) inputs.get("vep_json_file")))
+				|| arguments.shardSize != inputs.getAsNumber("shard_size").intValue()) {
+			throw new RuntimeException("Work dir " + workDir + " belongs to other input files or shard size, remove it or set another work dir");
+		}
+	}
+
+	/**
+	 * Захват файла-блокировки, атомарен в пределах общей файловой системы
+	 */
+	private boolean claim(Path lock) throws IOException {
+		try {
+			Files.write(lock, host.getBytes(StandardCharsets.UTF_8), StandardOpenOption.CREATE_NEW);
+			return true;
+		} catch (FileAlreadyExistsException e) {
+			return false;
+		}
+	}
+
+	/**
+	 * Перезахват блокировки, время изменения которой не менялось дольше lockExpireMillis.
+	 * Время отсчитывается по часам этого хоста от первого наблюдения, поэтому расхождение часов хостов
+	 * и файлового сервера не влияет
+	 */
+	private boolean reclaim(Path lock) throws IOException {
+		FileTime modified;
+		try {
+			modified = Files.getLastModifiedTime(lock);
+		} catch (NoSuchFileException e) {
+			return claim(lock);
+		}
+		long now = System.currentTimeMillis();
+		LockObservation observation = observedLocks.compute(lock, (key, value) ->
+				(value == null || !value.modified.equals(modified)) ? new LockObservation(modified, now) : value
+		);
+		if (now - observation.since < lockExpireMillis) {
+			return false;
+		}
+
+		//Переименование выполняет только один из координаторов, заметивших истекшую блокировку
+		Path pathExpired = lock.resolveSibling(lock.getFileName().toString() + "." + token + ".expired");
+		try {
+			Files.move(lock, pathExpired);
+		} catch (NoSuchFileException e) {
+			return false;
+		}
+		if (!modified.equals(Files.getLastModifiedTime(pathExpired))) {
+			//Переименована новая блокировка другого координатора - возвращается на место
+			try {
+				Files.move(pathExpired, lock);
+			} catch (FileAlreadyExistsException e) {
+				Files.delete(pathExpired);
+			}
+			return false;
+		}
+		log.warn("Reclaim expired lock {} of host: {}", lock, new String(Files.readAllBytes(pathExpired), StandardCharsets.UTF_8));
+		Files.delete(pathExpired);
+		observedLocks.remove(lock);
+		return claim(lock);
+	}
+
+	/**
+	 * Обновление времени изменения блокировок участков, которые аннотирует этот координатор
+	 */
+	private void touchLocks() {
+		for (Path lock : heldLocks) {
+			try {
+				Files.setLastModifiedTime(lock, FileTime.fromMillis(System.currentTimeMillis()));
+			} catch (IOException e) {
+				log.warn("Exception touch lock: " + lock, e);
+			}
+		}
+	}
+
+	/**
+	 * Блокировки и отметки об ошибке этого хоста без отметки о завершении остались от прерванного запуска
+	 */
+	private void releaseOwnLocks(List<VCFShard> shards) throws IOException {
+		for (int i = 0; i < shards.size(); i++) {
+			if (Files.exists(getPathStatus(i, "done"))) {
+				continue;
+			}
+			for (String status : new String[]{ "lock", "failed" }) {
+				Path path = getPathStatus(i, status);
+				if (Files.exists(path) && host.equals(new String(Files.readAllBytes(path), StandardCharsets.UTF_8))) {
+					log.info("Release {} of interrupted shard: {}", status, i);
+					Files.delete(path);
+				}
+			}
+		}
+	}
+
+	private Path getPathOutput(int index) {
+		return workDir.resolve(String.format("shard-%05d%s", index, getOutputExtension()));
+	}
+
+	/**
+	 * Временный файл результата участка, в который пишет исполнитель координатора token
+	 */
+	private Path getPathOutput(int index, String token) {
+		return workDir.resolve(String.format("shard-%05d-%s%s", index, token, getOutputExtension()));
+	}
+
+	private String getOutputExtension() {
+		return arguments.pathOutput.getFileName().toString().endsWith(".gz") ? ".json.gz" : ".json";
+	}
+
+	private Path getPathStatus(int index, String status) {
+		return workDir.resolve(String.format("shard-%05d.%s", index, status));
+	}
+
+	/**
+	 * Склейка результатов участков: метаданные и записи участков по порядку.
+	 * Сжатые участки копируются без распаковки - конкатенация gzip-потоков является корректным gzip-файлом
+	 */
+	public static void concat(Path pathMetadata, List<Path> outputs, Path pathOutput) throws IOException {
+		Path pathTmp = pathOutput.resolveSibling(pathOutput.getFileName().toString() + ".tmp");
+		try (OutputStream os = Files.newOutputStream(pathTmp)) {
+			byte[] metadata = Files.readAllBytes(pathMetadata);
+			if (pathOutput.getFileName().toString().endsWith(".gz")) {
+				GZIPOutputStream gzipOutputStream = new GZIPOutputStream(os);
+				gzipOutputStream.write(metadata);
+				gzipOutputStream.finish();
+			} else {
+				os.write(metadata);
+			}
+
+			for (Path output : outputs) {
+				Files.copy(output, os);
+			}
+		}
+		Files.move(pathTmp, pathOutput, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	private static String getHost() {
+		String name;
+		try {
+			name = InetAddress.getLocalHost().getHostName();
+		} catch (IOException e) {
+			name = "localhost";
+		}
+		return name;
+	}
+
+	private static class LockObservation {
+
+		private final FileTime modified;
+		private final long since;
+
+		private LockObservation(FileTime modified, long since) {
+			this.modified = modified;
+			this.since = since;
+		}
+	}
+}
@@ -20,7 +20,10 @@ package org.forome.annotation.annotator.executor;
 
 import htsjdk.variant.vcf.VCFFileReader;
 import org.apache.commons.collections4.CollectionUtils;
+import org.forome.annotation.annotator.recovery.Checkpoint;
 import org.forome.annotation.exception.ExceptionBuilder;
+import org.forome.annotation.iterator.vcf.VCFShard;
+import org.forome.annotation.iterator.vepjson.VepJsonShardIndex;
 import org.forome.annotation.processing.Processing;
 import org.forome.annotation.service.ensemblvep.EnsemblVepService;
 import org.forome.annotation.struct.mcase.MCase;
@@ -31,9 +34,11 @@ import java.util.List;
 
 public class AnnotatorExecutor implements AutoCloseable {
 
-	private final ThreadExecutor[] threadExecutors;
+	private final SourceReader sourceReader;
+	private final Pipeline pipeline;
 
-	private int activeExecutor;
+	private final StageMetrics writeMetrics;
+	private long lastNextNanos = -1;
 
 	public AnnotatorExecutor(
 			EnsemblVepService ensemblVepService,
@@ -41,51 +46,125 @@ public class AnnotatorExecutor implements AutoCloseable {
 			MCase mCase,
 			Path pathVcf, Path pathVepJson,
 			Path cnvFile,
-			int start, int thread,
+			int start, Checkpoint checkpoint,
+			PipelineConfig pipelineConfig, int thread,
 			Thread.UncaughtExceptionHandler uncaughtExceptionHandler
 	) {
 		if (thread < 1) throw new IllegalArgumentException();
 
-		//Validation samples fam-file and vcf-file
-		VCFFileReader vcfFileReader = new VCFFileReader(pathVcf, false);
-		List<String> vcfSamples = vcfFileReader.getFileHeader().getGenotypeSamples();
-		if (vcfSamples.size() != mCase.samples.size() || !vcfSamples.containsAll(mCase.samples.keySet())) {
-			throw ExceptionBuilder.buildNotEqualSamplesVcfAndFamFile(
-					CollectionUtils.disjunction(vcfSamples, mCase.samples.keySet())
-			);
-		}
+		validateSamples(mCase, pathVcf);
+
+		//Файл декодируется один раз, записи проходят стадии конвейера
+		sourceReader = new SourceReader(
+				pathVcf, pathVepJson,
+				cnvFile,
+				start, checkpoint,
+				Pipeline.getThreads(pipelineConfig, thread),
+				pipelineConfig.windowSpan, pipelineConfig.windowRecords,
+				uncaughtExceptionHandler
+		);
+
+		writeMetrics = buildWriteMetrics(sourceReader);
+		pipeline = buildPipeline(ensemblVepService, processing, mCase, pipelineConfig, thread, uncaughtExceptionHandler);
+	}
 
-		threadExecutors = new ThreadExecutor[thread];
-		for (int i = 0; i < thread; i++) {
-			threadExecutors[i] = new ThreadExecutor(
-					i + 1,
-					ensemblVepService,
-					processing,
-					mCase,
-					pathVcf, pathVepJson,
-					cnvFile,
-					start + i, thread,
-					uncaughtExceptionHandler
-			);
+	/**
+	 * Параллельное чтение участков индексированного (bgzip + tabix) vcf-файла
+	 *
+	 * @param pathVepJsonIndex сохраненный индекс vep.json (см. {@link VepJsonShardIndex#write(Path)}),
+	 *                         если null - индекс строится проходом по vep.json
+	 */
+	public AnnotatorExecutor(
+			EnsemblVepService ensemblVepService,
+			Processing processing,
+			MCase mCase,
+			Path pathVcf, Path pathVepJson, Path pathVepJsonIndex,
+			List<VCFShard> shards,
+			int readers,
+			PipelineConfig pipelineConfig, int thread,
+			Thread.UncaughtExceptionHandler uncaughtExceptionHandler
+	) {
+		if (thread < 1) throw new IllegalArgumentException();
+
+		validateSamples(mCase, pathVcf);
+
+		VepJsonShardIndex vepJsonShardIndex;
+		if (pathVepJson == null) {
+			vepJsonShardIndex = null;
+		} else if (pathVepJsonIndex != null) {
+			try {
+				vepJsonShardIndex = VepJsonShardIndex.read(pathVepJson, pathVepJsonIndex, shards);
+			} catch (IOException e) {
+				throw ExceptionBuilder.buildIOErrorException(e);
+			}
+		} else {
+			vepJsonShardIndex = VepJsonShardIndex.build(pathVepJson, shards);
 		}
 
-		activeExecutor = 0;
+		sourceReader = new SourceReader(
+				pathVcf, shards, vepJsonShardIndex,
+				readers, Pipeline.getThreads(pipelineConfig, thread),
+				pipelineConfig.windowSpan, pipelineConfig.windowRecords,
+				uncaughtExceptionHandler
+		);
+
+		writeMetrics = buildWriteMetrics(sourceReader);
+		pipeline = buildPipeline(ensemblVepService, processing, mCase, pipelineConfig, thread, uncaughtExceptionHandler);
 	}
 
-	public synchronized Result next() {
-		ThreadExecutor threadExecutor = threadExecutors[activeExecutor];
-		activeExecutor++;
-		if (activeExecutor > threadExecutors.length - 1) {
-			activeExecutor = 0;
+	/**
+	 * Очередной результат в порядке файла. Время между вызовами учитывается как работа стадии записи
+	 */
+	public Result next() {
+		long t1 = System.nanoTime();
+		if (lastNextNanos >= 0) {
+			writeMetrics.add(1, t1 - lastNextNanos);
 		}
+		try {
+			return sourceReader.takeResult();
+		} catch (InterruptedException e) {
+			throw new RuntimeException(e);
+		} finally {
+			lastNextNanos = System.nanoTime();
+		}
+	}
 
-		return threadExecutor.next();
+	private Pipeline buildPipeline(
+			EnsemblVepService ensemblVepService,
+			Processing processing,
+			MCase mCase,
+			PipelineConfig pipelineConfig, int thread,
+			Thread.UncaughtExceptionHandler uncaughtExceptionHandler
+	) {
+		return new Pipeline(
+				ensemblVepService, processing, mCase,
+				sourceReader,
+				pipelineConfig, thread,
+				sourceReader.metrics, writeMetrics,
+				uncaughtExceptionHandler
+		);
 	}
 
-	@Override
-	public void close() throws IOException {
-		for (ThreadExecutor threadExecutor : threadExecutors) {
-			threadExecutor.close();
+	private static StageMetrics buildWriteMetrics(SourceReader sourceReader) {
+		return new StageMetrics("write", 1, sourceReader::getResultDepth, sourceReader.getResultCapacity());
+	}
+
+	//Validation samples fam-file and vcf-file
+	private static void validateSamples(MCase mCase, Path pathVcf) {
+		try (VCFFileReader vcfFileReader = new VCFFileReader(pathVcf, false)) {
+			List<String> vcfSamples = vcfFileReader.getFileHeader().getGenotypeSamples();
+			if (vcfSamples.size() != mCase.samples.size() || !vcfSamples.containsAll(mCase.samples.keySet())) {
+				throw ExceptionBuilder.buildNotEqualSamplesVcfAndFamFile(
+						CollectionUtils.disjunction(vcfSamples, mCase.samples.keySet())
+				);
+			}
 		}
 	}
+
+	@Override
+	public void close() {
+		pipeline.report();
+		pipeline.close();
+		sourceReader.close();
+	}
 }
@@ -0,0 +1,368 @@
+/*
+ Copyright (c) 2019. Vladimir Ulitin, Partners Healthcare and members of Forome Association
+
+ Developed by Vladimir Ulitin and Michael Bouzinier
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+	 http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+*/
+
+package org.forome.annotation.annotator.executor;
+
+import org.forome.annotation.annotator.executor.PipelineConfig.StageType;
+import org.forome.annotation.data.anfisa.struct.AnfisaResult;
+import org.forome.annotation.processing.Processing;
+import org.forome.annotation.processing.struct.ProcessingResult;
+import org.forome.annotation.service.ensemblvep.EnsemblVepService;
+import org.forome.annotation.struct.mavariant.MAVariant;
+import org.forome.annotation.struct.mavariant.MAVariantCNV;
+import org.forome.annotation.struct.mavariant.MAVariantVCF;
+import org.forome.annotation.struct.mcase.MCase;
+import org.forome.annotation.struct.variant.Variant;
+import org.forome.annotation.struct.variant.vep.VariantVep;
+import org.forome.annotation.utils.PrefetchScope;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Конвейер аннотации. Записи, прочитанные SourceReader (стадия read), проходят стадии:
+ * split (SplitMAVariant) -> fetch (загрузка данных источников на окно предзагрузки) -> build (AnfisaConnector.build)
+ * -> graphql -> serialize, у каждой стадии своя ограниченная очередь и свое кол-во исполнителей.
+ * Стадия fetch обрабатывает окна ({@link PrefetchWindow}): окно попадает в ее очередь, когда все его записи
+ * прошли разбиение, а загруженные данные освобождаются, когда построены все записи окна.
+ * Последняя стадия завершает Result записи, а стадию write выполняет потребитель AnnotatorExecutor.next(),
+ * забирая результаты в порядке файла.
+ * Периодически в лог выводятся глубина очередей, пропускная способность и загрузка каждой стадии.
+ */
+class Pipeline implements AutoCloseable {
+
+	private final static Logger log = LoggerFactory.getLogger(Pipeline.class);
+
+	private static final long REPORT_INTERVAL_MILLIS = 60_000L;
+
+	private static class Record {
+
+		final SourceReader.Task task;
+
+		List<Variant> variants;
+		boolean cnv;
+		boolean failed;
+
+		PrefetchScope prefetchScope;
+		List<AnfisaResult> anfisaResults;
+		List<ProcessingResult> processingResults;
+
+		Record(SourceReader.Task task) {
+			this.task = task;
+		}
+
+		void releasePrefetch() {
+			if (prefetchScope != null) {
+				prefetchScope.close();
+				prefetchScope = null;
+			}
+		}
+	}
+
+	/**
+	 * Данные, загруженные пакетом, освобождаются после того, как построены все записи пакета
+	 */
+	private static class SharedPrefetchScope implements PrefetchScope {
+
+		private final PrefetchScope prefetchScope;
+		private final AtomicInteger references;
+
+		SharedPrefetchScope(PrefetchScope prefetchScope, int references) {
+			this.prefetchScope = prefetchScope;
+			this.references = new AtomicInteger(references);
+		}
+
+		@Override
+		public void close() {
+			if (references.decrementAndGet() == 0) {
+				prefetchScope.close();
+			}
+		}
+	}
+
+	private final EnsemblVepService ensemblVepService;
+	private final Processing processing;
+	private final MCase mCase;
+
+	private final Thread.UncaughtExceptionHandler uncaughtExceptionHandler;
+
+	private final Stage<Record> serializeStage;
+	private final Stage<Record> graphqlStage;
+	private final Stage<Record> buildStage;
+	private final Stage<List<Record>> fetchStage;
+	private final Stage<Record> splitStage;
+
+	private final List<StageMetrics> metrics;
+
+	private final Thread monitor;
+
+	/**
+	 * @param readMetrics  метрики стадии чтения
+	 * @param writeMetrics метрики стадии записи результатов
+	 */
+	Pipeline(
+			EnsemblVepService ensemblVepService,
+			Processing processing,
+			MCase mCase,
+			SourceReader sourceReader,
+			PipelineConfig pipelineConfig, int threads,
+			StageMetrics readMetrics, StageMetrics writeMetrics,
+			Thread.UncaughtExceptionHandler uncaughtExceptionHandler
+	) {
+		this.ensemblVepService = ensemblVepService;
+		this.processing = processing;
+		this.mCase = mCase;
+
+		this.uncaughtExceptionHandler = uncaughtExceptionHandler;
+
+		//Стадии создаются с конца, чтобы каждой было куда передавать записи
+		int serializeThreads = pipelineConfig.getThreads(StageType.SERIALIZE, threads);
+		serializeStage = new Stage<>(
+				StageType.SERIALIZE.getKey(),
+				serializeThreads, serializeThreads * 2, 1,
+				this::serialize, null, this::fail,
+				uncaughtExceptionHandler
+		);
+
+		int graphqlThreads = pipelineConfig.getThreads(StageType.GRAPHQL, threads);
+		graphqlStage = new Stage<>(
+				StageType.GRAPHQL.getKey(),
+				graphqlThreads, graphqlThreads * 2, 1,
+				this::execGraphQL, serializeStage::put, this::fail,
+				uncaughtExceptionHandler
+		);
+
+		int buildThreads = pipelineConfig.getThreads(StageType.BUILD, threads);
+		buildStage = new Stage<>(
+				StageType.BUILD.getKey(),
+				buildThreads, buildThreads * 2, 1,
+				this::build, graphqlStage::put, this::fail,
+				uncaughtExceptionHandler
+		);
+
+		int fetchThreads = pipelineConfig.getThreads(StageType.FETCH, threads);
+		fetchStage = new Stage<>(
+				StageType.FETCH.getKey(),
+				fetchThreads, fetchThreads * 2, 1,
+				this::fetch,
+				window -> {
+					for (Record record : window) {
+						buildStage.put(record);
+					}
+				},
+				(windows, e) -> {
+					for (List<Record> window : windows) {
+						fail(window, e);
+					}
+				},
+				uncaughtExceptionHandler
+		);
+
+		splitStage = new Stage<>(
+				StageType.SPLIT.getKey(),
+				() -> new Record(sourceReader.takeTask()), sourceReader::getTaskDepth, sourceReader.getTaskCapacity(),
+				pipelineConfig.getThreads(StageType.SPLIT, threads),
+				this::split, this::arrive, this::fail,
+				uncaughtExceptionHandler
+		);
+
+		metrics = new ArrayList<>();
+		metrics.add(readMetrics);
+		metrics.add(splitStage.metrics);
+		metrics.add(fetchStage.metrics);
+		metrics.add(buildStage.metrics);
+		metrics.add(graphqlStage.metrics);
+		metrics.add(serializeStage.metrics);
+		metrics.add(writeMetrics);
+
+		monitor = new Thread(() -> {
+			try {
+				while (true) {
+					Thread.sleep(REPORT_INTERVAL_MILLIS);
+					report();
+				}
+			} catch (InterruptedException ignore) {
+			}
+		}, "pipeline-monitor");
+		monitor.setDaemon(true);
+		monitor.start();
+	}
+
+	/**
+	 * Кол-во исполнителей всех стадий конвейера
+	 */
+	static int getThreads(PipelineConfig pipelineConfig, int threads) {
+		int count = 0;
+		for (StageType stageType : StageType.values()) {
+			count += pipelineConfig.getThreads(stageType, threads);
+		}
+		return count;
+	}
+
+	/**
+	 * Запись с ошибкой разбиения тоже передается дальше, иначе ее окно никогда не станет полным
+	 */
+	private List<Record> split(List<Record> records) {
+		for (Record record : records) {
+			MAVariant maVariant = record.task.source.variant;
+			try {
+				if (maVariant instanceof MAVariantVCF && record.task.source.vepJson != null) {
+					record.variants = processing.split(maVariant);
+				} else if (maVariant instanceof MAVariantCNV) {
+					record.variants = Collections.singletonList(((MAVariantCNV) maVariant).variantCNV);
+					record.cnv = true;
+				} else {
+					throw new RuntimeException("Not support type maVariant: " + maVariant);
+				}
+			} catch (Throwable e) {
+				record.failed = true;
+				fail(Collections.singletonList(record), e);
+			}
+		}
+		return records;
+	}
+
+	private void arrive(Record record) throws InterruptedException {
+		List<Record> window = record.task.window.arrive(record);
+		if (window != null) {
+			fetchStage.put(window);
+		}
+	}
+
+	/**
+	 * Данные источников загружаются одним пакетом на все варианты окна,
+	 * для cnv-вариантов дополнительно запрашивается vep-json
+	 */
+	private List<List<Record>> fetch(List<List<Record>> windows) {
+		List<List<Record>> results = new ArrayList<>(windows.size());
+		for (List<Record> window : windows) {
+			results.add(fetchWindow(window));
+		}
+		return results;
+	}
+
+	private List<Record> fetchWindow(List<Record> records) {
+		List<Record> results = new ArrayList<>(records.size());
+		List<Variant> variants = new ArrayList<>();
+		for (Record record : records) {
+			if (record.failed) {
+				continue;
+			}
+			if (record.cnv) {
+				Variant variant = record.variants.get(0);
+				try {
+					((VariantVep) variant).setVepJson(ensemblVepService.getVepJson(variant).get());
+				} catch (Throwable e) {
+					//Запись пропускается
+					record.task.result.future.completeExceptionally(e);
+					continue;
+				}
+			} else {
+				variants.addAll(record.variants);
+			}
+			results.add(record);
+		}
+
+		if (!variants.isEmpty()) {
+			int references = (int) results.stream().filter(record -> !record.cnv).count();
+			PrefetchScope prefetchScope = new SharedPrefetchScope(processing.prefetch(mCase, variants), references);
+			for (Record record : results) {
+				if (!record.cnv) {
+					record.prefetchScope = prefetchScope;
+				}
+			}
+		}
+		return results;
+	}
+
+	private List<Record> build(List<Record> records) {
+		for (Record record : records) {
+			try {
+				record.anfisaResults = new ArrayList<>(record.variants.size());
+				for (Variant variant : record.variants) {
+					if (!record.cnv) {
+						//Валидируем ref
+						processing.validate(mCase.assembly, variant);
+					}
+					try {
+						record.anfisaResults.add(processing.build(mCase, variant));
+					} catch (Throwable e) {
+						throw new RuntimeException("Exception build variant: " + variant.toString(), e);
+					}
+				}
+			} finally {
+				record.releasePrefetch();
+			}
+		}
+		return records;
+	}
+
+	private List<Record> execGraphQL(List<Record> records) {
+		for (Record record : records) {
+			record.processingResults = new ArrayList<>(record.variants.size());
+			for (int i = 0; i < record.variants.size(); i++) {
+				Variant variant = record.variants.get(i);
+				try {
+					record.processingResults.add(processing.execGraphQL(mCase, variant, record.anfisaResults.get(i)));
+				} catch (Throwable e) {
+					throw new RuntimeException("Exception build variant: " + variant.toString(), e);
+				}
+			}
+			record.anfisaResults = null;
+		}
+		return records;
+	}
+
+	private List<Record> serialize(List<Record> records) {
+		for (Record record : records) {
+			for (ProcessingResult processingResult : record.processingResults) {
+				processingResult.serialize();
+			}
+			record.task.result.future.complete(record.processingResults);
+		}
+		return records;
+	}
+
+	private void fail(List<Record> records, Throwable e) {
+		for (Record record : records) {
+			record.releasePrefetch();
+			record.task.result.future.completeExceptionally(e);
+		}
+		uncaughtExceptionHandler.uncaughtException(Thread.currentThread(), e);
+	}
+
+	void report() {
+		for (StageMetrics stageMetrics : metrics) {
+			log.info("Pipeline: {}", stageMetrics.snapshot());
+		}
+	}
+
+	@Override
+	public void close() {
+		monitor.interrupt();
+		splitStage.close();
+		fetchStage.close();
+		buildStage.close();
+		graphqlStage.close();
+		serializeStage.close();
+	}
+}
@@ -0,0 +1,135 @@
+/*
+ Copyright (c) 2019. Vladimir Ulitin, Partners Healthcare and members of Forome Association
+
+ Developed by Vladimir Ulitin and Michael Bouzinier
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+	 http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+*/
+
+package org.forome.annotation.annotator.executor;
+
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * Параметры конвейера аннотации: кол-во исполнителей стадий и размеры окна предзагрузки.
+ * Строковое представление: "fetch=16,build=8,graphql=8,window=100000,window-records=64", не указанные стадии
+ * получают значения по умолчанию, вычисляемые из общего кол-ва потоков
+ */
+public class PipelineConfig {
+
+	public enum StageType {
+
+		SPLIT, FETCH, BUILD, GRAPHQL, SERIALIZE;
+
+		public String getKey() {
+			return name().toLowerCase();
+		}
+	}
+
+	public static final String KEY_WINDOW_SPAN = "window";
+	public static final String KEY_WINDOW_RECORDS = "window-records";
+
+	public static final int DEFAULT_WINDOW_SPAN = 100_000;
+	public static final int DEFAULT_WINDOW_RECORDS = 64;
+
+	public static final PipelineConfig DEFAULT = new PipelineConfig(Collections.emptyMap(), DEFAULT_WINDOW_SPAN, DEFAULT_WINDOW_RECORDS);
+
+	private final Map<StageType, Integer> threads;
+
+	/**
+	 * Длина участка генома и максимальное кол-во записей окна предзагрузки
+	 */
+	public final int windowSpan;
+	public final int windowRecords;
+
+	private PipelineConfig(Map<StageType, Integer> threads, int windowSpan, int windowRecords) {
+		this.threads = threads;
+		this.windowSpan = windowSpan;
+		this.windowRecords = windowRecords;
+	}
+
+	/**
+	 * @param threads общее кол-во потоков, которое ранее получал единственный цикл исполнителя
+	 */
+	public int getThreads(StageType stageType, int threads) {
+		Integer value = this.threads.get(stageType);
+		if (value != null) {
+			return value;
+		}
+		switch (stageType) {
+			case SPLIT:
+			case SERIALIZE:
+				return 1 + threads / 32;
+			case FETCH:
+				//Ожидание источников данных
+				return Math.max(threads / 2, 1);
+			case BUILD:
+			case GRAPHQL:
+				return Math.max(threads / 4, 1);
+			default:
+				throw new RuntimeException("Unknown stage: " + stageType);
+		}
+	}
+
+	public static PipelineConfig parse(String value) {
+		Map<StageType, Integer> threads = new EnumMap<>(StageType.class);
+		int windowSpan = DEFAULT_WINDOW_SPAN;
+		int windowRecords = DEFAULT_WINDOW_RECORDS;
+		for (String item : value.split(",")) {
+			if (item.trim().isEmpty()) {
+				continue;
+			}
+			String[] pair = item.split("=");
+			if (pair.length != 2) {
+				throw new IllegalArgumentException("Bad pipeline config: " + value);
+			}
+			String key = pair[0].trim().toLowerCase();
+			int count = Integer.parseInt(pair[1].trim());
+			if (count < 1) {
+				throw new IllegalArgumentException("Bad pipeline config: " + value);
+			}
+			if (KEY_WINDOW_SPAN.equals(key)) {
+				windowSpan = count;
+				continue;
+			}
+			if (KEY_WINDOW_RECORDS.equals(key)) {
+				windowRecords = count;
+				continue;
+			}
+			StageType stageType = null;
+			for (StageType iStageType : StageType.values()) {
+				if (iStageType.getKey().equals(key)) {
+					stageType = iStageType;
+				}
+			}
+			if (stageType == null) {
+				throw new IllegalArgumentException("Unknown pipeline stage: " + key);
+			}
+			threads.put(stageType, count);
+		}
+		return new PipelineConfig(threads, windowSpan, windowRecords);
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder builder = new StringBuilder();
+		for (Map.Entry<StageType, Integer> entry : threads.entrySet()) {
+			builder.append(entry.getKey().getKey()).append('=').append(entry.getValue()).append(',');
+		}
+		builder.append(KEY_WINDOW_SPAN).append('=').append(windowSpan).append(',');
+		builder.append(KEY_WINDOW_RECORDS).append('=').append(windowRecords);
+		return builder.toString();
+	}
+}
@@ -0,0 +1,111 @@
+/*
+ Copyright (c) 2019. Vladimir Ulitin, Partners Healthcare and members of Forome Association
+
+ Developed by Vladimir Ulitin and Michael Bouzinier
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+	 http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+*/
+
+package org.forome.annotation.annotator.executor;
+
+import htsjdk.variant.variantcontext.VariantContext;
+import org.forome.annotation.struct.mavariant.MAVariant;
+import org.forome.annotation.struct.mavariant.MAVariantVCF;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Окно предзагрузки: подряд идущие записи отсортированного vcf-файла одной хромосомы,
+ * укладывающиеся в участок генома заданной длины. Окно формирует SourceReader по мере чтения,
+ * записи окна собираются после разбиения, и когда пришла последняя - данные источников
+ * загружаются сразу на все окно. Загруженные данные освобождаются, когда построены все записи окна.
+ * Окно закрывается читателем до того, как в очередь попадет его последняя запись,
+ * поэтому полноту окна всегда обнаруживает приход записи.
+ */
+class PrefetchWindow {
+
+	private final String contig;
+	private final int start;
+
+	private final int span;
+	private final int maxRecords;
+
+	private final List<Object> items;
+	private int size;
+	private boolean closed;
+
+	/**
+	 * @param span       длина участка генома окна
+	 * @param maxRecords максимальное кол-во записей окна
+	 */
+	PrefetchWindow(MAVariant maVariant, int span, int maxRecords) {
+		if (maVariant instanceof MAVariantVCF) {
+			VariantContext variantContext = ((MAVariantVCF) maVariant).variantContext;
+			this.contig = variantContext.getContig();
+			this.start = variantContext.getStart();
+		} else {
+			//Прочие записи (cnv) - каждая в своем окне
+			this.contig = null;
+			this.start = 0;
+		}
+		this.span = span;
+		this.maxRecords = maxRecords;
+
+		this.items = new ArrayList<>();
+	}
+
+	/**
+	 * Попадает ли следующая запись файла в окно, вызывается читателем
+	 */
+	boolean accept(MAVariant maVariant) {
+		if (contig == null || !(maVariant instanceof MAVariantVCF)) {
+			return false;
+		}
+		VariantContext variantContext = ((MAVariantVCF) maVariant).variantContext;
+		synchronized (this) {
+			return !closed && size < maxRecords
+					&& contig.equals(variantContext.getContig())
+					&& variantContext.getStart() - start < span;
+		}
+	}
+
+	/**
+	 * Запись прочитана и отнесена к окну, вызывается читателем
+	 */
+	synchronized void register() {
+		if (closed) throw new IllegalStateException();
+		size++;
+	}
+
+	/**
+	 * Больше записей в окне не будет, вызывается читателем
+	 */
+	synchronized void close() {
+		closed = true;
+	}
+
+	/**
+	 * Запись окна прошла разбиение
+	 *
+	 * @return все записи окна, если пришла последняя, иначе null
+	 */
+	@SuppressWarnings("unchecked")
+	synchronized <T> List<T> arrive(T item) {
+		items.add(item);
+		if (closed && items.size() == size) {
+			return (List<T>) items;
+		}
+		return null;
+	}
+}
@@ -28,8 +28,20 @@ public class Result {
 	public final int position;
 	public final CompletableFuture<List<ProcessingResult>> future;
 
+	/**
+	 * Позиции в vcf-файле и vep.json, с которых продолжается чтение после этой записи, -1 - если неизвестны
+	 */
+	public final long vcfOffset;
+	public final long vepJsonOffset;
+
 	public Result(int position, CompletableFuture<List<ProcessingResult>> future) {
+		this(position, future, -1, -1);
+	}
+
+	public Result(int position, CompletableFuture<List<ProcessingResult>> future, long vcfOffset, long vepJsonOffset) {
 		this.position = position;
 		this.future = future;
+		this.vcfOffset = vcfOffset;
+		this.vepJsonOffset = vepJsonOffset;
 	}
 }
@@ -0,0 +1,456 @@
+/*
+ Copyright (c) 2019. Vladimir Ulitin, Partners Healthcare and members of Forome Association
+
+ Developed by Vladimir Ulitin and Michael Bouzinier
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+	 http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+*/
+
+package org.forome.annotation.annotator.executor;
+
+import net.minidev.json.JSONObject;
+import org.forome.annotation.annotator.recovery.Checkpoint;
+import org.forome.annotation.exception.ExceptionBuilder;
+import org.forome.annotation.iterator.vcf.VCFFileIterator;
+import org.forome.annotation.iterator.vcf.VCFShard;
+import org.forome.annotation.iterator.vepjson.VepJsonFileIterator;
+import org.forome.annotation.iterator.vepjson.VepJsonShardIndex;
+import org.forome.annotation.struct.mavariant.MAVariantVCF;
+import org.forome.annotation.struct.mavariant.MAVariantVep;
+import org.forome.annotation.utils.PositionalLineReader;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntFunction;
+
+/**
+ * Читатель vcf-файла (и vep.json): каждая запись декодируется один раз.
+ * Файл читается участками (сегментами): весь файл целиком одним потоком, либо,
+ * для индексированного bgzip-файла, участками по хромосомам/регионам в несколько потоков.
+ * Для каждой записи создается Result, который попадает в очередь результатов своего сегмента,
+ * а сама запись - в общую очередь задач, откуда ее забирает первый освободившийся исполнитель.
+ * Результаты отдаются по сегментам по порядку, т.е. в порядке файла.
+ * Подряд идущие близкие записи сегмента объединяются в окна предзагрузки ({@link PrefetchWindow}).
+ * Все очереди ограничены, поэтому чтение не убегает вперед от записи результатов.
+ */
+class SourceReader implements AutoCloseable {
+
+	private final static Logger log = LoggerFactory.getLogger(SourceReader.class);
+
+	static class Task {
+
+		final Source source;
+		final Result result;
+		final PrefetchWindow window;
+
+		Task(Source source, Result result, PrefetchWindow window) {
+			this.source = source;
+			this.result = result;
+			this.window = window;
+		}
+	}
+
+	private static class Segment {
+
+		final String name;
+		final int start;
+		final int skip;
+		final IntFunction<Reader> openReader;
+		final BlockingQueue<Result> results;
+
+		/**
+		 * @param start номер первой записи сегмента
+		 * @param skip  кол-во записей, которые необходимо пропустить после открытия
+		 */
+		Segment(String name, int start, int skip, IntFunction<Reader> openReader, int capacity) {
+			this.name = name;
+			this.start = start;
+			this.skip = skip;
+			this.openReader = openReader;
+			this.results = new LinkedBlockingQueue<>(capacity);
+		}
+	}
+
+	private static class Reader {
+
+		final VCFFileIterator vcfFileIterator;
+		final VepJsonFileIterator vepJsonIterator;
+
+		Reader(VCFFileIterator vcfFileIterator, VepJsonFileIterator vepJsonIterator) {
+			this.vcfFileIterator = vcfFileIterator;
+			this.vepJsonIterator = vepJsonIterator;
+		}
+	}
+
+	/**
+	 * Маркеры окончания файла в очередях
+	 */
+	private static final Task END_TASK = new Task(null, null, null);
+	private static final Result END_RESULT = new Result(-1, CompletableFuture.completedFuture(null));
+
+	private final Segment[] segments;
+	private final AtomicInteger nextSegment;
+	private volatile int currentSegment;
+
+	private final BlockingQueue<Task> tasks;
+	private final int taskCapacity;
+
+	/**
+	 * Метрики стадии чтения конвейера аннотации
+	 */
+	final StageMetrics metrics;
+
+	private final int windowSpan;
+	private final int windowRecords;
+
+	private final Thread[] readers;
+	private final AtomicInteger activeReaders;
+	private volatile boolean isClosed = false;
+
+	/**
+	 * Последовательное чтение всего файла.
+	 * Без cnv-файла для несжатых и bgzip-файлов отслеживаются позиции записей, что позволяет продолжить чтение с контрольной точки
+	 *
+	 * @param checkpoint    контрольная точка, с которой продолжается чтение, либо null
+	 * @param windowSpan    длина участка генома окна предзагрузки
+	 * @param windowRecords максимальное кол-во записей окна предзагрузки
+	 */
+	SourceReader(
+			Path pathVcf, Path pathVepJson,
+			Path cnvFile,
+			int start, Checkpoint checkpoint,
+			int consumers,
+			int windowSpan, int windowRecords,
+			Thread.UncaughtExceptionHandler uncaughtExceptionHandler
+	) {
+		this(
+				new Segment[]{
+						new Segment(
+								pathVcf.getFileName().toString(),
+								(checkpoint != null) ? checkpoint.countVariants : start,
+								(checkpoint != null) ? 0 : start,
+								segment -> openReader(pathVcf, pathVepJson, cnvFile, checkpoint),
+								consumers * 4
+						)
+				},
+				1, consumers,
+				windowSpan, windowRecords,
+				uncaughtExceptionHandler
+		);
+	}
+
+	/**
+	 * Параллельное чтение участков индексированного vcf-файла
+	 */
+	SourceReader(
+			Path pathVcf, List<VCFShard> shards, VepJsonShardIndex vepJsonShardIndex,
+			int readers, int consumers,
+			int windowSpan, int windowRecords,
+			Thread.UncaughtExceptionHandler uncaughtExceptionHandler
+	) {
+		this(
+				buildSegments(pathVcf, shards, vepJsonShardIndex, consumers),
+				Math.min(readers, shards.size()), consumers,
+				windowSpan, windowRecords,
+				uncaughtExceptionHandler
+		);
+	}
+
+	private SourceReader(
+			Segment[] segments,
+			int readers, int consumers,
+			int windowSpan, int windowRecords,
+			Thread.UncaughtExceptionHandler uncaughtExceptionHandler
+	) {
+		if (readers < 1) throw new IllegalArgumentException();
+		if (consumers < 1) throw new IllegalArgumentException();
+		if (windowSpan < 1) throw new IllegalArgumentException();
+		if (windowRecords < 1) throw new IllegalArgumentException();
+
+		this.segments = segments;
+		this.nextSegment = new AtomicInteger();
+		this.currentSegment = 0;
+
+		this.taskCapacity = consumers * 2;
+		this.tasks = new ArrayBlockingQueue<>(taskCapacity);
+
+		this.metrics = new StageMetrics("read", readers, null, 0);
+
+		//Записи незавершенного окна не отдаются потребителю, поэтому окно должно
+		//гарантированно помещаться в очередь результатов сегмента (емкость consumers * 4)
+		this.windowSpan = windowSpan;
+		this.windowRecords = Math.min(windowRecords, consumers * 2);
+
+		this.activeReaders = new AtomicInteger(readers);
+		this.readers = new Thread[readers];
+		for (int i = 0; i < readers; i++) {
+			int index = i;
+			Thread reader = new Thread(() -> {
+				log.debug("Reader: {} start", index);
+				try {
+					//Сегменты забираются строго по порядку, поэтому сегмент,
+					//результаты которого ожидаются, всегда уже читается
+					int segment;
+					while (!isClosed && (segment = nextSegment.getAndIncrement()) < segments.length) {
+						read(segment);
+					}
+					log.debug("Reader: {} completed", index);
+					if (activeReaders.decrementAndGet() == 0 && !isClosed) {
+						tasks.put(END_TASK);
+					}
+				} catch (InterruptedException e) {
+					log.debug("Reader: {} interrupted", index);
+				}
+			});
+			reader.setUncaughtExceptionHandler(uncaughtExceptionHandler);
+			reader.start();
+			this.readers[i] = reader;
+		}
+	}
+
+	private void read(int index) throws InterruptedException {
+		Segment segment = segments[index];
+		log.debug("Read segment: {}", segment.name);
+
+		Reader reader = segment.openReader.apply(index);
+		try {
+			//Прокручиваем до начала итерации
+			for (int i = 0; i < segment.skip; i++) {
+				nextSource(reader);
+			}
+
+			int position = segment.start;
+			//Запись задерживается до чтения следующей: только тогда известно, последняя ли она в своем окне
+			Task pending = null;
+			try {
+				while (!isClosed) {
+					long t1 = System.nanoTime();
+					Source source = nextSource(reader);
+					metrics.add(1, System.nanoTime() - t1);
+					Result result = new Result(
+							position++, new CompletableFuture<>(),
+							reader.vcfFileIterator.getPosition(),
+							(reader.vepJsonIterator != null) ? reader.vepJsonIterator.getPosition() : -1
+					);
+					//Сначала очередь результатов - она задает порядок и сдерживает чтение
+					segment.results.put(result);
+
+					PrefetchWindow window;
+					if (pending != null && pending.window.accept(source.variant)) {
+						window = pending.window;
+					} else {
+						if (pending != null) {
+							pending.window.close();
+						}
+						window = new PrefetchWindow(source.variant, windowSpan, windowRecords);
+					}
+					window.register();
+
+					if (pending != null) {
+						tasks.put(pending);
+					}
+					pending = new Task(source, result, window);
+				}
+			} catch (NoSuchElementException e) {
+				if (pending != null) {
+					pending.window.close();
+					tasks.put(pending);
+				}
+				throw e;
+			}
+		} catch (NoSuchElementException e) {
+			log.debug("Read segment: {} completed", segment.name);
+			segment.results.put(END_RESULT);
+		} finally {
+			close(reader);
+		}
+	}
+
+	/**
+	 * Возвращает очередную задачу для исполнителя, блокируясь до ее появления
+	 *
+	 * @throws NoSuchElementException если записи закончились
+	 */
+	Task takeTask() throws NoSuchElementException, InterruptedException {
+		Task task = tasks.take();
+		if (task == END_TASK) {
+			//Возвращаем маркер для остальных исполнителей
+			tasks.put(END_TASK);
+			throw new NoSuchElementException();
+		}
+		return task;
+	}
+
+	/**
+	 * Возвращает результаты строго в порядке записей файла,
+	 * после окончания файла - результат с null-значением.
+	 * Вызывается из одного потока.
+	 */
+	Result takeResult() throws InterruptedException {
+		while (currentSegment < segments.length) {
+			Result result = segments[currentSegment].results.take();
+			if (result != END_RESULT) {
+				return result;
+			}
+			currentSegment++;
+		}
+		return END_RESULT;
+	}
+
+	int getTaskDepth() {
+		return tasks.size();
+	}
+
+	int getTaskCapacity() {
+		return taskCapacity;
+	}
+
+	/**
+	 * Кол-во записей, ожидающих выдачи потребителю в текущем сегменте
+	 */
+	int getResultDepth() {
+		int index = currentSegment;
+		return (index < segments.length) ? segments[index].results.size() : 0;
+	}
+
+	/**
+	 * Емкость очереди результатов сегмента
+	 */
+	int getResultCapacity() {
+		return (segments.length > 0) ? segments[0].results.size() + segments[0].results.remainingCapacity() : 0;
+	}
+
+	private static Source nextSource(Reader reader) {
+		VCFFileIterator vcfFileIterator = reader.vcfFileIterator;
+		VepJsonFileIterator vepJsonIterator = reader.vepJsonIterator;
+
+		MAVariantVep variantVep;
+		try {
+			variantVep = vcfFileIterator.next();
+		} catch (NoSuchElementException ne) {
+			//Валидация того, что в vep.json - тоже не осталось записей
+			if (vepJsonIterator != null) {
+				try {
+					vepJsonIterator.next();
+					throw new RuntimeException("Not equals count rows, vcf file and vep.json file");
+				} catch (NoSuchElementException ignore) {
+				}
+			}
+			throw ne;
+		}
+
+		JSONObject vepJson;
+		if (variantVep instanceof MAVariantVCF && vepJsonIterator != null) {
+			try {
+				vepJson = vepJsonIterator.next();
+			} catch (NoSuchElementException ne) {
+				//Валидация того, что в vep.json - остались записи
+				throw new RuntimeException("Not equals count rows, vcf file and vep.json file");
+			}
+		} else {
+			vepJson = null;
+		}
+		return new Source(variantVep, vepJson);
+	}
+
+	private static Reader openReader(Path pathVcf, Path pathVepJson, Path cnvFile, Checkpoint checkpoint) {
+		if (cnvFile != null) {
+			if (checkpoint != null) throw new IllegalArgumentException();
+			return new Reader(
+					new VCFFileIterator(pathVcf, cnvFile),
+					(pathVepJson != null) ? new VepJsonFileIterator(pathVepJson) : null
+			);
+		}
+		if (checkpoint == null) {
+			if (!isPositional(pathVcf, pathVepJson)) {
+				//Позиции записей не отслеживаются - контрольные точки не сохраняются
+				return new Reader(
+						new VCFFileIterator(pathVcf),
+						(pathVepJson != null) ? new VepJsonFileIterator(pathVepJson) : null
+				);
+			}
+			return new Reader(
+					new VCFFileIterator(pathVcf, 0L),
+					(pathVepJson != null) ? new VepJsonFileIterator(pathVepJson, 0L) : null
+			);
+		}
+		return new Reader(
+				new VCFFileIterator(pathVcf, checkpoint.vcfOffset),
+				(pathVepJson != null) ? new VepJsonFileIterator(pathVepJson, checkpoint.vepJsonOffset) : null
+		);
+	}
+
+	/**
+	 * Можно ли продолжить чтение входных файлов с позиций (несжатые или bgzip-файлы)
+	 */
+	private static boolean isPositional(Path pathVcf, Path pathVepJson) {
+		try {
+			return PositionalLineReader.isPositional(pathVcf)
+					&& (pathVepJson == null || PositionalLineReader.isPositional(pathVepJson));
+		} catch (IOException e) {
+			throw ExceptionBuilder.buildIOErrorException(e);
+		}
+	}
+
+	private static Segment[] buildSegments(Path pathVcf, List<VCFShard> shards, VepJsonShardIndex vepJsonShardIndex, int consumers) {
+		Segment[] segments = new Segment[shards.size()];
+		for (int i = 0; i < segments.length; i++) {
+			VCFShard shard = shards.get(i);
+			segments[i] = new Segment(
+					shard.toString(),
+					0, 0,
+					index -> new Reader(
+							new VCFFileIterator(pathVcf, shard),
+							(vepJsonShardIndex != null) ? vepJsonShardIndex.open(index) : null
+					),
+					consumers * 4
+			);
+		}
+		return segments;
+	}
+
+	private static void close(Reader reader) {
+		reader.vcfFileIterator.close();
+		if (reader.vepJsonIterator != null) {
+			try {
+				reader.vepJsonIterator.close();
+			} catch (IOException e) {
+				log.error("Exception close vep.json", e);
+			}
+		}
+	}
+
+	@Override
+	public void close() {
+		isClosed = true;
+		for (Thread reader : readers) {
+			reader.interrupt();
+		}
+		try {
+			for (Thread reader : readers) {
+				reader.join();
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+}
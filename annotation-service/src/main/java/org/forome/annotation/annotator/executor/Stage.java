@@ -0,0 +1,211 @@
+/*
+ Copyright (c) 2019. Vladimir Ulitin, Partners Healthcare and members of Forome Association
+
+ Developed by Vladimir Ulitin and Michael Bouzinier
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+	 http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+*/
+
+package org.forome.annotation.annotator.executor;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.function.IntSupplier;
+
+/**
+ * Стадия конвейера аннотации: ограниченная входящая очередь и заданное кол-во исполнителей.
+ * Исполнитель забирает из очереди до batchSize записей (без активного опроса), обрабатывает их
+ * и передает следующей стадии. Если следующая стадия не успевает - исполнитель блокируется на ее очереди,
+ * поэтому медленная стадия видна по заполненной входящей очереди.
+ */
+class Stage<T> implements AutoCloseable {
+
+	private final static Logger log = LoggerFactory.getLogger(Stage.class);
+
+	@FunctionalInterface
+	interface Input<T> {
+
+		/**
+		 * @throws NoSuchElementException если записи закончились
+		 */
+		T take() throws NoSuchElementException, InterruptedException;
+	}
+
+	@FunctionalInterface
+	interface Output<T> {
+
+		void put(T item) throws InterruptedException;
+	}
+
+	@FunctionalInterface
+	interface Handler<T> {
+
+		/**
+		 * @return записи, которые передаются следующей стадии
+		 */
+		List<T> handle(List<T> items) throws Exception;
+	}
+
+	@FunctionalInterface
+	interface ErrorHandler<T> {
+
+		void handle(List<T> items, Throwable e);
+	}
+
+	private final BlockingQueue<T> queue;
+	private final Input<T> input;
+	private final int batchSize;
+
+	private final Handler<T> handler;
+	private final Output<T> output;
+	private final ErrorHandler<T> errorHandler;
+
+	final StageMetrics metrics;
+
+	private final Thread[] workers;
+	private volatile boolean isClosed = false;
+
+	/**
+	 * Стадия со своей входящей очередью
+	 *
+	 * @param output следующая стадия, null - для последней стадии
+	 */
+	Stage(
+			String name,
+			int threads, int capacity, int batchSize,
+			Handler<T> handler, Output<T> output, ErrorHandler<T> errorHandler,
+			Thread.UncaughtExceptionHandler uncaughtExceptionHandler
+	) {
+		this(name, new ArrayBlockingQueue<>(capacity), null, null, capacity, threads, batchSize, handler, output, errorHandler, uncaughtExceptionHandler);
+	}
+
+	/**
+	 * Стадия, которая забирает записи из внешнего источника
+	 *
+	 * @param depth    глубина очереди внешнего источника
+	 * @param capacity емкость очереди внешнего источника
+	 */
+	Stage(
+			String name,
+			Input<T> input, IntSupplier depth, int capacity,
+			int threads,
+			Handler<T> handler, Output<T> output, ErrorHandler<T> errorHandler,
+			Thread.UncaughtExceptionHandler uncaughtExceptionHandler
+	) {
+		this(name, null, input, depth, capacity, threads, 1, handler, output, errorHandler, uncaughtExceptionHandler);
+	}
+
+	private Stage(
+			String name,
+			BlockingQueue<T> queue, Input<T> input, IntSupplier depth, int capacity,
+			int threads, int batchSize,
+			Handler<T> handler, Output<T> output, ErrorHandler<T> errorHandler,
+			Thread.UncaughtExceptionHandler uncaughtExceptionHandler
+	) {
+		if (threads < 1) throw new IllegalArgumentException();
+		if (batchSize < 1) throw new IllegalArgumentException();
+
+		this.queue = queue;
+		this.input = (queue != null) ? queue::take : input;
+		this.batchSize = batchSize;
+
+		this.handler = handler;
+		this.output = output;
+		this.errorHandler = errorHandler;
+
+		this.metrics = new StageMetrics(name, threads, (queue != null) ? queue::size : depth, capacity);
+
+		this.workers = new Thread[threads];
+		for (int i = 0; i < threads; i++) {
+			int index = i;
+			Thread worker = new Thread(() -> {
+				log.debug("Stage: {}, thread: {} start", name, index);
+				try {
+					run();
+					log.debug("Stage: {}, thread: {} completed", name, index);
+				} catch (InterruptedException e) {
+					log.debug("Stage: {}, thread: {} interrupted", name, index);
+				}
+			}, "pipeline-" + name + "-" + index);
+			worker.setUncaughtExceptionHandler(uncaughtExceptionHandler);
+			worker.start();
+			this.workers[i] = worker;
+		}
+	}
+
+	void put(T item) throws InterruptedException {
+		queue.put(item);
+	}
+
+	private void run() throws InterruptedException {
+		while (!isClosed) {
+			List<T> items;
+			try {
+				items = take();
+			} catch (NoSuchElementException e) {
+				return;
+			}
+
+			long t1 = System.nanoTime();
+			List<T> results;
+			try {
+				results = handler.handle(items);
+			} catch (InterruptedException e) {
+				throw e;
+			} catch (Throwable e) {
+				errorHandler.handle(items, e);
+				results = Collections.emptyList();
+			}
+			metrics.add(items.size(), System.nanoTime() - t1);
+
+			if (output != null) {
+				for (T item : results) {
+					output.put(item);
+				}
+			}
+		}
+	}
+
+	private List<T> take() throws NoSuchElementException, InterruptedException {
+		T item = input.take();
+		if (batchSize == 1) {
+			return Collections.singletonList(item);
+		}
+		List<T> items = new ArrayList<>(batchSize);
+		items.add(item);
+		queue.drainTo(items, batchSize - 1);
+		return items;
+	}
+
+	@Override
+	public void close() {
+		isClosed = true;
+		for (Thread worker : workers) {
+			worker.interrupt();
+		}
+		try {
+			for (Thread worker : workers) {
+				worker.join();
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+}
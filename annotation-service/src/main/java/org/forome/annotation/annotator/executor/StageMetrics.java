@@ -0,0 +1,116 @@
+/*
+ Copyright (c) 2019. Vladimir Ulitin, Partners Healthcare and members of Forome Association
+
+ Developed by Vladimir Ulitin and Michael Bouzinier
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+	 http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+*/
+
+package org.forome.annotation.annotator.executor;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.IntSupplier;
+
+/**
+ * Метрики стадии конвейера аннотации: глубина входящей очереди, кол-во обработанных записей,
+ * пропускная способность и загрузка исполнителей с момента предыдущего снимка
+ */
+class StageMetrics {
+
+	static class Stat {
+
+		final String name;
+		final int threads;
+		final int depth;
+		final int capacity;
+		final long processed;
+		final double throughput;
+		final double busy;
+
+		Stat(String name, int threads, int depth, int capacity, long processed, double throughput, double busy) {
+			this.name = name;
+			this.threads = threads;
+			this.depth = depth;
+			this.capacity = capacity;
+			this.processed = processed;
+			this.throughput = throughput;
+			this.busy = busy;
+		}
+
+		@Override
+		public String toString() {
+			return "Stage(" +
+					"name: " + name +
+					", threads: " + threads +
+					", queue: " + ((capacity > 0) ? depth + "/" + capacity : "-") +
+					", processed: " + processed +
+					", throughput: " + String.format("%.1f", throughput) + " (records/sec)" +
+					", busy: " + String.format("%.0f", busy * 100) + "%" +
+					')';
+		}
+	}
+
+	final String name;
+	private final int threads;
+
+	private final IntSupplier depth;
+	private final int capacity;
+
+	private final AtomicLong processed;
+	private final AtomicLong busyNanos;
+
+	private long lastNanos;
+	private long lastProcessed;
+	private long lastBusyNanos;
+
+	/**
+	 * @param depth    текущая глубина входящей очереди, null - если у стадии нет очереди
+	 * @param capacity емкость входящей очереди
+	 */
+	StageMetrics(String name, int threads, IntSupplier depth, int capacity) {
+		this.name = name;
+		this.threads = threads;
+		this.depth = depth;
+		this.capacity = (depth != null) ? capacity : 0;
+
+		this.processed = new AtomicLong();
+		this.busyNanos = new AtomicLong();
+
+		this.lastNanos = System.nanoTime();
+	}
+
+	void add(int count, long nanos) {
+		processed.addAndGet(count);
+		busyNanos.addAndGet(nanos);
+	}
+
+	synchronized Stat snapshot() {
+		long nanos = System.nanoTime();
+		long currentProcessed = processed.get();
+		long currentBusyNanos = busyNanos.get();
+
+		long elapsed = Math.max(nanos - lastNanos, 1);
+		Stat stat = new Stat(
+				name, threads,
+				(depth != null) ? depth.getAsInt() : 0, capacity,
+				currentProcessed,
+				(currentProcessed - lastProcessed) * 1_000_000_000d / elapsed,
+				Math.min((currentBusyNanos - lastBusyNanos) / (double) elapsed / threads, 1d)
+		);
+
+		lastNanos = nanos;
+		lastProcessed = currentProcessed;
+		lastBusyNanos = currentBusyNanos;
+		return stat;
+	}
+}
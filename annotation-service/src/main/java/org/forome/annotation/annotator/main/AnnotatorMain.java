@@ -19,6 +19,7 @@
 package org.forome.annotation.annotator.main;
 
 import org.forome.annotation.annotator.AnnotationConsole;
+import org.forome.annotation.annotator.coordinator.AnnotationCoordinator;
 import org.forome.annotation.annotator.main.argument.*;
 import org.forome.annotation.inventory.Inventory;
 import org.forome.annotation.logback.LogbackConfigure;
@@ -62,11 +63,20 @@ public class AnnotatorMain {
 					inventory.vcfFile, inventory.vepJsonFile,
 					inventory.cnvFile,
 					argumentsInventory.start,
+					argumentsInventory.sharded,
+					argumentsInventory.shardSize,
+					null, null,
+					argumentsInventory.gzipThreads,
+					argumentsInventory.pipelineConfig,
+					argumentsInventory.fieldStatistics,
 					inventory.outFile,
 					argumentsInventory.pathRecoveryAnfisaJson,
 					() -> arguments.getArguments()
 			);
 			annotationConsole.execute();
+		} else if (arguments instanceof ArgumentsCoordinator) {
+			AnnotationCoordinator annotationCoordinator = new AnnotationCoordinator((ArgumentsCoordinator) arguments);
+			annotationCoordinator.execute();
 		} else if (arguments instanceof ArgumentsAnnotation) {
 			ArgumentsAnnotation argumentsAnnotation = (ArgumentsAnnotation) arguments;
 			AnnotationConsole annotationConsole = new AnnotationConsole(
@@ -78,6 +88,12 @@ public class AnnotatorMain {
 					argumentsAnnotation.pathVcf, argumentsAnnotation.pathVepJson,
 					argumentsAnnotation.pathCnv,
 					argumentsAnnotation.start,
+					argumentsAnnotation.sharded,
+					argumentsAnnotation.shardSize,
+					argumentsAnnotation.region, argumentsAnnotation.pathVepJsonIndex,
+					argumentsAnnotation.gzipThreads,
+					argumentsAnnotation.pipelineConfig,
+					argumentsAnnotation.fieldStatistics,
 					argumentsAnnotation.pathOutput,
 					argumentsAnnotation.pathRecoveryAnfisaJson,
 					() -> arguments.getArguments()
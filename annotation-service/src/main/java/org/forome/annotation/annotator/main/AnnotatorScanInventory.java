@@ -19,10 +19,12 @@
 package org.forome.annotation.annotator.main;
 
 import org.forome.annotation.annotator.AnnotationConsole;
+import org.forome.annotation.annotator.executor.PipelineConfig;
 import org.forome.annotation.annotator.main.argument.ArgumentsScanInventory;
 import org.forome.annotation.annotator.main.argument.ParserArgument;
 import org.forome.annotation.inventory.Inventory;
 import org.forome.annotation.logback.LogbackConfigure;
+import org.forome.annotation.output.ParallelGZIPOutputStream;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -78,6 +80,12 @@ public class AnnotatorScanInventory {
 				inventory.vcfFile, inventory.vepJsonFile,
 				inventory.cnvFile,
 				0,
+				false,
+				0,
+				null, null,
+				ParallelGZIPOutputStream.DEFAULT_THREADS,
+				PipelineConfig.DEFAULT,
+				true,
 				inventory.outFile,
 				null,
 				() -> arguments.getArguments()
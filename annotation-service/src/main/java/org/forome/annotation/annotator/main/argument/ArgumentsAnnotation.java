@@ -19,6 +19,9 @@
 package org.forome.annotation.annotator.main.argument;
 
 import org.apache.commons.cli.CommandLine;
+import org.forome.annotation.annotator.executor.PipelineConfig;
+import org.forome.annotation.iterator.vcf.VCFShard;
+import org.forome.annotation.output.ParallelGZIPOutputStream;
 import org.forome.annotation.struct.CasePlatform;
 import org.forome.core.struct.Assembly;
 import org.slf4j.Logger;
@@ -49,8 +52,15 @@ public class ArgumentsAnnotation extends Arguments {
 	public final Path pathVepJson;
 	public final Path pathCnv;
 	public final Path pathOutput;
+	public final int gzipThreads;
+	public final PipelineConfig pipelineConfig;
+	public final boolean fieldStatistics;
 
 	public final int start;
+	public final boolean sharded;
+	public final int shardSize;
+	public final VCFShard region;
+	public final Path pathVepJsonIndex;
 	public final Path pathRecoveryAnfisaJson;
 
 	public ArgumentsAnnotation(CommandLine cmd) {
@@ -117,8 +127,39 @@ public class ArgumentsAnnotation extends Arguments {
 
 		this.start = Integer.parseInt(cmd.getOptionValue(ParserArgument.OPTION_START_POSITION, "0"));
 
+		this.sharded = cmd.hasOption(ParserArgument.OPTION_SHARDED);
+
+		this.shardSize = Integer.parseInt(cmd.getOptionValue(ParserArgument.OPTION_SHARD_SIZE, "0"));
+		if (shardSize < 0) {
+			throw new IllegalArgumentException("Bad shard size: " + shardSize);
+		}
+
+		String strRegion = cmd.getOptionValue(ParserArgument.OPTION_REGION);
+		if (strRegion != null) {
+			region = VCFShard.parse(strRegion);
+		} else {
+			region = null;
+		}
+
+		String strPathVepJsonIndex = cmd.getOptionValue(ParserArgument.OPTION_FILE_VEP_JSON_INDEX);
+		if (strPathVepJsonIndex != null) {
+			pathVepJsonIndex = Paths.get(strPathVepJsonIndex).toAbsolutePath();
+		} else {
+			pathVepJsonIndex = null;
+		}
+
 		this.pathOutput = Paths.get(cmd.getOptionValue(ParserArgument.OPTION_FILE_OUTPUT)).toAbsolutePath();
 
+		this.gzipThreads = Integer.parseInt(cmd.getOptionValue(ParserArgument.OPTION_GZIP_THREADS, String.valueOf(ParallelGZIPOutputStream.DEFAULT_THREADS)));
+		if (gzipThreads < 1) {
+			throw new IllegalArgumentException("Bad count of compression threads: " + gzipThreads);
+		}
+
+		String strPipeline = cmd.getOptionValue(ParserArgument.OPTION_PIPELINE);
+		this.pipelineConfig = (strPipeline != null) ? PipelineConfig.parse(strPipeline) : PipelineConfig.DEFAULT;
+
+		this.fieldStatistics = Integer.parseInt(cmd.getOptionValue(ParserArgument.OPTION_FIELD_STATISTICS, "1")) != 0;
+
 		Set<String> x = Arrays.stream(pathVcf.getFileName().toString().toLowerCase().split("_"))
 				.collect(Collectors.toSet());
 		if (x.contains("wgs")) {
@@ -143,6 +184,15 @@ public class ArgumentsAnnotation extends Arguments {
 		if (start != 0 && pathRecoveryAnfisaJson != null) {
 			throw new IllegalArgumentException("Conflict argument recovery file and start position");
 		}
+		if (region != null && (start != 0 || pathRecoveryAnfisaJson != null || pathCnv != null)) {
+			throw new IllegalArgumentException("Conflict argument region and start position, recovery or cnv file");
+		}
+		if (pathVepJsonIndex != null && (region == null || pathVepJson == null)) {
+			throw new IllegalArgumentException("Argument vep.json index requires region and vep.json file");
+		}
+		if (sharded && (start != 0 || pathRecoveryAnfisaJson != null || pathCnv != null)) {
+			throw new IllegalArgumentException("Conflict argument sharded and start position, recovery or cnv file");
+		}
 	}
 
 }
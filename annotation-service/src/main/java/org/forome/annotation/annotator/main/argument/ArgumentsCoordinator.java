@@ -0,0 +1,107 @@
+/*
+ Copyright (c) 2019. Vladimir Ulitin, Partners Healthcare and members of Forome Association
+
+ Developed by Vladimir Ulitin and Michael Bouzinier
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+	 http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+*/
+
+package org.forome.annotation.annotator.main.argument;
+
+import org.apache.commons.cli.CommandLine;
+import org.apache.commons.cli.Option;
+import org.forome.annotation.iterator.vcf.VCFShard;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+public class ArgumentsCoordinator extends ArgumentsAnnotation {
+
+	/**
+	 * Аргументы, которые не передаются процессам-исполнителям
+	 */
+	private static final Set<String> COORDINATOR_OPTIONS = new HashSet<>(Arrays.asList(
+			ParserArgument.OPTION_WORKERS,
+			ParserArgument.OPTION_WORK_DIR,
+			ParserArgument.OPTION_RETRIES,
+			ParserArgument.OPTION_FILE_OUTPUT,
+			ParserArgument.OPTION_REGION,
+			ParserArgument.OPTION_FILE_VEP_JSON_INDEX
+	));
+
+	public final int workers;
+	public final Path workDir;
+	public final int retries;
+
+	public ArgumentsCoordinator(CommandLine cmd) {
+		super(cmd);
+
+		workers = Integer.parseInt(cmd.getOptionValue(ParserArgument.OPTION_WORKERS));
+		if (workers < 1) {
+			throw new IllegalArgumentException("Bad count workers: " + workers);
+		}
+
+		String strWorkDir = cmd.getOptionValue(ParserArgument.OPTION_WORK_DIR);
+		if (strWorkDir != null) {
+			workDir = Paths.get(strWorkDir).toAbsolutePath();
+		} else {
+			workDir = pathOutput.resolveSibling(pathOutput.getFileName().toString() + ".shards");
+		}
+
+		retries = Integer.parseInt(cmd.getOptionValue(ParserArgument.OPTION_RETRIES, "2"));
+
+		if (!pathVcf.getFileName().toString().endsWith(".vcf.gz")) {
+			throw new IllegalArgumentException("Coordinator requires indexed *.vcf.gz: " + pathVcf);
+		}
+		if (pathVepJson == null) {
+			throw new IllegalArgumentException("Coordinator requires vep.json file");
+		}
+		if (pathVepJson.getFileName().toString().endsWith(".gz")) {
+			throw new IllegalArgumentException("Coordinator does not support compressed vep.json file (shards are read by offsets): " + pathVepJson);
+		}
+		if (region != null || start != 0 || pathRecoveryAnfisaJson != null || pathCnv != null) {
+			throw new IllegalArgumentException("Coordinator does not support region, start position, recovery or cnv file");
+		}
+	}
+
+	/**
+	 * Аргументы процесса-исполнителя, аннотирующего один участок
+	 *
+	 * @param pathVepJsonIndex индекс vep.json, построенный координатором
+	 */
+	public List<String> buildWorkerArguments(VCFShard shard, Path pathVepJsonIndex, Path output) {
+		List<String> args = new ArrayList<>();
+		for (Option option : cmd.getOptions()) {
+			String key = option.getLongOpt();
+			if (COORDINATOR_OPTIONS.contains(key)) {
+				continue;
+			}
+			args.add("-" + key);
+			if (option.getValue() != null) {
+				args.add(option.getValue());
+			}
+		}
+		args.add("-" + ParserArgument.OPTION_REGION);
+		args.add(shard.toString());
+		args.add("-" + ParserArgument.OPTION_FILE_VEP_JSON_INDEX);
+		args.add(pathVepJsonIndex.toString());
+		args.add("-" + ParserArgument.OPTION_FILE_OUTPUT);
+		args.add(output.toString());
+		return args;
+	}
+}
@@ -20,6 +20,8 @@ package org.forome.annotation.annotator.main.argument;
 
 import com.google.common.base.Strings;
 import org.apache.commons.cli.CommandLine;
+import org.forome.annotation.annotator.executor.PipelineConfig;
+import org.forome.annotation.output.ParallelGZIPOutputStream;
 
 import java.nio.file.Files;
 import java.nio.file.Path;
@@ -32,6 +34,11 @@ public class ArgumentsInventory extends Arguments {
 	public final Path pathInventory;
 
 	public final int start;
+	public final boolean sharded;
+	public final int shardSize;
+	public final int gzipThreads;
+	public final PipelineConfig pipelineConfig;
+	public final boolean fieldStatistics;
 	public final Path pathRecoveryAnfisaJson;
 
 	public ArgumentsInventory(CommandLine cmd) {
@@ -57,6 +64,23 @@ public class ArgumentsInventory extends Arguments {
 
 		this.start = Integer.parseInt(cmd.getOptionValue(ParserArgument.OPTION_START_POSITION, "0"));
 
+		this.sharded = cmd.hasOption(ParserArgument.OPTION_SHARDED);
+
+		this.shardSize = Integer.parseInt(cmd.getOptionValue(ParserArgument.OPTION_SHARD_SIZE, "0"));
+		if (shardSize < 0) {
+			throw new IllegalArgumentException("Bad shard size: " + shardSize);
+		}
+
+		this.gzipThreads = Integer.parseInt(cmd.getOptionValue(ParserArgument.OPTION_GZIP_THREADS, String.valueOf(ParallelGZIPOutputStream.DEFAULT_THREADS)));
+		if (gzipThreads < 1) {
+			throw new IllegalArgumentException("Bad count of compression threads: " + gzipThreads);
+		}
+
+		String strPipeline = cmd.getOptionValue(ParserArgument.OPTION_PIPELINE);
+		this.pipelineConfig = (strPipeline != null) ? PipelineConfig.parse(strPipeline) : PipelineConfig.DEFAULT;
+
+		this.fieldStatistics = Integer.parseInt(cmd.getOptionValue(ParserArgument.OPTION_FIELD_STATISTICS, "1")) != 0;
+
 		String strRecoveryAnfisaJsonFile = cmd.getOptionValue(ParserArgument.OPTION_FILE_RECOVERY);
 		if (strRecoveryAnfisaJsonFile != null) {
 			pathRecoveryAnfisaJson = Paths.get(strRecoveryAnfisaJsonFile).toAbsolutePath();
@@ -70,6 +94,9 @@ public class ArgumentsInventory extends Arguments {
 		if (start != 0 && pathRecoveryAnfisaJson != null) {
 			throw new IllegalArgumentException("Conflict argument recovery file and start position");
 		}
+		if (sharded && (start != 0 || pathRecoveryAnfisaJson != null)) {
+			throw new IllegalArgumentException("Conflict argument sharded and start position or recovery file");
+		}
 	}
 
 }
@@ -39,7 +39,14 @@ public class ParserArgument {
 	public static final String OPTION_FILE_VEP_JSON = "vepjson";
 	public static final String OPTION_FILE_CNV = "cnv";
 	public static final String OPTION_START_POSITION = "start";
+	public static final String OPTION_SHARDED = "sharded";
+	public static final String OPTION_SHARD_SIZE = "shard-size";
+	public static final String OPTION_REGION = "region";
+	public static final String OPTION_FILE_VEP_JSON_INDEX = "vepjson-index";
 	public static final String OPTION_FILE_OUTPUT = "output";
+	public static final String OPTION_GZIP_THREADS = "gzip-threads";
+	public static final String OPTION_PIPELINE = "pipeline";
+	public static final String OPTION_FIELD_STATISTICS = "field-statistics";
 
 	public static final String OPTION_FILE_RECOVERY = "recovery";
 
@@ -47,6 +54,10 @@ public class ParserArgument {
 
 	public static final String OPTION_SCAN_FILE_INVENTORY = "scan-inventory";
 
+	public static final String OPTION_WORKERS = "workers";
+	public static final String OPTION_WORK_DIR = "workdir";
+	public static final String OPTION_RETRIES = "retries";
+
 	public final Arguments arguments;
 
 	public ParserArgument(String[] args) throws InterruptedException {
@@ -85,6 +96,12 @@ public class ParserArgument {
 						.optionalArg(true)
 						.desc("Case name")
 						.build())
+				.addOption(Option.builder()
+						.longOpt(OPTION_ASSEMBLY)
+						.hasArg(true)
+						.optionalArg(false)
+						.desc("Assembly (GRCh37, GRCh38)")
+						.build())
 				.addOption(Option.builder()
 						.longOpt(OPTION_FILE_FAM)
 						.hasArg(true)
@@ -122,18 +139,84 @@ public class ParserArgument {
 						.desc("Start position")
 						.type(Integer.class)
 						.build())
+				.addOption(Option.builder()
+						.longOpt(OPTION_SHARDED)
+						.hasArg(false)
+						.optionalArg(false)
+						.desc("Annotate indexed (*.tbi) *.vcf.gz by shards in parallel, without unpacking (vep.json must not be compressed)")
+						.build())
+				.addOption(Option.builder()
+						.longOpt(OPTION_SHARD_SIZE)
+						.hasArg(true)
+						.optionalArg(true)
+						.desc("Size of region shard in sharded mode (0 - shard by chromosome)")
+						.type(Integer.class)
+						.build())
+				.addOption(Option.builder()
+						.longOpt(OPTION_REGION)
+						.hasArg(true)
+						.optionalArg(true)
+						.desc("Annotate only region of indexed *.vcf.gz (chr:start-end), metadata is written to *.metadata")
+						.build())
+				.addOption(Option.builder()
+						.longOpt(OPTION_FILE_VEP_JSON_INDEX)
+						.hasArg(true)
+						.optionalArg(false)
+						.desc("Absolute path to vep.json index of shards, built by coordinator (only with region)")
+						.build())
 				.addOption(Option.builder()
 						.longOpt(OPTION_FILE_OUTPUT)
 						.hasArg(true)
 						.optionalArg(false)
 						.desc("Absolute path to output file")
 						.build())
+				.addOption(Option.builder()
+						.longOpt(OPTION_GZIP_THREADS)
+						.hasArg(true)
+						.optionalArg(false)
+						.desc("Count of compression threads of *.gz output file")
+						.type(Integer.class)
+						.build())
+				.addOption(Option.builder()
+						.longOpt(OPTION_PIPELINE)
+						.hasArg(true)
+						.optionalArg(false)
+						.desc("Count of threads of annotation pipeline stages and prefetch window (split=1,fetch=16,build=8,graphql=8,serialize=1,window=100000,window-records=64)")
+						.build())
+				.addOption(Option.builder()
+						.longOpt(OPTION_FIELD_STATISTICS)
+						.hasArg(true)
+						.optionalArg(false)
+						.desc("Time histograms of graphql fields: 1 - enabled (default), 0 - disabled")
+						.type(Integer.class)
+						.build())
 
 				.addOption(Option.builder()
 						.longOpt(OPTION_FILE_RECOVERY)
 						.hasArg(true)
 						.optionalArg(false)
-						.desc("Absolute path to recovery file")
+						.desc("Absolute path to recovery file (resumes from its checkpoint only with a given vep.json, otherwise by rereading)")
+						.build())
+
+				.addOption(Option.builder()
+						.longOpt(OPTION_WORKERS)
+						.hasArg(true)
+						.optionalArg(false)
+						.desc("Count of worker processes, enable coordinator mode")
+						.type(Integer.class)
+						.build())
+				.addOption(Option.builder()
+						.longOpt(OPTION_WORK_DIR)
+						.hasArg(true)
+						.optionalArg(false)
+						.desc("Absolute path to shared work directory of coordinator")
+						.build())
+				.addOption(Option.builder()
+						.longOpt(OPTION_RETRIES)
+						.hasArg(true)
+						.optionalArg(false)
+						.desc("Count of retries of failed shard")
+						.type(Integer.class)
 						.build());
 
 		try {
@@ -145,6 +228,8 @@ public class ParserArgument {
 				arguments = new ArgumentsScanInventory(cmd);
 			} else if (cmd.hasOption(OPTION_FILE_INVENTORY)) {
 				arguments = new ArgumentsInventory(cmd);
+			} else if (cmd.hasOption(OPTION_WORKERS)) {
+				arguments = new ArgumentsCoordinator(cmd);
 			} else {
 				arguments = new ArgumentsAnnotation(cmd);
 			}
@@ -0,0 +1,131 @@
+/*
+ Copyright (c) 2019. Vladimir Ulitin, Partners Healthcare and members of Forome Association
+
+ Developed by Vladimir Ulitin and Michael Bouzinier
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+	 http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+*/
+
+package org.forome.annotation.annotator.recovery;
+
+import net.minidev.json.JSONObject;
+import net.minidev.json.JSONValue;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * Контрольная точка аннотации: позиции во входных файлах, с которых продолжается чтение,
+ * отпечатки входных файлов и размер корректной части выходного файла.
+ * При восстановлении выходной файл обрезается до outputOffset, а чтение начинается сразу с позиций,
+ * без повторного разбора уже обработанных записей.
+ */
+public class Checkpoint {
+
+	/**
+	 * null - контрольная точка старого формата, без отпечатков
+	 */
+	public final FileStamp vcfFile;
+	public final long vcfOffset;
+
+	/**
+	 * null - без vep.json
+	 */
+	public final FileStamp vepJsonFile;
+	public final long vepJsonOffset;
+
+	public final long outputOffset;
+
+	public final int countVariants;
+	public final int countRecords;
+
+	public Checkpoint(
+			FileStamp vcfFile, long vcfOffset,
+			FileStamp vepJsonFile, long vepJsonOffset,
+			long outputOffset,
+			int countVariants, int countRecords
+	) {
+		this.vcfFile = vcfFile;
+		this.vcfOffset = vcfOffset;
+		this.vepJsonFile = vepJsonFile;
+		this.vepJsonOffset = vepJsonOffset;
+		this.outputOffset = outputOffset;
+		this.countVariants = countVariants;
+		this.countRecords = countRecords;
+	}
+
+	/**
+	 * Контрольная точка построена по тем же входным файлам: совпадают размер, время изменения
+	 * и хеш первого и последнего блока
+	 */
+	public boolean isMatch(Path vcfFile, Path vepJsonFile) throws IOException {
+		if (this.vcfFile == null || !this.vcfFile.equals(FileStamp.build(vcfFile))) {
+			return false;
+		}
+		if (vepJsonFile == null) {
+			return (this.vepJsonFile == null);
+		} else {
+			return (this.vepJsonFile != null && this.vepJsonFile.equals(FileStamp.build(vepJsonFile)));
+		}
+	}
+
+	public JSONObject toJSON() {
+		JSONObject out = new JSONObject();
+		out.put("vcf_file", vcfFile.toJSON());
+		out.put("vcf_offset", vcfOffset);
+		out.put("vep_json_file", (vepJsonFile != null) ? vepJsonFile.toJSON() : null);
+		out.put("vep_json_offset", vepJsonOffset);
+		out.put("output_offset", outputOffset);
+		out.put("variants", countVariants);
+		out.put("records", countRecords);
+		return out;
+	}
+
+	public static Checkpoint parse(JSONObject value) {
+		JSONObject vcfFile = (JSONObject) value.get("vcf_file");
+		JSONObject vepJsonFile = (JSONObject) value.get("vep_json_file");
+		return new Checkpoint(
+				(vcfFile != null) ? FileStamp.parse(vcfFile) : null,
+				value.getAsNumber("vcf_offset").longValue(),
+				(vepJsonFile != null) ? FileStamp.parse(vepJsonFile) : null,
+				value.getAsNumber("vep_json_offset").longValue(),
+				value.getAsNumber("output_offset").longValue(),
+				value.getAsNumber("variants").intValue(),
+				value.getAsNumber("records").intValue()
+		);
+	}
+
+	/**
+	 * Файл контрольной точки, расположенный рядом с выходным файлом
+	 */
+	public static Path getPath(Path outFile) {
+		return outFile.resolveSibling(outFile.getFileName().toString() + ".checkpoint");
+	}
+
+	public static Checkpoint read(Path path) throws IOException {
+		String value = new String(Files.readAllBytes(path), StandardCharsets.UTF_8);
+		return parse((JSONObject) JSONValue.parse(value));
+	}
+
+	/**
+	 * Атомарная запись: файл контрольной точки либо старый, либо новый целиком
+	 */
+	public void write(Path path) throws IOException {
+		Path tmp = path.resolveSibling(path.getFileName().toString() + ".tmp");
+		Files.write(tmp, toJSON().toJSONString().getBytes(StandardCharsets.UTF_8));
+		Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+}
@@ -0,0 +1,104 @@
+/*
+ Copyright (c) 2019. Vladimir Ulitin, Partners Healthcare and members of Forome Association
+
+ Developed by Vladimir Ulitin and Michael Bouzinier
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+	 http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+*/
+
+package org.forome.annotation.annotator.recovery;
+
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import net.minidev.json.JSONObject;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Objects;
+
+/**
+ * Отпечаток входного файла для проверки контрольной точки: размер, время изменения
+ * и хеш первого и последнего блока. Файл целиком не читается, поэтому отпечаток строится быстро и для больших файлов
+ */
+public class FileStamp {
+
+	private static final int BLOCK_SIZE = 64 * 1024;
+
+	public final long size;
+	public final long modified;
+	public final String hash;
+
+	public FileStamp(long size, long modified, String hash) {
+		this.size = size;
+		this.modified = modified;
+		this.hash = hash;
+	}
+
+	public static FileStamp build(Path file) throws IOException {
+		long size = Files.size(file);
+		long modified = Files.getLastModifiedTime(file).toMillis();
+
+		Hasher hasher = Hashing.murmur3_128().newHasher();
+		try (FileChannel fileChannel = FileChannel.open(file, StandardOpenOption.READ)) {
+			hasher.putBytes(readBlock(fileChannel, 0, (int) Math.min(size, BLOCK_SIZE)));
+			long lastBlock = Math.max(size - BLOCK_SIZE, 0);
+			hasher.putBytes(readBlock(fileChannel, lastBlock, (int) (size - lastBlock)));
+		}
+		return new FileStamp(size, modified, hasher.hash().toString());
+	}
+
+	private static byte[] readBlock(FileChannel fileChannel, long position, int length) throws IOException {
+		ByteBuffer buffer = ByteBuffer.allocate(length);
+		while (buffer.hasRemaining()) {
+			if (fileChannel.read(buffer, position + buffer.position()) < 0) {
+				throw new IOException("Unexpected end of file");
+			}
+		}
+		return buffer.array();
+	}
+
+	public JSONObject toJSON() {
+		JSONObject out = new JSONObject();
+		out.put("size", size);
+		out.put("modified", modified);
+		out.put("hash", hash);
+		return out;
+	}
+
+	public static FileStamp parse(JSONObject value) {
+		return new FileStamp(
+				value.getAsNumber("size").longValue(),
+				value.getAsNumber("modified").longValue(),
+				value.getAsString("hash")
+		);
+	}
+
+	@Override
+	public boolean equals(Object o) {
+		if (this == o) return true;
+		if (o == null || getClass() != o.getClass()) return false;
+		FileStamp fileStamp = (FileStamp) o;
+		return size == fileStamp.size &&
+				modified == fileStamp.modified &&
+				Objects.equals(hash, fileStamp.hash);
+	}
+
+	@Override
+	public int hashCode() {
+		return Objects.hash(size, modified, hash);
+	}
+}
@@ -27,9 +27,11 @@ public class AnnotatorResult {
 
 	private final static Logger log = LoggerFactory.getLogger(AnnotatorResult.class);
 
+	public final Observable<AnnotatorVariantResult> observableVariantResult;
 	public final Observable<ProcessingResult> observableAnfisaResult;
 
-	public AnnotatorResult(Observable<ProcessingResult> observableAnfisaResult) {
-		this.observableAnfisaResult = observableAnfisaResult;
+	public AnnotatorResult(Observable<AnnotatorVariantResult> observableVariantResult) {
+		this.observableVariantResult = observableVariantResult;
+		this.observableAnfisaResult = observableVariantResult.concatMapIterable(variantResult -> variantResult.processingResults);
 	}
 }
@@ -0,0 +1,45 @@
+/*
+ Copyright (c) 2019. Vladimir Ulitin, Partners Healthcare and members of Forome Association
+
+ Developed by Vladimir Ulitin and Michael Bouzinier
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+	 http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+*/
+
+package org.forome.annotation.annotator.struct;
+
+import org.forome.annotation.processing.struct.ProcessingResult;
+
+import java.util.List;
+
+/**
+ * Результат аннотации одной записи vcf-файла
+ */
+public class AnnotatorVariantResult {
+
+	public final int position;
+	public final List<ProcessingResult> processingResults;
+
+	/**
+	 * Позиции в vcf-файле и vep.json, с которых продолжается чтение после этой записи, -1 - если неизвестны
+	 */
+	public final long vcfOffset;
+	public final long vepJsonOffset;
+
+	public AnnotatorVariantResult(int position, List<ProcessingResult> processingResults, long vcfOffset, long vepJsonOffset) {
+		this.position = position;
+		this.processingResults = processingResults;
+		this.vcfOffset = vcfOffset;
+		this.vepJsonOffset = vepJsonOffset;
+	}
+}
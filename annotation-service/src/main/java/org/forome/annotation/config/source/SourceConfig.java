@@ -20,14 +20,41 @@ package org.forome.annotation.config.source;
 
 import net.minidev.json.JSONObject;
 
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
 public class SourceConfig {
 
 	private final static String FIELD_INTERNAL = "internal";
 	private final static String FIELD_EXTERNAL = "external";
+	private final static String FIELD_CACHE_SIZE_MB = "cache_size_mb";
+	private final static String FIELD_PERSISTENT_CACHE = "persistent_cache";
+	private final static String FIELD_FASTA_2BIT = "fasta_2bit";
+	private final static String FIELD_FASTA_2BIT_HG37 = "hg37";
+	private final static String FIELD_FASTA_2BIT_HG38 = "hg38";
+
+	private final static long DEFAULT_CACHE_SIZE_MB = 256;
 
 	public final SourceInternalConfig sourceInternalConfig;
 	public final SourceExternalConfig sourceExternalConfig;
 
+	/**
+	 * Память под кеш ответов источников (на каждую сборку генома)
+	 */
+	public final long cacheSizeBytes;
+
+	/**
+	 * Директория кеша ответов источников на диске, общего для всех запусков (null - не используется)
+	 */
+	public final Path persistentCachePath;
+
+	/**
+	 * Локальные референсы в формате .2bit (null - последовательности запрашиваются у источника)
+	 */
+	public final Path fasta2bitHg37;
+	public final Path fasta2bitHg38;
+
 	public SourceConfig(JSONObject parse) {
 		if (parse.containsKey(FIELD_INTERNAL)) {
 			sourceInternalConfig = new SourceInternalConfig((JSONObject) parse.get(FIELD_INTERNAL));
@@ -41,8 +68,40 @@ public class SourceConfig {
 			sourceExternalConfig = null;
 		}
 
+		if (parse.containsKey(FIELD_CACHE_SIZE_MB)) {
+			cacheSizeBytes = parse.getAsNumber(FIELD_CACHE_SIZE_MB).longValue() * 1024 * 1024;
+		} else {
+			cacheSizeBytes = DEFAULT_CACHE_SIZE_MB * 1024 * 1024;
+		}
+
+		if (parse.containsKey(FIELD_PERSISTENT_CACHE)) {
+			persistentCachePath = Paths.get(parse.getAsString(FIELD_PERSISTENT_CACHE)).toAbsolutePath();
+		} else {
+			persistentCachePath = null;
+		}
+
+		if (parse.containsKey(FIELD_FASTA_2BIT)) {
+			JSONObject fasta2bit = (JSONObject) parse.get(FIELD_FASTA_2BIT);
+			fasta2bitHg37 = getFilePath(fasta2bit, FIELD_FASTA_2BIT_HG37);
+			fasta2bitHg38 = getFilePath(fasta2bit, FIELD_FASTA_2BIT_HG38);
+		} else {
+			fasta2bitHg37 = null;
+			fasta2bitHg38 = null;
+		}
+
 		if (sourceInternalConfig != null && sourceExternalConfig != null) {
 			throw new RuntimeException("Conflict configuration");
 		}
 	}
+
+	private static Path getFilePath(JSONObject parse, String field) {
+		if (!parse.containsKey(field)) {
+			return null;
+		}
+		Path path = Paths.get(parse.getAsString(field)).toAbsolutePath();
+		if (!Files.exists(path) || Files.isDirectory(path)) {
+			throw new RuntimeException("Exception file path " + field + ": " + path);
+		}
+		return path;
+	}
 }
@@ -32,12 +32,10 @@ import org.forome.annotation.network.authcontext.BuilderAuthContext;
 import org.forome.annotation.processing.Processing;
 import org.forome.annotation.processing.TypeQuery;
 import org.forome.annotation.service.ensemblvep.EnsemblVepService;
-import org.forome.annotation.service.source.struct.Source;
 import org.forome.annotation.struct.Allele;
 import org.forome.annotation.struct.variant.custom.VariantCustom;
 import org.forome.annotation.struct.variant.vep.VariantVep;
 import org.forome.annotation.utils.ExecutorServiceUtils;
-import org.forome.core.struct.Assembly;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.http.ResponseEntity;
@@ -84,9 +82,7 @@ public class FormatAnfisaController {
 			throw ExceptionBuilder.buildInvalidOperation("inited");
 		}
 
-		Source source = service.getSourceService().dataSource.getSource(Assembly.GRCh37);
-
-		Processing processing = new Processing(source, anfisaConnector, TypeQuery.PATIENT_HG19);
+		Processing processing = service.getProcessing(TypeQuery.PATIENT_HG19);
 
 		CompletableFuture<JSONArray> future = new CompletableFuture<>();
 		ExecutorServiceUtils.poolExecutor.execute(() -> {
@@ -38,7 +38,6 @@ import org.forome.annotation.processing.Processing;
 import org.forome.annotation.processing.TypeQuery;
 import org.forome.annotation.processing.struct.ProcessingResult;
 import org.forome.annotation.service.ensemblvep.EnsemblVepService;
-import org.forome.annotation.service.source.struct.Source;
 import org.forome.annotation.struct.CasePlatform;
 import org.forome.annotation.struct.variant.Variant;
 import org.forome.core.struct.Assembly;
@@ -84,9 +83,7 @@ public class FormatVcfController {
 			throw ExceptionBuilder.buildInvalidOperation("inited");
 		}
 
-		Source source = service.getSourceService().dataSource.getSource(Assembly.GRCh37);
-
-		Processing processing = new Processing(source, anfisaConnector, TypeQuery.PATIENT_HG19);
+		Processing processing = service.getProcessing(TypeQuery.PATIENT_HG19);
 
 		TempVCFFile tempVCFFile = buildTempVCFFile(request);
 
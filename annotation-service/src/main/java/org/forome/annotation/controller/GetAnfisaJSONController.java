@@ -25,19 +25,16 @@ import net.minidev.json.parser.JSONParser;
 import org.forome.annotation.Service;
 import org.forome.annotation.controller.utils.RequestParser;
 import org.forome.annotation.controller.utils.ResponseBuilder;
-import org.forome.annotation.data.anfisa.AnfisaConnector;
 import org.forome.annotation.exception.ExceptionBuilder;
 import org.forome.annotation.network.authcontext.BuilderAuthContext;
 import org.forome.annotation.processing.Processing;
 import org.forome.annotation.processing.TypeQuery;
 import org.forome.annotation.processing.struct.ProcessingResult;
 import org.forome.annotation.service.ensemblvep.EnsemblVepService;
-import org.forome.annotation.service.source.struct.Source;
 import org.forome.annotation.struct.Allele;
 import org.forome.annotation.struct.variant.custom.VariantCustom;
 import org.forome.annotation.struct.variant.vep.VariantVep;
 import org.forome.annotation.utils.ExecutorServiceUtils;
-import org.forome.core.struct.Assembly;
 import org.forome.core.struct.Chromosome;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -103,10 +100,7 @@ public class GetAnfisaJSONController {
 
 				List<CompletableFuture<ProcessingResult>> futureProcessingResults = new ArrayList<>();
 
-				AnfisaConnector anfisaConnector = service.getAnfisaConnector();
-
-				Source source = service.getSourceService().dataSource.getSource(Assembly.GRCh37);
-				Processing processing = new Processing(source, anfisaConnector, TypeQuery.PATIENT_HG19);
+				Processing processing = service.getProcessing(TypeQuery.PATIENT_HG19);
 
 				for (RequestItem requestItem : requestItems) {
 					futureProcessingResults.add(
@@ -18,8 +18,13 @@
 
 package org.forome.annotation.data.anfisa;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Lists;
+import com.google.common.hash.Hashing;
+import com.google.common.util.concurrent.UncheckedExecutionException;
 import htsjdk.variant.variantcontext.CommonInfo;
 import htsjdk.variant.variantcontext.Genotype;
 import htsjdk.variant.variantcontext.GenotypeType;
@@ -30,6 +35,7 @@ import org.forome.annotation.data.anfisa.struct.*;
 import org.forome.annotation.data.clinvar.ClinvarConnector;
 import org.forome.annotation.data.clinvar.struct.ClinvarResult;
 import org.forome.annotation.data.clinvar.struct.ClinvarVariantSummary;
+import org.forome.annotation.data.conservation.ConservationData;
 import org.forome.annotation.data.dbnsfp.DbNSFPConnector;
 import org.forome.annotation.data.dbnsfp.struct.DbNSFPItem;
 import org.forome.annotation.data.gnomad.GnomadConnector;
@@ -42,13 +48,13 @@ import org.forome.annotation.data.pharmgkb.PharmGKBConnector;
 import org.forome.annotation.data.spliceai.SpliceAIConnector;
 import org.forome.annotation.data.spliceai.SpliceAIConnectorImpl;
 import org.forome.annotation.data.spliceai.struct.SpliceAIResult;
-import org.forome.annotation.exception.AnnotatorException;
 import org.forome.annotation.processing.graphql.record.view.transcripts.GRecordViewTranscript;
 import org.forome.annotation.processing.utils.OutUtils;
 import org.forome.annotation.service.source.SourceService;
 import org.forome.annotation.service.source.struct.Source;
 import org.forome.annotation.struct.Allele;
 import org.forome.annotation.struct.HasVariant;
+import org.forome.annotation.struct.SourceMetadata;
 import org.forome.annotation.struct.mcase.Cohort;
 import org.forome.annotation.struct.mcase.MCase;
 import org.forome.annotation.struct.mcase.Sample;
@@ -60,19 +66,30 @@ import org.forome.annotation.struct.variant.custom.VariantCustom;
 import org.forome.annotation.struct.variant.vcf.VariantVCF;
 import org.forome.annotation.struct.variant.vep.VariantVep;
 import org.forome.annotation.utils.AppVersion;
+import org.forome.annotation.utils.DefaultThreadPoolExecutor;
 import org.forome.annotation.utils.MathUtils;
+import org.forome.annotation.utils.PrefetchScope;
 import org.forome.astorage.core.liftover.LiftoverConnector;
 import org.forome.core.struct.Assembly;
 import org.forome.core.struct.Chromosome;
 import org.forome.core.struct.Interval;
 import org.forome.core.struct.Position;
+import org.rocksdb.RocksDBException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.Serializable;
 import java.io.UnsupportedEncodingException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
@@ -85,6 +102,16 @@ public class AnfisaConnector implements AutoCloseable {
 		put("gene_dx", "GeneDx");
 	}};
 
+	//Обращения к источникам большую часть времени ждут ответа, поэтому потоков больше чем ядер
+	private static final int LOOKUP_THREAD_COUNT = Runtime.getRuntime().availableProcessors() * 4;
+
+	//Данные сайтов: количество уникальных вариантов и время жизни (чтобы подхватывать обновления источников)
+	private static final int SITE_CACHE_SIZE = 100_000;
+	private static final long SITE_CACHE_EXPIRE_HOURS = 24;
+
+	//Время жизни данных сайтов на диске - для источников, не сообщающих версию
+	private static final long PERSISTENT_SITE_CACHE_EXPIRE_HOURS = 7 * 24;
+
 	public final SourceService sourceService;
 	public final GnomadConnector gnomadConnector;
 	public final SpliceAIConnector spliceAIConnector;
@@ -101,6 +128,11 @@ public class AnfisaConnector implements AutoCloseable {
 
 	public final DbNSFPConnector dbNSFPConnector;
 
+	private final ExecutorService lookupExecutor;
+
+	private final Cache<String, SiteLookup> siteCache;
+	private final PersistentSiteCache persistentSiteCache;
+
 	public AnfisaConnector(
 			SourceService sourceService,
 			GnomadConnector gnomadConnector,
@@ -127,6 +159,69 @@ public class AnfisaConnector implements AutoCloseable {
 //		this.aStorageHttp = aStorageHttp;
 
 		this.dbNSFPConnector = new DbNSFPConnector();
+
+		this.lookupExecutor = new DefaultThreadPoolExecutor(
+				LOOKUP_THREAD_COUNT,
+				LOOKUP_THREAD_COUNT,
+				0L,
+				TimeUnit.MILLISECONDS,
+				new LinkedBlockingQueue<>(),
+				"AnfisaLookupExecutor",
+				null
+		);
+
+		//Значения мягкие - под нехваткой памяти кеш отдает их сборщику мусора
+		this.siteCache = CacheBuilder.newBuilder()
+				.maximumSize(SITE_CACHE_SIZE)
+				.softValues()
+				.expireAfterWrite(SITE_CACHE_EXPIRE_HOURS, TimeUnit.HOURS)
+				.recordStats()
+				.build();
+
+		this.persistentSiteCache = buildPersistentSiteCache();
+	}
+
+	/**
+	 * Данные сайтов на диске, рядом с кешем ответов источников (persistent_cache), общие для всех запусков
+	 */
+	private PersistentSiteCache buildPersistentSiteCache() {
+		Path path = sourceService.persistentCachePath;
+		if (path == null) {
+			return null;
+		}
+		List<SourceMetadata> sourceMetadata = new ArrayList<>(sourceService.dataSource.getSourceMetadata());
+		if (sourceMetadata.isEmpty()) {
+			log.warn("Versions of sources are unknown, persistent site cache is disabled");
+			return null;
+		}
+		sourceMetadata.addAll(clinvarConnector.getSourceMetadata());
+		sourceMetadata.addAll(hgmdConnector.getSourceMetadata());
+		sourceMetadata.addAll(spliceAIConnector.getSourceMetadata());
+		sourceMetadata.addAll(ConservationData.getSourceMetadata());
+		sourceMetadata.addAll(gnomadConnector.getSourceMetadata());
+		sourceMetadata.addAll(gtexConnector.getSourceMetadata());
+		sourceMetadata.addAll(pharmGKBConnector.getSourceMetadata());
+		try {
+			return new PersistentSiteCache(
+					path.resolve("site"),
+					getSiteVersion(sourceMetadata),
+					TimeUnit.HOURS.toMillis(PERSISTENT_SITE_CACHE_EXPIRE_HOURS)
+			);
+		} catch (RocksDBException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	/**
+	 * Версия данных сайтов: версии источников и версия аннотатора (от нее зависит формат SiteLookup)
+	 */
+	static String getSiteVersion(List<SourceMetadata> sourceMetadata) {
+		return Stream.concat(
+				Stream.of(AppVersion.getVersion()),
+				sourceMetadata.stream()
+						.map(metadata -> metadata.product + '=' + metadata.version + '/' + metadata.date)
+						.sorted()
+		).collect(Collectors.joining(";"));
 	}
 
 	public AnfisaResult build(
@@ -149,11 +244,16 @@ public class AnfisaConnector implements AutoCloseable {
 
 		Source source = sourceService.dataSource.getSource(assembly);
 
-		callGnomAD(context, variant, anfisaInput.mCase, filters);
-		callSpliceai(source, context, data, filters, variant);
-		callHgmd(record, context, filters, data);
-		callClinvar(context, record, variant.chromosome.getChar(), filters, data, view, vepJson);
-		GtfAnfisaResult gtfAnfisaResult = gtfAnfisaBuilder.build(variant, context);
+		//Первая фаза - данные сайта, не зависящие от образцов кейса: переиспользуются между кейсами.
+		//Вторая (ниже) - дешевая сборка результата с генотипами и когортами кейса
+		SiteLookup site = getSiteLookup(source, context, variant);
+
+		GnomadResult gnomadResult = site.gnomadResult;
+		callGnomAD(context, variant, anfisaInput.mCase, filters, gnomadResult);
+		callSpliceai(data, filters, site.spliceAIResult);
+		callHgmd(record, filters, data, site.hgmdLookup);
+		callClinvar(context, record, filters, data, view, site.clinvarResults, site.clinvarVariantSummary);
+		GtfAnfisaResult gtfAnfisaResult = site.gtfAnfisaResult;
 		callQuality(filters, variant);
 
 		Sample proband = anfisaInput.mCase.proband;
@@ -200,7 +300,7 @@ public class AnfisaConnector implements AutoCloseable {
 			data.input = vepJson.getAsString("input");
 		}
 		data.transcriptConsequences = ((VariantVep) variant).getTranscriptConsequences();
-		data.id = context.getVariantIds(source);
+		data.id = site.variantIds;
 		data.strand = (vepJson.containsKey("strand")) ? vepJson.getAsNumber("strand").longValue() : null;
 		data.variantClass = variant.getVariantType();
 
@@ -225,18 +325,170 @@ public class AnfisaConnector implements AutoCloseable {
 					variantCNV.getGenotype(anfisaInput.mCase.proband.id).lo;
 		}
 
-		createGeneralTab(context, data, filters, view, variant, anfisaInput.mCase);
+		createGeneralTab(context, data, filters, view, variant, anfisaInput.mCase, site.tissues);
 		createQualityTab(view, variant, anfisaInput.mCase);
-		createGnomadTab(context, variant, anfisaInput.mCase, view);
+		createGnomadTab(context, variant, anfisaInput.mCase, view, gnomadResult);
 		createDatabasesTab(record, data, view);
-		createPredictionsTab(source, context, variant, view);
+		createPredictionsTab(variant, view, site.dbNSFPItems);
 		createBioinformaticsTab(gtfAnfisaResult, context, filters, data, view);
-		createPharmacogenomicsTab(context, view, filters, variant, source);
+		createPharmacogenomicsTab(view, filters, site.pharmacogenomics);
 		countCohorts(view, filters, anfisaInput.mCase, variant);
 
 		return new AnfisaResult(filters, data, view, context);
 	}
 
+	/**
+	 * Результаты обращений к источникам по сайту варианта (сборка, хромосома, позиция, ref/alt) - не зависят от кейса
+	 */
+	static class SiteLookup implements Serializable {
+
+		final GnomadResult gnomadResult;
+		final SpliceAIResult spliceAIResult;
+		final HgmdLookup hgmdLookup;
+		final List<ClinvarResult> clinvarResults;
+		final ClinvarVariantSummary clinvarVariantSummary;
+		final GtfAnfisaResult gtfAnfisaResult;
+		final List<String> variantIds;
+		final List<Tissue> tissues;
+		final List<DbNSFPItem> dbNSFPItems;
+		final AnfisaResultView.Pharmacogenomics pharmacogenomics;
+
+		SiteLookup(
+				GnomadResult gnomadResult, SpliceAIResult spliceAIResult, HgmdLookup hgmdLookup,
+				List<ClinvarResult> clinvarResults, ClinvarVariantSummary clinvarVariantSummary,
+				GtfAnfisaResult gtfAnfisaResult, List<String> variantIds, List<Tissue> tissues,
+				List<DbNSFPItem> dbNSFPItems, AnfisaResultView.Pharmacogenomics pharmacogenomics
+		) {
+			this.gnomadResult = gnomadResult;
+			this.spliceAIResult = spliceAIResult;
+			this.hgmdLookup = hgmdLookup;
+			this.clinvarResults = clinvarResults;
+			this.clinvarVariantSummary = clinvarVariantSummary;
+			this.gtfAnfisaResult = gtfAnfisaResult;
+			this.variantIds = variantIds;
+			this.tissues = tissues;
+			this.dbNSFPItems = dbNSFPItems;
+			this.pharmacogenomics = pharmacogenomics;
+		}
+	}
+
+	private SiteLookup getSiteLookup(Source source, AnfisaExecuteContext context, Variant variant) {
+		String key = getSiteKey(context.anfisaInput.mCase.assembly, variant);
+		try {
+			//Одновременные запросы одного сайта из разных потоков ждут одну загрузку
+			return siteCache.get(key, () -> loadSite(key, source, context, variant));
+		} catch (ExecutionException | UncheckedExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			} else if (cause instanceof Error) {
+				throw (Error) cause;
+			} else {
+				throw new RuntimeException(cause);
+			}
+		}
+	}
+
+	private SiteLookup loadSite(String key, Source source, AnfisaExecuteContext context, Variant variant) {
+		if (persistentSiteCache != null) {
+			SiteLookup site = (SiteLookup) persistentSiteCache.get(key);
+			if (site != null) {
+				return site;
+			}
+		}
+		SiteLookup site = lookupSite(source, context, variant);
+		if (persistentSiteCache != null) {
+			persistentSiteCache.put(key, site);
+		}
+		return site;
+	}
+
+	/**
+	 * Нормализованный ключ сайта. В ключ входит отпечаток транскриптов VEP - от них зависят GTF, ткани GTEx (по генам) и прогнозы
+	 */
+	private static String getSiteKey(Assembly assembly, Variant variant) {
+		StringBuilder key = new StringBuilder()
+				.append(assembly).append(':')
+				.append(variant.chromosome.getChar()).append(':')
+				.append(variant.getStart()).append('-').append(variant.end).append(':')
+				.append(variant.getRef().toUpperCase()).append('>').append(variant.getStrAlt().toUpperCase()).append(':')
+				.append(variant.getVariantType());
+		if (variant instanceof VariantVep) {
+			key.append(':').append(getVepFingerprint(((VariantVep) variant).getTranscriptConsequences()));
+		}
+		return key.toString();
+	}
+
+	static String getVepFingerprint(JSONArray transcriptConsequences) {
+		if (transcriptConsequences == null) {
+			return "-";
+		}
+		return Hashing.murmur3_128().hashString(transcriptConsequences.toJSONString(), StandardCharsets.UTF_8).toString();
+	}
+
+	private SiteLookup lookupSite(Source source, AnfisaExecuteContext context, Variant variant) {
+		//Независимые обращения к источникам запускаются сразу и выполняются параллельно
+		CompletableFuture<GnomadResult> gnomadFuture = requestGnomadResult(context, variant);
+		CompletableFuture<SpliceAIResult> spliceAIFuture = supplyLookup(() -> getSpliceAIResult(source, context, variant));
+		CompletableFuture<HgmdLookup> hgmdFuture = supplyLookup(() -> getHgmdLookup(context));
+		CompletableFuture<List<ClinvarResult>> clinvarFuture = supplyLookup(() -> getClinvarResults(context, variant.chromosome.getChar()));
+		CompletableFuture<ClinvarVariantSummary> clinvarVariantSummaryFuture = supplyLookup(() -> getClinvarVariantSummary(context));
+		CompletableFuture<GtfAnfisaResult> gtfFuture = supplyLookup(() -> gtfAnfisaBuilder.build(variant, context));
+		CompletableFuture<List<String>> variantIdsFuture = supplyLookup(() -> context.getVariantIds(source));
+		CompletableFuture<List<Tissue>> tissuesFuture = supplyLookup(() -> getTissues(getGenes((VariantVep) variant)));
+		CompletableFuture<List<DbNSFPItem>> dbNSFPFuture = supplyLookup(() -> dbNSFPConnector.getAll(source, variant));
+		CompletableFuture<AnfisaResultView.Pharmacogenomics> pharmacogenomicsFuture =
+				variantIdsFuture.thenApplyAsync(this::getPharmacogenomics, lookupExecutor);
+
+		return new SiteLookup(
+				join(gnomadFuture), join(spliceAIFuture), join(hgmdFuture),
+				join(clinvarFuture), join(clinvarVariantSummaryFuture),
+				join(gtfFuture), join(variantIdsFuture), join(tissuesFuture),
+				join(dbNSFPFuture), join(pharmacogenomicsFuture)
+		);
+	}
+
+	public CacheStats getSiteCacheStats() {
+		return siteCache.stats();
+	}
+
+	/**
+	 * @return null - если данные сайтов не сохраняются на диск
+	 */
+	public String getPersistentSiteCacheStats() {
+		return (persistentSiteCache != null) ? persistentSiteCache.getStatistics() : null;
+	}
+
+	private <T> CompletableFuture<T> supplyLookup(Supplier<T> lookup) {
+		return CompletableFuture.supplyAsync(lookup, lookupExecutor);
+	}
+
+	/**
+	 * Ожидание обращения к источнику, исключение пробрасывается как при синхронном вызове
+	 */
+	private static <T> T join(CompletableFuture<T> future) {
+		try {
+			return future.join();
+		} catch (CompletionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			} else if (cause instanceof Error) {
+				throw (Error) cause;
+			} else {
+				throw new RuntimeException(cause);
+			}
+		}
+	}
+
+	/**
+	 * Пакетная предзагрузка данных для блока соседних вариантов,
+	 * пока scope не закрыт - build по этим вариантам обходится без поштучных запросов к источникам
+	 */
+	public PrefetchScope prefetch(Assembly assembly, List<Variant> variants) {
+		return new AnfisaPrefetch(this).prefetch(assembly, variants);
+	}
+
 	private void countCohorts(AnfisaResultView view, AnfisaResultFilters filters, MCase mCase, Variant variant) {
 		for (Cohort cohort : mCase.cohorts) {
 			float[] count = countCohort(variant, cohort.getSamples());
@@ -303,16 +555,44 @@ public class AnfisaConnector implements AutoCloseable {
 		return variant.getRef() + "/" + variant.getStrAlt();
 	}
 
-	private void callHgmd(Record record, AnfisaExecuteContext context, AnfisaResultFilters filters, AnfisaResultData data) {
+	/**
+	 * Ответы HGMD по варианту: номера доступа и данные по ним
+	 */
+	static class HgmdLookup implements Serializable {
+
+		final List<String> accNums;
+		final HgmdConnector.Data hgmdData;
+		final List<Long[]> hg38;
+
+		HgmdLookup(List<String> accNums, HgmdConnector.Data hgmdData, List<Long[]> hg38) {
+			this.accNums = accNums;
+			this.hgmdData = hgmdData;
+			this.hg38 = hg38;
+		}
+	}
+
+	private HgmdLookup getHgmdLookup(AnfisaExecuteContext context) {
 		Assembly assembly = context.anfisaInput.mCase.assembly;
 		Variant variant = context.variant;
 		List<String> accNums = hgmdConnector.getAccNum(assembly, variant.chromosome.getChar(), variant.getStart(), variant.end);
+		if (accNums.isEmpty()) {
+			return new HgmdLookup(accNums, null, null);
+		}
+		return new HgmdLookup(
+				accNums,
+				hgmdConnector.getDataForAccessionNumbers(accNums),
+				hgmdConnector.getHg38(accNums)
+		);
+	}
+
+	private static void callHgmd(Record record, AnfisaResultFilters filters, AnfisaResultData data, HgmdLookup hgmdLookup) {
+		List<String> accNums = hgmdLookup.accNums;
 		if (accNums.size() > 0) {
-			HgmdConnector.Data hgmdData = hgmdConnector.getDataForAccessionNumbers(accNums);
+			HgmdConnector.Data hgmdData = hgmdLookup.hgmdData;
 			record.hgmdData = hgmdData;
 
 			data.hgmd = String.join(",", accNums);
-			List<Long[]> hg38 = hgmdConnector.getHg38(accNums);
+			List<Long[]> hg38 = hgmdLookup.hg38;
 
 			data.hgmdHg38 = hg38.stream().map(longs -> String.format("%s-%s", longs[0], longs[1])).collect(Collectors.joining(", "));
 			List<String> tags = hgmdData.hgmdPmidRows.stream().map(hgmdPmidRow -> hgmdPmidRow.tag).collect(Collectors.toList());
@@ -320,17 +600,26 @@ public class AnfisaConnector implements AutoCloseable {
 		}
 	}
 
-	private void callClinvar(AnfisaExecuteContext context, Record record, String _chromosome, AnfisaResultFilters filters, AnfisaResultData data, AnfisaResultView view, JSONObject json) {
+	private List<ClinvarResult> getClinvarResults(AnfisaExecuteContext context, String _chromosome) {
 		Assembly assembly = context.anfisaInput.mCase.assembly;
 		Variant variant = context.variant;
-		Chromosome chromosome = variant.chromosome;
-
-		List<ClinvarResult> clinvarResults;
 		if (isSnv(variant)) {
-			clinvarResults = clinvarConnector.getData(assembly, _chromosome, variant.getStart(), variant.end, variant.getStrAlt());
+			return clinvarConnector.getData(assembly, _chromosome, variant.getStart(), variant.end, variant.getStrAlt());
 		} else {
-			clinvarResults = clinvarConnector.getExpandedData(assembly, variant);
+			return clinvarConnector.getExpandedData(assembly, variant);
 		}
+	}
+
+	private ClinvarVariantSummary getClinvarVariantSummary(AnfisaExecuteContext context) {
+		Assembly assembly = context.anfisaInput.mCase.assembly;
+		Variant variant = context.variant;
+		return clinvarConnector.getDataVariantSummary(assembly, variant.chromosome, variant.getStart(), variant.end);
+	}
+
+	private static void callClinvar(AnfisaExecuteContext context, Record record, AnfisaResultFilters filters, AnfisaResultData data, AnfisaResultView view, List<ClinvarResult> clinvarResults, ClinvarVariantSummary clinvarVariantSummary) {
+		Variant variant = context.variant;
+		Chromosome chromosome = variant.chromosome;
+
 		record.clinvarResults = clinvarResults;
 		if (!clinvarResults.isEmpty()) {
 
@@ -419,7 +708,6 @@ public class AnfisaConnector implements AutoCloseable {
 			filters.clinvarTrustedBenign = Optional.ofNullable(benign);
 		}
 
-		ClinvarVariantSummary clinvarVariantSummary = clinvarConnector.getDataVariantSummary(assembly, chromosome, variant.getStart(), variant.end);
 		if (clinvarVariantSummary != null) {
 			view.databases.clinvarReviewStatus = clinvarVariantSummary.reviewStatus.text;
 			filters.clinvarReviewStatus = clinvarVariantSummary.reviewStatus;
@@ -443,7 +731,7 @@ public class AnfisaConnector implements AutoCloseable {
 		}
 	}
 
-	private void callGnomAD(AnfisaExecuteContext context, Variant variant, MCase samples, AnfisaResultFilters filters) {
+	private static void callGnomAD(AnfisaExecuteContext context, Variant variant, MCase samples, AnfisaResultFilters filters, GnomadResult gnomadResult) {
 		Double af = null;
 		Double _af = null;
 		Double emAf = null;
@@ -458,7 +746,6 @@ public class AnfisaConnector implements AutoCloseable {
 		Long hom = null;
 		Long hem = null;
 
-		GnomadResult gnomadResult = getGnomadResult(context, variant);
 		if (gnomadResult == null) {
 			return;
 		}
@@ -509,33 +796,21 @@ public class AnfisaConnector implements AutoCloseable {
 		filters.gnomadHem = hem;
 	}
 
-	private GnomadResult getGnomadResult(AnfisaExecuteContext context, Variant variant) {
+	private CompletableFuture<GnomadResult> requestGnomadResult(AnfisaExecuteContext context, Variant variant) {
 		Assembly assembly = context.anfisaInput.mCase.assembly;
-		try {
-			return gnomadConnector.request(
-					context,
-					assembly,
-					variant,
-					variant.chromosome,
-					Math.min(variant.getStart(), variant.end),
-					variant.getRef(), variant.getStrAlt()
-			).get();
-		} catch (InterruptedException e) {
-			throw new RuntimeException(e);
-		} catch (ExecutionException e) {
-			Throwable cause = e.getCause();
-			if (cause instanceof AnnotatorException) {
-				throw (AnnotatorException) cause;
-			} else {
-				throw new RuntimeException(cause);
-			}
-		}
+		return gnomadConnector.request(
+				context,
+				assembly,
+				variant,
+				variant.chromosome,
+				Math.min(variant.getStart(), variant.end),
+				variant.getRef(), variant.getStrAlt()
+		);
 	}
 
-	private void callSpliceai(Source source, AnfisaExecuteContext context, AnfisaResultData data, AnfisaResultFilters filters, Variant variant) {
+	private SpliceAIResult getSpliceAIResult(Source source, AnfisaExecuteContext context, Variant variant) {
 		Assembly assembly = context.anfisaInput.mCase.assembly;
-
-		SpliceAIResult spliceAIResult = spliceAIConnector.getAll(
+		return spliceAIConnector.getAll(
 				source,
 				context,
 				assembly,
@@ -544,12 +819,15 @@ public class AnfisaConnector implements AutoCloseable {
 				variant.getRef(),
 				variant.getAlt()
 		);
+	}
+
+	private static void callSpliceai(AnfisaResultData data, AnfisaResultFilters filters, SpliceAIResult spliceAIResult) {
 		data.spliceAI = spliceAIResult.dict_sql;
 		filters.spliceAltering = spliceAIResult.cases;
 		filters.spliceAiDsmax = spliceAIResult.max_ds;
 	}
 
-	private void createGeneralTab(AnfisaExecuteContext context, AnfisaResultData data, AnfisaResultFilters filters, AnfisaResultView view, Variant variant, MCase samples) {
+	private void createGeneralTab(AnfisaExecuteContext context, AnfisaResultData data, AnfisaResultFilters filters, AnfisaResultView view, Variant variant, MCase samples, List<Tissue> tissues) {
 		view.general.genes = getGenes((VariantVep) variant).stream().toArray(String[]::new);
 
 		//Особенность связанна с удобством визуального отображением
@@ -610,7 +888,6 @@ public class AnfisaConnector implements AutoCloseable {
 		}
 
 		//Собираем на какие органы может максимально повлияет этот вариант
-		List<Tissue> tissues = getTissues(getGenes((VariantVep) variant));
 		view.general.mostlyExpressed = tissues.stream()
 				.map(tissue -> tissue.toJSON()).collect(Collectors.toList());
 		filters.topTissue = tissues.stream().map(tissue -> tissue.name).findFirst().orElse(null);
@@ -816,7 +1093,7 @@ public class AnfisaConnector implements AutoCloseable {
 		return result;
 	}
 
-	private void createGnomadTab(AnfisaExecuteContext context, Variant variant, MCase samples, AnfisaResultView view) {
+	private void createGnomadTab(AnfisaExecuteContext context, Variant variant, MCase samples, AnfisaResultView view, GnomadResult gnomadResult) {
 		Double gnomadAf = context.gnomadAfFam;
 		if (gnomadAf != null && Math.abs(gnomadAf) > 0.000001D) {
 			AnfisaResultView.GnomAD gnomAD = new AnfisaResultView.GnomAD();
@@ -826,7 +1103,6 @@ public class AnfisaConnector implements AutoCloseable {
 			gnomAD.pli = getPLIByAllele((VariantVep) variant);
 			gnomAD.proband = (isProbandHasAllele(variant, samples)) ? "Yes" : "No";
 
-			GnomadResult gnomadResult = getGnomadResult(context, variant);
 			if (gnomadResult != null) {
 				if (gnomadResult.exomes != null) {
 					gnomAD.exomeAn = gnomadResult.exomes.an;
@@ -941,7 +1217,7 @@ public class AnfisaConnector implements AutoCloseable {
 		}
 	}
 
-	private void createPredictionsTab(Source source, AnfisaExecuteContext context, Variant variant, AnfisaResultView view) {
+	private void createPredictionsTab(Variant variant, AnfisaResultView view, List<DbNSFPItem> items) {
 		if (variant instanceof VariantVep) {
 			VariantVep variantVep = (VariantVep) variant;
 
@@ -960,8 +1236,6 @@ public class AnfisaConnector implements AutoCloseable {
 		}
 
 
-		List<DbNSFPItem> items = dbNSFPConnector.getAll(source, variant);
-
 		view.predictions.caddRaw = items.stream().map(item -> item.caddRaw).filter(Objects::nonNull).collect(Collectors.toList());
 		view.predictions.caddPhred = items.stream().map(item -> item.caddPhred).filter(Objects::nonNull).collect(Collectors.toList());
 
@@ -1110,29 +1384,41 @@ public class AnfisaConnector implements AutoCloseable {
 		}
 	}
 
-	private void createPharmacogenomicsTab(AnfisaExecuteContext context, AnfisaResultView view, AnfisaResultFilters filters, Variant variant, Source source) {
-		List<String> variantIds = context.getVariantIds(source);
+	private AnfisaResultView.Pharmacogenomics getPharmacogenomics(List<String> variantIds) {
 		if (variantIds.isEmpty()) {
-			return;
+			return null;
 		}
 
-		view.pharmacogenomics.notes = variantIds.stream()
+		AnfisaResultView.Pharmacogenomics pharmacogenomics = new AnfisaResultView.Pharmacogenomics();
+		pharmacogenomics.notes = variantIds.stream()
 				.flatMap(variantId -> pharmGKBConnector.getNotes(variantId).stream())
 				.collect(Collectors.toList());
-
-		List<AnfisaResultView.Pharmacogenomics.Item> pmids = variantIds.stream()
+		pharmacogenomics.pmids = variantIds.stream()
 				.flatMap(variantId -> pharmGKBConnector.getPmids(variantId).stream())
 				.collect(Collectors.toList());
-		view.pharmacogenomics.pmids = pmids;
-
-		List<AnfisaResultView.Pharmacogenomics.Item> diseases = variantIds.stream()
+		pharmacogenomics.diseases = variantIds.stream()
 				.flatMap(variantId -> pharmGKBConnector.getDiseases(variantId).stream())
 				.collect(Collectors.toList());
-		view.pharmacogenomics.diseases = diseases;
-
-		List<AnfisaResultView.Pharmacogenomics.Item> chemicals = variantIds.stream()
+		pharmacogenomics.chemicals = variantIds.stream()
 				.flatMap(variantId -> pharmGKBConnector.getChemicals(variantId).stream())
 				.collect(Collectors.toList());
+		return pharmacogenomics;
+	}
+
+	private static void createPharmacogenomicsTab(AnfisaResultView view, AnfisaResultFilters filters, AnfisaResultView.Pharmacogenomics pharmacogenomics) {
+		if (pharmacogenomics == null) {
+			return;
+		}
+
+		view.pharmacogenomics.notes = pharmacogenomics.notes;
+
+		List<AnfisaResultView.Pharmacogenomics.Item> pmids = pharmacogenomics.pmids;
+		view.pharmacogenomics.pmids = pmids;
+
+		List<AnfisaResultView.Pharmacogenomics.Item> diseases = pharmacogenomics.diseases;
+		view.pharmacogenomics.diseases = diseases;
+
+		List<AnfisaResultView.Pharmacogenomics.Item> chemicals = pharmacogenomics.chemicals;
 		view.pharmacogenomics.chemicals = chemicals;
 
 		//Add filters
@@ -1817,6 +2103,9 @@ public class AnfisaConnector implements AutoCloseable {
 
 	@Override
 	public void close() {
-
+		lookupExecutor.shutdown();
+		if (persistentSiteCache != null) {
+			persistentSiteCache.close();
+		}
 	}
 }
@@ -0,0 +1,154 @@
+/*
+ Copyright (c) 2019. Vladimir Ulitin, Partners Healthcare and members of Forome Association
+
+ Developed by Vladimir Ulitin and Michael Bouzinier
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+	 http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+*/
+
+package org.forome.annotation.data.anfisa;
+
+import org.forome.annotation.data.conservation.ConservationData;
+import org.forome.annotation.data.gnomad.utils.СollapseNucleotideSequence;
+import org.forome.annotation.service.source.struct.SourceBatch;
+import org.forome.annotation.struct.variant.Variant;
+import org.forome.annotation.utils.PrefetchScope;
+import org.forome.core.struct.Assembly;
+import org.forome.core.struct.Interval;
+import org.forome.core.struct.Position;
+
+import java.util.*;
+
+/**
+ * Сбор обращений, которые понадобятся блоку соседних вариантов, и их пакетная загрузка:
+ * один запрос на источник вместо запроса на каждый вариант.
+ * Запрашиваемые ключи повторяют те, по которым к источникам обращаются коннекторы при построении AnfisaResult
+ */
+class AnfisaPrefetch {
+
+	//Запас вокруг варианта для проверки ref и поиска в gnomAD по hg38
+	private static final int FASTA_PADDING = 2;
+
+	//Соседние окна объединяются в один регион, если разрыв между ними не больше
+	private static final int FASTA_MAX_GAP = 1000;
+
+	private static final int FASTA_MAX_LENGTH = 100000;
+
+	private final AnfisaConnector anfisaConnector;
+
+	AnfisaPrefetch(AnfisaConnector anfisaConnector) {
+		this.anfisaConnector = anfisaConnector;
+	}
+
+	PrefetchScope prefetch(Assembly assembly, List<Variant> variants) {
+		List<PrefetchScope> scopes = new ArrayList<>();
+		try {
+			SourceBatch batch = new SourceBatch();
+			//gnomAD запрашивается у источника GRCh37
+			SourceBatch batch37 = (assembly == Assembly.GRCh37) ? batch : new SourceBatch();
+
+			for (Variant variant : variants) {
+				Interval interval = variant.getInterval();
+				batch.addInterval(interval);
+
+				for (Position position : ConservationData.getPositions(interval, variant.getRef(), variant.getStrAlt())) {
+					batch.addConservation(position);
+				}
+
+				for (Position position37 : getGnomadPositions(assembly, variant)) {
+					batch37.addGnomad(position37);
+				}
+			}
+			for (Interval interval : getFastaRegions(variants)) {
+				batch.addFasta(interval);
+			}
+
+			scopes.add(anfisaConnector.sourceService.dataSource.prefetch(assembly, batch));
+			if (batch37 != batch) {
+				scopes.add(anfisaConnector.sourceService.dataSource.prefetch(Assembly.GRCh37, batch37));
+			}
+
+			scopes.add(anfisaConnector.hgmdConnector.prefetch(assembly, variants));
+			scopes.add(anfisaConnector.clinvarConnector.prefetch(assembly, variants));
+			scopes.add(anfisaConnector.gtfConnector.prefetch(assembly, variants));
+		} catch (Throwable e) {
+			PrefetchScope.of(scopes).close();
+			throw e;
+		}
+		return PrefetchScope.of(scopes);
+	}
+
+	/**
+	 * Позиции (GRCh37), по которым GnomadDataSourceHttp ищет вариант: позиция после схлопывания справа,
+	 * а для не-SNV еще и предыдущая
+	 */
+	private List<Position> getGnomadPositions(Assembly assembly, Variant variant) {
+		String ref = variant.getRef();
+		String alt = variant.getStrAlt();
+		СollapseNucleotideSequence.Sequence sequence = СollapseNucleotideSequence.collapseRight(
+				new Position(variant.chromosome, Math.min(variant.getStart(), variant.end)), ref, alt
+		);
+		Position pos37 = anfisaConnector.liftoverConnector.toHG37(assembly, sequence.position);
+		if (pos37 == null) {
+			return Collections.emptyList();
+		}
+
+		boolean isSNV = (sequence.ref.length() == 1 && sequence.alt.length() == 1);
+		if (isSNV) {
+			return Collections.singletonList(pos37);
+		} else {
+			return Arrays.asList(pos37, new Position(pos37.chromosome, pos37.value - 1));
+		}
+	}
+
+	/**
+	 * Регионы fasta, покрывающие окна всех вариантов блока, близкие окна объединяются
+	 */
+	private static List<Interval> getFastaRegions(List<Variant> variants) {
+		List<Variant> sorted = new ArrayList<>(variants);
+		sorted.sort(Comparator
+				.comparing((Variant variant) -> variant.chromosome.getChar())
+				.thenComparingInt(variant -> Math.min(variant.getStart(), variant.end))
+		);
+
+		List<Interval> regions = new ArrayList<>();
+		Variant regionVariant = null;
+		int regionStart = 0;
+		int regionEnd = 0;
+		for (Variant variant : sorted) {
+			int start = Math.max(1, Math.min(variant.getStart(), variant.end) - FASTA_PADDING);
+			int end = Math.max(variant.getStart(), variant.end)
+					+ Math.max(variant.getRef().length(), variant.getStrAlt().length()) + FASTA_PADDING;
+
+			if (regionVariant != null
+					&& regionVariant.chromosome.getChar().equals(variant.chromosome.getChar())
+					&& start - regionEnd <= FASTA_MAX_GAP
+					&& Math.max(regionEnd, end) - regionStart < FASTA_MAX_LENGTH
+			) {
+				regionEnd = Math.max(regionEnd, end);
+				continue;
+			}
+
+			if (regionVariant != null) {
+				regions.add(Interval.of(regionVariant.chromosome, regionStart, regionEnd));
+			}
+			regionVariant = variant;
+			regionStart = start;
+			regionEnd = end;
+		}
+		if (regionVariant != null) {
+			regions.add(Interval.of(regionVariant.chromosome, regionStart, regionEnd));
+		}
+		return regions;
+	}
+}
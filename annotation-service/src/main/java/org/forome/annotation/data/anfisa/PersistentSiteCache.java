@@ -0,0 +1,153 @@
+/*
+ Copyright (c) 2019. Vladimir Ulitin, Partners Healthcare and members of Forome Association
+
+ Developed by Vladimir Ulitin and Michael Bouzinier
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+	 http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+*/
+
+package org.forome.annotation.data.anfisa;
+
+import org.rocksdb.*;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Данные сайтов на диске (RocksDB), общие для всех запусков аннотатора: второй кейс с тем же
+ * вариантом не обращается к источникам повторно.
+ * Ключ - нормализованный вариант и отпечаток транскриптов VEP.
+ * Версия (версии источников и аннотатора) хранится рядом с данными, при ее смене данные удаляются.
+ * Часть источников (ClinVar, HGMD, GTEx, PharmGKB) не сообщает версию, поэтому записи еще и устаревают по времени
+ */
+class PersistentSiteCache implements AutoCloseable {
+
+	private static final byte[] COLUMN_FAMILY_SITES = "sites".getBytes(StandardCharsets.UTF_8);
+	private static final byte[] KEY_VERSION = "version".getBytes(StandardCharsets.UTF_8);
+
+	private final long expireMillis;
+
+	private final AtomicLong hits;
+	private final AtomicLong misses;
+
+	private final DBOptions options;
+	private final ColumnFamilyOptions columnFamilyOptions;
+	private final RocksDB rocksDB;
+	private final List<ColumnFamilyHandle> columnFamilyHandles;
+	private final ColumnFamilyHandle sitesColumnFamily;
+
+	/**
+	 * @param version      версии источников и аннотатора, от которых зависят данные сайтов
+	 * @param expireMillis время жизни записи
+	 */
+	PersistentSiteCache(Path path, String version, long expireMillis) throws RocksDBException {
+		this.expireMillis = expireMillis;
+		this.hits = new AtomicLong();
+		this.misses = new AtomicLong();
+
+		this.options = new DBOptions()
+				.setCreateIfMissing(true)
+				.setCreateMissingColumnFamilies(true);
+		this.columnFamilyOptions = new ColumnFamilyOptions()
+				.setCompressionType(CompressionType.LZ4_COMPRESSION);
+
+		List<ColumnFamilyDescriptor> descriptors = new ArrayList<>();
+		descriptors.add(new ColumnFamilyDescriptor(RocksDB.DEFAULT_COLUMN_FAMILY, columnFamilyOptions));
+		descriptors.add(new ColumnFamilyDescriptor(COLUMN_FAMILY_SITES, columnFamilyOptions));
+
+		try {
+			Files.createDirectories(path);
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+		this.columnFamilyHandles = new ArrayList<>();
+		this.rocksDB = RocksDB.open(options, path.toString(), descriptors, columnFamilyHandles);
+
+		byte[] storedVersion = rocksDB.get(KEY_VERSION);
+		ColumnFamilyHandle columnFamily = columnFamilyHandles.get(1);
+		if (storedVersion != null && !version.equals(new String(storedVersion, StandardCharsets.UTF_8))) {
+			//Источники или аннотатор обновились - сохраненные сайты устарели
+			rocksDB.dropColumnFamily(columnFamily);
+			columnFamily.close();
+			columnFamily = rocksDB.createColumnFamily(new ColumnFamilyDescriptor(COLUMN_FAMILY_SITES, columnFamilyOptions));
+			columnFamilyHandles.set(1, columnFamily);
+		}
+		rocksDB.put(KEY_VERSION, version.getBytes(StandardCharsets.UTF_8));
+		this.sitesColumnFamily = columnFamily;
+	}
+
+	/**
+	 * @return null - если сайта нет в кеше или запись устарела
+	 */
+	Object get(String key) {
+		byte[] bytes;
+		try {
+			bytes = rocksDB.get(sitesColumnFamily, key.getBytes(StandardCharsets.UTF_8));
+		} catch (RocksDBException e) {
+			throw new RuntimeException(e);
+		}
+		if (bytes == null) {
+			misses.incrementAndGet();
+			return null;
+		}
+		ByteBuffer buffer = ByteBuffer.wrap(bytes);
+		if (System.currentTimeMillis() - buffer.getLong() > expireMillis) {
+			misses.incrementAndGet();
+			return null;
+		}
+		hits.incrementAndGet();
+		try (ObjectInputStream ois = new ObjectInputStream(
+				new ByteArrayInputStream(bytes, buffer.position(), buffer.remaining()))) {
+			return ois.readObject();
+		} catch (IOException | ClassNotFoundException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	void put(String key, Serializable value) {
+		ByteArrayOutputStream bos = new ByteArrayOutputStream();
+		try (DataOutputStream dos = new DataOutputStream(bos)) {
+			dos.writeLong(System.currentTimeMillis());
+			try (ObjectOutputStream oos = new ObjectOutputStream(dos)) {
+				oos.writeObject(value);
+			}
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+		try {
+			rocksDB.put(sitesColumnFamily, key.getBytes(StandardCharsets.UTF_8), bos.toByteArray());
+		} catch (RocksDBException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	String getStatistics() {
+		return String.format("hits: %s, misses: %s", hits.get(), misses.get());
+	}
+
+	@Override
+	public void close() {
+		for (ColumnFamilyHandle columnFamilyHandle : columnFamilyHandles) {
+			columnFamilyHandle.close();
+		}
+		rocksDB.close();
+		columnFamilyOptions.close();
+		options.close();
+	}
+}
@@ -25,12 +25,11 @@ import org.forome.annotation.service.source.struct.Source;
 import org.forome.annotation.struct.variant.Variant;
 import org.forome.core.struct.Assembly;
 import org.forome.core.struct.Interval;
-import org.forome.core.struct.sequence.Sequence;
 
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class AnfisaExecuteContext {
 
@@ -57,7 +56,8 @@ public class AnfisaExecuteContext {
 		this.variant = variant;
 		this.vepJson = vepJson;
 
-		this.cache = new HashMap<>();
+		//Обращения к источникам при построении результата выполняются параллельно
+		this.cache = new ConcurrentHashMap<>();
 	}
 
 	public List<String> getVariantIds(Source source) {
@@ -76,13 +76,8 @@ public class AnfisaExecuteContext {
 					variant.getStart(),
 					(variant.getStart() < variant.end) ? variant.end : variant.getStart()
 			);
-			Sequence sequence = source.getFastaSequence(interval);
-			String vSequence = sequence.getValue();
-
 			//Если есть маленькие буквы, то мы имеем дело с замаскированными регионами тандемных повторов
-			boolean maskedRegion = !vSequence.equals(vSequence.toUpperCase());
-
-			return maskedRegion;
+			return source.isSoftMasked(interval);
 		});
 	}
 
@@ -288,9 +288,9 @@ public class AnfisaResultView {
 		}
 	}
 
-	public static class Pharmacogenomics {
+	public static class Pharmacogenomics implements Serializable {
 
-		public static class Item {
+		public static class Item implements Serializable {
 
 			public final String association;
 			public final String value;
@@ -20,14 +20,15 @@ package org.forome.annotation.data.anfisa.struct;
 
 import net.minidev.json.JSONArray;
 
+import java.io.Serializable;
 import java.util.Collections;
 import java.util.List;
 
-public class GtfAnfisaResult {
+public class GtfAnfisaResult implements Serializable {
 
-	public static class RegionAndBoundary {
+	public static class RegionAndBoundary implements Serializable {
 
-		public static class DistanceFromBoundary {
+		public static class DistanceFromBoundary implements Serializable {
 			public final long dist;
 			public final String region;
 			public final Integer index;
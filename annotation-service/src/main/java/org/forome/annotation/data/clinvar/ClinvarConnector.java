@@ -22,6 +22,7 @@ import org.forome.annotation.data.clinvar.struct.ClinvarResult;
 import org.forome.annotation.data.clinvar.struct.ClinvarVariantSummary;
 import org.forome.annotation.struct.SourceMetadata;
 import org.forome.annotation.struct.variant.Variant;
+import org.forome.annotation.utils.PrefetchScope;
 import org.forome.annotation.utils.Statistics;
 import org.forome.core.struct.Assembly;
 import org.forome.core.struct.Chromosome;
@@ -38,6 +39,11 @@ public interface ClinvarConnector extends AutoCloseable {
 
 	ClinvarVariantSummary getDataVariantSummary(Assembly assembly, Chromosome chromosome, long start, long end);
 
+	/**
+	 * Предзагрузка записей ClinVar для блока соседних вариантов: несколько запросов на блок вместо нескольких на вариант
+	 */
+	PrefetchScope prefetch(Assembly assembly, List<Variant> variants);
+
 	Statistics getStatisticClinvarSubmitters();
 	Statistics getStatisticClinvarData();
 	Statistics getStatisticClinvarExpandedData();
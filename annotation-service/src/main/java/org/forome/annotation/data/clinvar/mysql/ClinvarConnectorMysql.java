@@ -29,6 +29,8 @@ import org.forome.annotation.service.database.DatabaseConnectService;
 import org.forome.annotation.struct.SourceMetadata;
 import org.forome.annotation.struct.variant.Variant;
 import org.forome.annotation.struct.variant.VariantType;
+import org.forome.annotation.utils.PrefetchScope;
+import org.forome.annotation.utils.PrefetchStore;
 import org.forome.annotation.utils.Statistics;
 import org.forome.astorage.core.liftover.LiftoverConnector;
 import org.forome.core.struct.Assembly;
@@ -42,6 +44,7 @@ import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
 import java.util.*;
+import java.util.function.Predicate;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
@@ -50,8 +53,9 @@ public class ClinvarConnectorMysql implements ClinvarConnector, AutoCloseable {
 	private static final Logger log = LoggerFactory.getLogger(ClinvarConnectorMysql.class);
 
 	private static final String SUBMITTER_QUERY = "SELECT SubmitterName, ClinicalSignificance FROM `forome`.`ClinVar_Submitters` NATURAL JOIN `forome`.`ClinVar2Sub_Sig` WHERE RCVaccession IN (%s)";
+	private static final String SUBMITTER_BATCH_QUERY = "SELECT RCVaccession, SubmitterName, ClinicalSignificance FROM `forome`.`ClinVar_Submitters` NATURAL JOIN `forome`.`ClinVar2Sub_Sig` WHERE RCVaccession IN (%s)";
 
-	private static final String QUERY_BASE = "SELECT " +
+	private static final String QUERY_SELECT = "SELECT " +
 			"`Start`," +
 			"`Stop`," +
 			"`AlternateAllele`," +
@@ -63,18 +67,28 @@ public class ClinvarConnectorMysql implements ClinvarConnector, AutoCloseable {
 			"RCVaccession, " +
 			"ReferenceAllele, " +
 			"VariationID " +
-			"FROM `forome`.ClinVar_variant_summary AS v " +
+			"FROM `forome`.ClinVar_variant_summary AS v ";
+
+	private static final String QUERY_BASE = QUERY_SELECT +
 			"WHERE " +
 			"Assembly = 'GRCh37' AND " +
 			"Chromosome='%s' AND " +
 			"Start = %s ";
 
+	private static final String QUERY_BATCH = QUERY_SELECT +
+			"WHERE " +
+			"Assembly = 'GRCh37' AND " +
+			"Chromosome='%s' AND " +
+			"Start IN (%s)";
+
 	private static final String QUERY_0 = QUERY_BASE + " AND Stop = %s ";
 	private static final String QUERY_EXACT = QUERY_0 + " AND AlternateAllele = '%s'";
 	private static final String QUERY_NA = QUERY_0 + " AND AlternateAllele = 'na'";
 
 	private static final String QUERY_VARIANT_SUMMARY =
 			"select ReviewStatus, NumberSubmitters, Guidelines from `forome`.ClinVar_variant_summary where Chromosome='%s' AND Start = %s and Stop = %s";
+	private static final String QUERY_VARIANT_SUMMARY_BATCH =
+			"select Start, Stop, ReviewStatus, NumberSubmitters, Guidelines from `forome`.ClinVar_variant_summary where Chromosome='%s' AND Start IN (%s)";
 
 	private static final String CLINVAR_TYPE_SNV = "single nucleotide variant";
 	private static final String CLINVAR_TYPE_DELETION = "deletion";
@@ -82,6 +96,9 @@ public class ClinvarConnectorMysql implements ClinvarConnector, AutoCloseable {
 	private final LiftoverConnector liftoverConnector;
 	private final DatabaseConnector databaseConnector;
 
+	//Записи ClinVar по (хромосома, start в hg19), загруженные пакетно для блока вариантов
+	private final PrefetchStore<String, PrefetchedStart> prefetched;
+
 	public final Statistics statisticClinvarSubmitters = new Statistics();
 	public final Statistics statisticClinvarData = new Statistics();
 	public final Statistics statisticClinvarExpandedData = new Statistics();
@@ -90,6 +107,7 @@ public class ClinvarConnectorMysql implements ClinvarConnector, AutoCloseable {
 	public ClinvarConnectorMysql(DatabaseConnectService databaseConnectService, LiftoverConnector liftoverConnector, ForomeConfigConnector foromeConfigConnector) {
 		this.liftoverConnector = liftoverConnector;
 		this.databaseConnector = new DatabaseConnector(databaseConnectService, foromeConfigConnector);
+		this.prefetched = new PrefetchStore<>();
 	}
 
 	@Override
@@ -117,19 +135,23 @@ public class ClinvarConnectorMysql implements ClinvarConnector, AutoCloseable {
 				throw ExceptionBuilder.buildExternalDatabaseException(ex);
 			}
 
-			return new ClinvarResult(
-					row.start, row.end,
-					row.referenceAllele, row.alternateAllele,
-					row.variationID, row.clinicalSignificance,
-					row.phenotypeIDs, row.otherIDs,
-					row.phenotypeList,
-					submitters
-			);
+			return build(row, submitters);
 		} finally {
 			statisticClinvarSubmitters.addTime(System.currentTimeMillis() - t1);
 		}
 	}
 
+	private static ClinvarResult build(Row row, Map<String, String> submitters) {
+		return new ClinvarResult(
+				row.start, row.end,
+				row.referenceAllele, row.alternateAllele,
+				row.variationID, row.clinicalSignificance,
+				row.phenotypeIDs, row.otherIDs,
+				row.phenotypeList,
+				submitters
+		);
+	}
+
 	private List<ClinvarResult> addSubmittersToRows(List<Row> rows) {
 		List<ClinvarResult> results = new ArrayList<>();
 		for (Row row : rows) {
@@ -149,6 +171,11 @@ public class ClinvarConnectorMysql implements ClinvarConnector, AutoCloseable {
 				return Collections.emptyList();
 			}
 
+			PrefetchedStart prefetchedStart = prefetched.get(getPrefetchKey(variant.chromosome.getChar(), pStart.value));
+			if (prefetchedStart != null) {
+				return prefetchedStart.select(row -> isExpandedMatch(variant, row));
+			}
+
 			List<Row> rows = new ArrayList<>();
 			try (Connection connection = databaseConnector.createConnection()) {
 				try (Statement statement = connection.createStatement()) {
@@ -157,18 +184,9 @@ public class ClinvarConnectorMysql implements ClinvarConnector, AutoCloseable {
 					))) {
 						while (resultSet.next()) {
 							Row row = _build(resultSet);
-							//TODO Ulitin V. Необходим комплексный подход - сейчас проверяем только на SNV //и Deletion
-							if (variant.getVariantType() != VariantType.INDEL && variant.getVariantType() != VariantType.SEQUENCE_ALTERATION) {
-								if (CLINVAR_TYPE_SNV.equals(row.type) && variant.getVariantType() != VariantType.SNV) {
-									continue;
-								}
-//						else if (CLINVAR_TYPE_DELETION.equals(row.type) && variant.getVariantType() != VariantType.DEL) {
-//							continue;
-//						}
-
+							if (isExpandedMatch(variant, row)) {
+								rows.add(row);
 							}
-
-							rows.add(row);
 						}
 					}
 				}
@@ -181,6 +199,19 @@ public class ClinvarConnectorMysql implements ClinvarConnector, AutoCloseable {
 		}
 	}
 
+	private static boolean isExpandedMatch(Variant variant, Row row) {
+		//TODO Ulitin V. Необходим комплексный подход - сейчас проверяем только на SNV //и Deletion
+		if (variant.getVariantType() != VariantType.INDEL && variant.getVariantType() != VariantType.SEQUENCE_ALTERATION) {
+			if (CLINVAR_TYPE_SNV.equals(row.type) && variant.getVariantType() != VariantType.SNV) {
+				return false;
+			}
+//			else if (CLINVAR_TYPE_DELETION.equals(row.type) && variant.getVariantType() != VariantType.DEL) {
+//				return false;
+//			}
+		}
+		return true;
+	}
+
 	@Override
 	public List<ClinvarResult> getData(Assembly assembly, String chromosome, long qStart, long qEnd, String alt) {
 		long t1 = System.currentTimeMillis();
@@ -196,6 +227,19 @@ public class ClinvarConnectorMysql implements ClinvarConnector, AutoCloseable {
 				return Collections.emptyList();
 			}
 
+			PrefetchedStart prefetchedStart = prefetched.get(getPrefetchKey(chromosome, pStart.value));
+			if (prefetchedStart != null) {
+				List<ClinvarResult> results = prefetchedStart.select(row ->
+						row.end == pEnd.value && alt.equalsIgnoreCase(row.alternateAllele)
+				);
+				if (results.isEmpty()) {
+					results = prefetchedStart.select(row ->
+							row.end == pEnd.value && "na".equalsIgnoreCase(row.alternateAllele)
+					);
+				}
+				return results;
+			}
+
 			List<Row> rows = new ArrayList<>();
 			try (Connection connection = databaseConnector.createConnection()) {
 				try (Statement statement = connection.createStatement()) {
@@ -260,34 +304,27 @@ public class ClinvarConnectorMysql implements ClinvarConnector, AutoCloseable {
 			}
 
 			String sql = String.format(QUERY_VARIANT_SUMMARY, chromosome.getChar(), pStart.value, pEnd.value);
+
+			PrefetchedStart prefetchedStart = prefetched.get(getPrefetchKey(chromosome.getChar(), pStart.value));
+			if (prefetchedStart != null) {
+				List<ClinvarVariantSummary> results = new ArrayList<>();
+				for (int i = 0; i < prefetchedStart.summaries.size(); i++) {
+					if (prefetchedStart.summaryStops.get(i) == pEnd.value) {
+						results.add(prefetchedStart.summaries.get(i));
+					}
+				}
+				return selectVariantSummary(results, sql);
+			}
+
 			try (Connection connection = databaseConnector.createConnection()) {
 				try (Statement statement = connection.createStatement()) {
 					try (ResultSet resultSet = statement.executeQuery(sql)) {
 
 						List<ClinvarVariantSummary> results = new ArrayList<>();
 						while (resultSet.next()) {
-							String reviewStatus = resultSet.getString("ReviewStatus");
-							Integer numberSubmitters = resultSet.getInt("NumberSubmitters");
-							String guidelines = resultSet.getString("Guidelines");
-
-							results.add(new ClinvarVariantSummary(reviewStatus, numberSubmitters, guidelines));
-						}
-
-						if (results.isEmpty()) {
-							return null;
-						} else if (results.size() == 1) {
-							return results.get(0);
-						} else {
-							//TODO Пока не найденно решение пытаемся найти "лучше", исходим: что лучше добавить неправильную, чем пропустить правильную.
-							results.sort((o1, o2) -> {
-								int i1 = (o1.reviewStatus.conflicts == null) ? 0 : (o1.reviewStatus.conflicts) ? 1 : 2;
-								int i2 = (o2.reviewStatus.conflicts == null) ? 0 : (o2.reviewStatus.conflicts) ? 1 : 2;
-								return i2 - i1;
-							});
-							ClinvarVariantSummary result = results.get(0);
-							log.warn("WARNING!!! Many record({}), sql: {}, select: {}", results.size(), sql, result.reviewStatus.text);
-							return result;
+							results.add(_buildVariantSummary(resultSet));
 						}
+						return selectVariantSummary(results, sql);
 					}
 				}
 			} catch (SQLException ex) {
@@ -299,6 +336,137 @@ public class ClinvarConnectorMysql implements ClinvarConnector, AutoCloseable {
 		}
 	}
 
+	private static ClinvarVariantSummary selectVariantSummary(List<ClinvarVariantSummary> results, String sql) {
+		if (results.isEmpty()) {
+			return null;
+		} else if (results.size() == 1) {
+			return results.get(0);
+		} else {
+			//TODO Пока не найденно решение пытаемся найти "лучше", исходим: что лучше добавить неправильную, чем пропустить правильную.
+			results.sort((o1, o2) -> {
+				int i1 = (o1.reviewStatus.conflicts == null) ? 0 : (o1.reviewStatus.conflicts) ? 1 : 2;
+				int i2 = (o2.reviewStatus.conflicts == null) ? 0 : (o2.reviewStatus.conflicts) ? 1 : 2;
+				return i2 - i1;
+			});
+			ClinvarVariantSummary result = results.get(0);
+			log.warn("WARNING!!! Many record({}), sql: {}, select: {}", results.size(), sql, result.reviewStatus.text);
+			return result;
+		}
+	}
+
+	private static ClinvarVariantSummary _buildVariantSummary(ResultSet resultSet) throws SQLException {
+		String reviewStatus = resultSet.getString("ReviewStatus");
+		Integer numberSubmitters = resultSet.getInt("NumberSubmitters");
+		String guidelines = resultSet.getString("Guidelines");
+		return new ClinvarVariantSummary(reviewStatus, numberSubmitters, guidelines);
+	}
+
+	@Override
+	public PrefetchScope prefetch(Assembly assembly, List<Variant> variants) {
+		//Хромосома -> start вариантов блока в координатах hg19
+		Map<String, Set<Integer>> starts37 = new HashMap<>();
+		for (Variant variant : variants) {
+			Position pStart = liftoverConnector.toHG37(assembly,
+					new Position(variant.chromosome, variant.getStart())
+			);
+			if (pStart == null) {
+				continue;
+			}
+			starts37.computeIfAbsent(variant.chromosome.getChar(), s -> new TreeSet<>()).add(pStart.value);
+		}
+		if (starts37.isEmpty()) {
+			return PrefetchScope.EMPTY;
+		}
+
+		Map<String, PrefetchedStart> items = new HashMap<>();
+		try (Connection connection = databaseConnector.createConnection()) {
+			try (Statement statement = connection.createStatement()) {
+				for (Map.Entry<String, Set<Integer>> entry : starts37.entrySet()) {
+					String chromosome = entry.getKey();
+					for (Integer start : entry.getValue()) {
+						items.put(getPrefetchKey(chromosome, start), new PrefetchedStart());
+					}
+					String args = entry.getValue().stream().map(String::valueOf).collect(Collectors.joining(","));
+
+					try (ResultSet resultSet = statement.executeQuery(String.format(QUERY_BATCH, chromosome, args))) {
+						while (resultSet.next()) {
+							Row row = _build(resultSet);
+							PrefetchedStart prefetchedStart = items.get(getPrefetchKey(chromosome, row.start));
+							if (prefetchedStart != null) {
+								prefetchedStart.rows.add(row);
+							}
+						}
+					}
+
+					try (ResultSet resultSet = statement.executeQuery(String.format(QUERY_VARIANT_SUMMARY_BATCH, chromosome, args))) {
+						while (resultSet.next()) {
+							int start = (int) resultSet.getLong("Start");
+							PrefetchedStart prefetchedStart = items.get(getPrefetchKey(chromosome, start));
+							if (prefetchedStart != null) {
+								prefetchedStart.summaryStops.add((int) resultSet.getLong("Stop"));
+								prefetchedStart.summaries.add(_buildVariantSummary(resultSet));
+							}
+						}
+					}
+				}
+
+				//Сабмиттеры всех найденных записей - одним запросом
+				Set<String> rcvAccessions = new LinkedHashSet<>();
+				for (PrefetchedStart prefetchedStart : items.values()) {
+					for (Row row : prefetchedStart.rows) {
+						rcvAccessions.addAll(Arrays.asList(row.rcvAccession.split(";")));
+					}
+				}
+				Map<String, Map<String, String>> submittersByRcv = new HashMap<>();
+				if (!rcvAccessions.isEmpty()) {
+					String args = rcvAccessions.stream().map(s -> "'" + s + "'").collect(Collectors.joining(","));
+					try (ResultSet resultSet = statement.executeQuery(String.format(SUBMITTER_BATCH_QUERY, args))) {
+						while (resultSet.next()) {
+							submittersByRcv.computeIfAbsent(resultSet.getString(1), s -> new HashMap<>())
+									.put(resultSet.getString(2), resultSet.getString(3));
+						}
+					}
+				}
+
+				for (PrefetchedStart prefetchedStart : items.values()) {
+					for (Row row : prefetchedStart.rows) {
+						Map<String, String> submitters = new HashMap<>();
+						for (String rcvAccession : row.rcvAccession.split(";")) {
+							submitters.putAll(submittersByRcv.getOrDefault(rcvAccession, Collections.emptyMap()));
+						}
+						prefetchedStart.results.add(build(row, submitters));
+					}
+				}
+			}
+		} catch (SQLException ex) {
+			throw ExceptionBuilder.buildExternalDatabaseException(ex);
+		}
+		return prefetched.put(items);
+	}
+
+	private static String getPrefetchKey(String chromosome, int start) {
+		return chromosome + ":" + start;
+	}
+
+	private static class PrefetchedStart {
+
+		private final List<Row> rows = new ArrayList<>();
+		private final List<ClinvarResult> results = new ArrayList<>();
+
+		private final List<Integer> summaryStops = new ArrayList<>();
+		private final List<ClinvarVariantSummary> summaries = new ArrayList<>();
+
+		private List<ClinvarResult> select(Predicate<Row> predicate) {
+			List<ClinvarResult> selected = new ArrayList<>();
+			for (int i = 0; i < rows.size(); i++) {
+				if (predicate.test(rows.get(i))) {
+					selected.add(results.get(i));
+				}
+			}
+			return selected;
+		}
+	}
+
 	@Override
 	public Statistics getStatisticClinvarSubmitters() {
 		return statisticClinvarSubmitters;
@@ -18,9 +18,10 @@
 
 package org.forome.annotation.data.clinvar.struct;
 
+import java.io.Serializable;
 import java.util.Map;
 
-public class ClinvarResult {
+public class ClinvarResult implements Serializable {
 
 	public final int start;
 	public final int end;
@@ -21,11 +21,12 @@ package org.forome.annotation.data.clinvar.struct;
 import com.google.common.base.Strings;
 import com.google.common.collect.ImmutableList;
 
+import java.io.Serializable;
 import java.util.Arrays;
 import java.util.List;
 import java.util.stream.Collectors;
 
-public class ClinvarVariantSummary {
+public class ClinvarVariantSummary implements Serializable {
 
     public enum GuidelineType {
 
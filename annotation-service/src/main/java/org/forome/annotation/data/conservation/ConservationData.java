@@ -27,6 +27,8 @@ import org.forome.core.struct.Position;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
 public class ConservationData {
@@ -82,7 +84,17 @@ public class ConservationData {
 		}
 	}
 
-	private GerpData getGerpDataFromRocksDB(Interval interval) {
+	/**
+	 * Позиции, по которым будет запрошена консервативность варианта
+	 */
+	public static List<Position> getPositions(Interval interval, String ref, String alt) {
+		if (!((alt.length() == 1 && ref.length() == 1) || (alt.length() > 1 && ref.length() == 1))) {
+			return Collections.emptyList();
+		}
+		return getPositions(interval);
+	}
+
+	private static List<Position> getPositions(Interval interval) {
 		int minPosition;
 		int maxPosition;
 		if (interval.start <= interval.end) {
@@ -95,13 +107,17 @@ public class ConservationData {
 			maxPosition = Math.max(interval.start, interval.end - 1);
 		}
 
+		List<Position> positions = new ArrayList<>();
+		for (int pos = minPosition; pos <= maxPosition; pos++) {
+			positions.add(new Position(interval.chromosome, pos));
+		}
+		return positions;
+	}
+
+	private GerpData getGerpDataFromRocksDB(Interval interval) {
 		Float maxGerpN = null;
 		Float maxGerpRS = null;
-		for (int pos = minPosition; pos <= maxPosition; pos++) {
-			Position position = new Position(
-					interval.chromosome,
-					pos
-			);
+		for (Position position : getPositions(interval)) {
 //			Record record = source.getRecord(position);
 //			if (record == null) {
 //				continue;
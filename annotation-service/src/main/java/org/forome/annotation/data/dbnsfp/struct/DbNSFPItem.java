@@ -18,10 +18,11 @@
 
 package org.forome.annotation.data.dbnsfp.struct;
 
+import java.io.Serializable;
 import java.util.Collections;
 import java.util.List;
 
-public class DbNSFPItem {
+public class DbNSFPItem implements Serializable {
 
 	public final Double caddRaw;
 	public final Double caddPhred;
@@ -18,10 +18,11 @@
 
 package org.forome.annotation.data.dbnsfp.struct;
 
+import java.io.Serializable;
 import java.util.Collections;
 import java.util.List;
 
-public class DbNSFPItemFacet {
+public class DbNSFPItemFacet implements Serializable {
 
 	public final Double revelScore;
 	public final Double siftConvertedRankScore;
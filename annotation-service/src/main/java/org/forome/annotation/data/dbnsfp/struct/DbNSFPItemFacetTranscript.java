@@ -18,7 +18,9 @@
 
 package org.forome.annotation.data.dbnsfp.struct;
 
-public class DbNSFPItemFacetTranscript {
+import java.io.Serializable;
+
+public class DbNSFPItemFacetTranscript implements Serializable {
 
 	public final String ensemblTranscriptId;
 
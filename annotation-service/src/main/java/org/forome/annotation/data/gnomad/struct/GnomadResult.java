@@ -18,12 +18,13 @@
 
 package org.forome.annotation.data.gnomad.struct;
 
+import java.io.Serializable;
 import java.util.Objects;
 import java.util.Set;
 
-public class GnomadResult {
+public class GnomadResult implements Serializable {
 
-    public static class Popmax {
+    public static class Popmax implements Serializable {
 
         public final GnamadGroup group;
         public final double af;
@@ -92,7 +93,7 @@ public class GnomadResult {
         return Objects.hash(exomes, genomes, overall, rawPopmax, urls);
     }
 
-    public static class Sum {
+    public static class Sum implements Serializable {
 
         public final long an;
         public final long ac;
@@ -125,7 +126,7 @@ public class GnomadResult {
         }
     }
 
-    public static class Url {
+    public static class Url implements Serializable {
 
         public final String chromosome;
         public final long position;
@@ -18,12 +18,13 @@
 
 package org.forome.annotation.data.gtex.struct;
 
+import java.io.Serializable;
 import java.text.DecimalFormat;
 import java.text.DecimalFormatSymbols;
 import java.util.Locale;
 import java.util.Objects;
 
-public class Tissue {
+public class Tissue implements Serializable {
 
 	public final String name;
 	public final float expression;
@@ -24,6 +24,7 @@ import org.forome.annotation.data.gtf.mysql.struct.GTFResult;
 import org.forome.annotation.data.gtf.mysql.struct.GTFResultLookup;
 import org.forome.annotation.data.gtf.mysql.struct.GTFTranscriptRow;
 import org.forome.annotation.struct.variant.Variant;
+import org.forome.annotation.utils.PrefetchScope;
 import org.forome.core.struct.Assembly;
 import org.forome.core.struct.Position;
 
@@ -45,6 +46,11 @@ public interface GTFConnector extends AutoCloseable {
 
 	CompletableFuture<GTFResult> request(Assembly assembly, String chromosome, long position);
 
+	/**
+	 * Предзагрузка экзонов транскриптов и CDS-транскриптов для блока соседних вариантов
+	 */
+	PrefetchScope prefetch(Assembly assembly, List<Variant> variants);
+
 	void close();
 
 }
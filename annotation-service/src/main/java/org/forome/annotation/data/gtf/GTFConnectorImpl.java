@@ -27,6 +27,7 @@ import org.forome.annotation.data.gtf.mysql.struct.GTFResultLookup;
 import org.forome.annotation.data.gtf.mysql.struct.GTFTranscriptRow;
 import org.forome.annotation.struct.variant.Variant;
 import org.forome.annotation.utils.DefaultThreadPoolExecutor;
+import org.forome.annotation.utils.PrefetchScope;
 import org.forome.annotation.utils.Statistics;
 import org.forome.astorage.core.liftover.LiftoverConnector;
 import org.forome.core.struct.Assembly;
@@ -221,6 +222,11 @@ public class GTFConnectorImpl implements GTFConnector {
 		}
 	}
 
+	@Override
+	public PrefetchScope prefetch(Assembly assembly, List<Variant> variants) {
+		return gtfDataConnector.prefetch(assembly, variants);
+	}
+
 	@Override
 	public void close() {
 		gtfDataSource.close();
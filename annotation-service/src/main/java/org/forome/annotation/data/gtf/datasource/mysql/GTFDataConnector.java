@@ -18,6 +18,8 @@
 
 package org.forome.annotation.data.gtf.datasource.mysql;
 
+import net.minidev.json.JSONArray;
+import net.minidev.json.JSONObject;
 import org.forome.annotation.data.DatabaseConnector;
 import org.forome.annotation.data.anfisa.struct.AnfisaExecuteContext;
 import org.forome.annotation.data.gtf.datasource.GTFDataSource;
@@ -26,6 +28,9 @@ import org.forome.annotation.data.gtf.mysql.struct.GTFTranscriptRow;
 import org.forome.annotation.data.gtf.mysql.struct.GTFTranscriptRowExternal;
 import org.forome.annotation.exception.ExceptionBuilder;
 import org.forome.annotation.struct.variant.Variant;
+import org.forome.annotation.struct.variant.vep.VariantVep;
+import org.forome.annotation.utils.PrefetchScope;
+import org.forome.annotation.utils.PrefetchStore;
 import org.forome.core.struct.Assembly;
 import org.forome.core.struct.Position;
 
@@ -42,8 +47,14 @@ public class GTFDataConnector implements GTFDataSource {
 
 	private final DatabaseConnector databaseConnector;
 
+	//Данные, загруженные пакетно для блока соседних вариантов
+	private final PrefetchStore<String, List<GTFTranscriptRow>> prefetchTranscriptRows;
+	private final PrefetchStore<String, Set<String>> prefetchCdsTranscripts;
+
 	public GTFDataConnector(DatabaseConnector databaseConnector) {
 		this.databaseConnector = databaseConnector;
+		this.prefetchTranscriptRows = new PrefetchStore<>();
+		this.prefetchCdsTranscripts = new PrefetchStore<>();
 	}
 
 	public GTFResult getGene(Assembly assembly, String chromosome, long position) {
@@ -71,6 +82,11 @@ public class GTFDataConnector implements GTFDataSource {
 	}
 
 	public List<GTFTranscriptRow> getTranscriptRows(Assembly assembly, String transcript) {
+		List<GTFTranscriptRow> prefetched = prefetchTranscriptRows.get(getPrefetchKey(assembly, transcript));
+		if (prefetched != null) {
+			return new ArrayList<>(prefetched);
+		}
+
 		String sql = String.format(
 				"SELECT `gene`, `start`, `end`, `feature` from %s.GTF WHERE transcript = '%s' AND feature = 'exon' ORDER BY `start`, `end`",
 				getDatabase(assembly),
@@ -179,6 +195,12 @@ public class GTFDataConnector implements GTFDataSource {
 	public Set<String> getCdsTranscript(Assembly assembly, Variant variant) {
 		int start = Math.min(variant.getStart(), variant.end);
 		int end = Math.max(variant.getStart(), variant.end);
+
+		Set<String> prefetched = prefetchCdsTranscripts.get(getPrefetchKey(assembly, variant.chromosome.getChar(), start, end));
+		if (prefetched != null) {
+			return new HashSet<>(prefetched);
+		}
+
 		String sql = String.format(
 				"select transcript from %s.GTF where feature = 'CDS' and " +
 						"chromosome = '%s' and " +
@@ -206,6 +228,112 @@ public class GTFDataConnector implements GTFDataSource {
 		return transcripts;
 	}
 
+	public PrefetchScope prefetch(Assembly assembly, List<Variant> variants) {
+		Set<String> transcripts = new LinkedHashSet<>();
+		Map<String, List<Variant>> chromosomeVariants = new HashMap<>();
+		for (Variant variant : variants) {
+			if (variant instanceof VariantVep) {
+				JSONArray jTranscripts = ((VariantVep) variant).getTranscriptConsequences();
+				if (jTranscripts != null) {
+					for (Object item : jTranscripts) {
+						JSONObject jTranscript = (JSONObject) item;
+						String transcript = jTranscript.getAsString("transcript_id");
+						if ("Ensembl".equals(jTranscript.getAsString("source")) && transcript != null) {
+							transcripts.add(transcript);
+						}
+					}
+				}
+			}
+			chromosomeVariants.computeIfAbsent(variant.chromosome.getChar(), s -> new ArrayList<>()).add(variant);
+		}
+
+		Map<String, List<GTFTranscriptRow>> transcriptRows = new HashMap<>();
+		Map<String, Set<String>> cdsTranscripts = new HashMap<>();
+		try (Connection connection = databaseConnector.createConnection()) {
+			try (Statement statement = connection.createStatement()) {
+				if (!transcripts.isEmpty()) {
+					for (String transcript : transcripts) {
+						transcriptRows.put(getPrefetchKey(assembly, transcript), new ArrayList<>());
+					}
+					String sql = String.format(
+							"SELECT `transcript`, `gene`, `start`, `end`, `feature` from %s.GTF WHERE transcript IN (%s) AND feature = 'exon' ORDER BY `transcript`, `start`, `end`",
+							getDatabase(assembly),
+							transcripts.stream().map(s -> "'" + s + "'").collect(Collectors.joining(","))
+					);
+					try (ResultSet resultSet = statement.executeQuery(sql)) {
+						while (resultSet.next()) {
+							List<GTFTranscriptRow> rows = transcriptRows.get(getPrefetchKey(assembly, resultSet.getString("transcript")));
+							if (rows == null) {
+								continue;
+							}
+							rows.add(new GTFTranscriptRow(
+									resultSet.getString("gene"),
+									resultSet.getInt("start"),
+									resultSet.getInt("end"),
+									resultSet.getString("feature")
+							));
+						}
+					}
+				}
+
+				//CDS: один запрос на участок хромосомы, покрывающий все варианты блока
+				for (Map.Entry<String, List<Variant>> entry : chromosomeVariants.entrySet()) {
+					String chromosome = entry.getKey();
+					int minPosition = Integer.MAX_VALUE;
+					int maxPosition = Integer.MIN_VALUE;
+					for (Variant variant : entry.getValue()) {
+						minPosition = Math.min(minPosition, Math.min(variant.getStart(), variant.end));
+						maxPosition = Math.max(maxPosition, Math.max(variant.getStart(), variant.end));
+					}
+
+					String sql = String.format(
+							"select `transcript`, `start`, `end` from %s.GTF where feature = 'CDS' and " +
+									"chromosome = '%s' and `start` <= %s and %s <= `end`",
+							getDatabase(assembly),
+							chromosome,
+							maxPosition, minPosition
+					);
+					List<String> cdsTranscriptIds = new ArrayList<>();
+					List<int[]> cdsIntervals = new ArrayList<>();
+					try (ResultSet resultSet = statement.executeQuery(sql)) {
+						while (resultSet.next()) {
+							cdsTranscriptIds.add(resultSet.getString("transcript"));
+							cdsIntervals.add(new int[]{ resultSet.getInt("start"), resultSet.getInt("end") });
+						}
+					}
+
+					for (Variant variant : entry.getValue()) {
+						int start = Math.min(variant.getStart(), variant.end);
+						int end = Math.max(variant.getStart(), variant.end);
+						Set<String> items = new HashSet<>();
+						for (int i = 0; i < cdsIntervals.size(); i++) {
+							int[] cds = cdsIntervals.get(i);
+							if ((cds[0] <= start && start <= cds[1]) || (cds[0] <= end && end <= cds[1])) {
+								items.add(cdsTranscriptIds.get(i));
+							}
+						}
+						cdsTranscripts.put(getPrefetchKey(assembly, chromosome, start, end), items);
+					}
+				}
+			}
+		} catch (SQLException ex) {
+			throw ExceptionBuilder.buildExternalDatabaseException(ex);
+		}
+
+		return PrefetchScope.of(Arrays.asList(
+				prefetchTranscriptRows.put(transcriptRows),
+				prefetchCdsTranscripts.put(cdsTranscripts)
+		));
+	}
+
+	private static String getPrefetchKey(Assembly assembly, String transcript) {
+		return assembly.name() + ":" + transcript;
+	}
+
+	private static String getPrefetchKey(Assembly assembly, String chromosome, int start, int end) {
+		return assembly.name() + ":" + chromosome + ":" + start + "-" + end;
+	}
+
 	@Override
 	public void close() {
 		databaseConnector.close();
@@ -21,13 +21,16 @@ package org.forome.annotation.data.hgmd;
 import org.forome.annotation.data.hgmd.mysql.HgmdConnectorMysql;
 import org.forome.annotation.data.hgmd.struct.HgmdPmidRow;
 import org.forome.annotation.struct.SourceMetadata;
+import org.forome.annotation.struct.variant.Variant;
+import org.forome.annotation.utils.PrefetchScope;
 import org.forome.core.struct.Assembly;
 
+import java.io.Serializable;
 import java.util.List;
 
 public interface HgmdConnector extends AutoCloseable {
 
-	class Data {
+	class Data implements Serializable {
 		public final List<HgmdPmidRow> hgmdPmidRows;
 		public final List<String> phenotypes;
 
@@ -45,5 +48,10 @@ public interface HgmdConnector extends AutoCloseable {
 
 	List<Long[]> getHg38(List<String> accNums);
 
+	/**
+	 * Предзагрузка accession numbers для блока соседних вариантов одним запросом на хромосому
+	 */
+	PrefetchScope prefetch(Assembly assembly, List<Variant> variants);
+
 	void close();
 }
@@ -25,6 +25,9 @@ import org.forome.annotation.data.hgmd.struct.HgmdPmidRow;
 import org.forome.annotation.exception.ExceptionBuilder;
 import org.forome.annotation.service.database.DatabaseConnectService;
 import org.forome.annotation.struct.SourceMetadata;
+import org.forome.annotation.struct.variant.Variant;
+import org.forome.annotation.utils.PrefetchScope;
+import org.forome.annotation.utils.PrefetchStore;
 import org.forome.astorage.core.liftover.LiftoverConnector;
 import org.forome.core.struct.Assembly;
 import org.forome.core.struct.Chromosome;
@@ -34,13 +37,13 @@ import java.sql.Connection;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.List;
+import java.util.*;
+import java.util.stream.Collectors;
 
 public class HgmdConnectorMysql implements HgmdConnector {
 
 	private static final String SQL_ACC_NUM = "select acc_num from `hgmd_pro`.`hg19_coords` where chromosome = '%s' and coordSTART = %s and coordEND = %s";
+	private static final String SQL_ACC_NUM_BATCH = "select coordSTART, coordEND, acc_num from `hgmd_pro`.`hg19_coords` where chromosome = '%s' and coordSTART IN (%s)";
 	private static final String SQL_PMID = "SELECT distinct disease, PMID, Tag from `hgmd_pro`.`mutation` where acc_num = '%s'";
 	private static final String SQL_PHEN = "SELECT distinct phenotype " +
 			"FROM `hgmd_phenbase`.`hgmd_mutation` as m join `hgmd_phenbase`.`hgmd_phenotype` as p on p.phen_id = m.phen_id " +
@@ -50,9 +53,12 @@ public class HgmdConnectorMysql implements HgmdConnector {
 	private final LiftoverConnector liftoverConnector;
 	private final DatabaseConnector databaseConnector;
 
+	private final PrefetchStore<String, List<String>> prefetchAccNums;
+
 	public HgmdConnectorMysql(DatabaseConnectService databaseConnectService, LiftoverConnector liftoverConnector, HgmdConfigConnector hgmdConfigConnector) throws Exception {
 		this.liftoverConnector = liftoverConnector;
 		this.databaseConnector = new DatabaseConnector(databaseConnectService, hgmdConfigConnector);
+		this.prefetchAccNums = new PrefetchStore<>();
 	}
 
 	@Override
@@ -71,6 +77,11 @@ public class HgmdConnectorMysql implements HgmdConnector {
 			return Collections.emptyList();
 		}
 
+		List<String> prefetched = prefetchAccNums.get(getPrefetchKey(chromosome, pInterval37.start, pInterval37.end));
+		if (prefetched != null) {
+			return new ArrayList<>(prefetched);
+		}
+
 		List<String> accNums = new ArrayList<>();
 		try (Connection connection = databaseConnector.createConnection()) {
 			try (Statement statement = connection.createStatement()) {
@@ -87,6 +98,63 @@ public class HgmdConnectorMysql implements HgmdConnector {
 		return accNums;
 	}
 
+	@Override
+	public PrefetchScope prefetch(Assembly assembly, List<Variant> variants) {
+		//Хромосома -> интервалы вариантов блока в координатах hg19
+		Map<String, List<Interval>> intervals37 = new HashMap<>();
+		for (Variant variant : variants) {
+			if (variant.getStart() > variant.end) {
+				continue;
+			}
+			String chromosome = variant.chromosome.getChar();
+			Interval pInterval37 = liftoverConnector.toHG37(
+					assembly,
+					Interval.of(Chromosome.of(chromosome), variant.getStart(), variant.end)
+			);
+			if (pInterval37 == null) {
+				continue;
+			}
+			intervals37.computeIfAbsent(chromosome, s -> new ArrayList<>()).add(pInterval37);
+		}
+		if (intervals37.isEmpty()) {
+			return PrefetchScope.EMPTY;
+		}
+
+		Map<String, List<String>> accNums = new HashMap<>();
+		try (Connection connection = databaseConnector.createConnection()) {
+			try (Statement statement = connection.createStatement()) {
+				for (Map.Entry<String, List<Interval>> entry : intervals37.entrySet()) {
+					String chromosome = entry.getKey();
+					for (Interval pInterval37 : entry.getValue()) {
+						accNums.put(getPrefetchKey(chromosome, pInterval37.start, pInterval37.end), new ArrayList<>());
+					}
+
+					String starts = entry.getValue().stream()
+							.map(pInterval37 -> String.valueOf(pInterval37.start))
+							.distinct()
+							.collect(Collectors.joining(","));
+					try (ResultSet resultSet = statement.executeQuery(String.format(SQL_ACC_NUM_BATCH, chromosome, starts))) {
+						while (resultSet.next()) {
+							List<String> items = accNums.get(
+									getPrefetchKey(chromosome, resultSet.getLong("coordSTART"), resultSet.getLong("coordEND"))
+							);
+							if (items != null) {
+								items.add(resultSet.getString("acc_num"));
+							}
+						}
+					}
+				}
+			}
+		} catch (SQLException ex) {
+			throw ExceptionBuilder.buildExternalDatabaseException(ex);
+		}
+		return prefetchAccNums.put(accNums);
+	}
+
+	private static String getPrefetchKey(String chromosome, long start, long end) {
+		return chromosome + ":" + start + "-" + end;
+	}
+
 	@Override
 	public Data getDataForAccessionNumbers(List<String> accNums) {
 		List<HgmdPmidRow> hgmdPmidRows = new ArrayList<>();
@@ -18,7 +18,9 @@
 
 package org.forome.annotation.data.hgmd.struct;
 
-public class HgmdPmidRow {
+import java.io.Serializable;
+
+public class HgmdPmidRow implements Serializable {
 
 	public final String disease;
 	public final String pmid;
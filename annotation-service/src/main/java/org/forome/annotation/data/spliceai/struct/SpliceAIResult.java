@@ -18,11 +18,12 @@
 
 package org.forome.annotation.data.spliceai.struct;
 
+import java.io.Serializable;
 import java.util.Map;
 
-public class SpliceAIResult {
+public class SpliceAIResult implements Serializable {
 
-	public static class DictSql {
+	public static class DictSql implements Serializable {
 
 		public final int dp_ag;
 		public final int dp_al;
@@ -29,6 +29,7 @@ import org.forome.annotation.data.hgmd.HgmdConnector;
 import org.forome.annotation.favor.processing.graphql.record.GRecord;
 import org.forome.annotation.favor.processing.struct.GContext;
 import org.forome.annotation.favor.utils.struct.table.Row;
+import org.forome.annotation.processing.graphql.PreparsedDocumentCache;
 import org.forome.annotation.processing.struct.ProcessingResult;
 import org.forome.core.struct.Assembly;
 import org.slf4j.Logger;
@@ -54,8 +55,11 @@ public class Processing {
 				.query(GRecord.class)
 				.build();
 
+		PreparsedDocumentCache preparsedDocumentCache = new PreparsedDocumentCache();
+
 		graphQL = GraphQL
 				.newGraphQL(graphQLSchema)
+				.preparsedDocumentProvider(preparsedDocumentCache)
 				.build();
 
 		try (InputStream inputStream = getClass().getClassLoader().getResourceAsStream("graphql/annotator/favor.graphql")) {
@@ -63,6 +67,8 @@ public class Processing {
 		} catch (Throwable e) {
 			throw new RuntimeException(e);
 		}
+
+		preparsedDocumentCache.warmup(graphQLSchema, graphQLQuery);
 	}
 
 	public ProcessingResult exec(Row row) {
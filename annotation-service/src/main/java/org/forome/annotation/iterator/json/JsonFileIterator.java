@@ -22,11 +22,10 @@ import net.minidev.json.JSONObject;
 import net.minidev.json.parser.JSONParser;
 import net.minidev.json.parser.ParseException;
 import org.forome.annotation.exception.ExceptionBuilder;
+import org.forome.annotation.utils.PositionalLineReader;
 
-import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.Iterator;
@@ -36,29 +35,51 @@ import java.util.zip.GZIPInputStream;
 public class JsonFileIterator implements Iterator<JSONObject>, AutoCloseable {
 
 	private final InputStream inputStream;
-	private final BufferedReader bufferedReader;
+	private final PositionalLineReader lineReader;
 
 	private JSONObject nextValue;
+	private long nextPosition;
 
 	public JsonFileIterator(Path pathVepJson) {
 		this(getInputStream(pathVepJson), pathVepJson.getFileName().toString().endsWith(".gz"));
 	}
 
+	/**
+	 * Продолжение чтения с позиции, ранее полученной из {@link #getPosition()}
+	 */
+	public JsonFileIterator(Path pathVepJson, long position) {
+		this.inputStream = null;
+		try {
+			this.lineReader = PositionalLineReader.open(pathVepJson, position);
+		} catch (IOException e) {
+			throw ExceptionBuilder.buildIOErrorException(e);
+		}
+
+		nextValue = readNextValue();
+	}
+
 	public JsonFileIterator(InputStream inputStream, boolean gzip) {
 		this.inputStream = inputStream;
 		if (gzip) {
 			try {
-				this.bufferedReader = new BufferedReader(new InputStreamReader(new GZIPInputStream(inputStream)));
+				this.lineReader = new PositionalLineReader(new GZIPInputStream(inputStream));
 			} catch (IOException e) {
 				throw ExceptionBuilder.buildIOErrorException(e);
 			}
 		} else {
-			this.bufferedReader = new BufferedReader(new InputStreamReader(inputStream));
+			this.lineReader = new PositionalLineReader(inputStream);
 		}
 
 		nextValue = readNextValue();
 	}
 
+	/**
+	 * Позиция в файле записи, которую вернет следующий вызов {@link #next()}
+	 */
+	public long getPosition() {
+		return nextPosition;
+	}
+
 	@Override
 	public boolean hasNext() {
 		return (nextValue != null);
@@ -79,7 +100,8 @@ public class JsonFileIterator implements Iterator<JSONObject>, AutoCloseable {
 	private JSONObject readNextValue() {
 		String line = null;
 		try {
-			line = bufferedReader.readLine();
+			nextPosition = lineReader.getPosition();
+			line = lineReader.readLine();
 			if (line == null) {
 				return null;
 			} else {
@@ -94,8 +116,10 @@ public class JsonFileIterator implements Iterator<JSONObject>, AutoCloseable {
 
 	@Override
 	public void close() throws IOException {
-		bufferedReader.close();
-		inputStream.close();
+		lineReader.close();
+		if (inputStream != null) {
+			inputStream.close();
+		}
 	}
 
 	private static InputStream getInputStream(Path file) {
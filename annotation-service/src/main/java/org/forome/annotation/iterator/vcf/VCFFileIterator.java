@@ -42,8 +42,36 @@ public class VCFFileIterator implements AutoCloseable {
 
 	private final CNVFileIterator cnvFileIterator;
 
+	private final VCFShard shard;
+
+	private final VCFPositionalIterator positionalIterator;
+
 	public VCFFileIterator(Path pathVcf) {
-		this(pathVcf, null);
+		this(pathVcf, (Path) null);
+	}
+
+	/**
+	 * Чтение одного участка индексированного vcf-файла
+	 */
+	public VCFFileIterator(Path pathVcf, VCFShard shard) {
+		this.vcfFileReader = new VCFFileReader(pathVcf, true);
+		this.vcfFileReaderIterator = vcfFileReader.query(shard.contig, shard.start, shard.end);
+		this.cnvFileIterator = null;
+		this.shard = shard;
+		this.positionalIterator = null;
+	}
+
+	/**
+	 * Чтение с учетом позиции записей в несжатом или bgzip-файле, позволяет продолжить чтение с ранее сохраненной позиции
+	 *
+	 * @param position позиция записи, полученная из {@link #getPosition()}, 0 - начало файла
+	 */
+	public VCFFileIterator(Path pathVcf, long position) {
+		this.vcfFileReader = null;
+		this.positionalIterator = new VCFPositionalIterator(pathVcf, position);
+		this.vcfFileReaderIterator = positionalIterator;
+		this.cnvFileIterator = null;
+		this.shard = null;
 	}
 
 	public VCFFileIterator(Path pathVcf, Path cnvFile) {
@@ -62,6 +90,20 @@ public class VCFFileIterator implements AutoCloseable {
 		} else {
 			cnvFileIterator = null;
 		}
+
+		this.shard = null;
+		this.positionalIterator = null;
+	}
+
+	/**
+	 * Позиция в файле записи, которую вернет следующий вызов {@link #next()},
+	 * -1 - если позиция не отслеживается
+	 */
+	public long getPosition() {
+		if (positionalIterator == null) {
+			return -1;
+		}
+		return positionalIterator.getPosition();
 	}
 
 	public MAVariantVep next() throws NoSuchElementException {
@@ -71,6 +113,9 @@ public class VCFFileIterator implements AutoCloseable {
 				if (!Chromosome.isSupportChromosome(variantContext.getContig())) {
 					continue;//Игнорируем непонятные хромосомы
 				}
+				if (shard != null && variantContext.getStart() < shard.start) {
+					continue;//Запись принадлежит предыдущему участку
+				}
 				return new MAVariantVCF(variantContext);
 			} else if (cnvFileIterator != null && cnvFileIterator.hasNext()) {
 				return cnvFileIterator.next();
@@ -83,6 +128,8 @@ public class VCFFileIterator implements AutoCloseable {
 	@Override
 	public void close() {
 		this.vcfFileReaderIterator.close();
-		this.vcfFileReader.close();
+		if (vcfFileReader != null) {
+			this.vcfFileReader.close();
+		}
 	}
 }
@@ -0,0 +1,161 @@
+/*
+ Copyright (c) 2019. Vladimir Ulitin, Partners Healthcare and members of Forome Association
+
+ Developed by Vladimir Ulitin and Michael Bouzinier
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+	 http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+*/
+
+package org.forome.annotation.iterator.vcf;
+
+import htsjdk.samtools.util.CloseableIterator;
+import htsjdk.tribble.readers.LineIterator;
+import htsjdk.variant.variantcontext.VariantContext;
+import htsjdk.variant.vcf.VCFCodec;
+import htsjdk.variant.vcf.VCFHeader;
+import org.forome.annotation.exception.ExceptionBuilder;
+import org.forome.annotation.utils.PositionalLineReader;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * Последовательное чтение vcf-файла с учетом позиции записей в файле (для bgzip-файла - виртуальное смещение BGZF).
+ * Позволяет продолжить чтение с позиции без повторного декодирования предшествующих записей.
+ */
+class VCFPositionalIterator implements CloseableIterator<VariantContext> {
+
+	private final VCFCodec codec;
+	private final VCFHeader header;
+	private final PositionalLineReader lineReader;
+
+	private String nextLine;
+	private long nextPosition;
+
+	/**
+	 * @param position позиция записи, 0 - с первой записи файла
+	 */
+	VCFPositionalIterator(Path pathVcf, long position) {
+		try {
+			PositionalLineReader headerReader = PositionalLineReader.open(pathVcf, 0);
+			try {
+				//Заголовок читается всегда
+				List<String> headerLines = new ArrayList<>();
+				String line;
+				while ((line = headerReader.readLine()) != null && line.startsWith("#")) {
+					headerLines.add(line);
+					if (!line.startsWith("##")) {
+						break;//Строка с именами колонок - последняя строка заголовка
+					}
+				}
+				if (line != null && !line.startsWith("#")) {
+					throw new IllegalArgumentException("Vcf file without header line: " + pathVcf);
+				}
+				this.codec = new VCFCodec();
+				this.header = (VCFHeader) codec.readActualHeader(new HeaderLineIterator(headerLines));
+			} catch (Throwable e) {
+				headerReader.close();
+				throw e;
+			}
+
+			if (position == 0) {
+				this.lineReader = headerReader;
+			} else {
+				headerReader.close();
+				this.lineReader = PositionalLineReader.open(pathVcf, position);
+			}
+		} catch (IOException e) {
+			throw ExceptionBuilder.buildIOErrorException(e);
+		}
+
+		readNextLine();
+	}
+
+	VCFHeader getFileHeader() {
+		return header;
+	}
+
+	/**
+	 * Позиция записи, которую вернет следующий вызов {@link #next()}
+	 */
+	long getPosition() {
+		return nextPosition;
+	}
+
+	@Override
+	public boolean hasNext() {
+		return (nextLine != null);
+	}
+
+	@Override
+	public VariantContext next() {
+		if (nextLine == null) {
+			throw new NoSuchElementException();
+		}
+		String line = nextLine;
+		readNextLine();
+		return codec.decode(line);
+	}
+
+	private void readNextLine() {
+		try {
+			do {
+				nextPosition = lineReader.getPosition();
+				nextLine = lineReader.readLine();
+			} while (nextLine != null && nextLine.isEmpty());
+		} catch (IOException e) {
+			throw ExceptionBuilder.buildIOErrorException(e);
+		}
+	}
+
+	@Override
+	public void close() {
+		try {
+			lineReader.close();
+		} catch (IOException e) {
+			throw ExceptionBuilder.buildIOErrorException(e);
+		}
+	}
+
+	private static class HeaderLineIterator implements LineIterator {
+
+		private final List<String> lines;
+		private int index;
+
+		HeaderLineIterator(List<String> lines) {
+			this.lines = lines;
+			this.index = 0;
+		}
+
+		@Override
+		public String peek() {
+			return lines.get(index);
+		}
+
+		@Override
+		public boolean hasNext() {
+			return index < lines.size();
+		}
+
+		@Override
+		public String next() {
+			if (!hasNext()) {
+				throw new NoSuchElementException();
+			}
+			return lines.get(index++);
+		}
+	}
+}
@@ -0,0 +1,145 @@
+/*
+ Copyright (c) 2019. Vladimir Ulitin, Partners Healthcare and members of Forome Association
+
+ Developed by Vladimir Ulitin and Michael Bouzinier
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+	 http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+*/
+
+package org.forome.annotation.iterator.vcf;
+
+import htsjdk.samtools.SAMSequenceDictionary;
+import htsjdk.samtools.SAMSequenceRecord;
+import htsjdk.tribble.Tribble;
+import htsjdk.tribble.index.Block;
+import htsjdk.tribble.index.Index;
+import htsjdk.tribble.index.IndexFactory;
+import htsjdk.variant.vcf.VCFFileReader;
+import org.forome.core.struct.Chromosome;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Участок индексированного (bgzip + tabix) vcf-файла: хромосома или регион фиксированного размера.
+ * Участку принадлежат записи, начинающиеся в [start, end], поэтому участки не пересекаются.
+ */
+public class VCFShard {
+
+	/**
+	 * Максимальная позиция, поддерживаемая tabix-индексом
+	 */
+	public static final int MAX_POSITION = 1 << 29;
+
+	public final String contig;
+	public final int start;
+	public final int end;
+
+	public VCFShard(String contig, int start, int end) {
+		this.contig = contig;
+		this.start = start;
+		this.end = end;
+	}
+
+	public boolean contains(String contig, int position) {
+		return this.contig.equals(contig) && start <= position && position <= end;
+	}
+
+	/**
+	 * Разбивает файл на участки в порядке записей файла: contig-и упорядочены по смещению их первой записи
+	 * в tabix-индексе, а не по заголовку - порядок contig-ов в заголовке и в записях может различаться
+	 * (например, лексикографический chr1, chr10, chr11, ...). Contig-и без записей идут последними, в порядке заголовка.
+	 * Так склеенный результат участков и vep.json (VEP сохраняет порядок записей vcf) следуют порядку файла
+	 *
+	 * @param shardSize размер участка, если 0 - участок равен хромосоме
+	 */
+	public static List<VCFShard> build(Path pathVcf, int shardSize) {
+		if (shardSize < 0) throw new IllegalArgumentException();
+
+		SAMSequenceDictionary dictionary;
+		try (VCFFileReader vcfFileReader = new VCFFileReader(pathVcf, true)) {
+			dictionary = vcfFileReader.getFileHeader().getSequenceDictionary();
+		}
+		if (dictionary == null || dictionary.isEmpty()) {
+			throw new RuntimeException("Vcf file does not contain contig lines: " + pathVcf.toAbsolutePath());
+		}
+
+		Index index = IndexFactory.loadIndex(Tribble.tabixIndexFile(pathVcf.toFile()).getAbsolutePath());
+		Map<String, Long> offsets = new HashMap<>();
+		List<SAMSequenceRecord> sequences = new ArrayList<>();
+		for (SAMSequenceRecord sequence : dictionary.getSequences()) {
+			String contig = sequence.getSequenceName();
+			if (!Chromosome.isSupportChromosome(contig)) {
+				continue;//Игнорируем непонятные хромосомы
+			}
+			offsets.put(contig, getFileOffset(index, contig));
+			sequences.add(sequence);
+		}
+		sequences.sort(Comparator.comparing(sequence -> offsets.get(sequence.getSequenceName())));
+
+		List<VCFShard> shards = new ArrayList<>();
+		for (SAMSequenceRecord sequence : sequences) {
+			String contig = sequence.getSequenceName();
+			int length = sequence.getSequenceLength();
+			if (shardSize == 0 || length <= shardSize) {
+				shards.add(new VCFShard(contig, 1, MAX_POSITION));
+				continue;
+			}
+			for (int start = 1; start <= length; start += shardSize) {
+				//Последний участок продлеваем до конца, на случай записей за пределами длины contig-а
+				int end = (start + shardSize > length) ? MAX_POSITION : start + shardSize - 1;
+				shards.add(new VCFShard(contig, start, end));
+			}
+		}
+		return shards;
+	}
+
+	/**
+	 * @return виртуальное смещение (BGZF) первой записи contig-а, Long.MAX_VALUE - записей нет
+	 */
+	private static long getFileOffset(Index index, String contig) {
+		long offset = Long.MAX_VALUE;
+		for (Block block : index.getBlocks(contig, 1, MAX_POSITION)) {
+			offset = Math.min(offset, block.getStartPosition());
+		}
+		return offset;
+	}
+
+	/**
+	 * Разбор региона вида "chr1:1000-2000" или "chr1"
+	 */
+	public static VCFShard parse(String value) {
+		int separator = value.lastIndexOf(':');
+		if (separator < 0) {
+			return new VCFShard(value, 1, MAX_POSITION);
+		}
+		String[] interval = value.substring(separator + 1).split("-");
+		if (interval.length != 2) {
+			throw new IllegalArgumentException("Bad region: " + value);
+		}
+		return new VCFShard(
+				value.substring(0, separator),
+				Integer.parseInt(interval[0]),
+				Integer.parseInt(interval[1])
+		);
+	}
+
+	@Override
+	public String toString() {
+		return contig + ':' + start + '-' + end;
+	}
+}
@@ -31,6 +31,10 @@ public class VepJsonFileIterator extends JsonFileIterator {
 		super(pathVepJson);
 	}
 
+	public VepJsonFileIterator(Path pathVepJson, long position) {
+		super(pathVepJson, position);
+	}
+
 	public VepJsonFileIterator(InputStream inputStream, boolean gzip) {
 		super(inputStream, gzip);
 	}
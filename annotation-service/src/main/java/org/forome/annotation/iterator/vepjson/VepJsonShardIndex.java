@@ -0,0 +1,237 @@
+/*
+ Copyright (c) 2019. Vladimir Ulitin, Partners Healthcare and members of Forome Association
+
+ Developed by Vladimir Ulitin and Michael Bouzinier
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+	 http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+*/
+
+package org.forome.annotation.iterator.vepjson;
+
+import net.minidev.json.JSONArray;
+import net.minidev.json.JSONObject;
+import net.minidev.json.JSONValue;
+import org.apache.commons.io.input.BoundedInputStream;
+import org.forome.annotation.exception.ExceptionBuilder;
+import org.forome.annotation.iterator.vcf.VCFShard;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Смещения строк vep.json, относящихся к участкам vcf-файла.
+ * Строится за один проход по файлу: из поля input (исходная строка vcf) берутся contig и позиция,
+ * сами json-строки не разбираются. Позволяет читать vep.json каждого участка независимо.
+ * Индекс сохраняется в файл ({@link #write(Path)}), чтобы процессы-исполнители координатора
+ * не повторяли проход по всему vep.json для своего участка.
+ */
+public class VepJsonShardIndex {
+
+	private static final byte[] INPUT_KEY = "\"input\":\"".getBytes(StandardCharsets.US_ASCII);
+
+	private final Path pathVepJson;
+
+	private final List<VCFShard> shards;
+	private final long[] starts;
+	private final long[] ends;
+
+	private VepJsonShardIndex(Path pathVepJson, List<VCFShard> shards, long[] starts, long[] ends) {
+		this.pathVepJson = pathVepJson;
+		this.shards = shards;
+		this.starts = starts;
+		this.ends = ends;
+	}
+
+	/**
+	 * Итератор по строкам vep.json одного участка
+	 */
+	public VepJsonFileIterator open(int shard) {
+		if (starts[shard] < 0) {
+			return new VepJsonFileIterator(new ByteArrayInputStream(new byte[0]), false);
+		}
+		try {
+			FileChannel channel = FileChannel.open(pathVepJson, StandardOpenOption.READ);
+			channel.position(starts[shard]);
+			InputStream inputStream = new BoundedInputStream(Channels.newInputStream(channel), ends[shard] - starts[shard]);
+			return new VepJsonFileIterator(inputStream, false);
+		} catch (IOException e) {
+			throw ExceptionBuilder.buildIOErrorException(e);
+		}
+	}
+
+	public static VepJsonShardIndex build(Path pathVepJson, List<VCFShard> shards) {
+		if (pathVepJson.getFileName().toString().endsWith(".gz")) {
+			throw new IllegalArgumentException("Compressed vep.json does not support random access: " + pathVepJson);
+		}
+
+		long[] starts = new long[shards.size()];
+		long[] ends = new long[shards.size()];
+		Arrays.fill(starts, -1);
+
+		try (InputStream is = Files.newInputStream(pathVepJson)) {
+			byte[] buffer = new byte[1024 * 1024];
+			byte[] line = new byte[64 * 1024];
+			int length = 0;
+			long offset = 0;
+			long lineOffset = 0;
+			int current = -1;
+
+			int read;
+			while ((read = is.read(buffer)) != -1) {
+				for (int i = 0; i < read; i++, offset++) {
+					byte b = buffer[i];
+					if (b != '\n') {
+						if (length == line.length) {
+							line = Arrays.copyOf(line, line.length * 2);
+						}
+						line[length++] = b;
+						continue;
+					}
+					current = indexLine(shards, line, length, lineOffset, current, starts, ends);
+					lineOffset = offset + 1;
+					length = 0;
+				}
+			}
+			current = indexLine(shards, line, length, lineOffset, current, starts, ends);
+			if (current >= 0) {
+				ends[current] = offset;
+			}
+		} catch (IOException e) {
+			throw ExceptionBuilder.buildIOErrorException(e);
+		}
+
+		return new VepJsonShardIndex(pathVepJson, shards, starts, ends);
+	}
+
+	/**
+	 * Атомарная запись индекса, вместе с размером vep.json для проверки при чтении
+	 */
+	public void write(Path path) throws IOException {
+		JSONArray jShards = new JSONArray();
+		for (int i = 0; i < shards.size(); i++) {
+			JSONObject jShard = new JSONObject();
+			jShard.put("region", shards.get(i).toString());
+			jShard.put("start", starts[i]);
+			jShard.put("end", ends[i]);
+			jShards.add(jShard);
+		}
+		JSONObject out = new JSONObject();
+		out.put("vep_json_file_size", Files.size(pathVepJson));
+		out.put("shards", jShards);
+
+		Path tmp = path.resolveSibling(path.getFileName().toString() + ".tmp");
+		Files.write(tmp, out.toJSONString().getBytes(StandardCharsets.UTF_8));
+		Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	/**
+	 * Чтение сохраненного индекса для участков shards (участки ищутся по строковому представлению региона)
+	 */
+	public static VepJsonShardIndex read(Path pathVepJson, Path path, List<VCFShard> shards) throws IOException {
+		JSONObject value = (JSONObject) JSONValue.parse(new String(Files.readAllBytes(path), StandardCharsets.UTF_8));
+		if (value.getAsNumber("vep_json_file_size").longValue() != Files.size(pathVepJson)) {
+			throw new RuntimeException("Index " + path + " does not match vep.json file: " + pathVepJson);
+		}
+
+		Map<String, JSONObject> regions = new HashMap<>();
+		for (Object item : (JSONArray) value.get("shards")) {
+			JSONObject jShard = (JSONObject) item;
+			regions.put(jShard.getAsString("region"), jShard);
+		}
+
+		long[] starts = new long[shards.size()];
+		long[] ends = new long[shards.size()];
+		for (int i = 0; i < shards.size(); i++) {
+			JSONObject jShard = regions.get(shards.get(i).toString());
+			if (jShard == null) {
+				throw new RuntimeException("Index " + path + " does not contain region: " + shards.get(i));
+			}
+			starts[i] = jShard.getAsNumber("start").longValue();
+			ends[i] = jShard.getAsNumber("end").longValue();
+		}
+		return new VepJsonShardIndex(pathVepJson, shards, starts, ends);
+	}
+
+	private static int indexLine(List<VCFShard> shards, byte[] line, int length, long lineOffset, int current, long[] starts, long[] ends) {
+		if (length == 0) return current;
+		int shard = findShard(shards, line, length, current);
+		if (shard < 0 || shard == current) return current;
+		if (shard < current) {
+			throw new RuntimeException("vep.json is not sorted as vcf file (records of a contig must be contiguous, in the order of vcf records), offset: " + lineOffset);
+		}
+		if (current >= 0) {
+			ends[current] = lineOffset;
+		}
+		starts[shard] = lineOffset;
+		return shard;
+	}
+
+	private static int findShard(List<VCFShard> shards, byte[] line, int length, int current) {
+		int i = indexOf(line, length, INPUT_KEY);
+		if (i < 0) return -1;
+		i += INPUT_KEY.length;
+
+		//Значение input - строка vcf, табуляции экранированы: "1\t12345\t..."
+		int separator = indexOf(line, length, i, (byte) '\\');
+		if (separator < 0) return -1;
+		String contig = new String(line, i, separator - i, StandardCharsets.US_ASCII);
+
+		int position = 0;
+		for (int j = separator + 2; j < length && line[j] >= '0' && line[j] <= '9'; j++) {
+			position = position * 10 + (line[j] - '0');
+		}
+
+		//Как правило, строка относится к текущему или следующему участку
+		for (int shard = Math.max(current, 0); shard < shards.size(); shard++) {
+			if (shards.get(shard).contains(contig, position)) {
+				return shard;
+			}
+		}
+		for (int shard = 0; shard < current; shard++) {
+			if (shards.get(shard).contains(contig, position)) {
+				return shard;
+			}
+		}
+		return -1;
+	}
+
+	private static int indexOf(byte[] line, int length, byte[] value) {
+		for (int i = 0; i <= length - value.length; i++) {
+			int j = 0;
+			while (j < value.length && line[i + j] == value[j]) {
+				j++;
+			}
+			if (j == value.length) return i;
+		}
+		return -1;
+	}
+
+	private static int indexOf(byte[] line, int length, int from, byte value) {
+		for (int i = from; i < length; i++) {
+			if (line[i] == value) return i;
+		}
+		return -1;
+	}
+}
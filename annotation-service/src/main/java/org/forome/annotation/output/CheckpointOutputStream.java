@@ -0,0 +1,95 @@
+/*
+ Copyright (c) 2019. Vladimir Ulitin, Partners Healthcare and members of Forome Association
+
+ Developed by Vladimir Ulitin and Michael Bouzinier
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+	 http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+*/
+
+package org.forome.annotation.output;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Выходной поток файла с контрольными точками.
+ * gz-файл пишется последовательностью независимых gzip-блоков (см. {@link ParallelGZIPOutputStream}),
+ * контрольная точка завершает текущий блок, поэтому файл, обрезанный по позиции контрольной точки,
+ * остается корректным gzip-файлом, а дописывание в него новыми блоками читается как единый поток.
+ */
+public class CheckpointOutputStream extends OutputStream {
+
+	private static final int BUFFER_SIZE = 64 * 1024;
+
+	private final FileChannel fileChannel;
+	private final OutputStream outputStream;
+	private final BufferedOutputStream bufferedOutputStream;
+
+	public CheckpointOutputStream(Path file, long offset) throws IOException {
+		this(file, offset, ParallelGZIPOutputStream.DEFAULT_THREADS);
+	}
+
+	/**
+	 * @param offset      позиция, начиная с которой пишется файл, все что дальше - отбрасывается
+	 * @param gzipThreads кол-во потоков сжатия gz-файла
+	 */
+	public CheckpointOutputStream(Path file, long offset, int gzipThreads) throws IOException {
+		this.fileChannel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+		this.fileChannel.truncate(offset);
+		this.fileChannel.position(offset);
+
+		OutputStream fileOutputStream = Channels.newOutputStream(fileChannel);
+		if (file.getFileName().toString().endsWith(".gz")) {
+			this.outputStream = new ParallelGZIPOutputStream(fileOutputStream, gzipThreads);
+		} else {
+			this.outputStream = fileOutputStream;
+		}
+		this.bufferedOutputStream = new BufferedOutputStream(outputStream, BUFFER_SIZE);
+	}
+
+	@Override
+	public void write(int b) throws IOException {
+		bufferedOutputStream.write(b);
+	}
+
+	@Override
+	public void write(byte[] b, int off, int len) throws IOException {
+		bufferedOutputStream.write(b, off, len);
+	}
+
+	/**
+	 * Сбрасывает на диск все записанное
+	 *
+	 * @return позиция в файле, по которой его можно обрезать при восстановлении
+	 */
+	public long checkpoint() throws IOException {
+		bufferedOutputStream.flush();
+		fileChannel.force(false);
+		return fileChannel.position();
+	}
+
+	@Override
+	public void flush() throws IOException {
+		bufferedOutputStream.flush();
+	}
+
+	@Override
+	public void close() throws IOException {
+		bufferedOutputStream.close();
+	}
+}
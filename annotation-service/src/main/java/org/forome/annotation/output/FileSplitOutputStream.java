@@ -28,7 +28,6 @@ import java.io.OutputStream;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.util.zip.GZIPOutputStream;
 
 public class FileSplitOutputStream implements Closeable {
 
@@ -36,28 +35,34 @@ public class FileSplitOutputStream implements Closeable {
 
 	private final Path target;
 	private final int limit;
+	private final int gzipThreads;
 
 	private int index;
 	private BufferedOutputStream activeOutputStream;
 	private int countLimit;
 
 	public FileSplitOutputStream(Path target, int limit) throws IOException {
+		this(target, limit, ParallelGZIPOutputStream.DEFAULT_THREADS);
+	}
+
+	public FileSplitOutputStream(Path target, int limit, int gzipThreads) throws IOException {
 		if (!target.getFileName().toString().endsWith(".gz")) {
 			throw new IllegalArgumentException();
 		}
 
 		this.target = target;
 		this.limit = limit;
+		this.gzipThreads = gzipThreads;
 
 		this.index = 0;
-		this.activeOutputStream = buildOutputStream(target, index);
+		this.activeOutputStream = buildOutputStream(target, index, gzipThreads);
 		this.countLimit = 0;
 	}
 
 	public void writeLine(byte[] b) throws IOException {
 		if (countLimit >= limit) {
 			close(activeOutputStream);
-			activeOutputStream = buildOutputStream(target, ++index);
+			activeOutputStream = buildOutputStream(target, ++index, gzipThreads);
 			countLimit = 0;
 		}
 
@@ -70,7 +75,7 @@ public class FileSplitOutputStream implements Closeable {
 		activeOutputStream.write(System.lineSeparator().getBytes(StandardCharsets.UTF_8));
 	}
 
-	private static BufferedOutputStream buildOutputStream(Path target, int index) throws IOException {
+	private static BufferedOutputStream buildOutputStream(Path target, int index, int gzipThreads) throws IOException {
 		Path path;
 		if (index == 0) {
 			path = target;
@@ -84,7 +89,7 @@ public class FileSplitOutputStream implements Closeable {
 
 		log.debug("Build new output file: {}" + path);
 
-		OutputStream os = new GZIPOutputStream(Files.newOutputStream(path));
+		OutputStream os = new ParallelGZIPOutputStream(Files.newOutputStream(path), gzipThreads);
 		return new BufferedOutputStream(os);
 	}
 
@@ -0,0 +1,320 @@
+/*
+ Copyright (c) 2019. Vladimir Ulitin, Partners Healthcare and members of Forome Association
+
+ Developed by Vladimir Ulitin and Michael Bouzinier
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+	 http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+*/
+
+package org.forome.annotation.output;
+
+import net.minidev.json.JSONStyle;
+import net.minidev.json.JSONValue;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Сериализация дерева значений (Map/List/скаляры) сразу в UTF-8 байты переиспользуемого буфера,
+ * без промежуточных String и byte[].
+ * Формат совпадает с JSONObject.toJSONString() (json-smart, JSONStyle.NO_COMPRESS)
+ */
+public class JSONStreamWriter {
+
+	private static final int DEFAULT_CAPACITY = 16 * 1024;
+
+	//Буфер больше этого размера после длинной записи не удерживаем
+	private static final int MAX_RETAINED_CAPACITY = 1024 * 1024;
+
+	private static final byte[] HEX = "0123456789ABCDEF".getBytes(StandardCharsets.US_ASCII);
+
+	private static final byte[] NULL = "null".getBytes(StandardCharsets.US_ASCII);
+	private static final byte[] TRUE = "true".getBytes(StandardCharsets.US_ASCII);
+	private static final byte[] FALSE = "false".getBytes(StandardCharsets.US_ASCII);
+
+	private byte[] buffer;
+	private int size;
+
+	public JSONStreamWriter() {
+		buffer = new byte[DEFAULT_CAPACITY];
+	}
+
+	public void reset() {
+		if (buffer.length > MAX_RETAINED_CAPACITY) {
+			buffer = new byte[DEFAULT_CAPACITY];
+		}
+		size = 0;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public byte[] toByteArray() {
+		return Arrays.copyOf(buffer, size);
+	}
+
+	public void writeTo(OutputStream os) throws IOException {
+		os.write(buffer, 0, size);
+	}
+
+	public void writeValue(Object value) {
+		if (value == null) {
+			writeBytes(NULL);
+		} else if (value instanceof String) {
+			writeString((String) value);
+		} else if (value instanceof Map) {
+			writeMap((Map<?, ?>) value);
+		} else if (value instanceof List) {
+			writeIterator(((List<?>) value).iterator());
+		} else if (value instanceof Integer || value instanceof Long) {
+			writeAscii(value.toString());
+		} else if (value instanceof Double) {
+			Double d = (Double) value;
+			writeAscii(d.isInfinite() ? "null" : d.toString());
+		} else if (value instanceof Boolean) {
+			writeBytes((Boolean) value ? TRUE : FALSE);
+		} else if (value instanceof Object[]) {
+			writeIterator(Arrays.asList((Object[]) value).iterator());
+		} else {
+			//Редкие типы (массивы примитивов, перечисления, бины) - через json-smart
+			writeString(JSONValue.toJSONString(value, JSONStyle.NO_COMPRESS), false);
+		}
+	}
+
+	/**
+	 * Запись объединения двух объектов по правилам JSONObject.merge, без построения объединенного дерева:
+	 * вложенные объекты объединяются рекурсивно, массивы дописываются, совпадающие значения пишутся один раз
+	 */
+	@SuppressWarnings("unchecked")
+	public void writeMerged(Map<String, ?> target, Map<String, ?> source) {
+		if (source == null || source.isEmpty()) {
+			writeMap(target);
+			return;
+		}
+		ensureCapacity(1);
+		buffer[size++] = '{';
+		boolean first = true;
+		for (Map.Entry<String, ?> entry : target.entrySet()) {
+			String key = entry.getKey();
+			Object current = entry.getValue();
+			Object value = source.get(key);
+
+			first = writeKey(key, first);
+			if (value == null) {
+				writeValue(current);
+			} else if (current == null) {
+				writeValue(value);
+			} else if (current instanceof Map && value instanceof Map) {
+				writeMerged((Map<String, ?>) current, (Map<String, ?>) value);
+			} else if (current instanceof List && value instanceof List) {
+				writeConcat((List<?>) current, (List<?>) value);
+			} else if (current.equals(value)) {
+				writeValue(current);
+			} else {
+				throw new RuntimeException(
+						String.format("JSON merge can not merge %s with %s, key: %s",
+								current.getClass().getName(), value.getClass().getName(), key
+						)
+				);
+			}
+		}
+		for (Map.Entry<String, ?> entry : source.entrySet()) {
+			if (target.containsKey(entry.getKey())) {
+				continue;
+			}
+			first = writeKey(entry.getKey(), first);
+			writeValue(entry.getValue());
+		}
+		ensureCapacity(1);
+		buffer[size++] = '}';
+	}
+
+	public void writeLineSeparator() {
+		writeAscii(System.lineSeparator());
+	}
+
+	private void writeMap(Map<?, ?> map) {
+		ensureCapacity(1);
+		buffer[size++] = '{';
+		boolean first = true;
+		for (Map.Entry<?, ?> entry : map.entrySet()) {
+			Object key = entry.getKey();
+			first = writeKey((key == null) ? null : key.toString(), first);
+			writeValue(entry.getValue());
+		}
+		ensureCapacity(1);
+		buffer[size++] = '}';
+	}
+
+	private boolean writeKey(String key, boolean first) {
+		if (!first) {
+			ensureCapacity(1);
+			buffer[size++] = ',';
+		}
+		if (key == null) {
+			writeBytes(NULL);
+		} else {
+			writeString(key);
+		}
+		ensureCapacity(1);
+		buffer[size++] = ':';
+		return false;
+	}
+
+	private void writeConcat(List<?> first, List<?> second) {
+		ensureCapacity(1);
+		buffer[size++] = '[';
+		boolean empty = true;
+		for (List<?> list : new List<?>[]{ first, second }) {
+			for (Object item : list) {
+				if (!empty) {
+					ensureCapacity(1);
+					buffer[size++] = ',';
+				}
+				writeValue(item);
+				empty = false;
+			}
+		}
+		ensureCapacity(1);
+		buffer[size++] = ']';
+	}
+
+	private void writeIterator(Iterator<?> iterator) {
+		ensureCapacity(1);
+		buffer[size++] = '[';
+		boolean first = true;
+		while (iterator.hasNext()) {
+			if (!first) {
+				ensureCapacity(1);
+				buffer[size++] = ',';
+			}
+			writeValue(iterator.next());
+			first = false;
+		}
+		ensureCapacity(1);
+		buffer[size++] = ']';
+	}
+
+	private void writeString(String value) {
+		writeString(value, true);
+	}
+
+	/**
+	 * @param quote - экранировать и заключать в кавычки, иначе значение уже готовый json
+	 */
+	private void writeString(String value, boolean quote) {
+		int length = value.length();
+		//Худший случай: \\uXXXX на каждый символ
+		ensureCapacity(length * 6 + 2);
+		if (quote) {
+			buffer[size++] = '"';
+		}
+		for (int i = 0; i < length; i++) {
+			char ch = value.charAt(i);
+			if (quote) {
+				switch (ch) {
+					case '"':
+						buffer[size++] = '\\';
+						buffer[size++] = '"';
+						continue;
+					case '\\':
+						buffer[size++] = '\\';
+						buffer[size++] = '\\';
+						continue;
+					case '\b':
+						buffer[size++] = '\\';
+						buffer[size++] = 'b';
+						continue;
+					case '\f':
+						buffer[size++] = '\\';
+						buffer[size++] = 'f';
+						continue;
+					case '\n':
+						buffer[size++] = '\\';
+						buffer[size++] = 'n';
+						continue;
+					case '\r':
+						buffer[size++] = '\\';
+						buffer[size++] = 'r';
+						continue;
+					case '\t':
+						buffer[size++] = '\\';
+						buffer[size++] = 't';
+						continue;
+					case '/':
+						buffer[size++] = '\\';
+						buffer[size++] = '/';
+						continue;
+				}
+				//Те же диапазоны, что экранирует JSONStyle.NO_COMPRESS
+				if (ch <= 0x1F || (ch >= 0x7F && ch <= 0x9F) || (ch >= 0x2000 && ch <= 0x20FF)) {
+					buffer[size++] = '\\';
+					buffer[size++] = 'u';
+					buffer[size++] = HEX[(ch >> 12) & 0xF];
+					buffer[size++] = HEX[(ch >> 8) & 0xF];
+					buffer[size++] = HEX[(ch >> 4) & 0xF];
+					buffer[size++] = HEX[ch & 0xF];
+					continue;
+				}
+			}
+			if (ch < 0x80) {
+				buffer[size++] = (byte) ch;
+			} else if (ch < 0x800) {
+				buffer[size++] = (byte) (0xC0 | (ch >> 6));
+				buffer[size++] = (byte) (0x80 | (ch & 0x3F));
+			} else if (Character.isHighSurrogate(ch) && i + 1 < length && Character.isLowSurrogate(value.charAt(i + 1))) {
+				int codePoint = Character.toCodePoint(ch, value.charAt(++i));
+				buffer[size++] = (byte) (0xF0 | (codePoint >> 18));
+				buffer[size++] = (byte) (0x80 | ((codePoint >> 12) & 0x3F));
+				buffer[size++] = (byte) (0x80 | ((codePoint >> 6) & 0x3F));
+				buffer[size++] = (byte) (0x80 | (codePoint & 0x3F));
+			} else if (Character.isSurrogate(ch)) {
+				//Непарный суррогат, как и String.getBytes(UTF_8)
+				buffer[size++] = '?';
+			} else {
+				buffer[size++] = (byte) (0xE0 | (ch >> 12));
+				buffer[size++] = (byte) (0x80 | ((ch >> 6) & 0x3F));
+				buffer[size++] = (byte) (0x80 | (ch & 0x3F));
+			}
+		}
+		if (quote) {
+			buffer[size++] = '"';
+		}
+	}
+
+	private void writeAscii(String value) {
+		int length = value.length();
+		ensureCapacity(length);
+		for (int i = 0; i < length; i++) {
+			buffer[size++] = (byte) value.charAt(i);
+		}
+	}
+
+	private void writeBytes(byte[] value) {
+		ensureCapacity(value.length);
+		System.arraycopy(value, 0, buffer, size, value.length);
+		size += value.length;
+	}
+
+	private void ensureCapacity(int length) {
+		if (size + length > buffer.length) {
+			buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, size + length));
+		}
+	}
+}
@@ -0,0 +1,179 @@
+/*
+ Copyright (c) 2019. Vladimir Ulitin, Partners Healthcare and members of Forome Association
+
+ Developed by Vladimir Ulitin and Michael Bouzinier
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+	 http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+*/
+
+package org.forome.annotation.output;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Многопоточное gzip-сжатие: данные разбиваются на блоки, каждый блок сжимается независимо
+ * в отдельный gzip-блок (member), блоки записываются строго по порядку.
+ * Результат - последовательность gzip-блоков, которая читается gunzip и GZIPInputStream как единый поток.
+ * Ценой независимых блоков является немного худшая степень сжатия.
+ */
+public class ParallelGZIPOutputStream extends OutputStream {
+
+	public static final int DEFAULT_BLOCK_SIZE = 1024 * 1024;
+
+	public static final int DEFAULT_THREADS = Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors() / 2));
+
+	private static final AtomicInteger instanceNumber = new AtomicInteger();
+
+	private final OutputStream out;
+	private final int blockSize;
+
+	private final ExecutorService executorService;
+	private final Deque<Future<byte[]>> pending;
+	private final int maxPending;
+
+	private byte[] block;
+	private int blockLength;
+
+	private boolean written;
+	private boolean closed;
+
+	public ParallelGZIPOutputStream(OutputStream out) {
+		this(out, DEFAULT_THREADS);
+	}
+
+	public ParallelGZIPOutputStream(OutputStream out, int threads) {
+		this(out, threads, DEFAULT_BLOCK_SIZE);
+	}
+
+	public ParallelGZIPOutputStream(OutputStream out, int threads, int blockSize) {
+		if (threads < 1) throw new IllegalArgumentException();
+		if (blockSize < 1) throw new IllegalArgumentException();
+
+		this.out = out;
+		this.blockSize = blockSize;
+
+		String name = "gzip-" + instanceNumber.incrementAndGet();
+		AtomicInteger threadNumber = new AtomicInteger();
+		this.executorService = Executors.newFixedThreadPool(threads, r -> {
+			Thread thread = new Thread(r, name + "-t-" + threadNumber.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		});
+		this.pending = new ArrayDeque<>();
+		//Ограничивает память, занятую несжатыми и еще не записанными блоками
+		this.maxPending = threads * 2;
+
+		this.block = new byte[blockSize];
+		this.blockLength = 0;
+	}
+
+	@Override
+	public void write(int b) throws IOException {
+		if (blockLength == blockSize) {
+			submitBlock();
+		}
+		block[blockLength++] = (byte) b;
+	}
+
+	@Override
+	public void write(byte[] b, int off, int len) throws IOException {
+		while (len > 0) {
+			if (blockLength == blockSize) {
+				submitBlock();
+			}
+			int size = Math.min(len, blockSize - blockLength);
+			System.arraycopy(b, off, block, blockLength, size);
+			blockLength += size;
+			off += size;
+			len -= size;
+		}
+	}
+
+	private void submitBlock() throws IOException {
+		if (closed) throw new IOException("Stream closed");
+
+		while (pending.size() >= maxPending) {
+			writeBlock(pending.poll());
+		}
+
+		byte[] data = block;
+		int length = blockLength;
+		pending.add(executorService.submit(() -> compress(data, length)));
+
+		block = new byte[blockSize];
+		blockLength = 0;
+	}
+
+	private void writeBlock(Future<byte[]> future) throws IOException {
+		try {
+			out.write(future.get());
+			written = true;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException(e);
+		} catch (ExecutionException e) {
+			throw new IOException(e.getCause());
+		}
+	}
+
+	private static byte[] compress(byte[] data, int length) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream(Math.max(length / 4, 64));
+		try (GZIPOutputStream gzipOutputStream = new GZIPOutputStream(bytes)) {
+			gzipOutputStream.write(data, 0, length);
+		}
+		return bytes.toByteArray();
+	}
+
+	/**
+	 * Сжимает и записывает все накопленные данные, текущий блок завершается досрочно.
+	 * После вызова записанное является корректным gzip-файлом
+	 */
+	@Override
+	public void flush() throws IOException {
+		if (blockLength > 0) {
+			submitBlock();
+		}
+		while (!pending.isEmpty()) {
+			writeBlock(pending.poll());
+		}
+		out.flush();
+	}
+
+	@Override
+	public void close() throws IOException {
+		if (closed) {
+			return;
+		}
+		try {
+			flush();
+			if (!written) {
+				//Пустой файл не является корректным gzip-файлом
+				out.write(compress(block, 0));
+			}
+		} finally {
+			closed = true;
+			executorService.shutdownNow();
+			out.close();
+		}
+	}
+}
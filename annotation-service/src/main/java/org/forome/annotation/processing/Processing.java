@@ -24,13 +24,12 @@ import graphql.GraphQL;
 import graphql.annotations.AnnotationsSchemaCreator;
 import graphql.schema.GraphQLSchema;
 import net.minidev.json.JSONObject;
-import net.minidev.json.JSONStyle;
-import net.minidev.json.parser.JSONParser;
-import net.minidev.json.parser.ParseException;
 import org.apache.commons.io.IOUtils;
 import org.forome.annotation.data.anfisa.AnfisaConnector;
 import org.forome.annotation.data.anfisa.struct.AnfisaInput;
 import org.forome.annotation.data.anfisa.struct.AnfisaResult;
+import org.forome.annotation.processing.graphql.CompiledQuery;
+import org.forome.annotation.processing.graphql.PreparsedDocumentCache;
 import org.forome.annotation.processing.graphql.record.GRecord;
 import org.forome.annotation.processing.smavariant.SplitMAVariant;
 import org.forome.annotation.processing.statistics.StatisticsInstrumentation;
@@ -42,6 +41,7 @@ import org.forome.annotation.struct.mcase.MCase;
 import org.forome.annotation.struct.variant.Variant;
 import org.forome.annotation.struct.variant.VariantStruct;
 import org.forome.annotation.struct.variant.VariantType;
+import org.forome.annotation.utils.PrefetchScope;
 import org.forome.annotation.utils.Statistics;
 import org.forome.core.struct.Assembly;
 import org.forome.core.struct.Interval;
@@ -53,6 +53,7 @@ import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 
 public class Processing {
 
@@ -68,24 +69,46 @@ public class Processing {
 
 	public final Statistics graphqlStatistics = new Statistics();
 	public final Statistics anfisaStatistics = new Statistics();
-	public final StatisticsInstrumentation statisticsInstrumentation = new StatisticsInstrumentation();
+	public final StatisticsInstrumentation statisticsInstrumentation;
+
+	private final CompiledQuery compiledQuery;
 
 	public Processing(
 			Source source,
 			AnfisaConnector anfisaConnector,
 			TypeQuery typeQuery
+	) {
+		this(source, anfisaConnector, typeQuery, false, true);
+	}
+
+	/**
+	 * @param compileQuery - выполнять запрос через скомпилированный план прямых вызовов (пакетная аннотация),
+	 *                     иначе через graphql-java
+	 * @param statistics   - гистограммы времени полей GraphQL, выключенная статистика не добавляет накладных расходов
+	 */
+	public Processing(
+			Source source,
+			AnfisaConnector anfisaConnector,
+			TypeQuery typeQuery,
+			boolean compileQuery,
+			boolean statistics
 	) {
 		this.source = source;
 
+		this.statisticsInstrumentation = new StatisticsInstrumentation(statistics);
+
 		this.anfisaConnector = anfisaConnector;
 
 		GraphQLSchema graphQLSchema = AnnotationsSchemaCreator.newAnnotationsSchema()
 				.query(GRecord.class)
 				.build();
+		graphQLSchema = statisticsInstrumentation.instrument(graphQLSchema);
+
+		PreparsedDocumentCache preparsedDocumentCache = new PreparsedDocumentCache();
 
 		graphQL = GraphQL
 				.newGraphQL(graphQLSchema)
-				.instrumentation(statisticsInstrumentation)
+				.preparsedDocumentProvider(preparsedDocumentCache)
 				.build();
 
 		try (InputStream inputStream = getClass().getClassLoader().getResourceAsStream("graphql/annotator/" + typeQuery.fileNameGraphQLQuery)) {
@@ -93,6 +116,10 @@ public class Processing {
 		} catch (Throwable e) {
 			throw new RuntimeException(e);
 		}
+
+		preparsedDocumentCache.warmup(graphQLSchema, graphQLQuery);
+
+		compiledQuery = (compileQuery) ? CompiledQuery.compile(GRecord.class, graphQLQuery, statisticsInstrumentation) : null;
 	}
 
 	public AnfisaConnector getAnfisaConnector() {
@@ -104,7 +131,7 @@ public class Processing {
 			MAVariant maVariant
 	) {
 		List<ProcessingResult> results = new ArrayList<>();
-		for (Variant variant : SplitMAVariant.build(maVariant).split()) {
+		for (Variant variant : split(maVariant)) {
 
 			//Валидируем ref
 			validate(mCase.assembly, variant);
@@ -115,6 +142,41 @@ public class Processing {
 		return results;
 	}
 
+	/**
+	 * Аннотирование блока соседних вариантов: данные всех источников для блока загружаются пакетно,
+	 * после чего каждый AnfisaResult строится из предзагруженных данных
+	 *
+	 * @return результаты в порядке maVariants
+	 */
+	public List<List<ProcessingResult>> execBatch(
+			MCase mCase,
+			List<MAVariant> maVariants
+	) {
+		List<List<Variant>> splitVariants = new ArrayList<>();
+		List<Variant> variants = new ArrayList<>();
+		for (MAVariant maVariant : maVariants) {
+			List<Variant> items = split(maVariant);
+			splitVariants.add(items);
+			variants.addAll(items);
+		}
+
+		List<List<ProcessingResult>> results = new ArrayList<>();
+		try (PrefetchScope prefetchScope = prefetch(mCase, variants)) {
+			for (List<Variant> items : splitVariants) {
+				List<ProcessingResult> itemResults = new ArrayList<>();
+				for (Variant variant : items) {
+
+					//Валидируем ref
+					validate(mCase.assembly, variant);
+
+					itemResults.add(exec(mCase, variant));
+				}
+				results.add(itemResults);
+			}
+		}
+		return results;
+	}
+
 	public ProcessingResult exec(
 			MCase mCase,
 			Variant variant
@@ -124,59 +186,82 @@ public class Processing {
 			if (mCase == null) throw new IllegalArgumentException();
 			if (variant == null) throw new IllegalArgumentException();
 
-			JSONObject result = new JSONObject();
+			AnfisaResult anfisaResult = build(mCase, variant);
+			return execGraphQL(mCase, variant, anfisaResult);
+		} catch (Throwable e) {
+			throw new RuntimeException("Exception build variant: " + variant.toString(), e);
+		}
+	}
 
-			long t1 = System.currentTimeMillis();
-			AnfisaResult anfisaResult = anfisaConnector.build(
-					new AnfisaInput.Builder(mCase.assembly).withSamples(mCase).build(),
-					variant
-			);
-			anfisaStatistics.addTime(System.currentTimeMillis() - t1);
+	/**
+	 * Разбиение мультиаллельного варианта на варианты, без валидации
+	 */
+	public List<Variant> split(MAVariant maVariant) {
+		return SplitMAVariant.build(maVariant).split();
+	}
+
+	/**
+	 * Пакетная загрузка данных источников для вариантов, см. {@link AnfisaConnector#prefetch(Assembly, List)}
+	 */
+	public PrefetchScope prefetch(MCase mCase, List<Variant> variants) {
+		return anfisaConnector.prefetch(mCase.assembly, variants);
+	}
 
-			result.merge(anfisaResult.toJSON());
+	public AnfisaResult build(
+			MCase mCase,
+			Variant variant
+	) {
+		long t1 = System.currentTimeMillis();
+		AnfisaResult anfisaResult = anfisaConnector.build(
+				new AnfisaInput.Builder(mCase.assembly).withSamples(mCase).build(),
+				variant
+		);
+		anfisaStatistics.addTime(System.currentTimeMillis() - t1);
+		return anfisaResult;
+	}
 
-			t1 = System.currentTimeMillis();
+	public ProcessingResult execGraphQL(
+			MCase mCase,
+			Variant variant,
+			AnfisaResult anfisaResult
+	) {
+		JSONObject result = anfisaResult.toJSON();
+
+		GContext gContext = new GContext(
+				source,
+				mCase, variant,
+				anfisaConnector, anfisaResult.context
+		);
+
+		long t1 = System.currentTimeMillis();
+		Map<String, Object> graphQLData;
+		if (compiledQuery != null) {
+			graphQLData = compiledQuery.execute(gContext);
+		} else {
 			ExecutionResult graphQLExecutionResult = graphQL.execute(
 					ExecutionInput.newExecutionInput()
 							.query(graphQLQuery)
 							.variables(Collections.emptyMap())
-							.context(
-									new GContext(
-											source,
-											mCase, variant,
-											anfisaConnector, anfisaResult.context
-									)
-							)
+							.context(gContext)
 							.build()
 			);
 			if (!graphQLExecutionResult.getErrors().isEmpty()) {
 				log.error("exception: " + graphQLExecutionResult.getErrors());
 				throw new RuntimeException();
 			}
-			graphqlStatistics.addTime(System.currentTimeMillis() - t1);
-
-			//TODO Ulitin V. удалить временный костыль, введен из-за проблем мержинга данных
-			JSONObject graphQLResult;
-			try {
-				graphQLResult = (JSONObject) new JSONParser(JSONParser.DEFAULT_PERMISSIVE_MODE).parse(
-						new JSONObject(graphQLExecutionResult.getData()).toJSONString(JSONStyle.NO_COMPRESS)
-				);
-			} catch (ParseException e) {
-				throw new RuntimeException(e);
-			}
-
-			result.merge(graphQLResult);
-
-			return new ProcessingResult(
-					variant,
-					result
-			);
-		} catch (Throwable e) {
-			throw new RuntimeException("Exception build variant: " + variant.toString(), e);
+			graphQLData = graphQLExecutionResult.getData();
 		}
+		graphqlStatistics.addTime(System.currentTimeMillis() - t1);
+
+		//Дерево GraphQL сливается с результатом при сериализации (или при первом обращении к toJSON)
+		return new ProcessingResult(
+				variant,
+				result,
+				graphQLData
+		);
 	}
 
-	private void validate(Assembly assembly, Variant variant) {
+	public void validate(Assembly assembly, Variant variant) {
 		try {
 			VariantStruct variantStruct = variant.variantStruct;
 			VariantType variantType = variant.getVariantType();
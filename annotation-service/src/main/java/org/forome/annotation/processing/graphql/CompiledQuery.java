@@ -0,0 +1,268 @@
+/*
+ Copyright (c) 2019. Vladimir Ulitin, Partners Healthcare and members of Forome Association
+
+ Developed by Vladimir Ulitin and Michael Bouzinier
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+	 http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+*/
+
+package org.forome.annotation.processing.graphql;
+
+import graphql.annotations.annotationTypes.GraphQLField;
+import graphql.annotations.annotationTypes.GraphQLName;
+import graphql.language.Document;
+import graphql.language.Field;
+import graphql.language.OperationDefinition;
+import graphql.language.Selection;
+import graphql.language.SelectionSet;
+import graphql.parser.Parser;
+import graphql.schema.DataFetchingEnvironment;
+import graphql.schema.DataFetchingEnvironmentImpl;
+import org.forome.annotation.processing.statistics.FieldHistogram;
+import org.forome.annotation.processing.statistics.StatisticsInstrumentation;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Array;
+import java.lang.reflect.GenericArrayType;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Неизменный запрос аннотатора, скомпилированный в план прямых вызовов методов GRecord* (через MethodHandle).
+ * Результат совпадает с ExecutionResult.getData() graphql-java для того же запроса,
+ * но без разрешения полей через схему, MethodDataFetcher и рефлексию на каждый вариант.
+ * Поддерживаются только поля без аргументов, директив и фрагментов - как в запросах resources/graphql/annotator
+ */
+public class CompiledQuery {
+
+	private static final MethodType FETCHER_TYPE = MethodType.methodType(Object.class, Object.class, DataFetchingEnvironment.class);
+
+	private final Node[] fields;
+
+	private CompiledQuery(Node[] fields) {
+		this.fields = fields;
+	}
+
+	public Map<String, Object> execute(Object context) {
+		DataFetchingEnvironment env = DataFetchingEnvironmentImpl.newDataFetchingEnvironment()
+				.context(context)
+				.build();
+		return resolve(null, fields, env);
+	}
+
+	public static CompiledQuery compile(Class<?> queryClass, String query) {
+		return compile(queryClass, query, null);
+	}
+
+	/**
+	 * @param statisticsInstrumentation - статистика времени полей, та же что и у схемы graphql-java (может быть null)
+	 */
+	public static CompiledQuery compile(Class<?> queryClass, String query, StatisticsInstrumentation statisticsInstrumentation) {
+		Document document = new Parser().parseDocument(query);
+		List<OperationDefinition> operations = document.getDefinitionsOfType(OperationDefinition.class);
+		if (operations.size() != 1 || document.getDefinitions().size() != 1) {
+			throw new RuntimeException("Compiled query supports only a single operation");
+		}
+		OperationDefinition operation = operations.get(0);
+		if (operation.getOperation() != OperationDefinition.Operation.QUERY
+				|| !operation.getVariableDefinitions().isEmpty() || !operation.getDirectives().isEmpty()) {
+			throw new RuntimeException("Compiled query supports only a query without variables and directives");
+		}
+		return new CompiledQuery(compile(queryClass, operation.getSelectionSet(), "", statisticsInstrumentation));
+	}
+
+	private static Node[] compile(Class<?> type, SelectionSet selectionSet, String path, StatisticsInstrumentation statisticsInstrumentation) {
+		List<Node> nodes = new ArrayList<>();
+		for (Selection selection : selectionSet.getSelections()) {
+			if (!(selection instanceof Field)) {
+				throw new RuntimeException("Unsupported selection: " + selection + ", path: " + path);
+			}
+			Field field = (Field) selection;
+			String fieldPath = path + "/" + field.getName();
+			if (!field.getArguments().isEmpty() || !field.getDirectives().isEmpty()) {
+				throw new RuntimeException("Unsupported arguments or directives, path: " + fieldPath);
+			}
+
+			Method method = findMethod(type, field.getName());
+			if (method == null) {
+				throw new RuntimeException("Not found field: " + fieldPath + " in " + type.getName());
+			}
+
+			Node[] children = null;
+			if (field.getSelectionSet() != null) {
+				children = compile(getElementType(method.getGenericReturnType()), field.getSelectionSet(), fieldPath, statisticsInstrumentation);
+			}
+
+			String key = (field.getAlias() != null) ? field.getAlias() : field.getName();
+			FieldHistogram histogram = (statisticsInstrumentation != null) ?
+					statisticsInstrumentation.getHistogram(getTypeName(type), field.getName()) : null;
+			nodes.add(new Node(key, fieldPath, toFetcher(method), histogram, children));
+		}
+		return nodes.toArray(new Node[0]);
+	}
+
+	private static String getTypeName(Class<?> type) {
+		GraphQLName graphQLName = type.getAnnotation(GraphQLName.class);
+		return (graphQLName != null) ? graphQLName.value() : type.getSimpleName();
+	}
+
+	private static Method findMethod(Class<?> type, String name) {
+		for (Method method : type.getMethods()) {
+			if (!method.isAnnotationPresent(GraphQLField.class)) {
+				continue;
+			}
+			GraphQLName graphQLName = method.getAnnotation(GraphQLName.class);
+			String methodName = (graphQLName != null) ? graphQLName.value() : method.getName();
+			if (name.equals(methodName)) {
+				return method;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Приводим все варианты методов (статические/экземпляра, с DataFetchingEnvironment или без) к (Object, env)Object
+	 */
+	private static MethodHandle toFetcher(Method method) {
+		Class<?>[] parameterTypes = method.getParameterTypes();
+		boolean withEnv = (parameterTypes.length == 1 && parameterTypes[0] == DataFetchingEnvironment.class);
+		if (parameterTypes.length != 0 && !withEnv) {
+			throw new RuntimeException("Unsupported field method: " + method);
+		}
+
+		MethodHandle handle;
+		try {
+			handle = MethodHandles.publicLookup().unreflect(method);
+		} catch (IllegalAccessException e) {
+			throw new RuntimeException(e);
+		}
+
+		if (Modifier.isStatic(method.getModifiers())) {
+			if (withEnv) {
+				handle = handle.asType(MethodType.methodType(Object.class, DataFetchingEnvironment.class));
+			} else {
+				handle = MethodHandles.dropArguments(handle.asType(MethodType.methodType(Object.class)), 0, DataFetchingEnvironment.class);
+			}
+			handle = MethodHandles.dropArguments(handle, 0, Object.class);
+		} else {
+			if (withEnv) {
+				handle = handle.asType(FETCHER_TYPE);
+			} else {
+				handle = MethodHandles.dropArguments(
+						handle.asType(MethodType.methodType(Object.class, Object.class)), 1, DataFetchingEnvironment.class
+				);
+			}
+		}
+		return handle.asType(FETCHER_TYPE);
+	}
+
+	private static Class<?> getElementType(Type type) {
+		if (type instanceof Class) {
+			Class<?> clazz = (Class<?>) type;
+			return (clazz.isArray()) ? clazz.getComponentType() : clazz;
+		} else if (type instanceof ParameterizedType) {
+			ParameterizedType parameterizedType = (ParameterizedType) type;
+			if (Iterable.class.isAssignableFrom((Class<?>) parameterizedType.getRawType())) {
+				return getElementType(parameterizedType.getActualTypeArguments()[0]);
+			}
+			return (Class<?>) parameterizedType.getRawType();
+		} else if (type instanceof GenericArrayType) {
+			return getElementType(((GenericArrayType) type).getGenericComponentType());
+		}
+		throw new RuntimeException("Unsupported type: " + type);
+	}
+
+	private static Map<String, Object> resolve(Object source, Node[] nodes, DataFetchingEnvironment env) {
+		Map<String, Object> out = new LinkedHashMap<>();
+		for (Node node : nodes) {
+			Object value;
+			long t1 = (node.histogram != null) ? System.nanoTime() : 0;
+			try {
+				value = node.fetcher.invokeExact(source, env);
+			} catch (Throwable e) {
+				throw new RuntimeException("Exception fetch field: " + node.path, e);
+			}
+			if (node.histogram != null) {
+				node.histogram.record(System.nanoTime() - t1);
+			}
+			out.put(node.key, complete(value, node.children, env));
+		}
+		return out;
+	}
+
+	private static Object complete(Object value, Node[] children, DataFetchingEnvironment env) {
+		if (value == null) {
+			return null;
+		} else if (value instanceof Iterable) {
+			List<Object> items = new ArrayList<>();
+			for (Object item : (Iterable<?>) value) {
+				items.add(complete(item, children, env));
+			}
+			return items;
+		} else if (value.getClass().isArray()) {
+			int length = Array.getLength(value);
+			List<Object> items = new ArrayList<>(length);
+			for (int i = 0; i < length; i++) {
+				items.add(complete(Array.get(value, i), children, env));
+			}
+			return items;
+		} else if (children != null) {
+			return resolve(value, children, env);
+		} else {
+			return serializeScalar(value);
+		}
+	}
+
+	/**
+	 * Приведение к тем же значениям, что выдают скаляры graphql-java
+	 */
+	private static Object serializeScalar(Object value) {
+		if (value instanceof Double || value instanceof Float) {
+			double d = ((Number) value).doubleValue();
+			if (Double.isNaN(d) || Double.isInfinite(d)) {
+				//GraphQLFloat не сериализует такие значения, запрос завершается ошибкой
+				throw new RuntimeException("Expected type 'Float' but was: " + value);
+			}
+			//GraphQLFloat приводит Float к Double через строковое представление
+			return (value instanceof Float) ? Double.valueOf(value.toString()) : value;
+		} else if (value instanceof Enum) {
+			return ((Enum<?>) value).name();
+		}
+		return value;
+	}
+
+	private static class Node {
+
+		private final String key;
+		private final String path;
+		private final MethodHandle fetcher;
+		private final FieldHistogram histogram;
+		private final Node[] children;
+
+		private Node(String key, String path, MethodHandle fetcher, FieldHistogram histogram, Node[] children) {
+			this.key = key;
+			this.path = path;
+			this.fetcher = fetcher;
+			this.histogram = histogram;
+			this.children = children;
+		}
+	}
+}
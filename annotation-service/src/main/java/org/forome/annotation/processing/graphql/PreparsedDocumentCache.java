@@ -0,0 +1,74 @@
+/*
+ Copyright (c) 2019. Vladimir Ulitin, Partners Healthcare and members of Forome Association
+
+ Developed by Vladimir Ulitin and Michael Bouzinier
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+	 http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+*/
+
+package org.forome.annotation.processing.graphql;
+
+import graphql.ExecutionInput;
+import graphql.execution.preparsed.PreparsedDocumentEntry;
+import graphql.execution.preparsed.PreparsedDocumentProvider;
+import graphql.language.Document;
+import graphql.parser.Parser;
+import graphql.schema.GraphQLSchema;
+import graphql.validation.ValidationError;
+import graphql.validation.Validator;
+
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Function;
+
+/**
+ * Кэш разобранных и провалидированных graphql-запросов: набор запросов фиксирован,
+ * поэтому каждый запрос разбирается один раз, а не на каждый вариант
+ */
+public class PreparsedDocumentCache implements PreparsedDocumentProvider {
+
+	private final ConcurrentMap<String, PreparsedDocumentEntry> documents;
+
+	public PreparsedDocumentCache() {
+		this.documents = new ConcurrentHashMap<>();
+	}
+
+	@Override
+	public PreparsedDocumentEntry getDocument(ExecutionInput executionInput, Function<ExecutionInput, PreparsedDocumentEntry> parseAndValidateFunction) {
+		String query = executionInput.getQuery();
+		PreparsedDocumentEntry entry = documents.get(query);
+		if (entry != null) {
+			return entry;
+		}
+
+		entry = parseAndValidateFunction.apply(executionInput);
+		//Запрос с ошибками не кэшируем
+		if (!entry.hasErrors()) {
+			documents.putIfAbsent(query, entry);
+		}
+		return entry;
+	}
+
+	/**
+	 * Разбор и валидация запроса заранее, чтобы первый вариант не платил за разбор
+	 */
+	public void warmup(GraphQLSchema graphQLSchema, String query) {
+		Document document = new Parser().parseDocument(query);
+		List<ValidationError> errors = new Validator().validateDocument(graphQLSchema, document);
+		if (!errors.isEmpty()) {
+			throw new RuntimeException("Invalid graphql query: " + errors);
+		}
+		documents.put(query, new PreparsedDocumentEntry(document));
+	}
+}
@@ -0,0 +1,144 @@
+/*
+ Copyright (c) 2019. Vladimir Ulitin, Partners Healthcare and members of Forome Association
+
+ Developed by Vladimir Ulitin and Michael Bouzinier
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+	 http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+*/
+
+package org.forome.annotation.processing.statistics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free гистограмма времени (наносекунды) с логарифмическими корзинами:
+ * значения до 16 нс точно, дальше 8 корзин на каждую степень двойки (погрешность перцентилей не более 12.5%)
+ */
+public class FieldHistogram {
+
+	public static class Stat {
+
+		public final long count;
+		public final long totalNanos;
+		public final long p50Nanos;
+		public final long p99Nanos;
+		public final long maxNanos;
+
+		public Stat(long count, long totalNanos, long p50Nanos, long p99Nanos, long maxNanos) {
+			this.count = count;
+			this.totalNanos = totalNanos;
+			this.p50Nanos = p50Nanos;
+			this.p99Nanos = p99Nanos;
+			this.maxNanos = maxNanos;
+		}
+
+		@Override
+		public String toString() {
+			return "Stat(" +
+					"count: " + count +
+					", time: " + String.format("%.3f", totalNanos / 1_000_000.0d) + " (millis)" +
+					", p50: " + String.format("%.3f", p50Nanos / 1000.0d) + " (micros)" +
+					", p99: " + String.format("%.3f", p99Nanos / 1000.0d) + " (micros)" +
+					", max: " + String.format("%.3f", maxNanos / 1000.0d) + " (micros)" +
+					')';
+		}
+	}
+
+	private static final int LINEAR_BUCKETS = 16;
+	private static final int SUB_BUCKET_BITS = 3;
+	private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+	//Минимальная степень двойки в логарифмической части: 16 = 2^4
+	private static final int MIN_EXPONENT = 4;
+	private static final int BUCKETS = LINEAR_BUCKETS + (63 - MIN_EXPONENT) * SUB_BUCKETS;
+
+	public final String name;
+
+	private final AtomicLongArray buckets;
+	private final AtomicLong count;
+	private final AtomicLong total;
+	private final AtomicLong max;
+
+	public FieldHistogram(String name) {
+		this.name = name;
+		this.buckets = new AtomicLongArray(BUCKETS);
+		this.count = new AtomicLong();
+		this.total = new AtomicLong();
+		this.max = new AtomicLong();
+	}
+
+	public void record(long nanos) {
+		if (nanos < 0) {
+			nanos = 0;
+		}
+		buckets.incrementAndGet(index(nanos));
+		count.incrementAndGet();
+		total.addAndGet(nanos);
+
+		long current = max.get();
+		while (nanos > current && !max.compareAndSet(current, nanos)) {
+			current = max.get();
+		}
+	}
+
+	public Stat getStat() {
+		long[] snapshot = new long[BUCKETS];
+		long snapshotCount = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			snapshot[i] = buckets.get(i);
+			snapshotCount += snapshot[i];
+		}
+		long maxNanos = max.get();
+		return new Stat(
+				snapshotCount, total.get(),
+				Math.min(percentile(snapshot, snapshotCount, 0.50d), maxNanos),
+				Math.min(percentile(snapshot, snapshotCount, 0.99d), maxNanos),
+				maxNanos
+		);
+	}
+
+	private static long percentile(long[] snapshot, long count, double quantile) {
+		if (count == 0) {
+			return 0;
+		}
+		long rank = (long) Math.ceil(quantile * count);
+		long cumulative = 0;
+		for (int i = 0; i < snapshot.length; i++) {
+			cumulative += snapshot[i];
+			if (cumulative >= rank) {
+				return upperBound(i);
+			}
+		}
+		return upperBound(snapshot.length - 1);
+	}
+
+	static int index(long nanos) {
+		if (nanos < LINEAR_BUCKETS) {
+			return (int) nanos;
+		}
+		int exponent = 63 - Long.numberOfLeadingZeros(nanos);
+		int subBucket = (int) (nanos >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+		return LINEAR_BUCKETS + (exponent - MIN_EXPONENT) * SUB_BUCKETS + subBucket;
+	}
+
+	static long upperBound(int index) {
+		if (index < LINEAR_BUCKETS) {
+			return index;
+		}
+		int exponent = (index - LINEAR_BUCKETS) / SUB_BUCKETS + MIN_EXPONENT;
+		int subBucket = (index - LINEAR_BUCKETS) % SUB_BUCKETS;
+		long width = 1L << (exponent - SUB_BUCKET_BITS);
+		return (1L << exponent) + (subBucket + 1) * width - 1;
+	}
+}
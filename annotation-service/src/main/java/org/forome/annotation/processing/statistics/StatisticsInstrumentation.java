@@ -18,46 +18,89 @@
 
 package org.forome.annotation.processing.statistics;
 
-import graphql.annotations.dataFetchers.MethodDataFetcher;
-import graphql.execution.instrumentation.SimpleInstrumentation;
-import graphql.execution.instrumentation.parameters.InstrumentationFieldFetchParameters;
 import graphql.schema.DataFetcher;
 import graphql.schema.DataFetchingEnvironment;
-import org.forome.annotation.utils.Statistics;
+import graphql.schema.FieldCoordinates;
+import graphql.schema.GraphQLCodeRegistry;
+import graphql.schema.GraphQLFieldDefinition;
+import graphql.schema.GraphQLNamedType;
+import graphql.schema.GraphQLObjectType;
+import graphql.schema.GraphQLSchema;
 
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
-import java.util.stream.Collectors;
 
-public class StatisticsInstrumentation extends SimpleInstrumentation {
+/**
+ * Статистика времени выполнения полей GraphQL.
+ * Поля (тип.поле) и их гистограммы определяются один раз при построении схемы - на каждый вызов поля
+ * остаются только два System.nanoTime() и запись в lock-free гистограмму.
+ * В выключенном состоянии схема не изменяется
+ */
+public class StatisticsInstrumentation {
+
+	public final boolean enabled;
 
-	public final ConcurrentMap<String, Statistics> statistics;
+	public final ConcurrentMap<String, FieldHistogram> statistics;
 
-	public StatisticsInstrumentation() {
+	public StatisticsInstrumentation(boolean enabled) {
+		this.enabled = enabled;
 		this.statistics = new ConcurrentHashMap<>();
 	}
 
-	@Override
-	public DataFetcher<?> instrumentDataFetcher(DataFetcher<?> dataFetcher, InstrumentationFieldFetchParameters parameters) {
-		MethodDataFetcher source = (MethodDataFetcher) dataFetcher;
-		return new DataFetcher<Object>() {
-			@Override
-			public Object get(DataFetchingEnvironment environment) throws Exception {
-				long t1 = System.currentTimeMillis();
-				Object result = source.get(environment);
-
-				String path = parameters.getExecutionStepInfo().getPath().toList().stream()
-						.filter(o -> o instanceof String)
-						.map(o -> (String)o)
-						.collect(Collectors.joining("/", "/",""));
-				statistics.computeIfAbsent(
-						path, s -> new Statistics()
-				).addTime(
-						System.currentTimeMillis() - t1
-				);
-
-				return result;
+	/**
+	 * Оборачивает data fetcher'ы всех полей объектных типов схемы замером времени
+	 */
+	public GraphQLSchema instrument(GraphQLSchema schema) {
+		if (!enabled) {
+			return schema;
+		}
+		GraphQLCodeRegistry codeRegistry = schema.getCodeRegistry();
+		GraphQLCodeRegistry instrumentedCodeRegistry = codeRegistry.transform(builder -> {
+			for (GraphQLNamedType type : schema.getAllTypesAsList()) {
+				if (!(type instanceof GraphQLObjectType) || type.getName().startsWith("__")) {
+					continue;
+				}
+				GraphQLObjectType objectType = (GraphQLObjectType) type;
+				for (GraphQLFieldDefinition fieldDefinition : objectType.getFieldDefinitions()) {
+					DataFetcher<?> dataFetcher = codeRegistry.getDataFetcher(objectType, fieldDefinition);
+					builder.dataFetcher(
+							FieldCoordinates.coordinates(objectType, fieldDefinition),
+							new TimedDataFetcher(dataFetcher, getHistogram(objectType.getName(), fieldDefinition.getName()))
+					);
+				}
+			}
+		});
+		return schema.transform(builder -> builder.codeRegistry(instrumentedCodeRegistry));
+	}
+
+	/**
+	 * Гистограмма поля, null - статистика выключена
+	 */
+	public FieldHistogram getHistogram(String typeName, String fieldName) {
+		if (!enabled) {
+			return null;
+		}
+		return statistics.computeIfAbsent(typeName + "." + fieldName, FieldHistogram::new);
+	}
+
+	private static class TimedDataFetcher implements DataFetcher<Object> {
+
+		private final DataFetcher<?> dataFetcher;
+		private final FieldHistogram histogram;
+
+		private TimedDataFetcher(DataFetcher<?> dataFetcher, FieldHistogram histogram) {
+			this.dataFetcher = dataFetcher;
+			this.histogram = histogram;
+		}
+
+		@Override
+		public Object get(DataFetchingEnvironment environment) throws Exception {
+			long t1 = System.nanoTime();
+			try {
+				return dataFetcher.get(environment);
+			} finally {
+				histogram.record(System.nanoTime() - t1);
 			}
-		};
+		}
 	}
 }
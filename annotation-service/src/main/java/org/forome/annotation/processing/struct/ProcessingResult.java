@@ -19,20 +19,86 @@
 package org.forome.annotation.processing.struct;
 
 import net.minidev.json.JSONObject;
+import org.forome.annotation.output.JSONStreamWriter;
+import org.forome.annotation.processing.utils.JSONMerge;
 import org.forome.annotation.struct.variant.Variant;
 
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Map;
+
 public class ProcessingResult {
 
+	//Буфер сериализации свой у каждого потока, переиспользуется между записями
+	private static final ThreadLocal<JSONStreamWriter> writers = ThreadLocal.withInitial(JSONStreamWriter::new);
+
 	public final Variant variant;
 
-	private final JSONObject out;
+	private final JSONObject anfisaJSON;
+	private final Map<String, Object> graphQLData;
+
+	private volatile JSONObject out;
+	private volatile byte[] outBytes;
 
 	public ProcessingResult(Variant variant, JSONObject out) {
+		this(variant, out, null);
+	}
+
+	public ProcessingResult(Variant variant, JSONObject anfisaJSON, Map<String, Object> graphQLData) {
 		this.variant = variant;
-		this.out = out;
+		this.anfisaJSON = anfisaJSON;
+		this.graphQLData = graphQLData;
+		if (graphQLData == null) {
+			this.out = anfisaJSON;
+		}
 	}
 
-	public JSONObject toJSON(){
+	/**
+	 * Объединенное дерево результата, строится при первом обращении
+	 */
+	public synchronized JSONObject toJSON() {
+		if (out == null) {
+			JSONMerge.merge(anfisaJSON, graphQLData);
+			out = anfisaJSON;
+		}
 		return out;
 	}
+
+	/**
+	 * Сериализация в UTF-8 (без перевода строки), вычисляется один раз - например, стадией сериализации конвейера аннотации
+	 */
+	public byte[] serialize() {
+		byte[] value = outBytes;
+		if (value == null) {
+			JSONStreamWriter writer = writers.get();
+			writer.reset();
+			write(writer);
+			value = writer.toByteArray();
+			outBytes = value;
+		}
+		return value;
+	}
+
+	/**
+	 * Запись результата в поток без промежуточных String и byte[], если он еще не сериализован
+	 */
+	public void writeTo(OutputStream os) throws IOException {
+		byte[] value = outBytes;
+		if (value != null) {
+			os.write(value);
+		} else {
+			JSONStreamWriter writer = writers.get();
+			writer.reset();
+			write(writer);
+			writer.writeTo(os);
+		}
+	}
+
+	private synchronized void write(JSONStreamWriter writer) {
+		if (out != null) {
+			writer.writeValue(out);
+		} else {
+			writer.writeMerged(anfisaJSON, graphQLData);
+		}
+	}
 }
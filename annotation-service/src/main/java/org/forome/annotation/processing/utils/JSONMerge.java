@@ -0,0 +1,61 @@
+/*
+ Copyright (c) 2019. Vladimir Ulitin, Partners Healthcare and members of Forome Association
+
+ Developed by Vladimir Ulitin and Michael Bouzinier
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+	 http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+*/
+
+package org.forome.annotation.processing.utils;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Слияние результата GraphQL (LinkedHashMap/ArrayList) с деревом JSONObject без промежуточной сериализации.
+ * Правила те же, что у JSONObject.merge: объекты сливаются рекурсивно, массивы дополняются,
+ * совпадающие значения допустимы, остальные конфликты - ошибка
+ */
+public class JSONMerge {
+
+	@SuppressWarnings("unchecked")
+	public static void merge(Map<String, Object> target, Map<String, Object> source) {
+		if (source == null) {
+			return;
+		}
+		for (Map.Entry<String, Object> entry : source.entrySet()) {
+			String key = entry.getKey();
+			Object value = entry.getValue();
+
+			Object current = target.get(key);
+			if (current == null) {
+				//Ключ с null в target не перетираем пустым значением, как и JSONObject.merge
+				if (value != null || !target.containsKey(key)) {
+					target.put(key, value);
+				}
+			} else if (value == null) {
+				//ничего не делаем
+			} else if (current instanceof Map && value instanceof Map) {
+				merge((Map<String, Object>) current, (Map<String, Object>) value);
+			} else if (current instanceof List && value instanceof List) {
+				((List<Object>) current).addAll((List<Object>) value);
+			} else if (!current.equals(value)) {
+				throw new RuntimeException(
+						String.format("JSON merge can not merge %s with %s, key: %s",
+								current.getClass().getName(), value.getClass().getName(), key
+						)
+				);
+			}
+		}
+	}
+}
@@ -19,10 +19,26 @@
 package org.forome.annotation.service.source;
 
 import org.forome.annotation.service.source.struct.Source;
+import org.forome.annotation.struct.SourceMetadata;
 import org.forome.core.struct.Assembly;
 
+import java.util.Collections;
+import java.util.List;
+
 public interface DataSource {
 
 	Source getSource(Assembly assembly);
 
+	default void printStatistics() {
+	}
+
+	/**
+	 * Версии данных источников, пустой список - если неизвестны
+	 */
+	default List<SourceMetadata> getSourceMetadata() {
+		return Collections.emptyList();
+	}
+
+	default void close() {
+	}
 }
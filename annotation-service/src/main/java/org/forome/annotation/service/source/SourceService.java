@@ -23,11 +23,21 @@ import org.forome.annotation.config.source.SourceConfig;
 import org.forome.annotation.service.source.external.ExternalDataSource;
 import org.forome.annotation.service.source.internal.InternalDataSource;
 import org.forome.annotation.service.source.wrapper.WrapperDataSource;
+import org.forome.core.struct.Assembly;
+
+import java.nio.file.Path;
+import java.util.EnumMap;
+import java.util.Map;
 
 public class SourceService {
 
 	public final WrapperDataSource dataSource;
 
+	/**
+	 * Директория кешей на диске, общих для всех запусков (null - не используются)
+	 */
+	public final Path persistentCachePath;
+
 	public SourceService(SourceConfig config) {
 
 		DataSource ds;
@@ -43,7 +53,23 @@ public class SourceService {
 			throw new RuntimeException();
 		}
 
-		dataSource = new WrapperDataSource(ds);
+		persistentCachePath = config.persistentCachePath;
+		dataSource = new WrapperDataSource(ds, config.cacheSizeBytes, config.persistentCachePath, getFasta2bit(config));
+	}
+
+	private static Map<Assembly, Path> getFasta2bit(SourceConfig config) {
+		Map<Assembly, Path> fasta2bit = new EnumMap<>(Assembly.class);
+		if (config.fasta2bitHg37 != null) {
+			fasta2bit.put(Assembly.GRCh37, config.fasta2bitHg37);
+		}
+		if (config.fasta2bitHg38 != null) {
+			fasta2bit.put(Assembly.GRCh38, config.fasta2bitHg38);
+		}
+		return fasta2bit;
+	}
+
+	public void close() {
+		dataSource.close();
 	}
 
 }
@@ -18,24 +18,41 @@
 
 package org.forome.annotation.service.source.external;
 
+import net.minidev.json.JSONObject;
 import org.forome.annotation.config.source.SourceExternalConfig;
 import org.forome.annotation.config.sshtunnel.SshTunnelConfig;
 import org.forome.annotation.service.source.DataSource;
+import org.forome.annotation.service.source.external.fasta.FastaHttpRequest;
 import org.forome.annotation.service.source.external.httprequest.HttpRequest;
 import org.forome.annotation.service.source.external.source.ExternalSource;
 import org.forome.annotation.service.source.struct.Source;
+import org.forome.annotation.struct.SourceMetadata;
 import org.forome.annotation.service.ssh.SSHConnectService;
 import org.forome.annotation.service.ssh.struct.SSHConnect;
 import org.forome.astorage.core.liftover.LiftoverConnector;
 import org.forome.core.struct.Assembly;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
 import java.net.URL;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
 
 public class ExternalDataSource implements DataSource {
 
+	private final static Logger log = LoggerFactory.getLogger(ExternalDataSource.class);
+
 	public final URL url;
+
+	//Общий клиент с пулом соединений для всех запросов к AStorage
 	public final HttpRequest httpRequest;
+	public final FastaHttpRequest fastaHttpRequest;
 
 
 	public final LiftoverConnector liftoverConnector;
@@ -43,6 +60,7 @@ public class ExternalDataSource implements DataSource {
 	public ExternalDataSource(SourceExternalConfig sourceHttpConfig) {
 		this.url = buildUrl(sourceHttpConfig);
 		this.httpRequest = new HttpRequest(url);
+		this.fastaHttpRequest = new FastaHttpRequest(httpRequest);
 
 		try {
 			this.liftoverConnector = new LiftoverConnector();
@@ -56,6 +74,43 @@ public class ExternalDataSource implements DataSource {
 		return new ExternalSource(this, assembly);
 	}
 
+	/**
+	 * curl "localhost:8290/meta"
+	 * {"dbNSFP": {"version": "4.0a", "date": "2019-12-05"}, "gnomAD": {"version": "2.1.1", "date": "2019-03-06"}, ...}
+	 */
+	@Override
+	public List<SourceMetadata> getSourceMetadata() {
+		JSONObject response = httpRequest.request(
+				String.format("http://%s:%s/meta", url.getHost(), url.getPort())
+		);
+		List<SourceMetadata> result = new ArrayList<>();
+		for (Map.Entry<String, Object> entry : response.entrySet()) {
+			if (!(entry.getValue() instanceof JSONObject)) {
+				continue;
+			}
+			JSONObject jMeta = (JSONObject) entry.getValue();
+			result.add(new SourceMetadata(entry.getKey(), jMeta.getAsString("version"), parseDate(jMeta.getAsString("date"))));
+		}
+		return result;
+	}
+
+	private static Instant parseDate(String value) {
+		if (value == null || value.isEmpty()) {
+			return null;
+		}
+		try {
+			return LocalDate.parse(value).atStartOfDay(ZoneOffset.UTC).toInstant();
+		} catch (DateTimeParseException e) {
+			return null;
+		}
+	}
+
+	@Override
+	public void printStatistics() {
+		log.debug("AStorage http: {}, connections: {}", httpRequest.getStatistics(), httpRequest.getPoolStats());
+		log.debug("AStorage fasta: {}", fastaHttpRequest.getStatistics());
+	}
+
 	private final URL buildUrl(SourceExternalConfig sourceHttpConfig) {
 		if (sourceHttpConfig.sshTunnelConfig == null) {
 			return sourceHttpConfig.url;
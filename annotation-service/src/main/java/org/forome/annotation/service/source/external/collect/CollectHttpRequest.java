@@ -0,0 +1,199 @@
+/*
+ Copyright (c) 2019. Vladimir Ulitin, Partners Healthcare and members of Forome Association
+
+ Developed by Vladimir Ulitin and Michael Bouzinier
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+	 http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+*/
+
+package org.forome.annotation.service.source.external.collect;
+
+import net.minidev.json.JSONArray;
+import net.minidev.json.JSONObject;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.entity.ContentType;
+import org.apache.http.entity.StringEntity;
+import org.forome.annotation.exception.ExceptionBuilder;
+import org.forome.annotation.service.source.external.conservation.ConservationHttpRequest;
+import org.forome.annotation.service.source.external.httprequest.HttpRequest;
+import org.forome.annotation.service.source.external.source.ExternalSource;
+import org.forome.annotation.service.source.struct.SourceBatch;
+import org.forome.astorage.core.data.Conservation;
+import org.forome.astorage.core.liftover.LiftoverConnector;
+import org.forome.core.struct.Assembly;
+import org.forome.core.struct.Interval;
+import org.forome.core.struct.Position;
+
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+/**
+ * Пакетный запрос: все варианты блока и все нужные массивы за один вызов /collect
+ *
+ * curl -d '{"variants":[{"chrom":"chr1","pos":6484880},{"chrom":"chr1","pos":6484890}], "fasta":"hg19", "arrays":["dbSNP","dbNSFP","SpliceAI"]}' -H "Content-Type: application/json" -X POST "localhost:8290/collect"
+ *
+ * [{"chrom": "chr1", "pos": 6484880, "hg38": 6424820, "dbSNP": [...]}, {"chrom": "chr1", "pos": 6484890, "hg38": 6424830}]
+ */
+public class CollectHttpRequest {
+
+	private final HttpRequest httpRequest;
+
+	private final Assembly assembly;
+	private final LiftoverConnector liftoverConnector;
+
+	public CollectHttpRequest(ExternalSource httpSource) {
+		this.httpRequest = httpSource.httpDataSource.httpRequest;
+		this.assembly = httpSource.assembly;
+		this.liftoverConnector = httpSource.httpDataSource.liftoverConnector;
+	}
+
+	public void fetch(SourceBatch batch) throws URISyntaxException {
+		//Запросы независимы (и заполняют разные значения пакета) - выполняются одновременно
+		CompletableFuture<Void> intervalsFuture = fetchIntervals(batch);
+		CompletableFuture<Void> hg19Future = fetchHg19(batch);
+		try {
+			CompletableFuture.allOf(intervalsFuture, hg19Future).join();
+		} catch (CompletionException e) {
+			throw new RuntimeException(e.getCause());
+		}
+	}
+
+	/**
+	 * dbSNP, dbNSFP и SpliceAI - в координатах сборки источника
+	 */
+	private CompletableFuture<Void> fetchIntervals(SourceBatch batch) throws URISyntaxException {
+		List<Interval> intervals = new ArrayList<>(batch.getIntervals());
+		if (intervals.isEmpty()) {
+			return CompletableFuture.completedFuture(null);
+		}
+
+		JSONArray jVariants = new JSONArray();
+		for (Interval interval : intervals) {
+			JSONObject jVariant = new JSONObject();
+			jVariant.put("chrom", interval.chromosome.getChromosome());
+			jVariant.put("pos", interval.start);
+			jVariant.put("last", (interval.start < interval.end) ? interval.end : interval.start);
+			jVariants.add(jVariant);
+		}
+
+		JSONArray arrays = new JSONArray();
+		arrays.add("dbSNP");
+		arrays.add("dbNSFP");
+		arrays.add("SpliceAI");
+
+		return request(jVariants, getFasta(assembly), arrays).thenAccept(response -> {
+			for (int i = 0; i < intervals.size(); i++) {
+				JSONObject jRecord = (JSONObject) response.get(i);
+				String key = SourceBatch.getKey(intervals.get(i));
+				batch.dbSNP.put(key, (JSONArray) jRecord.get("dbSNP"));
+				batch.dbNSFP.put(key, (JSONArray) jRecord.get("dbNSFP"));
+				batch.spliceAI.put(key, (JSONArray) jRecord.get("SpliceAI"));
+			}
+		});
+	}
+
+	/**
+	 * gnomAD и Gerp хранятся в hg19, пересчет координат - на нашей стороне, как и в поштучных запросах
+	 */
+	private CompletableFuture<Void> fetchHg19(SourceBatch batch) throws URISyntaxException {
+		List<String> conservationKeys = new ArrayList<>();
+		List<String> gnomadKeys = new ArrayList<>();
+		JSONArray jVariants = new JSONArray();
+
+		for (Position position : batch.getConservationPositions()) {
+			String key = SourceBatch.getKey(position);
+			Position position19 = liftoverConnector.toHG37(assembly, position);
+			if (position19 == null) {
+				batch.conservation.put(key, new Conservation(null, null));
+				continue;
+			}
+			conservationKeys.add(key);
+			jVariants.add(buildVariant(position19));
+		}
+		for (Position position : batch.getGnomadPositions()) {
+			String key = SourceBatch.getKey(position);
+			Position position19 = liftoverConnector.toHG37(assembly, position);
+			if (position19 == null) {
+				batch.gnomad.put(key, null);
+				continue;
+			}
+			gnomadKeys.add(key);
+			jVariants.add(buildVariant(position19));
+		}
+		if (jVariants.isEmpty()) {
+			return CompletableFuture.completedFuture(null);
+		}
+
+		JSONArray arrays = new JSONArray();
+		if (!conservationKeys.isEmpty()) {
+			arrays.add("Gerp");
+		}
+		if (!gnomadKeys.isEmpty()) {
+			arrays.add("gnomAD");
+		}
+
+		return request(jVariants, "hg19", arrays).thenAccept(response -> {
+			int index = 0;
+			for (String key : conservationKeys) {
+				JSONObject jRecord = (JSONObject) response.get(index++);
+				batch.conservation.put(key, ConservationHttpRequest.build((JSONObject) jRecord.get("Gerp")));
+			}
+			for (String key : gnomadKeys) {
+				JSONObject jRecord = (JSONObject) response.get(index++);
+				batch.gnomad.put(key, (JSONArray) jRecord.get("gnomAD"));
+			}
+		});
+	}
+
+	private CompletableFuture<JSONArray> request(JSONArray jVariants, String fasta, JSONArray arrays) throws URISyntaxException {
+		JSONObject params = new JSONObject();
+		params.put("variants", jVariants);
+		params.put("fasta", fasta);
+		params.put("arrays", arrays);
+
+		URI uri = new URI(String.format("http://%s:%s/collect", httpRequest.url.getHost(), httpRequest.url.getPort()));
+		HttpPost httpPostRequest = new HttpPost(uri);
+		httpPostRequest.setEntity(new StringEntity(params.toJSONString(), ContentType.APPLICATION_JSON));
+		return httpRequest.requestArrayAsync(httpPostRequest).thenApply(response -> {
+			if (response.size() != jVariants.size()) {
+				throw ExceptionBuilder.buildExternalServiceException(
+						new RuntimeException("Exception external service(AStorage), expected records: " + jVariants.size()
+								+ ", received: " + response.size()),
+						"AStorage", "Request: " + uri
+				);
+			}
+			return response;
+		});
+	}
+
+	private static JSONObject buildVariant(Position position) {
+		JSONObject jVariant = new JSONObject();
+		jVariant.put("chrom", position.chromosome.getChromosome());
+		jVariant.put("pos", position.value);
+		return jVariant;
+	}
+
+	private static String getFasta(Assembly assembly) {
+		if (assembly == Assembly.GRCh37) {
+			return "hg19";
+		} else if (assembly == Assembly.GRCh38) {
+			return "hg38";
+		} else {
+			throw new RuntimeException("Unknown assembly: " + assembly);
+		}
+	}
+}
@@ -56,7 +56,10 @@ public class ConservationHttpRequest {
 		);
 
 		JSONObject response = httpRequest.request(url);
-		JSONObject jGerp = (JSONObject) response.get("Gerp");
+		return build((JSONObject) response.get("Gerp"));
+	}
+
+	public static Conservation build(JSONObject jGerp) {
 		if (jGerp == null) {
 			return new Conservation(null, null);
 		} else {
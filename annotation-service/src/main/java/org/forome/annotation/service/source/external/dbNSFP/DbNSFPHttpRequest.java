@@ -23,49 +23,46 @@ import net.minidev.json.JSONObject;
 import org.apache.http.client.methods.HttpPost;
 import org.apache.http.entity.ContentType;
 import org.apache.http.entity.StringEntity;
+import org.forome.annotation.exception.ExceptionBuilder;
 import org.forome.annotation.service.source.external.httprequest.HttpRequest;
 import org.forome.annotation.service.source.external.source.ExternalSource;
-import org.forome.astorage.core.liftover.LiftoverConnector;
 import org.forome.core.struct.Assembly;
 import org.forome.core.struct.Interval;
 
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 
 /**
  * curl -d '{"variants":[{"chrom":"chr1","pos":16044572}], "fasta":"hg38", "arrays":["dbNSFP"]}' -H "Content-Type: application/json" -X POST "localhost:8290/collect"
  */
 public class DbNSFPHttpRequest {
 
-	private final ExternalSource httpSource;
+	//Ограничение числа вариантов в одном запросе /collect, части отправляются одновременно
+	private static final int BATCH_SIZE = 500;
+
 	private final HttpRequest httpRequest;
 
 	private final Assembly assembly;
-	private final LiftoverConnector liftoverConnector;
 
 	public DbNSFPHttpRequest(ExternalSource httpSource) {
-		this.httpSource = httpSource;
-		this.httpRequest = httpSource.httpDataSource.httpRequest;
-		this.assembly = httpSource.assembly;
-		this.liftoverConnector = httpSource.httpDataSource.liftoverConnector;
+		this(httpSource.httpDataSource.httpRequest, httpSource.assembly);
+	}
+
+	DbNSFPHttpRequest(HttpRequest httpRequest, Assembly assembly) {
+		this.httpRequest = httpRequest;
+		this.assembly = assembly;
 	}
 
 	public JSONArray get(Interval interval) throws URISyntaxException {
 		JSONObject params = new JSONObject();
 		params.put("variants", new JSONArray() {{
-			add(new JSONObject() {{
-				put("chrom", interval.chromosome.getChromosome());
-				put("pos", interval.start);
-				put("last", (interval.start < interval.end) ? interval.end : interval.start);
-			}});
+			add(buildVariant(interval));
 		}});
-		if (assembly == Assembly.GRCh37) {
-			params.put("fasta", "hg19");
-		} else if (assembly == Assembly.GRCh38) {
-			params.put("fasta", "hg38");
-		} else {
-			throw new RuntimeException("Unknown assembly: " + assembly);
-		}
+		params.put("fasta", getFasta());
 		params.put("arrays", new JSONArray() {{
 			add("dbNSFP");
 		}});
@@ -78,4 +75,71 @@ public class DbNSFPHttpRequest {
 		JSONArray jRecords = (JSONArray) response.get("dbNSFP");
 		return jRecords;
 	}
+
+	/**
+	 * Пакетный запрос, значения - в порядке интервалов
+	 */
+	public List<JSONArray> get(List<Interval> intervals) throws URISyntaxException {
+		URI uri = new URI(String.format("http://%s:%s/collect", httpRequest.url.getHost(), httpRequest.url.getPort()));
+
+		List<CompletableFuture<JSONArray>> futures = new ArrayList<>();
+		for (int from = 0; from < intervals.size(); from += BATCH_SIZE) {
+			JSONArray jVariants = new JSONArray();
+			for (Interval interval : intervals.subList(from, Math.min(from + BATCH_SIZE, intervals.size()))) {
+				jVariants.add(buildVariant(interval));
+			}
+
+			JSONObject params = new JSONObject();
+			params.put("variants", jVariants);
+			params.put("fasta", getFasta());
+			params.put("arrays", new JSONArray() {{
+				add("dbNSFP");
+			}});
+
+			HttpPost httpPostRequest = new HttpPost(uri);
+			httpPostRequest.setEntity(new StringEntity(params.toJSONString(), ContentType.APPLICATION_JSON));
+			futures.add(httpRequest.requestArrayAsync(httpPostRequest).thenApply(response -> {
+				if (response.size() != jVariants.size()) {
+					throw ExceptionBuilder.buildExternalServiceException(
+							new RuntimeException("Exception external service(AStorage), expected records: " + jVariants.size()
+									+ ", received: " + response.size()),
+							"AStorage", "Request: " + uri
+					);
+				}
+				return response;
+			}));
+		}
+
+		List<JSONArray> result = new ArrayList<>(intervals.size());
+		for (CompletableFuture<JSONArray> future : futures) {
+			JSONArray response;
+			try {
+				response = future.join();
+			} catch (CompletionException e) {
+				throw HttpRequest.unwrap(e);
+			}
+			for (Object item : response) {
+				result.add((JSONArray) ((JSONObject) item).get("dbNSFP"));
+			}
+		}
+		return result;
+	}
+
+	private static JSONObject buildVariant(Interval interval) {
+		JSONObject jVariant = new JSONObject();
+		jVariant.put("chrom", interval.chromosome.getChromosome());
+		jVariant.put("pos", interval.start);
+		jVariant.put("last", (interval.start < interval.end) ? interval.end : interval.start);
+		return jVariant;
+	}
+
+	private String getFasta() {
+		if (assembly == Assembly.GRCh37) {
+			return "hg19";
+		} else if (assembly == Assembly.GRCh38) {
+			return "hg38";
+		} else {
+			throw new RuntimeException("Unknown assembly: " + assembly);
+		}
+	}
 }
@@ -20,33 +20,54 @@ package org.forome.annotation.service.source.external.gnomad;
 
 import net.minidev.json.JSONArray;
 import net.minidev.json.JSONObject;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.entity.ContentType;
+import org.apache.http.entity.StringEntity;
+import org.forome.annotation.exception.ExceptionBuilder;
 import org.forome.annotation.service.source.external.httprequest.HttpRequest;
 import org.forome.annotation.service.source.external.source.ExternalSource;
-import org.forome.astorage.core.liftover.LiftoverConnector;
-import org.forome.core.struct.Assembly;
 import org.forome.core.struct.Position;
 
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.UnaryOperator;
+
 /**
  * curl "localhost:8290/get?array=hg19&loc=18:67760501"
  * {"chrom": "chr18", "array": "hg19", "pos": 67760501, "Gerp": {"GerpN": 2.45, "GerpRS": -1.87}, "gnomAD": [{"ALT": "C", "REF": "A", "SOURCE": "g", "AC": 2, "AN": 31248, "AF": 6.4e-05, "nhomalt": 0, "faf95": 1.06e-05, "faf99": 1.096e-05, "male": {"AC": 1, "AN": 17400, "AF": 5.747e-05}, "female": {"AC": 1, "AN": 13848, "AF": 7.221e-05}, "afr": {"AC": 2, "AN": 8692, "AF": 0.0002301}, "amr": {"AC": 0, "AN": 842, "AF": 0}, "asj": {"AC": 0, "AN": 290, "AF": 0}, "eas": {"AC": 0, "AN": 1560, "AF": 0}, "fin": {"AC": 0, "AN": 3408, "AF": 0}, "nfe": {"AC": 0, "AN": 15380, "AF": 0}, "oth": {"AC": 0, "AN": 1076, "AF": 0}, "raw": {"AC": 2, "AN": 31416, "AF": 6.366e-05}, "hem": null}]}
+ *
+ * Пакетный запрос, записи возвращаются в порядке позиций:
+ * curl -d '{"array":"hg19", "locs":["18:67760501","18:67760502"]}' -H "Content-Type: application/json" -X POST "localhost:8290/get-batch"
  */
 public class GnomadHttpRequest {
 
-	private final ExternalSource httpSource;
+	//Ограничение числа позиций в одном запросе /get-batch, части отправляются одновременно
+	private static final int BATCH_SIZE = 500;
+
 	private final HttpRequest httpRequest;
 
-	private final Assembly assembly;
-	private final LiftoverConnector liftoverConnector;
+	//Пересчет координат в hg19, null - позиция не пересчитывается
+	private final UnaryOperator<Position> toHG37;
 
 	public GnomadHttpRequest(ExternalSource httpSource) {
-		this.httpSource = httpSource;
-		this.httpRequest = httpSource.httpDataSource.httpRequest;
-		this.assembly = httpSource.assembly;
-		this.liftoverConnector = httpSource.httpDataSource.liftoverConnector;
+		this(
+				httpSource.httpDataSource.httpRequest,
+				position -> httpSource.httpDataSource.liftoverConnector.toHG37(httpSource.assembly, position)
+		);
+	}
+
+	GnomadHttpRequest(HttpRequest httpRequest, UnaryOperator<Position> toHG37) {
+		this.httpRequest = httpRequest;
+		this.toHG37 = toHG37;
 	}
 
 	public JSONArray get(Position position) {
-		Position position19 = liftoverConnector.toHG37(assembly, position);
+		Position position19 = toHG37.apply(position);
 		if (position19 == null) {
 			return null;
 		}
@@ -57,4 +78,65 @@ public class GnomadHttpRequest {
 		JSONArray jRecords = (JSONArray) response.get("gnomAD");
 		return jRecords;
 	}
+
+	public List<JSONArray> get(List<Position> positions) {
+		JSONArray[] result = new JSONArray[positions.size()];
+
+		List<Integer> indexes = new ArrayList<>();
+		JSONArray jLocs = new JSONArray();
+		for (int i = 0; i < positions.size(); i++) {
+			Position position19 = toHG37.apply(positions.get(i));
+			if (position19 == null) {
+				continue;
+			}
+			indexes.add(i);
+			jLocs.add(String.format("%s:%s", position19.chromosome.getChar(), position19.value));
+		}
+
+		List<CompletableFuture<JSONArray>> futures = new ArrayList<>();
+		for (int from = 0; from < jLocs.size(); from += BATCH_SIZE) {
+			JSONArray jChunk = new JSONArray();
+			jChunk.addAll(jLocs.subList(from, Math.min(from + BATCH_SIZE, jLocs.size())));
+			futures.add(requestBatch(jChunk));
+		}
+
+		int index = 0;
+		for (CompletableFuture<JSONArray> future : futures) {
+			JSONArray response;
+			try {
+				response = future.join();
+			} catch (CompletionException e) {
+				throw HttpRequest.unwrap(e);
+			}
+			for (Object item : response) {
+				result[indexes.get(index++)] = (JSONArray) ((JSONObject) item).get("gnomAD");
+			}
+		}
+		return Arrays.asList(result);
+	}
+
+	private CompletableFuture<JSONArray> requestBatch(JSONArray jLocs) {
+		JSONObject params = new JSONObject();
+		params.put("array", "hg19");
+		params.put("locs", jLocs);
+
+		URI uri;
+		try {
+			uri = new URI(String.format("http://%s:%s/get-batch", httpRequest.url.getHost(), httpRequest.url.getPort()));
+		} catch (URISyntaxException e) {
+			throw new RuntimeException(e);
+		}
+		HttpPost httpPostRequest = new HttpPost(uri);
+		httpPostRequest.setEntity(new StringEntity(params.toJSONString(), ContentType.APPLICATION_JSON));
+		return httpRequest.requestArrayAsync(httpPostRequest).thenApply(response -> {
+			if (response.size() != jLocs.size()) {
+				throw ExceptionBuilder.buildExternalServiceException(
+						new RuntimeException("Exception external service(AStorage), expected records: " + jLocs.size()
+								+ ", received: " + response.size()),
+						"AStorage", "Request: " + uri
+				);
+			}
+			return response;
+		});
+	}
 }
@@ -31,9 +31,13 @@ import org.apache.http.impl.nio.client.CloseableHttpAsyncClient;
 import org.apache.http.impl.nio.client.HttpAsyncClients;
 import org.apache.http.impl.nio.conn.PoolingNHttpClientConnectionManager;
 import org.apache.http.impl.nio.reactor.DefaultConnectingIOReactor;
+import org.apache.http.impl.nio.reactor.IOReactorConfig;
 import org.apache.http.nio.reactor.IOReactorException;
+import org.apache.http.pool.PoolStats;
 import org.apache.http.util.EntityUtils;
+import org.forome.annotation.exception.AnnotatorException;
 import org.forome.annotation.exception.ExceptionBuilder;
+import org.forome.annotation.utils.Statistics;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -42,60 +46,123 @@ import java.net.URI;
 import java.net.URISyntaxException;
 import java.net.URL;
 import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.ExecutionException;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicInteger;
 
-public class HttpRequest {
+/**
+ * Http-клиент AStorage: один асинхронный клиент с пулом keep-alive соединений на весь срок жизни источника.
+ * Ответы - CompletableFuture, которые завершаются в потоке IO reactor-а, вызывающий поток не блокируется
+ */
+public class HttpRequest implements AutoCloseable {
 
 	private final static Logger log = LoggerFactory.getLogger(HttpRequest.class);
 
+	private static final int MAX_CONNECTIONS = 100;
+
 	public final URL url;
 
-	private final RequestConfig requestConfig;
 	private final PoolingNHttpClientConnectionManager connectionManager;
 	private final HttpHost httpHost;
 
+	private final CloseableHttpAsyncClient httpclient;
+
+	private final Statistics statistics;
+
 	public HttpRequest(URL url) {
 		this.url = url;
 
-		requestConfig = RequestConfig.custom()
+		RequestConfig requestConfig = RequestConfig.custom()
 				.setConnectTimeout(5000)//Таймаут на подключение
 				.setSocketTimeout(10 * 60 * 1000)//Таймаут между пакетами
 				.setConnectionRequestTimeout(10 * 60 * 1000)//Таймаут на ответ
 				.build();
 
+		AtomicInteger threadNumber = new AtomicInteger(1);
 		try {
-			connectionManager = new PoolingNHttpClientConnectionManager(new DefaultConnectingIOReactor());
-			connectionManager.setMaxTotal(100);
-			connectionManager.setDefaultMaxPerRoute(100);
+			connectionManager = new PoolingNHttpClientConnectionManager(
+					new DefaultConnectingIOReactor(
+							IOReactorConfig.DEFAULT,
+							r -> {
+								//Клиент живет до завершения процесса и не должен его удерживать
+								Thread thread = new Thread(r, "AStorageHttpClient-t-" + threadNumber.getAndIncrement());
+								thread.setDaemon(true);
+								return thread;
+							}
+					)
+			);
+			connectionManager.setMaxTotal(MAX_CONNECTIONS);
+			connectionManager.setDefaultMaxPerRoute(MAX_CONNECTIONS);
 		} catch (IOReactorException e) {
 			throw new RuntimeException(e);
 		}
 
 		httpHost = new HttpHost(url.getHost(), url.getPort(), "http");
+
+		httpclient = HttpAsyncClients.custom()
+				.setConnectionManager(connectionManager)
+				.setDefaultRequestConfig(requestConfig)
+				.build();
+		httpclient.start();
+
+		statistics = new Statistics();
 	}
 
 	public JSONObject request(String url) {
+		return join(requestAsync(url));
+	}
+
+	public JSONObject request(HttpPost httpPostRequest) {
+		return join(requestAsync(httpPostRequest));
+	}
+
+	/**
+	 * Запрос, ответом на который является список (например, /collect по нескольким вариантам)
+	 */
+	public JSONArray requestArray(HttpPost httpPostRequest) {
+		return join(requestArrayAsync(httpPostRequest));
+	}
+
+	public CompletableFuture<JSONObject> requestAsync(String url) {
 		try {
-			HttpPost httpPostRequest = new HttpPost(new URI(url));
-			return request(httpPostRequest);
+			return requestAsync(new HttpPost(new URI(url)));
 		} catch (URISyntaxException e) {
 			throw new RuntimeException(e);
 		}
 	}
 
-	public JSONObject request(HttpPost httpPostRequest) {
-		CompletableFuture<JSONObject> future = new CompletableFuture<>();
-		try {
-			CloseableHttpAsyncClient httpclient = HttpAsyncClients.custom()
-					.setDefaultRequestConfig(requestConfig)
-					.build();
-			httpclient.start();
+	public CompletableFuture<JSONObject> requestAsync(HttpPost httpPostRequest) {
+		return execute(httpPostRequest).thenApply(response -> {
+			if (response instanceof JSONArray) {
+				return (JSONObject) ((JSONArray) response).get(0);
+			} else {
+				return (JSONObject) response;
+			}
+		});
+	}
 
-			URI uri = httpPostRequest.getURI();
+	public CompletableFuture<JSONArray> requestArrayAsync(HttpPost httpPostRequest) {
+		return execute(httpPostRequest).thenApply(response -> {
+			if (response instanceof JSONArray) {
+				return (JSONArray) response;
+			} else {
+				throw ExceptionBuilder.buildExternalServiceException(
+						new RuntimeException("Exception external service(AStorage), request: " + httpPostRequest.getURI()
+								+ ", response: " + response),
+						"AStorage", "Response: " + response
+				);
+			}
+		});
+	}
 
+	private CompletableFuture<Object> execute(HttpPost httpPostRequest) {
+		CompletableFuture<Object> future = new CompletableFuture<>();
+		URI uri = httpPostRequest.getURI();
+		long t1 = System.currentTimeMillis();
+		try {
 			httpclient.execute(httpHost, httpPostRequest, new FutureCallback<HttpResponse>() {
 				@Override
 				public void completed(HttpResponse response) {
+					statistics.addTime(System.currentTimeMillis() - t1);
 					try {
 						HttpEntity entity = response.getEntity();
 						String entityBody = EntityUtils.toString(entity);
@@ -106,11 +173,8 @@ public class HttpRequest {
 						} catch (Exception e) {
 							throw ExceptionBuilder.buildExternalServiceException(new RuntimeException("Exception parse response external service, response: " + entityBody));
 						}
-						if (rawResponse instanceof JSONArray) {
-							JSONObject jResponse = (JSONObject) ((JSONArray) rawResponse).get(0);
-							future.complete(jResponse);
-						} else if (rawResponse instanceof JSONObject) {
-							future.complete((JSONObject)rawResponse);
+						if (rawResponse instanceof JSONArray || rawResponse instanceof JSONObject) {
+							future.complete(rawResponse);
 						} else {
 							throw ExceptionBuilder.buildExternalServiceException(
 									new RuntimeException("Exception external service(AStorage), request: " + uri
@@ -121,46 +185,63 @@ public class HttpRequest {
 					} catch (Throwable ex) {
 						future.completeExceptionally(ex);
 					}
-
-					try {
-						httpclient.close();
-					} catch (IOException ignore) {
-						log.error("Exception close connect");
-					}
 				}
 
 				@Override
 				public void failed(Exception ex) {
 					future.completeExceptionally(ex);
-					try {
-						httpclient.close();
-					} catch (IOException ignore) {
-						log.error("Exception close connect");
-					}
 				}
 
 				@Override
 				public void cancelled() {
 					future.cancel(true);
-					try {
-						httpclient.close();
-					} catch (IOException ignore) {
-						log.error("Exception close connect");
-					}
 				}
 			});
 		} catch (Throwable t) {
-			log.error("Exception close connect", t);
+			log.error("Exception execute request: " + uri, t);
 			future.completeExceptionally(t);
 		}
+		return future;
+	}
 
+	private static <T> T join(CompletableFuture<T> future) {
 		try {
-			return future.get();
-		} catch (InterruptedException e) {
-			throw new RuntimeException();
-		} catch (ExecutionException e) {
-			throw new RuntimeException(e.getCause());
+			return future.join();
+		} catch (CompletionException e) {
+			throw unwrap(e);
+		}
+	}
+
+	/**
+	 * Ошибки сервиса (AnnotatorException) пробрасываются как есть, остальные - оборачиваются
+	 */
+	public static RuntimeException unwrap(CompletionException e) {
+		if (e.getCause() instanceof AnnotatorException) {
+			return (AnnotatorException) e.getCause();
 		}
+		return new RuntimeException(e.getCause());
 	}
 
+	/**
+	 * Время ответа на запрос (millis)
+	 */
+	public Statistics.Stat getStatistics() {
+		return statistics.getStat();
+	}
+
+	/**
+	 * Открытые соединения пула: занятые запросами и свободные keep-alive
+	 */
+	public PoolStats getPoolStats() {
+		return connectionManager.getTotalStats();
+	}
+
+	@Override
+	public void close() {
+		try {
+			httpclient.close();
+		} catch (IOException e) {
+			log.error("Exception close http client", e);
+		}
+	}
 }
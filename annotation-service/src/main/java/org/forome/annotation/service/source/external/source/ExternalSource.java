@@ -19,16 +19,16 @@
 package org.forome.annotation.service.source.external.source;
 
 import net.minidev.json.JSONArray;
-import org.apache.http.nio.reactor.IOReactorException;
 import org.forome.annotation.service.source.external.ExternalDataSource;
+import org.forome.annotation.service.source.external.collect.CollectHttpRequest;
 import org.forome.annotation.service.source.external.conservation.ConservationHttpRequest;
 import org.forome.annotation.service.source.external.dbNSFP.DbNSFPHttpRequest;
 import org.forome.annotation.service.source.external.dbSNP.DbSNPHttpRequest;
-import org.forome.annotation.service.source.external.fasta.FastaHttpRequest;
 import org.forome.annotation.service.source.external.gnomad.GnomadHttpRequest;
 import org.forome.annotation.service.source.external.spliceai.SpliceAIHttpRequest;
 import org.forome.annotation.service.source.struct.Record;
 import org.forome.annotation.service.source.struct.Source;
+import org.forome.annotation.service.source.struct.SourceBatch;
 import org.forome.astorage.core.data.Conservation;
 import org.forome.core.struct.Assembly;
 import org.forome.core.struct.Interval;
@@ -36,15 +36,34 @@ import org.forome.core.struct.Position;
 import org.forome.core.struct.sequence.Sequence;
 
 import java.net.URISyntaxException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 
 public class ExternalSource implements Source {
 
 	public final ExternalDataSource httpDataSource;
 	public final Assembly assembly;
 
+	//Запросы не хранят состояния и работают через общий http-клиент источника, создаются один раз
+	private final GnomadHttpRequest gnomadHttpRequest;
+	private final DbSNPHttpRequest dbSNPHttpRequest;
+	private final DbNSFPHttpRequest dbNSFPHttpRequest;
+	private final SpliceAIHttpRequest spliceAIHttpRequest;
+	private final ConservationHttpRequest conservationHttpRequest;
+	private final CollectHttpRequest collectHttpRequest;
+
 	public ExternalSource(ExternalDataSource httpDataSource, Assembly assembly) {
 		this.httpDataSource = httpDataSource;
 		this.assembly = assembly;
+
+		this.gnomadHttpRequest = new GnomadHttpRequest(this);
+		this.dbSNPHttpRequest = new DbSNPHttpRequest(this);
+		this.dbNSFPHttpRequest = new DbNSFPHttpRequest(this);
+		this.spliceAIHttpRequest = new SpliceAIHttpRequest(this);
+		this.conservationHttpRequest = new ConservationHttpRequest(this);
+		this.collectHttpRequest = new CollectHttpRequest(this);
 	}
 
 	@Override
@@ -54,24 +73,17 @@ public class ExternalSource implements Source {
 
 	@Override
 	public Sequence getFastaSequence(Interval interval) {
-		try {
-			FastaHttpRequest fastaSourcePython = new FastaHttpRequest(httpDataSource.url);
-			return fastaSourcePython.getSequence(assembly, interval);
-		} catch (IOReactorException e) {
-			throw new RuntimeException(e);
-		}
+		return httpDataSource.fastaHttpRequest.getSequence(assembly, interval);
 	}
 
 	@Override
 	public JSONArray getGnomad(Position position) {
-		GnomadHttpRequest gnomadHttpRequest = new GnomadHttpRequest(this);
 		return gnomadHttpRequest.get(position);
 	}
 
 	@Override
 	public JSONArray getDbSNP(Interval interval) {
 		try {
-			DbSNPHttpRequest dbSNPHttpRequest = new DbSNPHttpRequest(this);
 			return dbSNPHttpRequest.get(interval);
 		} catch (URISyntaxException e) {
 			throw new RuntimeException(e);
@@ -81,7 +93,6 @@ public class ExternalSource implements Source {
 	@Override
 	public JSONArray getDbNSFP(Interval interval) {
 		try {
-			DbNSFPHttpRequest dbNSFPHttpRequest = new DbNSFPHttpRequest(this);
 			return dbNSFPHttpRequest.get(interval);
 		} catch (URISyntaxException e) {
 			throw new RuntimeException(e);
@@ -91,16 +102,55 @@ public class ExternalSource implements Source {
 	@Override
 	public JSONArray getSpliceAI(Interval interval) {
 		try {
-			SpliceAIHttpRequest spliceAIHttpRequest = new SpliceAIHttpRequest(this);
 			return spliceAIHttpRequest.get(interval);
 		} catch (URISyntaxException e) {
 			throw new RuntimeException(e);
 		}
 	}
 
+	@Override
+	public List<JSONArray> getGnomad(List<Position> positions) {
+		return gnomadHttpRequest.get(positions);
+	}
+
+	@Override
+	public List<JSONArray> getDbNSFP(List<Interval> intervals) {
+		try {
+			return dbNSFPHttpRequest.get(intervals);
+		} catch (URISyntaxException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
 	@Override
 	public Conservation getConservation(Position position) {
-		ConservationHttpRequest conservationHttpRequest = new ConservationHttpRequest(this);
 		return conservationHttpRequest.getConservation(position);
 	}
+
+	@Override
+	public void fetch(SourceBatch batch) {
+		//Регионы fasta запрашиваются одновременно с /collect
+		List<CompletableFuture<Sequence>> fastaFutures = new ArrayList<>();
+		for (Interval interval : batch.getFastaIntervals()) {
+			fastaFutures.add(httpDataSource.fastaHttpRequest.getSequenceAsync(assembly, interval));
+		}
+
+		try {
+			collectHttpRequest.fetch(batch);
+		} catch (URISyntaxException e) {
+			throw new RuntimeException(e);
+		}
+
+		for (CompletableFuture<Sequence> fastaFuture : fastaFutures) {
+			Sequence sequence;
+			try {
+				sequence = fastaFuture.join();
+			} catch (CompletionException e) {
+				throw new RuntimeException(e.getCause());
+			}
+			if (sequence != null) {
+				batch.fasta.add(sequence);
+			}
+		}
+	}
 }
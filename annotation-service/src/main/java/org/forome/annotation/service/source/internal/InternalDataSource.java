@@ -25,9 +25,12 @@ import org.forome.annotation.service.source.external.ExternalDataSource;
 import org.forome.annotation.service.source.external.source.ExternalSource;
 import org.forome.annotation.service.source.internal.source.InternalSource;
 import org.forome.annotation.service.source.struct.Source;
+import org.forome.annotation.struct.SourceMetadata;
 import org.forome.astorage.AStorage;
 import org.forome.core.struct.Assembly;
 
+import java.util.List;
+
 public class InternalDataSource implements DataSource {
 
 	private final AStorage aStorage;
@@ -66,5 +69,10 @@ public class InternalDataSource implements DataSource {
 		}
 	}
 
+	@Override
+	public List<SourceMetadata> getSourceMetadata() {
+		return httpDataSource.getSourceMetadata();
+	}
+
 
 }
@@ -0,0 +1,260 @@
+/*
+ *  Copyright (c) 2020. Vladimir Ulitin, Partners Healthcare and members of Forome Association
+ *
+ *  Developed by Vladimir Ulitin and Michael Bouzinier
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ * 	 http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.forome.annotation.service.source.internal.fasta;
+
+import org.forome.core.struct.Chromosome;
+import org.forome.core.struct.Interval;
+import org.forome.core.struct.sequence.Sequence;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Локальный референс в формате UCSC .2bit (hg19.2bit, hg38.2bit), отображенный в память.
+ * Нуклеотиды упакованы по 4 в байт, блоки N и soft-mask (строчные буквы - повторы) -
+ * отсортированные массивы границ, поэтому любой запрос - чтение массивов без обращений к сети и базам.
+ * Формат: https://genome.ucsc.edu/FAQ/FAQformat.html#format7
+ */
+public class FastaSourceTwoBit implements AutoCloseable {
+
+	private static final int SIGNATURE = 0x1A412743;
+
+	//Порядок кодирования нуклеотидов в .2bit: T=00, C=01, A=10, G=11
+	private static final char[] BASES = { 'T', 'C', 'A', 'G' };
+
+	private final FileChannel channel;
+
+	private final Map<String, TwoBitSequence> sequences;
+
+	public FastaSourceTwoBit(Path path) throws IOException {
+		this.channel = FileChannel.open(path, StandardOpenOption.READ);
+
+		ByteBuffer header = read(0, 16, ByteOrder.LITTLE_ENDIAN);
+		ByteOrder order = ByteOrder.LITTLE_ENDIAN;
+		if (header.getInt(0) != SIGNATURE) {
+			order = ByteOrder.BIG_ENDIAN;
+			header.order(order);
+			if (header.getInt(0) != SIGNATURE) {
+				throw new RuntimeException("Not a .2bit file: " + path);
+			}
+		}
+		int version = header.getInt(4);
+		if (version != 0 && version != 1) {
+			throw new RuntimeException("Unsupported .2bit version: " + version + ", file: " + path);
+		}
+		int sequenceCount = header.getInt(8);
+
+		//Индекс: длина имени (1 байт), имя, смещение (4 байта, в версии 1 - 8 байт)
+		this.sequences = new HashMap<>();
+		long indexOffset = 16;
+		int offsetSize = (version == 0) ? Integer.BYTES : Long.BYTES;
+		for (int i = 0; i < sequenceCount; i++) {
+			int nameSize = read(indexOffset, 1, order).get(0) & 0xFF;
+			ByteBuffer entry = read(indexOffset + 1, nameSize + offsetSize, order);
+			byte[] nameBytes = new byte[nameSize];
+			entry.get(nameBytes);
+			long offset = (version == 0) ? (entry.getInt() & 0xFFFFFFFFL) : entry.getLong();
+			indexOffset += 1 + nameSize + offsetSize;
+
+			String name = new String(nameBytes, StandardCharsets.US_ASCII);
+			sequences.put(normalizeName(name), readSequence(offset, order));
+		}
+	}
+
+	/**
+	 * @return последовательность интервала (координаты с 1, включительно), замаскированные нуклеотиды - строчными буквами,
+	 * null - если хромосомы нет в референсе
+	 */
+	public Sequence getSequence(Interval interval) {
+		TwoBitSequence sequence = sequences.get(normalizeName(interval.chromosome.getChar()));
+		if (sequence == null) {
+			return null;
+		}
+		return Sequence.build(interval, sequence.getBases(interval.start - 1, interval.end));
+	}
+
+	/**
+	 * @return true - если в интервале есть замаскированные (строчные) нуклеотиды
+	 */
+	public boolean isSoftMasked(Interval interval) {
+		TwoBitSequence sequence = sequences.get(normalizeName(interval.chromosome.getChar()));
+		if (sequence == null) {
+			return false;
+		}
+		int start = interval.start - 1;
+		int end = Math.max(interval.start, interval.end);
+		return TwoBitSequence.intersects(sequence.maskStarts, sequence.maskEnds, start, end);
+	}
+
+	public boolean contains(Chromosome chromosome) {
+		return sequences.containsKey(normalizeName(chromosome.getChar()));
+	}
+
+	@Override
+	public void close() throws IOException {
+		channel.close();
+	}
+
+	private TwoBitSequence readSequence(long offset, ByteOrder order) throws IOException {
+		ByteBuffer buffer = read(offset, 8, order);
+		int dnaSize = buffer.getInt(0);
+		int nBlockCount = buffer.getInt(4);
+		offset += 8;
+
+		int[][] nBlocks = readBlocks(offset, nBlockCount, order);
+		offset += 8L * nBlockCount;
+
+		int maskBlockCount = read(offset, 4, order).getInt(0);
+		offset += 4;
+		int[][] maskBlocks = readBlocks(offset, maskBlockCount, order);
+		offset += 8L * maskBlockCount;
+
+		//reserved
+		offset += 4;
+
+		MappedByteBuffer packedDna = channel.map(FileChannel.MapMode.READ_ONLY, offset, (dnaSize + 3) / 4);
+		return new TwoBitSequence(dnaSize, packedDna, nBlocks[0], nBlocks[1], maskBlocks[0], maskBlocks[1]);
+	}
+
+	/**
+	 * @return начала и концы (не включая) блоков, отсортированные по началу
+	 */
+	private int[][] readBlocks(long offset, int count, ByteOrder order) throws IOException {
+		int[] starts = new int[count];
+		int[] ends = new int[count];
+		if (count > 0) {
+			ByteBuffer buffer = read(offset, 8 * count, order);
+			for (int i = 0; i < count; i++) {
+				starts[i] = buffer.getInt(4 * i);
+			}
+			for (int i = 0; i < count; i++) {
+				ends[i] = starts[i] + buffer.getInt(4 * (count + i));
+			}
+		}
+		return new int[][]{ starts, ends };
+	}
+
+	private ByteBuffer read(long offset, int size, ByteOrder order) throws IOException {
+		ByteBuffer buffer = ByteBuffer.allocate(size).order(order);
+		while (buffer.hasRemaining()) {
+			if (channel.read(buffer, offset + buffer.position()) < 0) {
+				throw new IOException("Unexpected end of .2bit file, offset: " + offset);
+			}
+		}
+		buffer.flip();
+		return buffer;
+	}
+
+	/**
+	 * chr1/1 -> 1, chrM/chrMT/MT -> M
+	 */
+	static String normalizeName(String name) {
+		String value = (name.regionMatches(true, 0, "chr", 0, 3)) ? name.substring(3) : name;
+		if ("MT".equalsIgnoreCase(value)) {
+			return "M";
+		}
+		return value.toUpperCase();
+	}
+
+	private static class TwoBitSequence {
+
+		private final int size;
+		private final ByteBuffer packedDna;
+
+		private final int[] nStarts;
+		private final int[] nEnds;
+		private final int[] maskStarts;
+		private final int[] maskEnds;
+
+		private TwoBitSequence(int size, ByteBuffer packedDna, int[] nStarts, int[] nEnds, int[] maskStarts, int[] maskEnds) {
+			this.size = size;
+			this.packedDna = packedDna;
+			this.nStarts = nStarts;
+			this.nEnds = nEnds;
+			this.maskStarts = maskStarts;
+			this.maskEnds = maskEnds;
+		}
+
+		/**
+		 * @param start - от 0, включительно
+		 * @param end - не включая
+		 */
+		private String getBases(int start, int end) {
+			char[] bases = new char[Math.max(end - start, 0)];
+			for (int i = 0; i < bases.length; i++) {
+				int position = start + i;
+				if (position < 0 || position >= size) {
+					bases[i] = 'N';
+				} else {
+					//Абсолютное чтение - буфер общий для всех потоков
+					int packed = packedDna.get(position >> 2) & 0xFF;
+					bases[i] = BASES[(packed >> (6 - 2 * (position & 3))) & 3];
+				}
+			}
+			applyBlocks(bases, start, nStarts, nEnds, true);
+			applyBlocks(bases, start, maskStarts, maskEnds, false);
+			return new String(bases);
+		}
+
+		/**
+		 * Накладывает на bases блоки, пересекающие [start, start + bases.length): N или строчные буквы
+		 */
+		private static void applyBlocks(char[] bases, int start, int[] blockStarts, int[] blockEnds, boolean n) {
+			int end = start + bases.length;
+			for (int i = firstBlock(blockStarts, blockEnds, start); i < blockStarts.length && blockStarts[i] < end; i++) {
+				int from = Math.max(blockStarts[i], start);
+				int to = Math.min(blockEnds[i], end);
+				for (int position = from; position < to; position++) {
+					bases[position - start] = (n) ? 'N' : Character.toLowerCase(bases[position - start]);
+				}
+			}
+		}
+
+		private static boolean intersects(int[] blockStarts, int[] blockEnds, int start, int end) {
+			int i = firstBlock(blockStarts, blockEnds, start);
+			return i < blockStarts.length && blockStarts[i] < end;
+		}
+
+		/**
+		 * Первый блок, который заканчивается после start (блоки не пересекаются и отсортированы)
+		 */
+		private static int firstBlock(int[] blockStarts, int[] blockEnds, int start) {
+			int index = Arrays.binarySearch(blockStarts, start);
+			if (index < 0) {
+				index = -index - 2;
+			}
+			if (index < 0) {
+				index = 0;
+			}
+			while (index < blockEnds.length && blockEnds[index] <= start) {
+				index++;
+			}
+			return index;
+		}
+	}
+}
@@ -24,6 +24,9 @@ import org.forome.core.struct.Interval;
 import org.forome.core.struct.Position;
 import org.forome.core.struct.sequence.Sequence;
 
+import java.util.ArrayList;
+import java.util.List;
+
 public interface Source {
 
 	Record getRecord(Position position);
@@ -39,4 +42,64 @@ public interface Source {
 	JSONArray getDbNSFP(Interval interval);
 
 	JSONArray getSpliceAI(Interval interval);
+
+	/**
+	 * Есть ли в интервале замаскированные регионы тандемных повторов (маленькие буквы в референсе)
+	 */
+	default boolean isSoftMasked(Interval interval) {
+		Sequence sequence = getFastaSequence(interval);
+		String value = sequence.getValue();
+		return !value.equals(value.toUpperCase());
+	}
+
+	/**
+	 * Пакетный запрос gnomAD, значения - в порядке позиций, по умолчанию - поштучными запросами
+	 */
+	default List<JSONArray> getGnomad(List<Position> positions) {
+		List<JSONArray> result = new ArrayList<>(positions.size());
+		for (Position position : positions) {
+			result.add(getGnomad(position));
+		}
+		return result;
+	}
+
+	/**
+	 * Пакетный запрос dbNSFP, значения - в порядке интервалов, по умолчанию - поштучными запросами
+	 */
+	default List<JSONArray> getDbNSFP(List<Interval> intervals) {
+		List<JSONArray> result = new ArrayList<>(intervals.size());
+		for (Interval interval : intervals) {
+			result.add(getDbNSFP(interval));
+		}
+		return result;
+	}
+
+	/**
+	 * Заполняет пакетный запрос, по умолчанию - поштучными запросами
+	 */
+	default void fetch(SourceBatch batch) {
+		List<Interval> intervals = new ArrayList<>(batch.getIntervals());
+		List<JSONArray> dbNSFP = getDbNSFP(intervals);
+		for (int i = 0; i < intervals.size(); i++) {
+			Interval interval = intervals.get(i);
+			String key = SourceBatch.getKey(interval);
+			batch.dbSNP.put(key, getDbSNP(interval));
+			batch.dbNSFP.put(key, dbNSFP.get(i));
+			batch.spliceAI.put(key, getSpliceAI(interval));
+		}
+		for (Position position : batch.getConservationPositions()) {
+			batch.conservation.put(SourceBatch.getKey(position), getConservation(position));
+		}
+		List<Position> gnomadPositions = new ArrayList<>(batch.getGnomadPositions());
+		List<JSONArray> gnomad = getGnomad(gnomadPositions);
+		for (int i = 0; i < gnomadPositions.size(); i++) {
+			batch.gnomad.put(SourceBatch.getKey(gnomadPositions.get(i)), gnomad.get(i));
+		}
+		for (Interval interval : batch.getFastaIntervals()) {
+			Sequence sequence = getFastaSequence(interval);
+			if (sequence != null) {
+				batch.fasta.add(sequence);
+			}
+		}
+	}
 }
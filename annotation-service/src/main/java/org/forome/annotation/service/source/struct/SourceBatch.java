@@ -0,0 +1,111 @@
+/*
+ Copyright (c) 2019. Vladimir Ulitin, Partners Healthcare and members of Forome Association
+
+ Developed by Vladimir Ulitin and Michael Bouzinier
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+	 http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+*/
+
+package org.forome.annotation.service.source.struct;
+
+import net.minidev.json.JSONArray;
+import org.forome.astorage.core.data.Conservation;
+import org.forome.core.struct.Interval;
+import org.forome.core.struct.Position;
+import org.forome.core.struct.sequence.Sequence;
+
+import java.util.*;
+
+/**
+ * Пакетный запрос к источнику: интервалы и позиции, которые понадобятся блоку соседних вариантов,
+ * и полученные по ним значения.
+ * Ключи значений - строковое представление интервала/позиции
+ */
+public class SourceBatch {
+
+	//Интервалы вариантов, по ним запрашиваются dbSNP, dbNSFP и SpliceAI
+	private final Map<String, Interval> intervals;
+
+	private final Map<String, Position> conservationPositions;
+
+	//Позиции gnomAD уже в координатах GRCh37
+	private final Map<String, Position> gnomadPositions;
+
+	private final List<Interval> fastaIntervals;
+
+	public final Map<String, JSONArray> dbSNP;
+	public final Map<String, JSONArray> dbNSFP;
+	public final Map<String, JSONArray> spliceAI;
+	public final Map<String, Conservation> conservation;
+	public final Map<String, JSONArray> gnomad;
+	public final List<Sequence> fasta;
+
+	public SourceBatch() {
+		this.intervals = new LinkedHashMap<>();
+		this.conservationPositions = new LinkedHashMap<>();
+		this.gnomadPositions = new LinkedHashMap<>();
+		this.fastaIntervals = new ArrayList<>();
+
+		this.dbSNP = new HashMap<>();
+		this.dbNSFP = new HashMap<>();
+		this.spliceAI = new HashMap<>();
+		this.conservation = new HashMap<>();
+		this.gnomad = new HashMap<>();
+		this.fasta = new ArrayList<>();
+	}
+
+	public void addInterval(Interval interval) {
+		intervals.putIfAbsent(getKey(interval), interval);
+	}
+
+	public void addConservation(Position position) {
+		conservationPositions.putIfAbsent(getKey(position), position);
+	}
+
+	public void addGnomad(Position position37) {
+		gnomadPositions.putIfAbsent(getKey(position37), position37);
+	}
+
+	public void addFasta(Interval interval) {
+		fastaIntervals.add(interval);
+	}
+
+	public Collection<Interval> getIntervals() {
+		return intervals.values();
+	}
+
+	public Collection<Position> getConservationPositions() {
+		return conservationPositions.values();
+	}
+
+	public Collection<Position> getGnomadPositions() {
+		return gnomadPositions.values();
+	}
+
+	public List<Interval> getFastaIntervals() {
+		return fastaIntervals;
+	}
+
+	public boolean isEmpty() {
+		return intervals.isEmpty() && conservationPositions.isEmpty()
+				&& gnomadPositions.isEmpty() && fastaIntervals.isEmpty();
+	}
+
+	public static String getKey(Interval interval) {
+		return interval.toString();
+	}
+
+	public static String getKey(Position position) {
+		return position.toString();
+	}
+}
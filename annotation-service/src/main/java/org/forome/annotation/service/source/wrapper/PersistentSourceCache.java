@@ -0,0 +1,219 @@
+/*
+ *  Copyright (c) 2020. Vladimir Ulitin, Partners Healthcare and members of Forome Association
+ *
+ *  Developed by Vladimir Ulitin and Michael Bouzinier
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ * 	 http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.forome.annotation.service.source.wrapper;
+
+import net.minidev.json.JSONArray;
+import net.minidev.json.JSONObject;
+import net.minidev.json.parser.JSONParser;
+import net.minidev.json.parser.ParseException;
+import org.forome.annotation.struct.SourceMetadata;
+import org.forome.astorage.core.data.Conservation;
+import org.forome.core.struct.Assembly;
+import org.rocksdb.*;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+
+/**
+ * Локальный кеш ответов источников на диске (RocksDB), общий для всех запусков аннотатора.
+ * Каждый тип - в своей column family, ключ - сборка и упакованный ключ SourceCache.
+ * Версия источника (из SourceMetadata) хранится рядом с данными, при ее смене данные типа удаляются.
+ * Типы, для которых версия источника неизвестна, не сохраняются
+ */
+class PersistentSourceCache implements AutoCloseable {
+
+	private static final String COLUMN_FAMILY_VERSIONS = "versions";
+
+	//Имена источников в метаданных AStorage
+	private static final Map<WrapperSourceType, String> PRODUCTS = new EnumMap<WrapperSourceType, String>(WrapperSourceType.class) {{
+		put(WrapperSourceType.CONSERVATION, "GERP");
+		put(WrapperSourceType.GNOMAD, "gnomAD");
+		put(WrapperSourceType.DBSNP, "dbSNP");
+		put(WrapperSourceType.DBNSFP, "dbNSFP");
+		put(WrapperSourceType.SPLICEAI, "SpliceAI");
+	}};
+
+	//Отметка "значения нет" - отличается от отсутствия записи в кеше
+	private static final byte[] NULL_VALUE = new byte[0];
+
+	private final DBOptions options;
+	private final ColumnFamilyOptions columnFamilyOptions;
+	private final RocksDB rocksDB;
+	private final List<ColumnFamilyHandle> columnFamilyHandles;
+
+	private final Map<WrapperSourceType, ColumnFamilyHandle> columnFamilies;
+
+	PersistentSourceCache(Path path, List<SourceMetadata> sourceMetadata) throws RocksDBException {
+		Map<WrapperSourceType, String> versions = getVersions(sourceMetadata);
+
+		this.options = new DBOptions()
+				.setCreateIfMissing(true)
+				.setCreateMissingColumnFamilies(true);
+		this.columnFamilyOptions = new ColumnFamilyOptions()
+				.setCompressionType(CompressionType.LZ4_COMPRESSION);
+
+		List<ColumnFamilyDescriptor> descriptors = new ArrayList<>();
+		descriptors.add(new ColumnFamilyDescriptor(RocksDB.DEFAULT_COLUMN_FAMILY, columnFamilyOptions));
+		descriptors.add(new ColumnFamilyDescriptor(COLUMN_FAMILY_VERSIONS.getBytes(StandardCharsets.UTF_8), columnFamilyOptions));
+		for (WrapperSourceType type : PRODUCTS.keySet()) {
+			descriptors.add(new ColumnFamilyDescriptor(getColumnFamilyName(type), columnFamilyOptions));
+		}
+
+		try {
+			Files.createDirectories(path);
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+		this.columnFamilyHandles = new ArrayList<>();
+		this.rocksDB = RocksDB.open(options, path.toString(), descriptors, columnFamilyHandles);
+
+		ColumnFamilyHandle versionsColumnFamily = columnFamilyHandles.get(1);
+		this.columnFamilies = new EnumMap<>(WrapperSourceType.class);
+		int index = 2;
+		for (WrapperSourceType type : PRODUCTS.keySet()) {
+			ColumnFamilyHandle columnFamily = columnFamilyHandles.get(index);
+			byte[] versionKey = type.name().getBytes(StandardCharsets.UTF_8);
+			byte[] storedVersion = rocksDB.get(versionsColumnFamily, versionKey);
+			String version = versions.get(type);
+
+			if (storedVersion != null && (version == null || !version.equals(new String(storedVersion, StandardCharsets.UTF_8)))) {
+				//Источник обновился (или его версия больше неизвестна) - сохраненные ответы устарели
+				rocksDB.dropColumnFamily(columnFamily);
+				columnFamily.close();
+				columnFamily = rocksDB.createColumnFamily(new ColumnFamilyDescriptor(getColumnFamilyName(type), columnFamilyOptions));
+				columnFamilyHandles.set(index, columnFamily);
+				rocksDB.delete(versionsColumnFamily, versionKey);
+			}
+			if (version != null) {
+				rocksDB.put(versionsColumnFamily, versionKey, version.getBytes(StandardCharsets.UTF_8));
+				columnFamilies.put(type, columnFamily);
+			}
+			index++;
+		}
+	}
+
+	boolean isSupported(WrapperSourceType type) {
+		return columnFamilies.containsKey(type);
+	}
+
+	/**
+	 * @return null - если значения нет в кеше
+	 */
+	Optional<Object> get(WrapperSourceType type, Assembly assembly, long key) {
+		ColumnFamilyHandle columnFamily = columnFamilies.get(type);
+		if (columnFamily == null || key == SourceCache.NO_KEY) {
+			return null;
+		}
+		byte[] bytes;
+		try {
+			bytes = rocksDB.get(columnFamily, getKey(assembly, key));
+		} catch (RocksDBException e) {
+			throw new RuntimeException(e);
+		}
+		if (bytes == null) {
+			return null;
+		}
+		return Optional.ofNullable(decode(type, bytes));
+	}
+
+	void put(WrapperSourceType type, Assembly assembly, long key, Optional<Object> value) {
+		ColumnFamilyHandle columnFamily = columnFamilies.get(type);
+		if (columnFamily == null || key == SourceCache.NO_KEY) {
+			return;
+		}
+		try {
+			rocksDB.put(columnFamily, getKey(assembly, key), encode(type, value.orElse(null)));
+		} catch (RocksDBException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	@Override
+	public void close() {
+		for (ColumnFamilyHandle columnFamilyHandle : columnFamilyHandles) {
+			columnFamilyHandle.close();
+		}
+		rocksDB.close();
+		columnFamilyOptions.close();
+		options.close();
+	}
+
+	private static Map<WrapperSourceType, String> getVersions(List<SourceMetadata> sourceMetadata) {
+		Map<WrapperSourceType, String> versions = new EnumMap<>(WrapperSourceType.class);
+		for (Map.Entry<WrapperSourceType, String> entry : PRODUCTS.entrySet()) {
+			for (SourceMetadata metadata : sourceMetadata) {
+				if (entry.getValue().equals(metadata.product) && metadata.version != null) {
+					versions.put(entry.getKey(), metadata.version + "/" + metadata.date);
+				}
+			}
+		}
+		return versions;
+	}
+
+	private static byte[] getColumnFamilyName(WrapperSourceType type) {
+		return type.name().toLowerCase().getBytes(StandardCharsets.UTF_8);
+	}
+
+	private static byte[] getKey(Assembly assembly, long key) {
+		return ByteBuffer.allocate(Byte.BYTES + Long.BYTES)
+				.put((byte) assembly.ordinal())
+				.putLong(key)
+				.array();
+	}
+
+	static byte[] encode(WrapperSourceType type, Object value) {
+		if (value == null) {
+			return NULL_VALUE;
+		} else if (type == WrapperSourceType.CONSERVATION) {
+			Conservation conservation = (Conservation) value;
+			JSONObject jConservation = new JSONObject();
+			jConservation.put("GerpRS", conservation.gerpRS);
+			jConservation.put("GerpN", conservation.gerpN);
+			return jConservation.toJSONString().getBytes(StandardCharsets.UTF_8);
+		} else {
+			return ((JSONArray) value).toJSONString().getBytes(StandardCharsets.UTF_8);
+		}
+	}
+
+	static Object decode(WrapperSourceType type, byte[] bytes) {
+		if (bytes.length == 0) {
+			return null;
+		}
+		Object value;
+		try {
+			value = new JSONParser(JSONParser.DEFAULT_PERMISSIVE_MODE).parse(new String(bytes, StandardCharsets.UTF_8));
+		} catch (ParseException e) {
+			throw new RuntimeException(e);
+		}
+		if (type == WrapperSourceType.CONSERVATION) {
+			JSONObject jConservation = (JSONObject) value;
+			return new Conservation(toFloat(jConservation.getAsNumber("GerpRS")), toFloat(jConservation.getAsNumber("GerpN")));
+		} else {
+			return value;
+		}
+	}
+
+	private static Float toFloat(Number number) {
+		return (number == null) ? null : number.floatValue();
+	}
+}
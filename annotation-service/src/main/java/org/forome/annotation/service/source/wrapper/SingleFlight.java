@@ -0,0 +1,148 @@
+/*
+ *  Copyright (c) 2020. Vladimir Ulitin, Partners Healthcare and members of Forome Association
+ *
+ *  Developed by Vladimir Ulitin and Michael Bouzinier
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ * 	 http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.forome.annotation.service.source.wrapper;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * Объединение одновременных одинаковых запросов: пока загрузка по ключу выполняется,
+ * остальные потоки с тем же ключом не идут в источник, а дожидаются её результата.
+ * Одиночные и пакетные загрузки делят одну таблицу выполняющихся загрузок
+ */
+class SingleFlight<K, V> {
+
+	private final ConcurrentMap<K, CompletableFuture<V>> inFlight;
+
+	private final AtomicLong loads;
+	private final AtomicLong suppressed;
+
+	SingleFlight() {
+		this.inFlight = new ConcurrentHashMap<>();
+		this.loads = new AtomicLong();
+		this.suppressed = new AtomicLong();
+	}
+
+	V execute(K key, Callable<V> loader) throws ExecutionException {
+		CompletableFuture<V> future = new CompletableFuture<>();
+		CompletableFuture<V> existing = inFlight.putIfAbsent(key, future);
+		if (existing != null) {
+			suppressed.incrementAndGet();
+			try {
+				return existing.get();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new RuntimeException(e);
+			}
+		}
+
+		loads.incrementAndGet();
+		try {
+			V value = loader.call();
+			future.complete(value);
+			return value;
+		} catch (Throwable e) {
+			future.completeExceptionally(e);
+			throw new ExecutionException(e);
+		} finally {
+			inFlight.remove(key, future);
+		}
+	}
+
+	/**
+	 * Пакетная загрузка: до пакетного запроса ключи регистрируются как выполняющиеся загрузки,
+	 * поэтому одновременные обращения к ним (одиночные и пакетные) дожидаются пакета.
+	 * Ключи, которые уже загружаются, в пакет не входят - их результат ожидается после загрузки пакета
+	 *
+	 * @param loader получает ключи, загружаемые этим вызовом, и возвращает значения в том же порядке
+	 */
+	List<V> executeAll(List<K> keys, Function<List<K>, List<V>> loader) throws ExecutionException {
+		Map<K, CompletableFuture<V>> owned = new LinkedHashMap<>();
+		List<CompletableFuture<V>> futures = new ArrayList<>(keys.size());
+		for (K key : keys) {
+			CompletableFuture<V> future = owned.get(key);
+			if (future == null) {
+				CompletableFuture<V> created = new CompletableFuture<>();
+				future = inFlight.putIfAbsent(key, created);
+				if (future != null) {
+					suppressed.incrementAndGet();
+				} else {
+					owned.put(key, created);
+					future = created;
+				}
+			}
+			futures.add(future);
+		}
+
+		if (!owned.isEmpty()) {
+			loads.addAndGet(owned.size());
+			try {
+				List<K> ownedKeys = new ArrayList<>(owned.keySet());
+				List<V> values = loader.apply(ownedKeys);
+				for (int i = 0; i < ownedKeys.size(); i++) {
+					owned.get(ownedKeys.get(i)).complete(values.get(i));
+				}
+			} catch (Throwable e) {
+				for (CompletableFuture<V> future : owned.values()) {
+					future.completeExceptionally(e);
+				}
+				throw new ExecutionException(e);
+			} finally {
+				for (Map.Entry<K, CompletableFuture<V>> entry : owned.entrySet()) {
+					inFlight.remove(entry.getKey(), entry.getValue());
+				}
+			}
+		}
+
+		//Свои загрузки завершены до ожидания чужих, поэтому встречные пакеты не ждут друг друга бесконечно
+		List<V> values = new ArrayList<>(keys.size());
+		for (CompletableFuture<V> future : futures) {
+			try {
+				values.add(future.get());
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new RuntimeException(e);
+			}
+		}
+		return values;
+	}
+
+	/**
+	 * Количество выполненных загрузок (пакетная загрузка учитывается по числу ключей)
+	 */
+	long loadCount() {
+		return loads.get();
+	}
+
+	/**
+	 * Количество запросов, которые не пошли в источник, а получили результат уже выполнявшейся загрузки
+	 */
+	long suppressedCount() {
+		return suppressed.get();
+	}
+}
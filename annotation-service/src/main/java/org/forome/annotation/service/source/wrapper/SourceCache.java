@@ -0,0 +1,220 @@
+/*
+ *  Copyright (c) 2020. Vladimir Ulitin, Partners Healthcare and members of Forome Association
+ *
+ *  Developed by Vladimir Ulitin and Michael Bouzinier
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ * 	 http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.forome.annotation.service.source.wrapper;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import org.forome.core.struct.Chromosome;
+import org.forome.core.struct.Interval;
+import org.forome.core.struct.Position;
+import org.forome.core.struct.sequence.Sequence;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.function.Function;
+
+/**
+ * Кеш ответов одного типа источника.
+ * Ключ - упакованные в long хромосома, начало и конец (5 + 29 + 29 бит), без построения строк на каждое обращение.
+ * Размер ограничен оценкой занимаемой памяти в байтах.
+ * Одновременные промахи по одному ключу объединяются в одну загрузку (SingleFlight), в том числе
+ * промахи пакетных обращений - поэтому вместо загрузки средствами Guava (cache.get(key, loader)),
+ * которая не видит пакетные загрузки, промахи идут через общий SingleFlight
+ */
+class SourceCache {
+
+	/**
+	 * Ключ для хромосом и координат, которые не помещаются в упакованное представление - такие обращения не кешируются
+	 */
+	static final long NO_KEY = -1L;
+
+	private static final int COORDINATE_BITS = 29;
+	private static final long COORDINATE_MASK = (1L << COORDINATE_BITS) - 1;
+
+	private static final int CHROMOSOME_X = 23;
+	private static final int CHROMOSOME_Y = 24;
+	private static final int CHROMOSOME_M = 25;
+
+	//Оценки размеров объектов в куче (64-bit JVM, сжатые указатели), с запасом
+	private static final int OBJECT_OVERHEAD = 16;
+	private static final int REFERENCE_SIZE = 8;
+	private static final int ENTRY_OVERHEAD = 32;
+	private static final int UNKNOWN_VALUE_SIZE = 128;
+
+	private final Cache<Long, Optional<Object>> cache;
+	private final SingleFlight<Long, Optional<Object>> singleFlight;
+
+	SourceCache(long maxWeightBytes) {
+		this.cache = CacheBuilder.newBuilder()
+				.maximumWeight(maxWeightBytes)
+				.weigher((Long key, Optional<Object> value) -> weigh(value))
+				.recordStats()
+				.build();
+		this.singleFlight = new SingleFlight<>();
+	}
+
+	Optional<Object> get(long key, Callable<Optional<Object>> loader) throws ExecutionException {
+		Optional<Object> value = cache.getIfPresent(key);
+		if (value != null) {
+			return value;
+		}
+		return singleFlight.execute(key, () -> {
+			//Предыдущая загрузка могла завершиться между промахом и входом в singleFlight (без учета в статистике)
+			Optional<Object> loaded = cache.asMap().get(key);
+			if (loaded == null) {
+				loaded = loader.call();
+				cache.put(key, loaded);
+			}
+			return loaded;
+		});
+	}
+
+	/**
+	 * Загрузка ключей, которых нет в кеше: пакетный запрос к источнику получают только ключи,
+	 * не загружаемые в этот момент другими потоками
+	 *
+	 * @param loader пакетный запрос, значения в порядке ключей
+	 */
+	List<Optional<Object>> getAll(List<Long> keys, Function<List<Long>, List<Optional<Object>>> loader) throws ExecutionException {
+		return singleFlight.executeAll(keys, loadingKeys -> {
+			//Предыдущая загрузка части ключей могла завершиться до их регистрации в singleFlight
+			List<Optional<Object>> values = new ArrayList<>(loadingKeys.size());
+			List<Long> requestKeys = new ArrayList<>();
+			for (Long key : loadingKeys) {
+				Optional<Object> value = cache.asMap().get(key);
+				values.add(value);
+				if (value == null) {
+					requestKeys.add(key);
+				}
+			}
+			if (!requestKeys.isEmpty()) {
+				List<Optional<Object>> loaded = loader.apply(requestKeys);
+				for (int i = 0, j = 0; i < values.size(); i++) {
+					if (values.get(i) == null) {
+						Optional<Object> value = loaded.get(j++);
+						cache.put(loadingKeys.get(i), value);
+						values.set(i, value);
+					}
+				}
+			}
+			return values;
+		});
+	}
+
+	Optional<Object> getIfPresent(long key) {
+		return cache.getIfPresent(key);
+	}
+
+	void put(long key, Optional<Object> value) {
+		cache.put(key, value);
+	}
+
+	CacheStats stats() {
+		return cache.stats();
+	}
+
+	SingleFlight<Long, Optional<Object>> singleFlight() {
+		return singleFlight;
+	}
+
+	long size() {
+		return cache.size();
+	}
+
+	static long getKey(Position position) {
+		return getKey(position.chromosome, position.value, position.value);
+	}
+
+	static long getKey(Interval interval) {
+		return getKey(interval.chromosome, interval.start, interval.end);
+	}
+
+	static long getKey(Chromosome chromosome, int start, int end) {
+		int index = getChromosomeIndex(chromosome);
+		if (index < 0 || start < 0 || end < 0 || start > COORDINATE_MASK || end > COORDINATE_MASK) {
+			return NO_KEY;
+		}
+		return ((long) index << (2 * COORDINATE_BITS)) | ((long) start << COORDINATE_BITS) | end;
+	}
+
+	private static int getChromosomeIndex(Chromosome chromosome) {
+		String value = chromosome.getChar();
+		switch (value) {
+			case "X":
+				return CHROMOSOME_X;
+			case "Y":
+				return CHROMOSOME_Y;
+			case "M":
+			case "MT":
+				return CHROMOSOME_M;
+			default:
+				if (value.isEmpty() || value.length() > 2) {
+					return -1;
+				}
+				int index = 0;
+				for (int i = 0; i < value.length(); i++) {
+					char c = value.charAt(i);
+					if (c < '0' || c > '9') {
+						return -1;
+					}
+					index = index * 10 + (c - '0');
+				}
+				return (index >= 1 && index < CHROMOSOME_X) ? index : -1;
+		}
+	}
+
+	private static int weigh(Optional<Object> value) {
+		long weight = ENTRY_OVERHEAD + OBJECT_OVERHEAD + estimate(value.orElse(null));
+		return (int) Math.min(weight, Integer.MAX_VALUE);
+	}
+
+	/**
+	 * Грубая оценка памяти, занимаемой ответом источника
+	 */
+	static long estimate(Object value) {
+		if (value == null) {
+			return 0;
+		} else if (value instanceof String) {
+			return OBJECT_OVERHEAD * 2 + 2L * ((String) value).length();
+		} else if (value instanceof Number || value instanceof Boolean) {
+			return OBJECT_OVERHEAD;
+		} else if (value instanceof Map) {
+			long size = OBJECT_OVERHEAD * 3;
+			for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+				size += ENTRY_OVERHEAD + estimate(entry.getKey()) + estimate(entry.getValue());
+			}
+			return size;
+		} else if (value instanceof List) {
+			long size = OBJECT_OVERHEAD * 2;
+			for (Object item : (List<?>) value) {
+				size += REFERENCE_SIZE + estimate(item);
+			}
+			return size;
+		} else if (value instanceof Sequence) {
+			return OBJECT_OVERHEAD * 2 + estimate(((Sequence) value).getValue());
+		} else {
+			return UNKNOWN_VALUE_SIZE;
+		}
+	}
+}
@@ -20,23 +20,69 @@ package org.forome.annotation.service.source.wrapper;
 
 import org.forome.annotation.annotator.AnnotationConsole;
 import org.forome.annotation.service.source.DataSource;
+import org.forome.annotation.service.source.internal.fasta.FastaSourceTwoBit;
 import org.forome.annotation.service.source.struct.Source;
+import org.forome.annotation.service.source.struct.SourceBatch;
+import org.forome.annotation.struct.SourceMetadata;
+import org.forome.annotation.utils.PrefetchScope;
 import org.forome.core.struct.Assembly;
+import org.rocksdb.RocksDBException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.EnumMap;
 import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
 public class WrapperDataSource implements DataSource {
 
 	private final static Logger log = LoggerFactory.getLogger(AnnotationConsole.class);
 
+	private final DataSource dataSource;
+
 	private final HashMap<Assembly, WrapperSource> sources;
 
-	public WrapperDataSource(DataSource dataSource) {
+	private final PersistentSourceCache persistentCache;
+
+	private final Map<Assembly, FastaSourceTwoBit> fastaSources;
+
+	/**
+	 * @param persistentCachePath - директория кеша ответов на диске, null - без него
+	 * @param fasta2bit - локальные референсы .2bit по сборкам, для остальных сборок последовательности запрашиваются у источника
+	 */
+	public WrapperDataSource(DataSource dataSource, long cacheSizeBytes, Path persistentCachePath, Map<Assembly, Path> fasta2bit) {
+		this.dataSource = dataSource;
+
+		if (persistentCachePath != null) {
+			List<SourceMetadata> sourceMetadata = dataSource.getSourceMetadata();
+			try {
+				this.persistentCache = new PersistentSourceCache(persistentCachePath, sourceMetadata);
+			} catch (RocksDBException e) {
+				throw new RuntimeException(e);
+			}
+			log.debug("Persistent source cache: {}, sources: {}", persistentCachePath, sourceMetadata.size());
+		} else {
+			this.persistentCache = null;
+		}
+
+		this.fastaSources = new EnumMap<>(Assembly.class);
+		for (Map.Entry<Assembly, Path> entry : fasta2bit.entrySet()) {
+			try {
+				fastaSources.put(entry.getKey(), new FastaSourceTwoBit(entry.getValue()));
+			} catch (IOException e) {
+				throw new RuntimeException(e);
+			}
+			log.debug("Fasta 2bit {}: {}", entry.getKey(), entry.getValue());
+		}
+
 		this.sources = new HashMap<>();
 		for (Assembly assembly : Assembly.values()) {
-			sources.put(assembly, new WrapperSource(dataSource.getSource(assembly)));
+			sources.put(assembly, new WrapperSource(
+					dataSource.getSource(assembly), assembly, cacheSizeBytes, persistentCache, fastaSources.get(assembly)
+			));
 		}
 	}
 
@@ -45,6 +91,11 @@ public class WrapperDataSource implements DataSource {
 		return sources.get(assembly);
 	}
 
+	public PrefetchScope prefetch(Assembly assembly, SourceBatch batch) {
+		return sources.get(assembly).prefetch(batch);
+	}
+
+	@Override
 	public void printStatistics() {
 		for (Assembly assembly : Assembly.values()) {
 			WrapperSource wrapperSource = sources.get(assembly);
@@ -54,6 +105,26 @@ public class WrapperDataSource implements DataSource {
 			wrapperSource.printStatistics();
 			log.debug("************END************");
 		}
+		dataSource.printStatistics();
+	}
+
+	@Override
+	public List<SourceMetadata> getSourceMetadata() {
+		return dataSource.getSourceMetadata();
+	}
+
+	@Override
+	public void close() {
+		if (persistentCache != null) {
+			persistentCache.close();
+		}
+		for (FastaSourceTwoBit fastaSource : fastaSources.values()) {
+			try {
+				fastaSource.close();
+			} catch (IOException e) {
+				throw new RuntimeException(e);
+			}
+		}
 	}
 
 }
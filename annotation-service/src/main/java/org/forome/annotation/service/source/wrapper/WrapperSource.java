@@ -18,127 +18,435 @@
 
 package org.forome.annotation.service.source.wrapper;
 
-import com.google.common.cache.Cache;
-import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
 import net.minidev.json.JSONArray;
 import org.forome.annotation.annotator.AnnotationConsole;
+import org.forome.annotation.service.source.internal.fasta.FastaSourceTwoBit;
 import org.forome.annotation.service.source.struct.Record;
 import org.forome.annotation.service.source.struct.Source;
+import org.forome.annotation.service.source.struct.SourceBatch;
+import org.forome.annotation.utils.PrefetchScope;
+import org.forome.annotation.utils.PrefetchStore;
 import org.forome.annotation.utils.Statistics;
 import org.forome.astorage.core.data.Conservation;
+import org.forome.core.struct.Assembly;
 import org.forome.core.struct.Interval;
 import org.forome.core.struct.Position;
 import org.forome.core.struct.sequence.Sequence;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.util.HashMap;
-import java.util.Map;
-import java.util.Optional;
+import java.util.*;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.function.ToLongFunction;
 
 public class WrapperSource implements Source {
 
 	private final static Logger log = LoggerFactory.getLogger(AnnotationConsole.class);
 
+	//Типы, ответы которых кешируются, бюджет памяти делится между ними поровну
+	private static final EnumSet<WrapperSourceType> CACHED_TYPES = EnumSet.complementOf(EnumSet.of(WrapperSourceType.BATCH));
+
 	private final Source source;
+	private final Assembly assembly;
+
+	private final Map<WrapperSourceType, SourceCache> caches;
+
+	//Кеш на диске, общий для всех запусков (может отсутствовать)
+	private final PersistentSourceCache persistentCache;
+	private final Map<WrapperSourceType, AtomicLong> persistentHits;
+	private final Map<WrapperSourceType, AtomicLong> persistentMisses;
+
+	//Данные, загруженные пакетными запросами, живут до закрытия своего PrefetchScope
+	private final Map<WrapperSourceType, PrefetchStore<Long, Optional<Object>>> prefetched;
+	private final Set<Sequence> prefetchedFasta;
 
-	private final Cache<String, Object> cache;
+	//Локальный референс .2bit (может отсутствовать), обращения к нему не кешируются
+	private final FastaSourceTwoBit fastaSource;
 
 	private final Map<WrapperSourceType, Statistics> statistics;
 
-	public WrapperSource(Source source) {
+	/**
+	 * @param cacheSizeBytes - оценка памяти, которую могут занимать кеши ответов всех типов источника
+	 * @param persistentCache - кеш на диске (может быть null)
+	 * @param fastaSource - локальный референс .2bit (может быть null)
+	 */
+	WrapperSource(Source source, Assembly assembly, long cacheSizeBytes, PersistentSourceCache persistentCache, FastaSourceTwoBit fastaSource) {
 		this.source = source;
-		this.cache = CacheBuilder.newBuilder()
-				.maximumSize(100)
-				.build();
+		this.assembly = assembly;
+		this.persistentCache = persistentCache;
+		this.fastaSource = fastaSource;
 
-		this.statistics = new HashMap<>();
+		this.caches = new EnumMap<>(WrapperSourceType.class);
+		this.prefetched = new EnumMap<>(WrapperSourceType.class);
+		for (WrapperSourceType type : CACHED_TYPES) {
+			caches.put(type, new SourceCache(cacheSizeBytes / CACHED_TYPES.size()));
+			prefetched.put(type, new PrefetchStore<>());
+		}
+		this.prefetchedFasta = ConcurrentHashMap.newKeySet();
+
+		this.statistics = new EnumMap<>(WrapperSourceType.class);
+		this.persistentHits = new EnumMap<>(WrapperSourceType.class);
+		this.persistentMisses = new EnumMap<>(WrapperSourceType.class);
 		for (WrapperSourceType type : WrapperSourceType.values()) {
 			statistics.put(type, new Statistics());
+			persistentHits.put(type, new AtomicLong());
+			persistentMisses.put(type, new AtomicLong());
 		}
 	}
 
 	@Override
 	public Record getRecord(Position position) {
-		try {
-			Optional<Record> value = (Optional<Record>) cache.get(getCacheKey(WrapperSourceType.RECORD, position), () -> callable(WrapperSourceType.RECORD, () -> source.getRecord(position)).call());
-			return value.orElse(null);
-		} catch (ExecutionException e) {
-			throw new RuntimeException(e.getCause());
-		}
+		return get(WrapperSourceType.RECORD, SourceCache.getKey(position), () -> source.getRecord(position));
 	}
 
 	@Override
 	public Sequence getFastaSequence(Interval interval) {
-		try {
-			Optional<Sequence> value = (Optional<Sequence>) cache.get(getCacheKey(WrapperSourceType.FASTA, interval), () -> callable(WrapperSourceType.FASTA, () -> source.getFastaSequence(interval)).call());
-			return value.orElse(null);
-		} catch (ExecutionException e) {
-			throw new RuntimeException(e.getCause());
+		if (fastaSource != null && fastaSource.contains(interval.chromosome)) {
+			return fastaSource.getSequence(interval);
 		}
+		Sequence prefetched = getPrefetchedFastaSequence(interval);
+		if (prefetched != null) {
+			return prefetched;
+		}
+		return get(WrapperSourceType.FASTA, SourceCache.getKey(interval), () -> source.getFastaSequence(interval));
 	}
 
 	@Override
-	public Conservation getConservation(Position position) {
-		try {
-			Optional<Conservation> value = (Optional<Conservation>) cache.get(getCacheKey(WrapperSourceType.CONSERVATION, position), () -> callable(WrapperSourceType.CONSERVATION, () -> source.getConservation(position)).call());
-			return value.orElse(null);
-		} catch (ExecutionException e) {
-			throw new RuntimeException(e.getCause());
+	public boolean isSoftMasked(Interval interval) {
+		if (fastaSource != null && fastaSource.contains(interval.chromosome)) {
+			return fastaSource.isSoftMasked(interval);
 		}
+		return Source.super.isSoftMasked(interval);
+	}
+
+	@Override
+	public Conservation getConservation(Position position) {
+		return get(WrapperSourceType.CONSERVATION, SourceCache.getKey(position), () -> source.getConservation(position));
 	}
 
 	@Override
 	public JSONArray getGnomad(Position position) {
-		try {
-			Optional<JSONArray> value = (Optional<JSONArray>) cache.get(getCacheKey(WrapperSourceType.GNOMAD, position), () -> callable(WrapperSourceType.GNOMAD, () -> source.getGnomad(position)).call());
-			return value.orElse(null);
-		} catch (ExecutionException e) {
-			throw new RuntimeException(e.getCause());
-		}
+		return get(WrapperSourceType.GNOMAD, SourceCache.getKey(position), () -> source.getGnomad(position));
 	}
 
 	@Override
 	public JSONArray getDbSNP(Interval interval) {
-		try {
-			Optional<JSONArray> value = (Optional<JSONArray>) cache.get(getCacheKey(WrapperSourceType.DBSNP, interval), () -> callable(WrapperSourceType.DBSNP, () -> source.getDbSNP(interval)).call());
-			return value.orElse(null);
-		} catch (ExecutionException e) {
-			throw new RuntimeException(e.getCause());
-		}
+		return get(WrapperSourceType.DBSNP, SourceCache.getKey(interval), () -> source.getDbSNP(interval));
 	}
 
 	@Override
 	public JSONArray getDbNSFP(Interval interval) {
-		try {
-			Optional<JSONArray> value = (Optional<JSONArray>) cache.get(getCacheKey(WrapperSourceType.DBNSFP, interval), () -> callable(WrapperSourceType.DBNSFP, () -> source.getDbNSFP(interval)).call());
-			return value.orElse(null);
-		} catch (ExecutionException e) {
-			throw new RuntimeException(e.getCause());
-		}
+		return get(WrapperSourceType.DBNSFP, SourceCache.getKey(interval), () -> source.getDbNSFP(interval));
 	}
 
 	@Override
 	public JSONArray getSpliceAI(Interval interval) {
-		try {
-			Optional<JSONArray> value = (Optional<JSONArray>) cache.get(getCacheKey(WrapperSourceType.SPLICEAI, interval), () -> callable(WrapperSourceType.SPLICEAI, () -> source.getSpliceAI(interval)).call());
-			return value.orElse(null);
-		} catch (ExecutionException e) {
-			throw new RuntimeException(e.getCause());
+		return get(WrapperSourceType.SPLICEAI, SourceCache.getKey(interval), () -> source.getSpliceAI(interval));
+	}
+
+	@Override
+	public List<JSONArray> getGnomad(List<Position> positions) {
+		return getAll(WrapperSourceType.GNOMAD, positions, SourceCache::getKey, source::getGnomad);
+	}
+
+	@Override
+	public List<JSONArray> getDbNSFP(List<Interval> intervals) {
+		return getAll(WrapperSourceType.DBNSFP, intervals, SourceCache::getKey, source::getDbNSFP);
+	}
+
+	@Override
+	public void fetch(SourceBatch batch) {
+		source.fetch(batch);
+	}
+
+	/**
+	 * Загружает данные для блока соседних вариантов одним пакетным запросом,
+	 * пока scope не закрыт - обращения по этим ключам обслуживаются без запросов к источнику
+	 */
+	public PrefetchScope prefetch(SourceBatch batch) {
+		if (batch.isEmpty()) {
+			return PrefetchScope.EMPTY;
+		}
+
+		Map<WrapperSourceType, Map<Long, Optional<Object>>> values = new EnumMap<>(WrapperSourceType.class);
+
+		//Значения, уже сохраненные на диске, и последовательности из локального референса у источника не запрашиваются
+		SourceBatch request = (persistentCache != null || fastaSource != null) ? loadPersistent(batch, values) : batch;
+		if (!request.isEmpty()) {
+			long t1 = System.currentTimeMillis();
+			source.fetch(request);
+			statistics.get(WrapperSourceType.BATCH).addTime(System.currentTimeMillis() - t1);
+		}
+
+		for (Interval interval : request.getIntervals()) {
+			String key = SourceBatch.getKey(interval);
+			long cacheKey = SourceCache.getKey(interval);
+			putPrefetched(values, WrapperSourceType.DBSNP, cacheKey, request.dbSNP, key);
+			putPrefetched(values, WrapperSourceType.DBNSFP, cacheKey, request.dbNSFP, key);
+			putPrefetched(values, WrapperSourceType.SPLICEAI, cacheKey, request.spliceAI, key);
+		}
+		for (Position position : request.getConservationPositions()) {
+			putPrefetched(values, WrapperSourceType.CONSERVATION, SourceCache.getKey(position), request.conservation, SourceBatch.getKey(position));
+		}
+		for (Position position : request.getGnomadPositions()) {
+			putPrefetched(values, WrapperSourceType.GNOMAD, SourceCache.getKey(position), request.gnomad, SourceBatch.getKey(position));
+		}
+		List<PrefetchScope> valuesScopes = new ArrayList<>();
+		for (Map.Entry<WrapperSourceType, Map<Long, Optional<Object>>> entry : values.entrySet()) {
+			valuesScopes.add(prefetched.get(entry.getKey()).put(entry.getValue()));
+		}
+		PrefetchScope valuesScope = PrefetchScope.of(valuesScopes);
+
+		List<Sequence> sequences = new ArrayList<>(request.fasta);
+		prefetchedFasta.addAll(sequences);
+
+		return () -> {
+			valuesScope.close();
+			for (Sequence sequence : sequences) {
+				prefetchedFasta.remove(sequence);
+			}
+		};
+	}
+
+	private <T> T get(WrapperSourceType type, long key, Callable<T> callable) {
+		if (key == SourceCache.NO_KEY) {
+			try {
+				return (T) callable(type, callable).call().orElse(null);
+			} catch (Exception e) {
+				throw new RuntimeException(e);
+			}
+		}
+		Optional<Object> value = prefetched.get(type).get(key);
+		if (value == null) {
+			try {
+				value = caches.get(type).get(key, load(type, key, callable));
+			} catch (ExecutionException e) {
+				throw new RuntimeException(e.getCause());
+			}
+		}
+		return (T) value.orElse(null);
+	}
+
+	/**
+	 * Пакетный запрос: уже загруженные значения берутся из предзагрузки и кеша,
+	 * недостающие - одним пакетным запросом к источнику
+	 */
+	private <K, T> List<T> getAll(WrapperSourceType type, List<K> items, ToLongFunction<K> keyFunction, Function<List<K>, List<T>> loader) {
+		Object[] result = new Object[items.size()];
+		long[] keys = new long[items.size()];
+		List<Integer> missingIndexes = new ArrayList<>();
+		for (int i = 0; i < items.size(); i++) {
+			long key = keyFunction.applyAsLong(items.get(i));
+			keys[i] = key;
+			Optional<Object> value = null;
+			if (key != SourceCache.NO_KEY) {
+				value = prefetched.get(type).get(key);
+				if (value == null) {
+					value = caches.get(type).getIfPresent(key);
+				}
+				if (value == null) {
+					value = getPersistent(type, key);
+				}
+			}
+			if (value != null) {
+				result[i] = value.orElse(null);
+			} else {
+				missingIndexes.add(i);
+			}
+		}
+
+		//Недостающие ключи загружаются через SingleFlight кеша: ключи, которые уже загружают другие потоки, не запрашиваются повторно
+		Map<Long, K> keyedItems = new LinkedHashMap<>();
+		List<Integer> unkeyedIndexes = new ArrayList<>();
+		List<K> unkeyedItems = new ArrayList<>();
+		for (int index : missingIndexes) {
+			if (keys[index] != SourceCache.NO_KEY) {
+				keyedItems.putIfAbsent(keys[index], items.get(index));
+			} else {
+				unkeyedIndexes.add(index);
+				unkeyedItems.add(items.get(index));
+			}
+		}
+
+		if (!keyedItems.isEmpty()) {
+			List<Long> missingKeys = new ArrayList<>(keyedItems.keySet());
+			List<Optional<Object>> values;
+			try {
+				values = caches.get(type).getAll(missingKeys, loadingKeys -> {
+					List<K> loadingItems = new ArrayList<>(loadingKeys.size());
+					for (Long key : loadingKeys) {
+						loadingItems.add(keyedItems.get(key));
+					}
+					List<T> loaded = loadAll(type, loadingItems, loader);
+					List<Optional<Object>> loadedValues = new ArrayList<>(loaded.size());
+					for (int i = 0; i < loaded.size(); i++) {
+						Optional<Object> value = Optional.ofNullable(loaded.get(i));
+						putPersistent(type, loadingKeys.get(i), value);
+						loadedValues.add(value);
+					}
+					return loadedValues;
+				});
+			} catch (ExecutionException e) {
+				throw new RuntimeException(e.getCause());
+			}
+			Map<Long, Optional<Object>> loadedByKey = new HashMap<>();
+			for (int i = 0; i < missingKeys.size(); i++) {
+				loadedByKey.put(missingKeys.get(i), values.get(i));
+			}
+			for (int index : missingIndexes) {
+				if (keys[index] != SourceCache.NO_KEY) {
+					result[index] = loadedByKey.get(keys[index]).orElse(null);
+				}
+			}
+		}
+
+		if (!unkeyedItems.isEmpty()) {
+			List<T> loaded = loadAll(type, unkeyedItems, loader);
+			for (int i = 0; i < unkeyedIndexes.size(); i++) {
+				result[unkeyedIndexes.get(i)] = loaded.get(i);
+			}
+		}
+		return (List<T>) Arrays.asList(result);
+	}
+
+	private <K, T> List<T> loadAll(WrapperSourceType type, List<K> items, Function<List<K>, List<T>> loader) {
+		long t1 = System.currentTimeMillis();
+		List<T> loaded = loader.apply(items);
+		statistics.get(type).addTime(System.currentTimeMillis() - t1);
+		return loaded;
+	}
+
+	/**
+	 * Вырезает последовательность из предзагруженного региона, если интервал в него целиком попадает
+	 */
+	private Sequence getPrefetchedFastaSequence(Interval interval) {
+		if (prefetchedFasta.isEmpty() || interval.start > interval.end) {
+			return null;
+		}
+		for (Sequence region : prefetchedFasta) {
+			Interval regionInterval = region.interval;
+			String value = region.getValue();
+			if (value == null || value.length() != regionInterval.end - regionInterval.start + 1) {
+				continue;
+			}
+			if (!regionInterval.chromosome.getChar().equals(interval.chromosome.getChar())) {
+				continue;
+			}
+			if (regionInterval.start <= interval.start && interval.end <= regionInterval.end) {
+				return Sequence.build(
+						interval,
+						value.substring(interval.start - regionInterval.start, interval.end - regionInterval.start + 1)
+				);
+			}
+		}
+		return null;
+	}
+
+	private void putPrefetched(Map<WrapperSourceType, Map<Long, Optional<Object>>> target, WrapperSourceType type,
+							   long cacheKey, Map<String, ?> values, String key) {
+		if (cacheKey == SourceCache.NO_KEY || !values.containsKey(key)) {
+			return;
+		}
+		Optional<Object> value = Optional.ofNullable(values.get(key));
+		target.computeIfAbsent(type, t -> new HashMap<>()).put(cacheKey, value);
+		putPersistent(type, cacheKey, value);
+	}
+
+	/**
+	 * Переносит в values найденные на диске значения пакета
+	 *
+	 * @return пакет из того, чего на диске нет (последовательности - только вне локального референса)
+	 */
+	private SourceBatch loadPersistent(SourceBatch batch, Map<WrapperSourceType, Map<Long, Optional<Object>>> values) {
+		SourceBatch request = new SourceBatch();
+		for (Interval interval : batch.getIntervals()) {
+			if (!loadPersistent(values, SourceCache.getKey(interval),
+					WrapperSourceType.DBSNP, WrapperSourceType.DBNSFP, WrapperSourceType.SPLICEAI)) {
+				request.addInterval(interval);
+			}
+		}
+		for (Position position : batch.getConservationPositions()) {
+			if (!loadPersistent(values, SourceCache.getKey(position), WrapperSourceType.CONSERVATION)) {
+				request.addConservation(position);
+			}
+		}
+		for (Position position : batch.getGnomadPositions()) {
+			if (!loadPersistent(values, SourceCache.getKey(position), WrapperSourceType.GNOMAD)) {
+				request.addGnomad(position);
+			}
 		}
+		for (Interval interval : batch.getFastaIntervals()) {
+			if (fastaSource == null || !fastaSource.contains(interval.chromosome)) {
+				request.addFasta(interval);
+			}
+		}
+		return request;
 	}
 
-	private static String getCacheKey(WrapperSourceType type, Position position){
-		return type.name() + position.toString();
+	/**
+	 * @return true - если на диске есть значения всех типов
+	 */
+	private boolean loadPersistent(Map<WrapperSourceType, Map<Long, Optional<Object>>> values, long key, WrapperSourceType... types) {
+		if (key == SourceCache.NO_KEY) {
+			return false;
+		}
+		Map<WrapperSourceType, Optional<Object>> found = new EnumMap<>(WrapperSourceType.class);
+		for (WrapperSourceType type : types) {
+			Optional<Object> value = getPersistent(type, key);
+			if (value == null) {
+				return false;
+			}
+			found.put(type, value);
+		}
+		for (Map.Entry<WrapperSourceType, Optional<Object>> entry : found.entrySet()) {
+			values.computeIfAbsent(entry.getKey(), t -> new HashMap<>()).put(key, entry.getValue());
+		}
+		return true;
 	}
 
-	private static String getCacheKey(WrapperSourceType type, Interval interval){
-		return type.name() + interval.toString();
+	private Optional<Object> getPersistent(WrapperSourceType type, long key) {
+		if (persistentCache == null || !persistentCache.isSupported(type) || key == SourceCache.NO_KEY) {
+			return null;
+		}
+		Optional<Object> value = persistentCache.get(type, assembly, key);
+		if (value != null) {
+			persistentHits.get(type).incrementAndGet();
+		} else {
+			persistentMisses.get(type).incrementAndGet();
+		}
+		return value;
+	}
+
+	private void putPersistent(WrapperSourceType type, long key, Optional<Object> value) {
+		if (persistentCache != null) {
+			persistentCache.put(type, assembly, key, value);
+		}
 	}
 
-	private Callable callable(WrapperSourceType type, Callable callable) {
+	/**
+	 * Загрузка при промахе кеша в памяти: сначала кеш на диске, затем источник
+	 */
+	private Callable<Optional<Object>> load(WrapperSourceType type, long key, Callable callable) {
+		Callable<Optional<Object>> sourceCallable = callable(type, callable);
+		if (persistentCache == null || !persistentCache.isSupported(type)) {
+			return sourceCallable;
+		}
+		return () -> {
+			Optional<Object> value = getPersistent(type, key);
+			if (value == null) {
+				value = sourceCallable.call();
+				putPersistent(type, key, value);
+			}
+			return value;
+		};
+	}
+
+	private Callable<Optional<Object>> callable(WrapperSourceType type, Callable callable) {
 		return () -> {
 			long t1 = System.currentTimeMillis();
 			Optional result;
@@ -153,16 +461,32 @@ public class WrapperSource implements Source {
 	}
 
 	public boolean isEmptyStatistics() {
-		return (statistics.values().stream().mapToInt(istatistics -> istatistics.count.get()).sum() == 0);
+		return (statistics.values().stream().mapToInt(istatistics -> istatistics.count.get()).sum() == 0)
+				&& (caches.values().stream().mapToLong(cache -> cache.stats().requestCount()).sum() == 0);
 	}
 
 	public void printStatistics() {
 		for (Map.Entry<WrapperSourceType, Statistics> entry : statistics.entrySet()) {
 			WrapperSourceType type = entry.getKey();
 			Statistics iStatistics = entry.getValue();
+			SourceCache cache = caches.get(type);
 
-			if (iStatistics.count.get() == 0) continue;
-			log.debug("{}: {}", type, iStatistics.getStat());
+			if (cache != null && cache.stats().requestCount() > 0) {
+				CacheStats cacheStats = cache.stats();
+				log.debug("{}: {}, cache(hits: {}, misses: {}, evictions: {}, size: {}), single-flight(loads: {}, suppressed: {})",
+						type, iStatistics.getStat(),
+						cacheStats.hitCount(), cacheStats.missCount(), cacheStats.evictionCount(), cache.size(),
+						cache.singleFlight().loadCount(), cache.singleFlight().suppressedCount()
+				);
+			} else if (iStatistics.count.get() > 0) {
+				log.debug("{}: {}", type, iStatistics.getStat());
+			}
+
+			long hits = persistentHits.get(type).get();
+			long misses = persistentMisses.get(type).get();
+			if (hits + misses > 0) {
+				log.debug("{}: disk cache(hits: {}, misses: {})", type, hits, misses);
+			}
 		}
 	}
 }
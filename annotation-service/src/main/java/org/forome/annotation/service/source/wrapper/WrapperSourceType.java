@@ -32,5 +32,7 @@ public enum WrapperSourceType {
 
 	DBNSFP,
 
-	SPLICEAI
+	SPLICEAI,
+
+	BATCH
 }
@@ -0,0 +1,182 @@
+/*
+ Copyright (c) 2019. Vladimir Ulitin, Partners Healthcare and members of Forome Association
+
+ Developed by Vladimir Ulitin and Michael Bouzinier
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+	 http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+*/
+
+package org.forome.annotation.utils;
+
+import htsjdk.samtools.util.BlockCompressedInputStream;
+import htsjdk.samtools.util.IOUtil;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Построчное чтение с учетом позиции начала очередной строки: смещение в байтах от начала файла,
+ * для bgzip-файла - виртуальное смещение BGZF (смещение блока и смещение внутри распакованного блока).
+ * По сохраненной позиции чтение можно продолжить без повторного разбора и распаковки предшествующих строк.
+ * Обычный gzip-файл позиционного чтения не поддерживает, см. {@link #isPositional(Path)}
+ */
+public class PositionalLineReader implements Closeable {
+
+	private static final int BUFFER_SIZE = 64 * 1024;
+
+	private final InputStream inputStream;
+
+	/**
+	 * Для bgzip-файла, иначе null
+	 */
+	private final BlockCompressedInputStream blockCompressedInputStream;
+
+	private final byte[] buffer;
+	private int bufferOffset;
+	private int bufferLength;
+
+	private final ByteArrayOutputStream line;
+
+	private long position;
+
+	public PositionalLineReader(InputStream inputStream) {
+		this(inputStream, 0);
+	}
+
+	private PositionalLineReader(InputStream inputStream, long position) {
+		this.inputStream = inputStream;
+		this.blockCompressedInputStream = null;
+		this.buffer = new byte[BUFFER_SIZE];
+		this.bufferOffset = 0;
+		this.bufferLength = 0;
+		this.line = new ByteArrayOutputStream(1024);
+		this.position = position;
+	}
+
+	private PositionalLineReader(BlockCompressedInputStream blockCompressedInputStream) {
+		this.inputStream = blockCompressedInputStream;
+		this.blockCompressedInputStream = blockCompressedInputStream;
+		this.buffer = null;
+		this.line = null;
+	}
+
+	/**
+	 * Открывает файл начиная с позиции: обычный файл - перемещением по файлу,
+	 * bgzip-файл - переходом к блоку по виртуальному смещению
+	 *
+	 * @throws IllegalArgumentException если файл сжат обычным gzip
+	 */
+	public static PositionalLineReader open(Path file, long position) throws IOException {
+		if (position < 0) throw new IllegalArgumentException();
+
+		if (isGzip(file)) {
+			if (!IOUtil.isBlockCompressed(file)) {
+				throw new IllegalArgumentException("Positional reading is supported only for bgzip compressed file: " + file);
+			}
+			BlockCompressedInputStream inputStream = new BlockCompressedInputStream(file.toFile());
+			try {
+				inputStream.seek(position);
+			} catch (IOException e) {
+				inputStream.close();
+				throw e;
+			}
+			return new PositionalLineReader(inputStream);
+		}
+
+		FileChannel fileChannel = FileChannel.open(file, StandardOpenOption.READ);
+		try {
+			fileChannel.position(position);
+		} catch (IOException e) {
+			fileChannel.close();
+			throw e;
+		}
+		return new PositionalLineReader(Channels.newInputStream(fileChannel), position);
+	}
+
+	/**
+	 * Поддерживает ли файл позиционное чтение: несжатый или bgzip-файл
+	 */
+	public static boolean isPositional(Path file) throws IOException {
+		return !isGzip(file) || IOUtil.isBlockCompressed(file);
+	}
+
+	private static boolean isGzip(Path file) {
+		return file.getFileName().toString().endsWith(".gz");
+	}
+
+	/**
+	 * Позиция начала следующей строки
+	 */
+	public long getPosition() {
+		if (blockCompressedInputStream != null) {
+			return blockCompressedInputStream.getFilePointer();
+		}
+		return position;
+	}
+
+	/**
+	 * @return строка без символов конца строки, null - если достигнут конец файла
+	 */
+	public String readLine() throws IOException {
+		if (blockCompressedInputStream != null) {
+			return blockCompressedInputStream.readLine();
+		}
+		line.reset();
+		while (true) {
+			if (bufferOffset == bufferLength) {
+				bufferLength = inputStream.read(buffer);
+				bufferOffset = 0;
+				if (bufferLength <= 0) {
+					bufferLength = 0;
+					if (line.size() == 0) {
+						return null;
+					}
+					return toLine();
+				}
+			}
+
+			int start = bufferOffset;
+			while (bufferOffset < bufferLength && buffer[bufferOffset] != '\n') {
+				bufferOffset++;
+			}
+			line.write(buffer, start, bufferOffset - start);
+			position += bufferOffset - start;
+			if (bufferOffset < bufferLength) {
+				bufferOffset++;
+				position++;
+				return toLine();
+			}
+		}
+	}
+
+	private String toLine() {
+		byte[] bytes = line.toByteArray();
+		int length = bytes.length;
+		if (length > 0 && bytes[length - 1] == '\r') {
+			length--;
+		}
+		return new String(bytes, 0, length, StandardCharsets.UTF_8);
+	}
+
+	@Override
+	public void close() throws IOException {
+		inputStream.close();
+	}
+}
@@ -0,0 +1,44 @@
+/*
+ Copyright (c) 2019. Vladimir Ulitin, Partners Healthcare and members of Forome Association
+
+ Developed by Vladimir Ulitin and Michael Bouzinier
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+	 http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+*/
+
+package org.forome.annotation.utils;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Время жизни предзагруженных данных: после закрытия данные, загруженные пакетом, удаляются из хранилищ
+ */
+@FunctionalInterface
+public interface PrefetchScope extends AutoCloseable {
+
+	PrefetchScope EMPTY = () -> {
+	};
+
+	@Override
+	void close();
+
+	static PrefetchScope of(List<PrefetchScope> scopes) {
+		List<PrefetchScope> items = new ArrayList<>(scopes);
+		return () -> {
+			for (PrefetchScope scope : items) {
+				scope.close();
+			}
+		};
+	}
+}
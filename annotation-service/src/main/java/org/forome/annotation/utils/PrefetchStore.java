@@ -0,0 +1,57 @@
+/*
+ Copyright (c) 2019. Vladimir Ulitin, Partners Healthcare and members of Forome Association
+
+ Developed by Vladimir Ulitin and Michael Bouzinier
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+	 http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+*/
+
+package org.forome.annotation.utils;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Хранилище значений, предзагруженных пакетом для блока соседних вариантов.
+ * Несколько пакетов могут жить одновременно (по одному на исполнителя), при закрытии пакет удаляет только свои значения.
+ */
+public class PrefetchStore<K, V> {
+
+	private final ConcurrentHashMap<K, V> values;
+
+	public PrefetchStore() {
+		this.values = new ConcurrentHashMap<>();
+	}
+
+	public PrefetchScope put(Map<K, V> items) {
+		Map<K, V> own = new HashMap<>(items);
+		values.putAll(own);
+		return () -> {
+			for (Map.Entry<K, V> entry : own.entrySet()) {
+				values.remove(entry.getKey(), entry.getValue());
+			}
+		};
+	}
+
+	/**
+	 * @return null - если значение не было предзагружено
+	 */
+	public V get(K key) {
+		return values.get(key);
+	}
+
+	public int size() {
+		return values.size();
+	}
+}
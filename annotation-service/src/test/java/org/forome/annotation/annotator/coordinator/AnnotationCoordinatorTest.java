@@ -0,0 +1,222 @@
+/*
+ Copyright (c) 2019. Vladimir Ulitin, Partners Healthcare and members of Forome Association
+
+ Developed by Vladimir Ulitin and Michael Bouzinier
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+	 http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+*/
+
+package org.forome.annotation.annotator.coordinator;
+
+import htsjdk.samtools.util.BlockCompressedOutputStream;
+import htsjdk.tribble.index.IndexFactory;
+import htsjdk.tribble.index.tabix.TabixFormat;
+import htsjdk.variant.vcf.VCFCodec;
+import org.forome.annotation.annotator.main.argument.ArgumentsCoordinator;
+import org.forome.annotation.annotator.main.argument.ParserArgument;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+public class AnnotationCoordinatorTest {
+
+	private static final long LOCK_EXPIRE_MILLIS = 60_000L;
+
+	@Test
+	public void concat() throws IOException {
+		Path dir = Files.createTempDirectory("coordinator");
+		try {
+			Path pathMetadata = dir.resolve("shard-00000.json.gz.metadata");
+			Files.write(pathMetadata, "{\"record_type\":\"metadata\"}\n".getBytes(StandardCharsets.UTF_8));
+
+			Path shard1 = writeGzip(dir.resolve("shard-00000.json.gz"), "{\"id\":1}\n{\"id\":2}\n");
+			Path shard2 = writeGzip(dir.resolve("shard-00001.json.gz"), "");
+			Path shard3 = writeGzip(dir.resolve("shard-00002.json.gz"), "{\"id\":3}\n");
+
+			Path pathOutput = dir.resolve("out.json.gz");
+			AnnotationCoordinator.concat(pathMetadata, Arrays.asList(shard1, shard2, shard3), pathOutput);
+
+			List<String> lines;
+			try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+					new GZIPInputStream(Files.newInputStream(pathOutput)), StandardCharsets.UTF_8))) {
+				lines = reader.lines().collect(Collectors.toList());
+			}
+			Assert.assertEquals(
+					Arrays.asList("{\"record_type\":\"metadata\"}", "{\"id\":1}", "{\"id\":2}", "{\"id\":3}"),
+					lines
+			);
+		} finally {
+			for (Path path : Files.list(dir).collect(Collectors.toList())) {
+				Files.delete(path);
+			}
+			Files.delete(dir);
+		}
+	}
+
+	/**
+	 * Два локальных процесса-исполнителя на индексированном vcf.gz из трех хромосом,
+	 * первая попытка участка хромосомы 2 аварийно завершается и повторяется
+	 */
+	@Test
+	public void execute() throws Exception {
+		Path dir = Files.createTempDirectory("coordinator");
+		try {
+			ArgumentsCoordinator arguments = buildArguments(dir);
+			new AnnotationCoordinator(arguments, StubWorkerMain.class.getName(), LOCK_EXPIRE_MILLIS).run();
+
+			//Первая попытка участка хромосомы 2 была прервана, участок завершен повторной попыткой
+			Path workDir = arguments.workDir;
+			Assert.assertTrue(Files.exists(workDir.resolve("failure-2")));
+			Assert.assertTrue(Files.exists(workDir.resolve("shard-00001.done")));
+			Assert.assertFalse(Files.exists(workDir.resolve("shard-00001.failed")));
+			Assert.assertTrue(Files.exists(workDir.resolve("vep.json.index")));
+
+			assertOutput(arguments.pathOutput);
+		} finally {
+			delete(dir);
+		}
+	}
+
+	/**
+	 * Блокировка участка, оставленная остановившимся координатором другого хоста, не обновляется
+	 * и перезахватывается после истечения
+	 */
+	@Test
+	public void reclaimExpiredLock() throws Exception {
+		Path dir = Files.createTempDirectory("coordinator");
+		try {
+			ArgumentsCoordinator arguments = buildArguments(dir);
+			Files.createDirectories(arguments.workDir);
+			Files.write(arguments.workDir.resolve("shard-00000.lock"), "other-host".getBytes(StandardCharsets.UTF_8));
+
+			new AnnotationCoordinator(arguments, StubWorkerMain.class.getName(), 1000L).run();
+
+			Assert.assertTrue(Files.exists(arguments.workDir.resolve("shard-00000.done")));
+			assertOutput(arguments.pathOutput);
+		} finally {
+			delete(dir);
+		}
+	}
+
+	/**
+	 * Рабочая директория, оставшаяся от запуска с другими входными файлами, не используется
+	 */
+	@Test
+	public void refuseOtherInputs() throws Exception {
+		Path dir = Files.createTempDirectory("coordinator");
+		try {
+			ArgumentsCoordinator arguments = buildArguments(dir);
+			new AnnotationCoordinator(arguments, StubWorkerMain.class.getName(), LOCK_EXPIRE_MILLIS).run();
+
+			//Повторный запуск с теми же входными файлами использует готовые участки
+			new AnnotationCoordinator(arguments, StubWorkerMain.class.getName(), LOCK_EXPIRE_MILLIS).run();
+			assertOutput(arguments.pathOutput);
+
+			Files.setLastModifiedTime(arguments.pathVepJson,
+					FileTime.fromMillis(Files.getLastModifiedTime(arguments.pathVepJson).toMillis() + 60_000L));
+			try {
+				new AnnotationCoordinator(arguments, StubWorkerMain.class.getName(), LOCK_EXPIRE_MILLIS).run();
+				Assert.fail();
+			} catch (RuntimeException e) {
+				Assert.assertTrue(e.getMessage().contains(arguments.workDir.toString()));
+			}
+		} finally {
+			delete(dir);
+		}
+	}
+
+	/**
+	 * Индексированный vcf.gz из трех хромосом и соответствующий ему vep.json
+	 */
+	private static ArgumentsCoordinator buildArguments(Path dir) throws Exception {
+		Path pathVcf = dir.resolve("case_wgs.vcf.gz");
+		try (OutputStream os = new BlockCompressedOutputStream(pathVcf.toFile())) {
+			os.write(String.join("\n",
+					"##fileformat=VCFv4.2",
+					"##contig=<ID=1,length=1000>",
+					"##contig=<ID=2,length=1000>",
+					"##contig=<ID=3,length=1000>",
+					"#CHROM\tPOS\tID\tREF\tALT\tQUAL\tFILTER\tINFO",
+					"1\t10\ta\tA\tG\t.\t.\t.",
+					"1\t20\tb\tC\tT\t.\t.\t.",
+					"2\t15\tc\tG\tA\t.\t.\t.",
+					"3\t5\td\tT\tC\t.\t.\t.",
+					""
+			).getBytes(StandardCharsets.UTF_8));
+		}
+		IndexFactory.createTabixIndex(pathVcf.toFile(), new VCFCodec(), TabixFormat.VCF, null)
+				.write(dir.resolve("case_wgs.vcf.gz.tbi").toFile());
+
+		Path pathVepJson = dir.resolve("case_wgs.vep.json");
+		Files.write(pathVepJson, Arrays.asList(
+				vepJsonLine("1", 10, "va"),
+				vepJsonLine("1", 20, "vb"),
+				vepJsonLine("2", 15, "vc"),
+				vepJsonLine("3", 5, "vd")
+		), StandardCharsets.UTF_8);
+
+		return (ArgumentsCoordinator) new ParserArgument(new String[]{
+				"-config", dir.resolve("config.json").toString(),
+				"-assembly", "GRCh38",
+				"-vcf", pathVcf.toString(),
+				"-vepjson", pathVepJson.toString(),
+				"-output", dir.resolve("out.json").toString(),
+				"-workers", "2",
+				"-workdir", dir.resolve("work").toString(),
+				"-retries", "1"
+		}).arguments;
+	}
+
+	private static void assertOutput(Path pathOutput) throws IOException {
+		Assert.assertEquals(
+				Arrays.asList(
+						"{\"record_type\":\"metadata\"}",
+						"{\"id\":\"a-va\"}", "{\"id\":\"b-vb\"}", "{\"id\":\"c-vc\"}", "{\"id\":\"d-vd\"}"
+				),
+				Files.readAllLines(pathOutput, StandardCharsets.UTF_8)
+		);
+	}
+
+	private static String vepJsonLine(String chromosome, int position, String id) {
+		return "{\"id\":\"" + id + "\",\"input\":\"" + chromosome + "\\t" + position + "\\t.\\tA\\tG\"}";
+	}
+
+	private static void delete(Path path) throws IOException {
+		if (Files.isDirectory(path)) {
+			for (Path child : Files.list(path).collect(Collectors.toList())) {
+				delete(child);
+			}
+		}
+		Files.delete(path);
+	}
+
+	private static Path writeGzip(Path path, String value) throws IOException {
+		try (OutputStream os = new GZIPOutputStream(Files.newOutputStream(path))) {
+			os.write(value.getBytes(StandardCharsets.UTF_8));
+		}
+		return path;
+	}
+}
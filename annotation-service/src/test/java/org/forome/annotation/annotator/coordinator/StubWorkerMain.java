@@ -0,0 +1,72 @@
+/*
+ *  Copyright (c) 2020. Vladimir Ulitin, Partners Healthcare and members of Forome Association
+ *
+ *  Developed by Vladimir Ulitin and Michael Bouzinier
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ * 	 http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.forome.annotation.annotator.coordinator;
+
+import htsjdk.variant.variantcontext.VariantContext;
+import htsjdk.variant.vcf.VCFFileReader;
+import net.minidev.json.JSONObject;
+import org.forome.annotation.annotator.AnnotationConsole;
+import org.forome.annotation.annotator.main.argument.ArgumentsAnnotation;
+import org.forome.annotation.annotator.main.argument.ParserArgument;
+import org.forome.annotation.iterator.vepjson.VepJsonFileIterator;
+import org.forome.annotation.iterator.vepjson.VepJsonShardIndex;
+
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.Iterator;
+
+/**
+ * Процесс-исполнитель координатора для тестов: вместо аннотации склеивает записи участка vcf
+ * с записями vep.json, прочитанными по индексу координатора.
+ * Первая попытка участка хромосомы 2 аварийно завершает процесс
+ */
+public class StubWorkerMain {
+
+	public static void main(String[] args) throws Exception {
+		ArgumentsAnnotation arguments = (ArgumentsAnnotation) new ParserArgument(args).arguments;
+
+		Path pathFailure = arguments.pathOutput.resolveSibling("failure-" + arguments.region.contig);
+		if ("2".equals(arguments.region.contig) && !Files.exists(pathFailure)) {
+			Files.createFile(pathFailure);
+			Runtime.getRuntime().halt(137);
+		}
+
+		VepJsonShardIndex vepJsonShardIndex = VepJsonShardIndex.read(
+				arguments.pathVepJson, arguments.pathVepJsonIndex, Collections.singletonList(arguments.region)
+		);
+		try (VCFFileReader vcfFileReader = new VCFFileReader(arguments.pathVcf, true);
+			 VepJsonFileIterator vepJsonIterator = vepJsonShardIndex.open(0);
+			 PrintWriter writer = new PrintWriter(Files.newBufferedWriter(arguments.pathOutput, StandardCharsets.UTF_8))) {
+			Iterator<VariantContext> iterator = vcfFileReader.query(arguments.region.contig, arguments.region.start, arguments.region.end);
+			while (iterator.hasNext()) {
+				VariantContext variantContext = iterator.next();
+				JSONObject record = new JSONObject();
+				record.put("id", variantContext.getID() + "-" + vepJsonIterator.next().getAsString("id"));
+				writer.println(record.toJSONString());
+			}
+		}
+		Files.write(
+				AnnotationConsole.getPathMetadata(arguments.pathOutput),
+				"{\"record_type\":\"metadata\"}\n".getBytes(StandardCharsets.UTF_8)
+		);
+	}
+}
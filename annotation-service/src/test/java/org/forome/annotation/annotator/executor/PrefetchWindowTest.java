@@ -0,0 +1,109 @@
+/*
+ Copyright (c) 2019. Vladimir Ulitin, Partners Healthcare and members of Forome Association
+
+ Developed by Vladimir Ulitin and Michael Bouzinier
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+	 http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+*/
+
+package org.forome.annotation.annotator.executor;
+
+import htsjdk.variant.variantcontext.Allele;
+import htsjdk.variant.variantcontext.VariantContextBuilder;
+import org.forome.annotation.struct.mavariant.MAVariant;
+import org.forome.annotation.struct.mavariant.MAVariantVCF;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+public class PrefetchWindowTest {
+
+	@Test
+	public void accept() {
+		PrefetchWindow window = new PrefetchWindow(buildVariant("1", 1000), 100, 3);
+		window.register();
+
+		Assert.assertTrue(window.accept(buildVariant("1", 1000)));
+		Assert.assertTrue(window.accept(buildVariant("1", 1099)));
+		Assert.assertFalse(window.accept(buildVariant("1", 1100)));
+		Assert.assertFalse(window.accept(buildVariant("2", 1000)));
+		Assert.assertFalse(window.accept(new MAVariant()));
+
+		//Не больше maxRecords записей
+		window.register();
+		window.register();
+		Assert.assertFalse(window.accept(buildVariant("1", 1001)));
+	}
+
+	@Test
+	public void acceptClosed() {
+		PrefetchWindow window = new PrefetchWindow(buildVariant("1", 1000), 100, 3);
+		window.register();
+		window.close();
+		Assert.assertFalse(window.accept(buildVariant("1", 1001)));
+
+		try {
+			window.register();
+			Assert.fail();
+		} catch (IllegalStateException ignore) {
+		}
+	}
+
+	/**
+	 * Запись cnv всегда в своем окне
+	 */
+	@Test
+	public void acceptCnv() {
+		PrefetchWindow window = new PrefetchWindow(new MAVariant(), 100, 3);
+		window.register();
+		Assert.assertFalse(window.accept(buildVariant("1", 1000)));
+		Assert.assertFalse(window.accept(new MAVariant()));
+	}
+
+	@Test
+	public void arrive() {
+		PrefetchWindow window = new PrefetchWindow(buildVariant("1", 1000), 100, 3);
+		window.register();
+		window.register();
+		window.register();
+
+		//Записи приходят после разбиения в произвольном порядке
+		Assert.assertNull(window.arrive("c"));
+		Assert.assertNull(window.arrive("a"));
+		window.close();
+		List<String> records = window.arrive("b");
+		Assert.assertEquals(Arrays.asList("c", "a", "b"), records);
+	}
+
+	/**
+	 * Окно, в котором все зарегистрированные записи уже пришли, не считается полным до закрытия читателем
+	 */
+	@Test
+	public void arriveBeforeClose() {
+		PrefetchWindow window = new PrefetchWindow(buildVariant("1", 1000), 100, 3);
+		window.register();
+		Assert.assertNull(window.arrive("a"));
+		window.register();
+		window.close();
+		Assert.assertEquals(Arrays.asList("a", "b"), window.arrive("b"));
+	}
+
+	private static MAVariantVCF buildVariant(String contig, int start) {
+		return new MAVariantVCF(
+				new VariantContextBuilder("test", contig, start, start, Arrays.asList(Allele.create("A", true), Allele.create("C")))
+						.make()
+		);
+	}
+}
@@ -0,0 +1,242 @@
+/*
+ Copyright (c) 2019. Vladimir Ulitin, Partners Healthcare and members of Forome Association
+
+ Developed by Vladimir Ulitin and Michael Bouzinier
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+	 http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+*/
+
+package org.forome.annotation.annotator.executor;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Стадии соединяются так же, как в Pipeline: результат записи завершается последней стадией
+ * или обработчиком ошибок, а потребитель забирает результаты в порядке поступления записей
+ */
+public class StageTest {
+
+	private static final int RECORDS = 200;
+
+	private static class Item {
+
+		final int id;
+		final CompletableFuture<Integer> future = new CompletableFuture<>();
+
+		int value;
+
+		Item(int id) {
+			this.id = id;
+		}
+	}
+
+	@Test(timeout = 30_000L)
+	public void order() throws Exception {
+		List<Item> items = buildItems();
+		AtomicInteger uncaught = new AtomicInteger();
+		Thread.UncaughtExceptionHandler uncaughtExceptionHandler = (t, e) -> uncaught.incrementAndGet();
+
+		Stage<Item> lastStage = new Stage<>(
+				"last", 2, 4, 1,
+				records -> {
+					for (Item item : records) {
+						item.future.complete(item.value);
+					}
+					return records;
+				},
+				null, StageTest::fail, uncaughtExceptionHandler
+		);
+		Stage<Item> middleStage = new Stage<>(
+				"middle", 4, 8, 3,
+				records -> {
+					//Разное время обработки перемешивает записи между исполнителями
+					Thread.sleep(ThreadLocalRandom.current().nextInt(3));
+					for (Item item : records) {
+						item.value = item.id * 2;
+					}
+					return records;
+				},
+				lastStage::put, StageTest::fail, uncaughtExceptionHandler
+		);
+		Stage<Item> firstStage = buildFirstStage(items, middleStage, uncaughtExceptionHandler);
+		try {
+			for (Item item : items) {
+				Assert.assertEquals(item.id * 2, (int) item.future.get(10, TimeUnit.SECONDS));
+			}
+		} finally {
+			firstStage.close();
+			middleStage.close();
+			lastStage.close();
+		}
+
+		Assert.assertEquals(0, uncaught.get());
+		Assert.assertEquals(RECORDS, firstStage.metrics.snapshot().processed);
+		Assert.assertEquals(RECORDS, middleStage.metrics.snapshot().processed);
+		Assert.assertEquals(RECORDS, lastStage.metrics.snapshot().processed);
+	}
+
+	/**
+	 * Ошибка средней стадии завершает результат своей записи, остальные записи проходят конвейер
+	 */
+	@Test(timeout = 30_000L)
+	public void middleStageException() throws Exception {
+		List<Item> items = buildItems();
+		AtomicInteger uncaught = new AtomicInteger();
+		Thread.UncaughtExceptionHandler uncaughtExceptionHandler = (t, e) -> uncaught.incrementAndGet();
+
+		Stage<Item> lastStage = new Stage<>(
+				"last", 1, 4, 1,
+				records -> {
+					for (Item item : records) {
+						item.future.complete(item.value);
+					}
+					return records;
+				},
+				null, StageTest::fail, uncaughtExceptionHandler
+		);
+		Stage<Item> middleStage = new Stage<>(
+				"middle", 3, 4, 1,
+				records -> {
+					for (Item item : records) {
+						if (item.id == 5) {
+							throw new IllegalStateException("fail: " + item.id);
+						}
+						item.value = item.id;
+					}
+					return records;
+				},
+				lastStage::put, StageTest::fail, uncaughtExceptionHandler
+		);
+		Stage<Item> firstStage = buildFirstStage(items, middleStage, uncaughtExceptionHandler);
+		try {
+			for (Item item : items) {
+				if (item.id == 5) {
+					try {
+						item.future.get(10, TimeUnit.SECONDS);
+						Assert.fail();
+					} catch (ExecutionException e) {
+						Assert.assertTrue(e.getCause() instanceof IllegalStateException);
+						Assert.assertEquals("fail: 5", e.getCause().getMessage());
+					}
+				} else {
+					Assert.assertEquals(item.id, (int) item.future.get(10, TimeUnit.SECONDS));
+				}
+			}
+		} finally {
+			firstStage.close();
+			middleStage.close();
+			lastStage.close();
+		}
+
+		//Исключение обработчика не завершает исполнителя стадии
+		Assert.assertEquals(0, uncaught.get());
+		Assert.assertEquals(RECORDS, middleStage.metrics.snapshot().processed);
+		Assert.assertEquals(RECORDS - 1, lastStage.metrics.snapshot().processed);
+	}
+
+	@Test(timeout = 30_000L)
+	public void metrics() throws Exception {
+		CountDownLatch started = new CountDownLatch(1);
+		CountDownLatch release = new CountDownLatch(1);
+		CountDownLatch completed = new CountDownLatch(6);
+
+		Stage<Item> stage = new Stage<>(
+				"slow", 1, 8, 1,
+				records -> {
+					started.countDown();
+					release.await();
+					return records;
+				},
+				item -> completed.countDown(), StageTest::fail, (t, e) -> {
+				}
+		);
+		try {
+			//Исполнитель занят первой записью, остальные ждут во входящей очереди
+			stage.put(new Item(0));
+			started.await();
+			for (int i = 1; i < 6; i++) {
+				stage.put(new Item(i));
+			}
+
+			StageMetrics.Stat stat = stage.metrics.snapshot();
+			Assert.assertEquals("slow", stat.name);
+			Assert.assertEquals(1, stat.threads);
+			Assert.assertEquals(5, stat.depth);
+			Assert.assertEquals(8, stat.capacity);
+			Assert.assertEquals(0, stat.processed);
+			Assert.assertEquals(0d, stat.throughput, 0d);
+
+			Thread.sleep(10);
+			release.countDown();
+			completed.await();
+
+			stat = stage.metrics.snapshot();
+			Assert.assertEquals(0, stat.depth);
+			Assert.assertEquals(6, stat.processed);
+			Assert.assertTrue(stat.throughput > 0);
+			Assert.assertTrue(stat.busy > 0 && stat.busy <= 1);
+
+			//Пропускная способность считается с момента предыдущего снимка
+			stat = stage.metrics.snapshot();
+			Assert.assertEquals(6, stat.processed);
+			Assert.assertEquals(0d, stat.throughput, 0d);
+		} finally {
+			stage.close();
+		}
+	}
+
+	private static List<Item> buildItems() {
+		List<Item> items = new ArrayList<>(RECORDS);
+		for (int i = 0; i < RECORDS; i++) {
+			items.add(new Item(i));
+		}
+		return items;
+	}
+
+	/**
+	 * Стадия, которая забирает записи из внешнего источника (как split из SourceReader)
+	 */
+	private static Stage<Item> buildFirstStage(List<Item> items, Stage<Item> next, Thread.UncaughtExceptionHandler uncaughtExceptionHandler) {
+		AtomicInteger position = new AtomicInteger();
+		return new Stage<>(
+				"first",
+				() -> {
+					int index = position.getAndIncrement();
+					if (index >= items.size()) {
+						throw new NoSuchElementException();
+					}
+					return items.get(index);
+				},
+				() -> items.size() - Math.min(position.get(), items.size()), items.size(),
+				2,
+				records -> records, next::put, StageTest::fail, uncaughtExceptionHandler
+		);
+	}
+
+	private static void fail(List<Item> items, Throwable e) {
+		for (Item item : items) {
+			item.future.completeExceptionally(e);
+		}
+	}
+}
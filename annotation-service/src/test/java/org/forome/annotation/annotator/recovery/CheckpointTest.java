@@ -0,0 +1,125 @@
+/*
+ Copyright (c) 2019. Vladimir Ulitin, Partners Healthcare and members of Forome Association
+
+ Developed by Vladimir Ulitin and Michael Bouzinier
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+	 http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+*/
+
+package org.forome.annotation.annotator.recovery;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Arrays;
+import java.util.Random;
+
+public class CheckpointTest {
+
+	@Test
+	public void match() throws IOException {
+		Path dir = Files.createTempDirectory("checkpoint");
+		try {
+			Path vcfFile = write(dir.resolve("test.vcf"), 200_000);
+			Path vepJsonFile = write(dir.resolve("test.vep.json"), 1000);
+
+			Checkpoint checkpoint = writeRead(
+					new Checkpoint(FileStamp.build(vcfFile), 100, FileStamp.build(vepJsonFile), 200, 300, 10, 12),
+					dir.resolve("out.json.checkpoint")
+			);
+			Assert.assertEquals(100, checkpoint.vcfOffset);
+			Assert.assertEquals(200, checkpoint.vepJsonOffset);
+			Assert.assertEquals(300, checkpoint.outputOffset);
+			Assert.assertEquals(10, checkpoint.countVariants);
+			Assert.assertEquals(12, checkpoint.countRecords);
+			Assert.assertTrue(checkpoint.isMatch(vcfFile, vepJsonFile));
+			Assert.assertFalse(checkpoint.isMatch(vcfFile, null));
+
+			//Файл того же размера с измененным последним блоком, время изменения прежнее
+			FileTime modified = Files.getLastModifiedTime(vcfFile);
+			byte[] bytes = Files.readAllBytes(vcfFile);
+			bytes[bytes.length - 10] ^= 1;
+			Files.write(vcfFile, bytes);
+			Files.setLastModifiedTime(vcfFile, modified);
+			Assert.assertFalse(checkpoint.isMatch(vcfFile, vepJsonFile));
+
+			//Тот же файл, но другое время изменения
+			bytes[bytes.length - 10] ^= 1;
+			Files.write(vcfFile, bytes);
+			Files.setLastModifiedTime(vcfFile, FileTime.fromMillis(modified.toMillis() + 1000));
+			Assert.assertFalse(checkpoint.isMatch(vcfFile, vepJsonFile));
+
+			Files.setLastModifiedTime(vcfFile, modified);
+			Assert.assertTrue(checkpoint.isMatch(vcfFile, vepJsonFile));
+		} finally {
+			for (String fileName : Arrays.asList("test.vcf", "test.vep.json", "out.json.checkpoint")) {
+				Files.deleteIfExists(dir.resolve(fileName));
+			}
+			Files.delete(dir);
+		}
+	}
+
+	@Test
+	public void matchWithoutVepJson() throws IOException {
+		Path dir = Files.createTempDirectory("checkpoint");
+		try {
+			Path vcfFile = write(dir.resolve("test.vcf"), 10);
+			Checkpoint checkpoint = writeRead(
+					new Checkpoint(FileStamp.build(vcfFile), 1, null, -1, 2, 3, 4),
+					dir.resolve("out.json.checkpoint")
+			);
+			Assert.assertNull(checkpoint.vepJsonFile);
+			Assert.assertTrue(checkpoint.isMatch(vcfFile, null));
+			Assert.assertFalse(checkpoint.isMatch(vcfFile, vcfFile));
+		} finally {
+			Files.deleteIfExists(dir.resolve("test.vcf"));
+			Files.deleteIfExists(dir.resolve("out.json.checkpoint"));
+			Files.delete(dir);
+		}
+	}
+
+	/**
+	 * Контрольная точка старого формата (только размеры файлов) не используется
+	 */
+	@Test
+	public void ignoreOldFormat() throws IOException {
+		Path dir = Files.createTempDirectory("checkpoint");
+		try {
+			Path vcfFile = write(dir.resolve("test.vcf"), 10);
+			Path pathCheckpoint = dir.resolve("out.json.checkpoint");
+			Files.write(pathCheckpoint, ("{\"vcf_file_size\":10,\"vcf_offset\":1,\"vep_json_file_size\":-1,\"vep_json_offset\":-1," +
+					"\"output_offset\":2,\"variants\":3,\"records\":4}").getBytes(StandardCharsets.UTF_8));
+			Assert.assertFalse(Checkpoint.read(pathCheckpoint).isMatch(vcfFile, null));
+		} finally {
+			Files.deleteIfExists(dir.resolve("test.vcf"));
+			Files.deleteIfExists(dir.resolve("out.json.checkpoint"));
+			Files.delete(dir);
+		}
+	}
+
+	private static Checkpoint writeRead(Checkpoint checkpoint, Path path) throws IOException {
+		checkpoint.write(path);
+		return Checkpoint.read(path);
+	}
+
+	private static Path write(Path file, int size) throws IOException {
+		byte[] bytes = new byte[size];
+		new Random(size).nextBytes(bytes);
+		return Files.write(file, bytes);
+	}
+}
@@ -0,0 +1,164 @@
+/*
+ Copyright (c) 2019. Vladimir Ulitin, Partners Healthcare and members of Forome Association
+
+ Developed by Vladimir Ulitin and Michael Bouzinier
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+	 http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+*/
+
+package org.forome.annotation.data.anfisa;
+
+import net.minidev.json.JSONArray;
+import net.minidev.json.JSONObject;
+import org.forome.annotation.data.anfisa.struct.AnfisaResultView;
+import org.forome.annotation.data.anfisa.struct.GtfAnfisaResult;
+import org.forome.annotation.data.clinvar.struct.ClinvarResult;
+import org.forome.annotation.data.clinvar.struct.ClinvarVariantSummary;
+import org.forome.annotation.data.dbnsfp.struct.DbNSFPItem;
+import org.forome.annotation.data.gnomad.struct.GnamadGroup;
+import org.forome.annotation.data.gnomad.struct.GnomadResult;
+import org.forome.annotation.data.gtex.struct.Tissue;
+import org.forome.annotation.data.hgmd.HgmdConnector;
+import org.forome.annotation.data.hgmd.struct.HgmdPmidRow;
+import org.forome.annotation.data.spliceai.struct.SpliceAIResult;
+import org.forome.annotation.struct.SourceMetadata;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.rocksdb.RocksDBException;
+
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+public class PersistentSiteCacheTest {
+
+	private static final long EXPIRE_MILLIS = TimeUnit.DAYS.toMillis(1);
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void reuseBetweenCases() throws RocksDBException {
+		Path path = folder.getRoot().toPath().resolve("site");
+		String key = "GRCh38:1:6484880-6484880:T>C:SNV:" + AnfisaConnector.getVepFingerprint(transcripts("ENST00000263125"));
+
+		//Первый кейс: данные сайта получены из источников и сохранены
+		try (PersistentSiteCache cache = new PersistentSiteCache(path, AnfisaConnector.getSiteVersion(metadata("2.1.1")), EXPIRE_MILLIS)) {
+			Assert.assertNull(cache.get(key));
+			cache.put(key, buildSiteLookup());
+		}
+
+		//Второй кейс (новый запуск) с тем же вариантом - данные сайта берутся с диска
+		try (PersistentSiteCache cache = new PersistentSiteCache(path, AnfisaConnector.getSiteVersion(metadata("2.1.1")), EXPIRE_MILLIS)) {
+			AnfisaConnector.SiteLookup site = (AnfisaConnector.SiteLookup) cache.get(key);
+			Assert.assertNotNull(site);
+			Assert.assertEquals(buildSiteLookup().gnomadResult, site.gnomadResult);
+			Assert.assertEquals(0.57f, site.spliceAIResult.dict_sql.get("GENE1").ds_ag, 0.0f);
+			Assert.assertEquals(Arrays.asList("CM000001"), site.hgmdLookup.accNums);
+			Assert.assertEquals("26633542", site.hgmdLookup.hgmdData.hgmdPmidRows.get(0).pmid);
+			Assert.assertEquals("VCV000001", site.clinvarResults.get(0).variationID);
+			Assert.assertEquals(ClinvarVariantSummary.ReviewStatus.PRACTICE_GUIDELINE, site.clinvarVariantSummary.reviewStatus);
+			Assert.assertEquals(12, site.gtfAnfisaResult.canonical.distances.get(0).dist);
+			Assert.assertEquals(Arrays.asList("rs1"), site.variantIds);
+			Assert.assertEquals(buildSiteLookup().tissues, site.tissues);
+			Assert.assertEquals(Double.valueOf(23.1), site.dbNSFPItems.get(0).caddPhred);
+			Assert.assertEquals("rs1", site.pharmacogenomics.notes.get(0).value);
+			Assert.assertEquals("hits: 1, misses: 0", cache.getStatistics());
+		}
+
+		//Обновился источник - сохраненные сайты больше не используются
+		try (PersistentSiteCache cache = new PersistentSiteCache(path, AnfisaConnector.getSiteVersion(metadata("3.0")), EXPIRE_MILLIS)) {
+			Assert.assertNull(cache.get(key));
+		}
+	}
+
+	@Test
+	public void expire() throws RocksDBException {
+		Path path = folder.getRoot().toPath().resolve("site");
+		try (PersistentSiteCache cache = new PersistentSiteCache(path, "1", -1)) {
+			cache.put("key", buildSiteLookup());
+			Assert.assertNull(cache.get("key"));
+		}
+	}
+
+	@Test
+	public void vepFingerprint() {
+		Assert.assertEquals(
+				AnfisaConnector.getVepFingerprint(transcripts("ENST00000263125")),
+				AnfisaConnector.getVepFingerprint(transcripts("ENST00000263125"))
+		);
+		Assert.assertNotEquals(
+				AnfisaConnector.getVepFingerprint(transcripts("ENST00000263125")),
+				AnfisaConnector.getVepFingerprint(transcripts("ENST00000378371"))
+		);
+	}
+
+	private static List<SourceMetadata> metadata(String gnomadVersion) {
+		return Arrays.asList(
+				new SourceMetadata("gnomAD", gnomadVersion, null),
+				new SourceMetadata("GERP", "hg19.GERP_scores", null)
+		);
+	}
+
+	private static JSONArray transcripts(String transcriptId) {
+		JSONObject transcript = new JSONObject();
+		transcript.put("transcript_id", transcriptId);
+		transcript.put("gene_symbol", "ESPN");
+		JSONArray transcripts = new JSONArray();
+		transcripts.add(transcript);
+		return transcripts;
+	}
+
+	private static AnfisaConnector.SiteLookup buildSiteLookup() {
+		GnomadResult.Sum sum = new GnomadResult.Sum(31398, 2, 6.4e-05d, 0, null);
+		GnomadResult gnomadResult = new GnomadResult(
+				sum, null, sum,
+				new GnomadResult.Popmax(GnamadGroup.NFE, 1.1e-04d, 15000), null,
+				new HashSet<>(Collections.singletonList(new GnomadResult.Url("1", 6484880, "T", "C")))
+		);
+
+		Map<String, SpliceAIResult.DictSql> dictSql = new HashMap<>();
+		dictSql.put("GENE1", new SpliceAIResult.DictSql(1, 2, 3, 4, 0.57f, 0.0f, 0.01f, 0.0f));
+
+		AnfisaResultView.Pharmacogenomics pharmacogenomics = new AnfisaResultView.Pharmacogenomics();
+		pharmacogenomics.notes.add(new AnfisaResultView.Pharmacogenomics.Item("association", "rs1"));
+
+		return new AnfisaConnector.SiteLookup(
+				gnomadResult,
+				new SpliceAIResult("GENE1", 0.57f, dictSql),
+				new AnfisaConnector.HgmdLookup(
+						Arrays.asList("CM000001"),
+						new HgmdConnector.Data(Arrays.asList(new HgmdPmidRow("Deafness", "26633542", "DM")), Arrays.asList("Deafness")),
+						Collections.singletonList(new Long[]{6484880L, 6484880L})
+				),
+				Arrays.asList(new ClinvarResult(
+						6484880, 6484880, "T", "C", "VCV000001", "Pathogenic", null, null, "Deafness",
+						new HashMap<>(Collections.singletonMap("SCV000001", "Pathogenic"))
+				)),
+				new ClinvarVariantSummary("practice guideline", 2, "ACMG2016"),
+				new GtfAnfisaResult(
+						new GtfAnfisaResult.RegionAndBoundary(
+								new String[]{"exon"},
+								Arrays.asList(new GtfAnfisaResult.RegionAndBoundary.DistanceFromBoundary(12, "exon", 3, 10))
+						),
+						null
+				),
+				Arrays.asList("rs1"),
+				Arrays.asList(new Tissue("Brain", 12.5f, 0.3f)),
+				Arrays.asList(new DbNSFPItem(2.1, 23.1, 0.99, Collections.emptyList(), Collections.emptyList())),
+				pharmacogenomics
+		);
+	}
+}
@@ -0,0 +1,110 @@
+/*
+ Copyright (c) 2019. Vladimir Ulitin, Partners Healthcare and members of Forome Association
+
+ Developed by Vladimir Ulitin and Michael Bouzinier
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+	 http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+*/
+
+package org.forome.annotation.iterator.vcf;
+
+import htsjdk.samtools.util.BlockCompressedOutputStream;
+import htsjdk.variant.variantcontext.VariantContext;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.zip.GZIPOutputStream;
+
+public class VCFPositionalIteratorTest {
+
+	private static final String VCF = "##fileformat=VCFv4.2\n" +
+			"##contig=<ID=1,length=249250621>\n" +
+			"#CHROM\tPOS\tID\tREF\tALT\tQUAL\tFILTER\tINFO\n" +
+			"1\t100\t.\tA\tG\t.\tPASS\t.\n" +
+			"1\t200\t.\tC\tT\t.\tPASS\t.\n" +
+			"1\t300\t.\tG\tA\t.\tPASS\t.\n";
+
+	@Test
+	public void resumeFromPosition() throws IOException {
+		Path file = Files.createTempFile("positional", ".vcf");
+		try {
+			Files.write(file, VCF.getBytes(StandardCharsets.UTF_8));
+			assertResume(file);
+		} finally {
+			Files.deleteIfExists(file);
+		}
+	}
+
+	/**
+	 * Позиция в bgzip-файле - виртуальное смещение BGZF, каждая запись в своем блоке
+	 */
+	@Test
+	public void resumeFromPositionBgzip() throws IOException {
+		Path file = Files.createTempFile("positional", ".vcf.gz");
+		try {
+			try (BlockCompressedOutputStream os = new BlockCompressedOutputStream(file.toFile())) {
+				for (String line : VCF.split("\n")) {
+					os.write((line + "\n").getBytes(StandardCharsets.UTF_8));
+					os.flush();
+				}
+			}
+			//Старшие биты виртуального смещения - смещение блока в сжатом файле
+			Assert.assertTrue((assertResume(file) >> 16) > 0);
+		} finally {
+			Files.deleteIfExists(file);
+		}
+	}
+
+	/**
+	 * Обычный gzip-файл пришлось бы распаковывать с начала, позиционное чтение не поддерживается
+	 */
+	@Test(expected = IllegalArgumentException.class)
+	public void rejectGzip() throws IOException {
+		Path file = Files.createTempFile("positional", ".vcf.gz");
+		try {
+			try (OutputStream os = new GZIPOutputStream(Files.newOutputStream(file))) {
+				os.write(VCF.getBytes(StandardCharsets.UTF_8));
+			}
+			new VCFPositionalIterator(file, 0);
+		} finally {
+			Files.deleteIfExists(file);
+		}
+	}
+
+	/**
+	 * @return позиция второй записи
+	 */
+	private static long assertResume(Path file) {
+		long position;
+		try (VCFPositionalIterator iterator = new VCFPositionalIterator(file, 0)) {
+			Assert.assertEquals(100, iterator.next().getStart());
+			position = iterator.getPosition();
+			Assert.assertEquals(200, iterator.next().getStart());
+		}
+
+		try (VCFPositionalIterator iterator = new VCFPositionalIterator(file, position)) {
+			Assert.assertEquals(1, iterator.getFileHeader().getContigLines().size());
+			VariantContext variantContext = iterator.next();
+			Assert.assertEquals(200, variantContext.getStart());
+			Assert.assertEquals("T", variantContext.getAlternateAllele(0).getBaseString());
+			Assert.assertEquals(300, iterator.next().getStart());
+			Assert.assertFalse(iterator.hasNext());
+		}
+		return position;
+	}
+}
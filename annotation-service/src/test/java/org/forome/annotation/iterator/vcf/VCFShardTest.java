@@ -0,0 +1,85 @@
+/*
+ Copyright (c) 2019. Vladimir Ulitin, Partners Healthcare and members of Forome Association
+
+ Developed by Vladimir Ulitin and Michael Bouzinier
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+	 http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+*/
+
+package org.forome.annotation.iterator.vcf;
+
+import htsjdk.samtools.util.BlockCompressedOutputStream;
+import htsjdk.tribble.index.IndexFactory;
+import htsjdk.tribble.index.tabix.TabixFormat;
+import htsjdk.variant.vcf.VCFCodec;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.stream.Collectors;
+
+public class VCFShardTest {
+
+	/**
+	 * Contig-и в записях идут в лексикографическом порядке, отличном от порядка заголовка:
+	 * участки следуют порядку записей, contig без записей - последний
+	 */
+	@Test
+	public void orderByFile() throws IOException {
+		Path dir = Files.createTempDirectory("shard");
+		Path pathVcf = dir.resolve("case.vcf.gz");
+		Path pathIndex = dir.resolve("case.vcf.gz.tbi");
+		try {
+			try (OutputStream os = new BlockCompressedOutputStream(pathVcf.toFile())) {
+				os.write(String.join("\n",
+						"##fileformat=VCFv4.2",
+						"##contig=<ID=chr1,length=1000>",
+						"##contig=<ID=chr2,length=1000>",
+						"##contig=<ID=chr3,length=1000>",
+						"##contig=<ID=chr10,length=1000>",
+						"#CHROM\tPOS\tID\tREF\tALT\tQUAL\tFILTER\tINFO",
+						"chr1\t10\ta\tA\tG\t.\t.\t.",
+						"chr10\t20\tb\tC\tT\t.\t.\t.",
+						"chr10\t700\tc\tC\tT\t.\t.\t.",
+						"chr2\t15\td\tG\tA\t.\t.\t.",
+						""
+				).getBytes(StandardCharsets.UTF_8));
+			}
+			IndexFactory.createTabixIndex(pathVcf.toFile(), new VCFCodec(), TabixFormat.VCF, null)
+					.write(pathIndex.toFile());
+
+			Assert.assertEquals(
+					Arrays.asList("chr1", "chr10", "chr2", "chr3"),
+					VCFShard.build(pathVcf, 0).stream().map(shard -> shard.contig).collect(Collectors.toList())
+			);
+			Assert.assertEquals(
+					Arrays.asList(
+							"chr1:1-500", "chr1:501-" + VCFShard.MAX_POSITION,
+							"chr10:1-500", "chr10:501-" + VCFShard.MAX_POSITION,
+							"chr2:1-500", "chr2:501-" + VCFShard.MAX_POSITION,
+							"chr3:1-500", "chr3:501-" + VCFShard.MAX_POSITION
+					),
+					VCFShard.build(pathVcf, 500).stream().map(VCFShard::toString).collect(Collectors.toList())
+			);
+		} finally {
+			Files.deleteIfExists(pathIndex);
+			Files.deleteIfExists(pathVcf);
+			Files.delete(dir);
+		}
+	}
+}
@@ -0,0 +1,136 @@
+/*
+ Copyright (c) 2019. Vladimir Ulitin, Partners Healthcare and members of Forome Association
+
+ Developed by Vladimir Ulitin and Michael Bouzinier
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+	 http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+*/
+
+package org.forome.annotation.iterator.vepjson;
+
+import org.forome.annotation.iterator.vcf.VCFShard;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class VepJsonShardIndexTest {
+
+	@Test
+	public void test() throws IOException {
+		Path pathVepJson = Files.createTempFile("shard", ".vep.json");
+		try {
+			Files.write(pathVepJson, Arrays.asList(
+					line("1", 10, "a"),
+					line("1", 100, "b"),
+					line("1", 101, "c"),
+					line("1", 5000, "d"),
+					line("2", 15, "e")
+			), StandardCharsets.UTF_8);
+
+			List<VCFShard> shards = Arrays.asList(
+					new VCFShard("1", 1, 100),
+					new VCFShard("1", 101, VCFShard.MAX_POSITION),
+					new VCFShard("X", 1, VCFShard.MAX_POSITION),
+					new VCFShard("2", 1, VCFShard.MAX_POSITION)
+			);
+			VepJsonShardIndex index = VepJsonShardIndex.build(pathVepJson, shards);
+
+			Assert.assertEquals(Arrays.asList("a", "b"), readIds(index, 0));
+			Assert.assertEquals(Arrays.asList("c", "d"), readIds(index, 1));
+			Assert.assertEquals(Arrays.asList(), readIds(index, 2));
+			Assert.assertEquals(Arrays.asList("e"), readIds(index, 3));
+		} finally {
+			Files.deleteIfExists(pathVepJson);
+		}
+	}
+
+	@Test
+	public void testWriteRead() throws IOException {
+		Path pathVepJson = Files.createTempFile("shard", ".vep.json");
+		Path pathIndex = Files.createTempFile("shard", ".vep.json.index");
+		try {
+			Files.write(pathVepJson, Arrays.asList(
+					line("1", 10, "a"),
+					line("1", 101, "b"),
+					line("2", 15, "c")
+			), StandardCharsets.UTF_8);
+
+			List<VCFShard> shards = Arrays.asList(
+					new VCFShard("1", 1, 100),
+					new VCFShard("1", 101, VCFShard.MAX_POSITION),
+					new VCFShard("2", 1, VCFShard.MAX_POSITION)
+			);
+			VepJsonShardIndex.build(pathVepJson, shards).write(pathIndex);
+
+			//Исполнитель координатора читает индекс только для своего участка
+			VepJsonShardIndex index = VepJsonShardIndex.read(pathVepJson, pathIndex, Arrays.asList(VCFShard.parse("1:101-" + VCFShard.MAX_POSITION)));
+			Assert.assertEquals(Arrays.asList("b"), readIds(index, 0));
+
+			try {
+				VepJsonShardIndex.read(pathVepJson, pathIndex, Arrays.asList(new VCFShard("X", 1, VCFShard.MAX_POSITION)));
+				Assert.fail();
+			} catch (RuntimeException expected) {
+			}
+
+			//Индекс построен по другому vep.json
+			Files.write(pathVepJson, Arrays.asList(line("1", 10, "a")), StandardCharsets.UTF_8);
+			try {
+				VepJsonShardIndex.read(pathVepJson, pathIndex, shards);
+				Assert.fail();
+			} catch (RuntimeException expected) {
+			}
+		} finally {
+			Files.deleteIfExists(pathVepJson);
+			Files.deleteIfExists(pathIndex);
+		}
+	}
+
+	@Test(expected = RuntimeException.class)
+	public void testNotSorted() throws IOException {
+		Path pathVepJson = Files.createTempFile("shard", ".vep.json");
+		try {
+			Files.write(pathVepJson, Arrays.asList(
+					line("2", 15, "a"),
+					line("1", 10, "b")
+			), StandardCharsets.UTF_8);
+
+			VepJsonShardIndex.build(pathVepJson, Arrays.asList(
+					new VCFShard("1", 1, VCFShard.MAX_POSITION),
+					new VCFShard("2", 1, VCFShard.MAX_POSITION)
+			));
+		} finally {
+			Files.deleteIfExists(pathVepJson);
+		}
+	}
+
+	private static String line(String chromosome, int position, String id) {
+		return "{\"id\":\"" + id + "\",\"input\":\"" + chromosome + "\\t" + position + "\\t" + id + "\\tA\\tG\",\"seq_region_name\":\"" + chromosome + "\"}";
+	}
+
+	private static List<String> readIds(VepJsonShardIndex index, int shard) throws IOException {
+		List<String> ids = new ArrayList<>();
+		try (VepJsonFileIterator iterator = index.open(shard)) {
+			while (iterator.hasNext()) {
+				ids.add(iterator.next().getAsString("id"));
+			}
+		}
+		return ids;
+	}
+}
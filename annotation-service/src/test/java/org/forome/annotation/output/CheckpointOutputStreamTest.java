@@ -0,0 +1,56 @@
+/*
+ Copyright (c) 2019. Vladimir Ulitin, Partners Healthcare and members of Forome Association
+
+ Developed by Vladimir Ulitin and Michael Bouzinier
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+	 http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+*/
+
+package org.forome.annotation.output;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.zip.GZIPInputStream;
+
+public class CheckpointOutputStreamTest {
+
+	@Test
+	public void truncateToCheckpoint() throws IOException {
+		Path file = Files.createTempFile("checkpoint", ".json.gz");
+		try {
+			long offset;
+			try (CheckpointOutputStream os = new CheckpointOutputStream(file, 0)) {
+				os.write("line1\nline2\n".getBytes(StandardCharsets.UTF_8));
+				offset = os.checkpoint();
+				os.write("lost\n".getBytes(StandardCharsets.UTF_8));
+			}
+
+			try (CheckpointOutputStream os = new CheckpointOutputStream(file, offset)) {
+				os.write("line3\n".getBytes(StandardCharsets.UTF_8));
+			}
+
+			try (InputStream is = new GZIPInputStream(Files.newInputStream(file))) {
+				Assert.assertEquals("line1\nline2\nline3\n", new String(IOUtils.toByteArray(is), StandardCharsets.UTF_8));
+			}
+		} finally {
+			Files.deleteIfExists(file);
+		}
+	}
+}
@@ -0,0 +1,109 @@
+/*
+ Copyright (c) 2019. Vladimir Ulitin, Partners Healthcare and members of Forome Association
+
+ Developed by Vladimir Ulitin and Michael Bouzinier
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+	 http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+*/
+
+package org.forome.annotation.output;
+
+import net.minidev.json.JSONArray;
+import net.minidev.json.JSONObject;
+import net.minidev.json.JSONValue;
+import org.forome.annotation.processing.utils.JSONMerge;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+public class JSONStreamWriterTest {
+
+	@Test
+	public void sameAsJsonSmart() {
+		JSONObject value = new JSONObject();
+		value.put("string", "a/b\"c\\\n\r\t\b\f\u0001\u007f\u0085  кириллица 😀");
+		value.put("int", 12);
+		value.put("long", 12345678901L);
+		value.put("double", 0.1d);
+		value.put("double_exp", 1e-7d);
+		value.put("nan", Double.NaN);
+		value.put("infinity", Double.POSITIVE_INFINITY);
+		value.put("float", 1.5f);
+		value.put("bool", false);
+		value.put("null", null);
+		value.put("strings", new String[]{ "x", null });
+		value.put("ints", new int[]{ 1, 2 });
+		value.put("list", Arrays.asList(1, "a", null, new JSONArray()));
+		JSONObject nested = new JSONObject();
+		nested.put("key\"", "value");
+		value.put("nested", nested);
+
+		JSONStreamWriter writer = new JSONStreamWriter();
+		writer.writeValue(value);
+
+		Assert.assertEquals(value.toJSONString(), new String(writer.toByteArray(), StandardCharsets.UTF_8));
+	}
+
+	@Test
+	public void reset() {
+		JSONStreamWriter writer = new JSONStreamWriter();
+		writer.writeValue("first");
+		writer.reset();
+		writer.writeValue(Arrays.asList(1, 2));
+		Assert.assertEquals("[1,2]", new String(writer.toByteArray(), StandardCharsets.UTF_8));
+	}
+
+	@Test
+	public void writeMergedSameAsMerge() {
+		JSONStreamWriter writer = new JSONStreamWriter();
+		writer.writeMerged(buildTarget(), buildSource());
+
+		JSONObject expected = buildTarget();
+		JSONMerge.merge(expected, buildSource());
+
+		Assert.assertEquals(
+				JSONValue.parse(expected.toJSONString()),
+				JSONValue.parse(new String(writer.toByteArray(), StandardCharsets.UTF_8))
+		);
+	}
+
+	private static JSONObject buildTarget() {
+		JSONObject filters = new JSONObject();
+		filters.put("chromosome", "chr1");
+		filters.put("has_variant", new JSONArray());
+
+		JSONObject out = new JSONObject();
+		out.put("record_type", "variant");
+		out.put("_filters", filters);
+		out.put("empty", null);
+		return out;
+	}
+
+	private static Map<String, Object> buildSource() {
+		Map<String, Object> filters = new LinkedHashMap<>();
+		filters.put("chromosome", "chr1");
+		filters.put("start", 100);
+		filters.put("has_variant", new ArrayList<>(Arrays.asList("proband")));
+
+		Map<String, Object> out = new LinkedHashMap<>();
+		out.put("_filters", filters);
+		out.put("empty", "value");
+		out.put("_view", new LinkedHashMap<>());
+		return out;
+	}
+}
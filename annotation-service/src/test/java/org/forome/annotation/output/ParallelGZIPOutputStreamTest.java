@@ -0,0 +1,63 @@
+/*
+ Copyright (c) 2019. Vladimir Ulitin, Partners Healthcare and members of Forome Association
+
+ Developed by Vladimir Ulitin and Michael Bouzinier
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+	 http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+*/
+
+package org.forome.annotation.output;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPInputStream;
+
+public class ParallelGZIPOutputStreamTest {
+
+	@Test
+	public void manyBlocks() throws IOException {
+		StringBuilder expected = new StringBuilder();
+		for (int i = 0; i < 10000; i++) {
+			expected.append("{\"record_type\":\"variant\",\"position\":").append(i).append("}\n");
+		}
+
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try (ParallelGZIPOutputStream os = new ParallelGZIPOutputStream(bytes, 3, 1000)) {
+			byte[] data = expected.toString().getBytes(StandardCharsets.UTF_8);
+			os.write(data, 0, 17);
+			os.flush();
+			os.write(data, 17, data.length - 17);
+		}
+
+		try (InputStream is = new GZIPInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+			Assert.assertEquals(expected.toString(), new String(IOUtils.toByteArray(is), StandardCharsets.UTF_8));
+		}
+	}
+
+	@Test
+	public void empty() throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		new ParallelGZIPOutputStream(bytes, 1).close();
+
+		try (InputStream is = new GZIPInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+			Assert.assertEquals(0, IOUtils.toByteArray(is).length);
+		}
+	}
+}
@@ -0,0 +1,226 @@
+/*
+ Copyright (c) 2019. Vladimir Ulitin, Partners Healthcare and members of Forome Association
+
+ Developed by Vladimir Ulitin and Michael Bouzinier
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+	 http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+*/
+
+package org.forome.annotation.processing.graphql;
+
+import graphql.ExecutionInput;
+import graphql.ExecutionResult;
+import graphql.GraphQL;
+import graphql.annotations.AnnotationsSchemaCreator;
+import graphql.annotations.annotationTypes.GraphQLField;
+import graphql.annotations.annotationTypes.GraphQLName;
+import graphql.schema.DataFetchingEnvironment;
+import net.minidev.json.JSONValue;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+public class CompiledQueryTest {
+
+	public static final String QUERY = "{\n" +
+			"    record_type\n" +
+			"    _view {\n" +
+			"        start\n" +
+			"        af\n" +
+			"        score\n" +
+			"        severity\n" +
+			"        masked\n" +
+			"        genes\n" +
+			"        aliases\n" +
+			"        transcripts {\n" +
+			"            id\n" +
+			"            is_canonical\n" +
+			"            sift_score\n" +
+			"        }\n" +
+			"    }\n" +
+			"}";
+
+	@Test
+	public void sameAsGraphQL() {
+		GraphQL graphQL = buildGraphQL();
+		CompiledQuery compiledQuery = CompiledQuery.compile(TRecord.class, QUERY);
+
+		for (int seed = 0; seed < 4; seed++) {
+			Map<String, Object> expected = executeGraphQL(graphQL, new TContext(seed));
+			Map<String, Object> actual = compiledQuery.execute(new TContext(seed));
+
+			Assert.assertEquals(expected, actual);
+			//Порядок ключей тоже совпадает
+			Assert.assertEquals(JSONValue.toJSONString(expected), JSONValue.toJSONString(actual));
+		}
+	}
+
+	@Test(expected = RuntimeException.class)
+	public void unknownField() {
+		CompiledQuery.compile(TRecord.class, "{ _view { unknown } }");
+	}
+
+	public static GraphQL buildGraphQL() {
+		return GraphQL.newGraphQL(
+				AnnotationsSchemaCreator.newAnnotationsSchema().query(TRecord.class).build()
+		).build();
+	}
+
+	public static Map<String, Object> executeGraphQL(GraphQL graphQL, TContext context) {
+		ExecutionResult executionResult = graphQL.execute(
+				ExecutionInput.newExecutionInput()
+						.query(QUERY)
+						.variables(Collections.emptyMap())
+						.context(context)
+						.build()
+		);
+		if (!executionResult.getErrors().isEmpty()) {
+			throw new RuntimeException(executionResult.getErrors().toString());
+		}
+		return executionResult.getData();
+	}
+
+	public static class TContext {
+
+		public final int seed;
+
+		public TContext(int seed) {
+			this.seed = seed;
+		}
+	}
+
+	@GraphQLName("query")
+	public static class TRecord {
+
+		@GraphQLField
+		@GraphQLName("record_type")
+		public static String getRecordType() {
+			return "variant";
+		}
+
+		@GraphQLField
+		@GraphQLName("_view")
+		public static TView getView(DataFetchingEnvironment env) {
+			TContext context = env.getContext();
+			return new TView(context.seed);
+		}
+	}
+
+	@GraphQLName("t_view")
+	public static class TView {
+
+		private final int seed;
+
+		public TView(int seed) {
+			this.seed = seed;
+		}
+
+		@GraphQLField
+		@GraphQLName("start")
+		public int getStart() {
+			return 1000 + seed;
+		}
+
+		@GraphQLField
+		@GraphQLName("af")
+		public Double getAf() {
+			return (seed % 2 == 0) ? 0.1d * seed : null;
+		}
+
+		@GraphQLField
+		@GraphQLName("score")
+		public Float getScore() {
+			return 0.1f + seed;
+		}
+
+		@GraphQLField
+		@GraphQLName("severity")
+		public Long getSeverity() {
+			return 12345678901L + seed;
+		}
+
+		@GraphQLField
+		@GraphQLName("masked")
+		public boolean getMasked() {
+			return seed % 3 == 0;
+		}
+
+		@GraphQLField
+		@GraphQLName("genes")
+		public List<String> getGenes() {
+			return (seed == 1) ? null : Arrays.asList("BRCA1", "BRCA2");
+		}
+
+		@GraphQLField
+		@GraphQLName("aliases")
+		public String[] getAliases() {
+			return new String[]{ "a" + seed, null };
+		}
+
+		@GraphQLField
+		@GraphQLName("transcripts")
+		public List<TTranscript> getTranscripts() {
+			List<TTranscript> transcripts = new ArrayList<>();
+			for (int i = 0; i < seed; i++) {
+				transcripts.add(new TTranscript("ENST" + i, i == 0, (i % 2 == 0) ? null : 0.05d * i));
+			}
+			return transcripts;
+		}
+	}
+
+	@GraphQLName("t_transcript_general")
+	public static class TTranscriptGeneral {
+
+		private final String id;
+		private final boolean canonical;
+
+		public TTranscriptGeneral(String id, boolean canonical) {
+			this.id = id;
+			this.canonical = canonical;
+		}
+
+		@GraphQLField
+		@GraphQLName("id")
+		public String getId() {
+			return id;
+		}
+
+		@GraphQLField
+		@GraphQLName("is_canonical")
+		public boolean isCanonical() {
+			return canonical;
+		}
+	}
+
+	@GraphQLName("t_transcript")
+	public static class TTranscript extends TTranscriptGeneral {
+
+		private final Double siftScore;
+
+		public TTranscript(String id, boolean canonical, Double siftScore) {
+			super(id, canonical);
+			this.siftScore = siftScore;
+		}
+
+		@GraphQLField
+		@GraphQLName("sift_score")
+		public Double getSiftScore() {
+			return siftScore;
+		}
+	}
+}
@@ -0,0 +1,82 @@
+/*
+ Copyright (c) 2019. Vladimir Ulitin, Partners Healthcare and members of Forome Association
+
+ Developed by Vladimir Ulitin and Michael Bouzinier
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+	 http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+*/
+
+package org.forome.annotation.processing.statistics;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class FieldHistogramTest {
+
+	@Test
+	public void bucketBounds() {
+		long[] values = { 0, 1, 15, 16, 17, 31, 32, 1000, 123_456_789L, Long.MAX_VALUE };
+		for (long value : values) {
+			int index = FieldHistogram.index(value);
+			Assert.assertTrue(value <= FieldHistogram.upperBound(index));
+			if (index > 0) {
+				Assert.assertTrue(value > FieldHistogram.upperBound(index - 1));
+			}
+		}
+	}
+
+	@Test
+	public void percentiles() {
+		FieldHistogram histogram = new FieldHistogram("record.start");
+		for (int i = 1; i <= 1000; i++) {
+			histogram.record(i * 1000L);
+		}
+
+		FieldHistogram.Stat stat = histogram.getStat();
+		Assert.assertEquals(1000, stat.count);
+		Assert.assertEquals(1_000_000L, stat.maxNanos);
+		assertNear(500_000L, stat.p50Nanos);
+		assertNear(990_000L, stat.p99Nanos);
+	}
+
+	@Test
+	public void concurrentRecord() throws InterruptedException {
+		FieldHistogram histogram = new FieldHistogram("record.end");
+		List<Thread> threads = new ArrayList<>();
+		for (int t = 0; t < 4; t++) {
+			Thread thread = new Thread(() -> {
+				for (int i = 0; i < 100_000; i++) {
+					histogram.record(i);
+				}
+			});
+			threads.add(thread);
+			thread.start();
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+
+		FieldHistogram.Stat stat = histogram.getStat();
+		Assert.assertEquals(400_000, stat.count);
+		Assert.assertEquals(99_999L, stat.maxNanos);
+	}
+
+	//Погрешность корзины - не более 1/8
+	private static void assertNear(long expected, long actual) {
+		Assert.assertTrue("expected: " + expected + ", actual: " + actual,
+				actual >= expected && actual <= expected + expected / 8);
+	}
+}
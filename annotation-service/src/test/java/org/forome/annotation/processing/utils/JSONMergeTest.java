@@ -0,0 +1,117 @@
+/*
+ Copyright (c) 2019. Vladimir Ulitin, Partners Healthcare and members of Forome Association
+
+ Developed by Vladimir Ulitin and Michael Bouzinier
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+	 http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+*/
+
+package org.forome.annotation.processing.utils;
+
+import net.minidev.json.JSONArray;
+import net.minidev.json.JSONObject;
+import net.minidev.json.JSONStyle;
+import net.minidev.json.JSONValue;
+import net.minidev.json.parser.JSONParser;
+import net.minidev.json.parser.ParseException;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+public class JSONMergeTest {
+
+	@Test
+	public void mergeSameAsReparse() throws ParseException {
+		Map<String, Object> graphQLData = buildGraphQLData();
+
+		//Как было раньше: сериализация и повторный разбор
+		JSONObject expected = buildAnfisaJSON();
+		expected.merge(
+				new JSONParser(JSONParser.DEFAULT_PERMISSIVE_MODE).parse(
+						new JSONObject(graphQLData).toJSONString(JSONStyle.NO_COMPRESS)
+				)
+		);
+
+		JSONObject actual = buildAnfisaJSON();
+		JSONMerge.merge(actual, graphQLData);
+
+		Assert.assertEquals(parse(expected.toJSONString()), parse(actual.toJSONString()));
+	}
+
+	@Test
+	public void mergeTypePreserving() {
+		Map<String, Object> graphQLData = buildGraphQLData();
+
+		JSONObject actual = buildAnfisaJSON();
+		JSONMerge.merge(actual, graphQLData);
+
+		Map<String, Object> filters = (Map<String, Object>) actual.get("_filters");
+		Assert.assertTrue(filters instanceof JSONObject);
+		Assert.assertEquals(Long.valueOf(12345678901L), filters.get("start"));
+		Assert.assertEquals(Double.valueOf(0.5d), filters.get("gnomad_af"));
+		Assert.assertEquals(Boolean.TRUE, filters.get("has_variant"));
+	}
+
+	@Test(expected = RuntimeException.class)
+	public void mergeConflict() {
+		JSONObject target = new JSONObject();
+		target.put("value", "a");
+
+		Map<String, Object> source = new LinkedHashMap<>();
+		source.put("value", "b");
+
+		JSONMerge.merge(target, source);
+	}
+
+	private static JSONObject buildAnfisaJSON() {
+		JSONObject filters = new JSONObject();
+		filters.put("chromosome", "chr1");
+		filters.put("qd", 12);
+
+		JSONObject out = new JSONObject();
+		out.put("record_type", "variant");
+		out.put("_filters", filters);
+		out.put("tags", new JSONArray());
+		return out;
+	}
+
+	private static Map<String, Object> buildGraphQLData() {
+		Map<String, Object> filters = new LinkedHashMap<>();
+		filters.put("chromosome", "chr1");
+		filters.put("start", 12345678901L);
+		filters.put("gnomad_af", 0.5d);
+		filters.put("has_variant", true);
+		filters.put("empty", null);
+
+		Map<String, Object> transcript = new LinkedHashMap<>();
+		transcript.put("gene", "BRCA1");
+		transcript.put("consequence_terms", Arrays.asList("missense_variant", "splice_region_variant"));
+
+		Map<String, Object> view = new LinkedHashMap<>();
+		view.put("transcripts", new ArrayList<>(Arrays.asList(transcript)));
+
+		Map<String, Object> data = new LinkedHashMap<>();
+		data.put("_filters", filters);
+		data.put("view", view);
+		data.put("tags", new ArrayList<>(Arrays.asList("x")));
+		return data;
+	}
+
+	private static Object parse(String value) {
+		return JSONValue.parse(value);
+	}
+}
@@ -0,0 +1,103 @@
+/*
+ *  Copyright (c) 2020. Vladimir Ulitin, Partners Healthcare and members of Forome Association
+ *
+ *  Developed by Vladimir Ulitin and Michael Bouzinier
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ * 	 http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.forome.annotation.service.source.external;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import net.minidev.json.JSONObject;
+import net.minidev.json.JSONValue;
+import net.minidev.json.parser.JSONParser;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Function;
+
+/**
+ * Заглушка http-сервера AStorage: на каждый POST по path отвечает handler-ом от тела запроса
+ */
+public class StubAStorageServer implements AutoCloseable {
+
+	private final HttpServer server;
+	private final ExecutorService executor;
+
+	public final List<JSONObject> requests;
+
+	public StubAStorageServer(String path, Function<JSONObject, Object> handler) throws IOException {
+		this.requests = new CopyOnWriteArrayList<>();
+		this.server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+		this.server.createContext(path, exchange -> handle(exchange, handler));
+		//Части пакетного запроса приходят одновременно
+		this.executor = Executors.newFixedThreadPool(4);
+		this.server.setExecutor(executor);
+		this.server.start();
+	}
+
+	public URL getUrl() {
+		try {
+			return new URL("http", "localhost", server.getAddress().getPort(), "/");
+		} catch (MalformedURLException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	private void handle(HttpExchange exchange, Function<JSONObject, Object> handler) throws IOException {
+		byte[] response;
+		try {
+			String body = read(exchange.getRequestBody());
+			JSONObject request = (JSONObject) new JSONParser(JSONParser.DEFAULT_PERMISSIVE_MODE).parse(body);
+			requests.add(request);
+			response = JSONValue.toJSONString(handler.apply(request)).getBytes(StandardCharsets.UTF_8);
+		} catch (Exception e) {
+			exchange.sendResponseHeaders(500, -1);
+			exchange.close();
+			return;
+		}
+		exchange.getResponseHeaders().add("Content-Type", "application/json");
+		exchange.sendResponseHeaders(200, response.length);
+		try (OutputStream os = exchange.getResponseBody()) {
+			os.write(response);
+		}
+	}
+
+	private static String read(InputStream is) throws IOException {
+		ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+		byte[] bytes = new byte[8192];
+		int length;
+		while ((length = is.read(bytes)) != -1) {
+			buffer.write(bytes, 0, length);
+		}
+		return new String(buffer.toByteArray(), StandardCharsets.UTF_8);
+	}
+
+	@Override
+	public void close() {
+		server.stop(0);
+		executor.shutdownNow();
+	}
+}
@@ -0,0 +1,102 @@
+/*
+ *  Copyright (c) 2020. Vladimir Ulitin, Partners Healthcare and members of Forome Association
+ *
+ *  Developed by Vladimir Ulitin and Michael Bouzinier
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ * 	 http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.forome.annotation.service.source.external.dbNSFP;
+
+import net.minidev.json.JSONArray;
+import net.minidev.json.JSONObject;
+import org.forome.annotation.exception.AnnotatorException;
+import org.forome.annotation.service.source.external.StubAStorageServer;
+import org.forome.annotation.service.source.external.httprequest.HttpRequest;
+import org.forome.core.struct.Assembly;
+import org.forome.core.struct.Chromosome;
+import org.forome.core.struct.Interval;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class DbNSFPHttpRequestTest {
+
+	private static final int COUNT_INTERVALS = 1100;
+
+	@Test
+	public void batch() throws Exception {
+		try (StubAStorageServer server = new StubAStorageServer("/collect", DbNSFPHttpRequestTest::response);
+			 HttpRequest httpRequest = new HttpRequest(server.getUrl())) {
+			DbNSFPHttpRequest dbNSFPHttpRequest = new DbNSFPHttpRequest(httpRequest, Assembly.GRCh38);
+
+			List<Interval> intervals = buildIntervals();
+			List<JSONArray> result = dbNSFPHttpRequest.get(intervals);
+
+			Assert.assertEquals(intervals.size(), result.size());
+			for (int i = 0; i < intervals.size(); i++) {
+				Assert.assertEquals(intervals.get(i).start, ((Number) result.get(i).get(0)).intValue());
+			}
+
+			Assert.assertEquals(3, server.requests.size());
+			for (JSONObject request : server.requests) {
+				Assert.assertEquals("hg38", request.getAsString("fasta"));
+				Assert.assertTrue(((JSONArray) request.get("variants")).size() <= 500);
+			}
+		}
+	}
+
+	@Test
+	public void sizeMismatch() throws Exception {
+		try (StubAStorageServer server = new StubAStorageServer("/collect", request -> {
+			JSONArray records = response(request);
+			records.add(records.get(0));
+			return records;
+		});
+			 HttpRequest httpRequest = new HttpRequest(server.getUrl())) {
+			DbNSFPHttpRequest dbNSFPHttpRequest = new DbNSFPHttpRequest(httpRequest, Assembly.GRCh38);
+			try {
+				dbNSFPHttpRequest.get(buildIntervals());
+				Assert.fail();
+			} catch (AnnotatorException e) {
+				Assert.assertEquals("external_service_error", e.getCode());
+			}
+		}
+	}
+
+	private static List<Interval> buildIntervals() {
+		List<Interval> intervals = new ArrayList<>();
+		for (int i = 0; i < COUNT_INTERVALS; i++) {
+			int start = 2_000_000 + 3 * i;
+			intervals.add(Interval.of(Chromosome.of("2"), start, start + (i % 3)));
+		}
+		return intervals;
+	}
+
+	/**
+	 * Как /collect: на каждый вариант - запись, dbNSFP - позиция варианта
+	 */
+	private static JSONArray response(JSONObject request) {
+		JSONArray records = new JSONArray();
+		for (Object item : (JSONArray) request.get("variants")) {
+			JSONObject record = new JSONObject();
+			JSONArray dbNSFP = new JSONArray();
+			dbNSFP.add(((JSONObject) item).get("pos"));
+			record.put("dbNSFP", dbNSFP);
+			records.add(record);
+		}
+		return records;
+	}
+}
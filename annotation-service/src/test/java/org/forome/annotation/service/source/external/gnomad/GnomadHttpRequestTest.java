@@ -0,0 +1,123 @@
+/*
+ *  Copyright (c) 2020. Vladimir Ulitin, Partners Healthcare and members of Forome Association
+ *
+ *  Developed by Vladimir Ulitin and Michael Bouzinier
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ * 	 http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.forome.annotation.service.source.external.gnomad;
+
+import net.minidev.json.JSONArray;
+import net.minidev.json.JSONObject;
+import org.forome.annotation.exception.AnnotatorException;
+import org.forome.annotation.service.source.external.StubAStorageServer;
+import org.forome.annotation.service.source.external.httprequest.HttpRequest;
+import org.forome.core.struct.Chromosome;
+import org.forome.core.struct.Position;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class GnomadHttpRequestTest {
+
+	private static final int COUNT_POSITIONS = 1200;
+
+	@Test
+	public void batch() throws Exception {
+		try (StubAStorageServer server = new StubAStorageServer("/get-batch", GnomadHttpRequestTest::response);
+			 HttpRequest httpRequest = new HttpRequest(server.getUrl())) {
+			GnomadHttpRequest gnomadHttpRequest = new GnomadHttpRequest(httpRequest, GnomadHttpRequestTest::toHG37);
+
+			List<Position> positions = buildPositions();
+			List<JSONArray> result = gnomadHttpRequest.get(positions);
+
+			Assert.assertEquals(positions.size(), result.size());
+			int countLifted = 0;
+			for (int i = 0; i < positions.size(); i++) {
+				Position position19 = toHG37(positions.get(i));
+				if (position19 == null) {
+					//Позиция не пересчитывается в hg19 - у источника не запрашивается
+					Assert.assertNull(result.get(i));
+				} else {
+					Assert.assertEquals("1:" + position19.value, result.get(i).get(0));
+					countLifted++;
+				}
+			}
+
+			//Части не больше BATCH_SIZE, вместе - все пересчитанные позиции
+			Assert.assertEquals(3, server.requests.size());
+			int countRequested = 0;
+			for (JSONObject request : server.requests) {
+				Assert.assertEquals("hg19", request.getAsString("array"));
+				int size = ((JSONArray) request.get("locs")).size();
+				Assert.assertTrue(size <= 500);
+				countRequested += size;
+			}
+			Assert.assertEquals(countLifted, countRequested);
+		}
+	}
+
+	@Test
+	public void sizeMismatch() throws Exception {
+		try (StubAStorageServer server = new StubAStorageServer("/get-batch", request -> {
+			JSONArray records = response(request);
+			records.remove(records.size() - 1);
+			return records;
+		});
+			 HttpRequest httpRequest = new HttpRequest(server.getUrl())) {
+			GnomadHttpRequest gnomadHttpRequest = new GnomadHttpRequest(httpRequest, GnomadHttpRequestTest::toHG37);
+			try {
+				gnomadHttpRequest.get(buildPositions());
+				Assert.fail();
+			} catch (AnnotatorException e) {
+				Assert.assertEquals("external_service_error", e.getCode());
+			}
+		}
+	}
+
+	private static List<Position> buildPositions() {
+		List<Position> positions = new ArrayList<>();
+		for (int i = 0; i < COUNT_POSITIONS; i++) {
+			positions.add(new Position(Chromosome.of("1"), 1_000_000 + i));
+		}
+		return positions;
+	}
+
+	/**
+	 * Каждая 7-я позиция не пересчитывается, остальные - со сдвигом
+	 */
+	private static Position toHG37(Position position) {
+		if (position.value % 7 == 0) {
+			return null;
+		}
+		return new Position(position.chromosome, position.value - 100);
+	}
+
+	/**
+	 * Как /get-batch: на каждую позицию - запись, gnomAD - сама позиция
+	 */
+	private static JSONArray response(JSONObject request) {
+		JSONArray records = new JSONArray();
+		for (Object loc : (JSONArray) request.get("locs")) {
+			JSONObject record = new JSONObject();
+			JSONArray gnomad = new JSONArray();
+			gnomad.add(loc);
+			record.put("gnomAD", gnomad);
+			records.add(record);
+		}
+		return records;
+	}
+}
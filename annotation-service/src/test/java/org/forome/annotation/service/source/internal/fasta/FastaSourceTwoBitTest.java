@@ -0,0 +1,168 @@
+/*
+ *  Copyright (c) 2020. Vladimir Ulitin, Partners Healthcare and members of Forome Association
+ *
+ *  Developed by Vladimir Ulitin and Michael Bouzinier
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ * 	 http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.forome.annotation.service.source.internal.fasta;
+
+import org.forome.core.struct.Chromosome;
+import org.forome.core.struct.Interval;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+public class FastaSourceTwoBitTest {
+
+	//Позиции 3-4 (с 1) - N, 7-10 - замаскированы
+	private static final String CHR1 = "ACNNTGcagtACGTA";
+	private static final String CHRM = "GATTACA";
+
+	private Path file;
+	private FastaSourceTwoBit fastaSource;
+
+	@Before
+	public void init() throws IOException {
+		file = Files.createTempFile("fasta", ".2bit");
+		Files.write(file, buildTwoBit(new String[]{ "chr1", "chrM" }, new String[]{ CHR1, CHRM }));
+		fastaSource = new FastaSourceTwoBit(file);
+	}
+
+	@After
+	public void destroy() throws IOException {
+		fastaSource.close();
+		Files.deleteIfExists(file);
+	}
+
+	@Test
+	public void sequence() {
+		Assert.assertEquals(CHR1, fastaSource.getSequence(Interval.of(Chromosome.of("1"), 1, CHR1.length())).getValue());
+		Assert.assertEquals("NTGca", fastaSource.getSequence(Interval.of(Chromosome.of("1"), 4, 8)).getValue());
+		Assert.assertEquals("TTA", fastaSource.getSequence(Interval.of(Chromosome.of("M"), 3, 5)).getValue());
+		Assert.assertNull(fastaSource.getSequence(Interval.of(Chromosome.of("2"), 1, 5)));
+	}
+
+	@Test
+	public void softMasked() {
+		Assert.assertFalse(fastaSource.isSoftMasked(Interval.of(Chromosome.of("1"), 1, 6)));
+		Assert.assertTrue(fastaSource.isSoftMasked(Interval.of(Chromosome.of("1"), 5, 7)));
+		Assert.assertTrue(fastaSource.isSoftMasked(Interval.of(Chromosome.of("1"), 10, 10)));
+		Assert.assertFalse(fastaSource.isSoftMasked(Interval.of(Chromosome.of("1"), 11, 15)));
+	}
+
+	@Test
+	public void normalizeName() {
+		Assert.assertEquals("1", FastaSourceTwoBit.normalizeName("chr1"));
+		Assert.assertEquals("X", FastaSourceTwoBit.normalizeName("X"));
+		Assert.assertEquals("M", FastaSourceTwoBit.normalizeName("chrMT"));
+		Assert.assertEquals("M", FastaSourceTwoBit.normalizeName("chrM"));
+	}
+
+	/**
+	 * .2bit версии 0, блоки N и маски - по строчным буквам и N
+	 */
+	private static byte[] buildTwoBit(String[] names, String[] sequences) {
+		int indexSize = 0;
+		for (String name : names) {
+			indexSize += 1 + name.length() + 4;
+		}
+		byte[][] records = new byte[sequences.length][];
+		for (int i = 0; i < sequences.length; i++) {
+			records[i] = buildRecord(sequences[i]);
+		}
+		int size = 16 + indexSize;
+		for (byte[] record : records) {
+			size += record.length;
+		}
+
+		ByteBuffer buffer = ByteBuffer.allocate(size).order(ByteOrder.LITTLE_ENDIAN);
+		buffer.putInt(0x1A412743).putInt(0).putInt(names.length).putInt(0);
+		int offset = 16 + indexSize;
+		for (int i = 0; i < names.length; i++) {
+			buffer.put((byte) names[i].length()).put(names[i].getBytes(StandardCharsets.US_ASCII)).putInt(offset);
+			offset += records[i].length;
+		}
+		for (byte[] record : records) {
+			buffer.put(record);
+		}
+		return buffer.array();
+	}
+
+	private static byte[] buildRecord(String sequence) {
+		int[][] nBlocks = blocks(sequence, true);
+		int[][] maskBlocks = blocks(sequence, false);
+		int packedSize = (sequence.length() + 3) / 4;
+		ByteBuffer buffer = ByteBuffer.allocate(
+				4 + 4 + 8 * nBlocks[0].length + 4 + 8 * maskBlocks[0].length + 4 + packedSize
+		).order(ByteOrder.LITTLE_ENDIAN);
+		buffer.putInt(sequence.length());
+		putBlocks(buffer, nBlocks);
+		putBlocks(buffer, maskBlocks);
+		buffer.putInt(0);
+
+		byte[] packed = new byte[packedSize];
+		for (int i = 0; i < sequence.length(); i++) {
+			int code = "TCAG".indexOf(Character.toUpperCase(sequence.charAt(i)));
+			if (code < 0) {
+				code = 0;
+			}
+			packed[i / 4] |= code << (6 - 2 * (i % 4));
+		}
+		buffer.put(packed);
+		return buffer.array();
+	}
+
+	private static void putBlocks(ByteBuffer buffer, int[][] blocks) {
+		buffer.putInt(blocks[0].length);
+		for (int start : blocks[0]) {
+			buffer.putInt(start);
+		}
+		for (int blockSize : blocks[1]) {
+			buffer.putInt(blockSize);
+		}
+	}
+
+	private static int[][] blocks(String sequence, boolean n) {
+		int[] starts = new int[sequence.length()];
+		int[] sizes = new int[sequence.length()];
+		int count = 0;
+		for (int i = 0; i < sequence.length(); ) {
+			char c = sequence.charAt(i);
+			boolean inBlock = (n) ? c == 'N' : Character.isLowerCase(c);
+			if (!inBlock) {
+				i++;
+				continue;
+			}
+			int start = i;
+			while (i < sequence.length()
+					&& ((n) ? sequence.charAt(i) == 'N' : Character.isLowerCase(sequence.charAt(i)))) {
+				i++;
+			}
+			starts[count] = start;
+			sizes[count] = i - start;
+			count++;
+		}
+		return new int[][]{ Arrays.copyOf(starts, count), Arrays.copyOf(sizes, count) };
+	}
+}
@@ -0,0 +1,94 @@
+/*
+ Copyright (c) 2019. Vladimir Ulitin, Partners Healthcare and members of Forome Association
+
+ Developed by Vladimir Ulitin and Michael Bouzinier
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+	 http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+*/
+
+package org.forome.annotation.service.source.wrapper;
+
+import net.minidev.json.JSONArray;
+import net.minidev.json.JSONObject;
+import org.forome.annotation.struct.SourceMetadata;
+import org.forome.astorage.core.data.Conservation;
+import org.forome.core.struct.Assembly;
+import org.forome.core.struct.Chromosome;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.rocksdb.RocksDBException;
+
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+
+public class PersistentSourceCacheTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void persistBetweenRuns() throws RocksDBException {
+		Path path = folder.getRoot().toPath().resolve("cache");
+		long key = SourceCache.getKey(Chromosome.of("1"), 6484880, 6484880);
+
+		JSONArray gnomad = new JSONArray();
+		JSONObject item = new JSONObject();
+		item.put("ALT", "C");
+		item.put("AF", 6.4e-05d);
+		gnomad.add(item);
+
+		try (PersistentSourceCache cache = new PersistentSourceCache(path, metadata("2.1.1"))) {
+			Assert.assertTrue(cache.isSupported(WrapperSourceType.GNOMAD));
+			Assert.assertTrue(cache.isSupported(WrapperSourceType.CONSERVATION));
+			Assert.assertFalse(cache.isSupported(WrapperSourceType.DBSNP));
+			Assert.assertNull(cache.get(WrapperSourceType.GNOMAD, Assembly.GRCh38, key));
+
+			cache.put(WrapperSourceType.GNOMAD, Assembly.GRCh38, key, Optional.of(gnomad));
+			cache.put(WrapperSourceType.GNOMAD, Assembly.GRCh37, key, Optional.empty());
+			cache.put(WrapperSourceType.CONSERVATION, Assembly.GRCh38, key, Optional.of(new Conservation(-1.87f, null)));
+		}
+
+		try (PersistentSourceCache cache = new PersistentSourceCache(path, metadata("2.1.1"))) {
+			Assert.assertEquals(gnomad, cache.get(WrapperSourceType.GNOMAD, Assembly.GRCh38, key).get());
+			Assert.assertFalse(cache.get(WrapperSourceType.GNOMAD, Assembly.GRCh37, key).isPresent());
+
+			Conservation conservation = (Conservation) cache.get(WrapperSourceType.CONSERVATION, Assembly.GRCh38, key).get();
+			Assert.assertEquals(Float.valueOf(-1.87f), conservation.gerpRS);
+			Assert.assertNull(conservation.gerpN);
+		}
+
+		//Новая версия gnomAD - его ответы удаляются, остальные источники не затрагиваются
+		try (PersistentSourceCache cache = new PersistentSourceCache(path, metadata("3.0"))) {
+			Assert.assertNull(cache.get(WrapperSourceType.GNOMAD, Assembly.GRCh38, key));
+			Assert.assertNotNull(cache.get(WrapperSourceType.CONSERVATION, Assembly.GRCh38, key));
+		}
+
+		//Версия неизвестна - кеш типа не используется и очищается
+		try (PersistentSourceCache cache = new PersistentSourceCache(path, Collections.emptyList())) {
+			Assert.assertFalse(cache.isSupported(WrapperSourceType.CONSERVATION));
+			Assert.assertNull(cache.get(WrapperSourceType.CONSERVATION, Assembly.GRCh38, key));
+		}
+	}
+
+	private static List<SourceMetadata> metadata(String gnomadVersion) {
+		return Arrays.asList(
+				new SourceMetadata("gnomAD", gnomadVersion, null),
+				new SourceMetadata("GERP", "hg19.GERP_scores", null)
+		);
+	}
+}
@@ -0,0 +1,168 @@
+/*
+ Copyright (c) 2019. Vladimir Ulitin, Partners Healthcare and members of Forome Association
+
+ Developed by Vladimir Ulitin and Michael Bouzinier
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+	 http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+*/
+
+package org.forome.annotation.service.source.wrapper;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class SingleFlightTest {
+
+	private static final int THREADS = 8;
+
+	@Test
+	public void coalesceConcurrentLoads() throws Exception {
+		SingleFlight<Long, String> singleFlight = new SingleFlight<>();
+		AtomicInteger loads = new AtomicInteger();
+		CountDownLatch release = new CountDownLatch(1);
+
+		ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+		try {
+			List<Future<String>> futures = new ArrayList<>();
+			for (int i = 0; i < THREADS; i++) {
+				futures.add(executor.submit(() -> singleFlight.execute(1L, () -> {
+					loads.incrementAndGet();
+					release.await();
+					return "value";
+				})));
+			}
+			//Ждем, пока все потоки встанут в ожидание единственной загрузки
+			long deadline = System.currentTimeMillis() + 10_000L;
+			while (singleFlight.suppressedCount() < THREADS - 1 && System.currentTimeMillis() < deadline) {
+				Thread.sleep(1);
+			}
+			release.countDown();
+
+			for (Future<String> future : futures) {
+				Assert.assertEquals("value", future.get(10, TimeUnit.SECONDS));
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+
+		Assert.assertEquals(1, loads.get());
+		Assert.assertEquals(1, singleFlight.loadCount());
+		Assert.assertEquals(THREADS - 1, singleFlight.suppressedCount());
+
+		//После завершения загрузки ключ снова свободен
+		Assert.assertEquals("next", singleFlight.execute(1L, () -> "next"));
+		Assert.assertEquals(2, singleFlight.loadCount());
+	}
+
+	/**
+	 * Пакет не запрашивает ключ, который уже загружается одиночным обращением, и дожидается его результата;
+	 * одиночное обращение к ключу пакета дожидается пакета
+	 */
+	@Test
+	public void coalesceBatchLoads() throws Exception {
+		SingleFlight<Long, String> singleFlight = new SingleFlight<>();
+		CountDownLatch releaseSingle = new CountDownLatch(1);
+		CountDownLatch releaseBatch = new CountDownLatch(1);
+		List<List<Long>> batches = Collections.synchronizedList(new ArrayList<>());
+
+		ExecutorService executor = Executors.newFixedThreadPool(3);
+		try {
+			Future<String> single = executor.submit(() -> singleFlight.execute(1L, () -> {
+				releaseSingle.await();
+				return "v1";
+			}));
+			awaitLoads(singleFlight, 1);
+
+			Future<List<String>> batch = executor.submit(() -> singleFlight.executeAll(Arrays.asList(1L, 2L, 3L, 2L), keys -> {
+				batches.add(keys);
+				try {
+					releaseBatch.await();
+				} catch (InterruptedException e) {
+					throw new RuntimeException(e);
+				}
+				return keys.stream().map(key -> "v" + key).collect(Collectors.toList());
+			}));
+			awaitLoads(singleFlight, 3);
+
+			Future<String> singleOfBatch = executor.submit(() -> singleFlight.execute(3L, () -> "other"));
+			long deadline = System.currentTimeMillis() + 10_000L;
+			while (singleFlight.suppressedCount() < 2 && System.currentTimeMillis() < deadline) {
+				Thread.sleep(1);
+			}
+			releaseBatch.countDown();
+			Assert.assertEquals("v3", singleOfBatch.get(10, TimeUnit.SECONDS));
+
+			releaseSingle.countDown();
+			Assert.assertEquals("v1", single.get(10, TimeUnit.SECONDS));
+			Assert.assertEquals(Arrays.asList("v1", "v2", "v3", "v2"), batch.get(10, TimeUnit.SECONDS));
+		} finally {
+			executor.shutdownNow();
+		}
+
+		Assert.assertEquals(Collections.singletonList(Arrays.asList(2L, 3L)), batches);
+		Assert.assertEquals(3, singleFlight.loadCount());
+		Assert.assertEquals(2, singleFlight.suppressedCount());
+	}
+
+	@Test
+	public void propagateBatchException() {
+		SingleFlight<Long, String> singleFlight = new SingleFlight<>();
+		try {
+			singleFlight.executeAll(Arrays.asList(1L, 2L), keys -> {
+				throw new IllegalStateException("fail");
+			});
+			Assert.fail();
+		} catch (ExecutionException e) {
+			Assert.assertTrue(e.getCause() instanceof IllegalStateException);
+		}
+		//Ключи неудачного пакета освобождены
+		try {
+			Assert.assertEquals("next", singleFlight.execute(1L, () -> "next"));
+		} catch (ExecutionException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	@Test
+	public void propagateException() {
+		SingleFlight<Long, String> singleFlight = new SingleFlight<>();
+		try {
+			singleFlight.execute(1L, () -> {
+				throw new IllegalStateException("fail");
+			});
+			Assert.fail();
+		} catch (ExecutionException e) {
+			Assert.assertTrue(e.getCause() instanceof IllegalStateException);
+		}
+	}
+
+	private static void awaitLoads(SingleFlight<Long, String> singleFlight, long loads) throws InterruptedException {
+		long deadline = System.currentTimeMillis() + 10_000L;
+		while (singleFlight.loadCount() < loads && System.currentTimeMillis() < deadline) {
+			Thread.sleep(1);
+		}
+	}
+}
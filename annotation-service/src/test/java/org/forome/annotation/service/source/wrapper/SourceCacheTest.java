@@ -0,0 +1,102 @@
+/*
+ Copyright (c) 2019. Vladimir Ulitin, Partners Healthcare and members of Forome Association
+
+ Developed by Vladimir Ulitin and Michael Bouzinier
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+	 http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+*/
+
+package org.forome.annotation.service.source.wrapper;
+
+import net.minidev.json.JSONArray;
+import net.minidev.json.JSONObject;
+import org.forome.core.struct.Chromosome;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+public class SourceCacheTest {
+
+	@Test
+	public void packedKeys() {
+		Set<Long> keys = new HashSet<>();
+		for (String chromosome : new String[]{ "1", "2", "10", "22", "X", "Y", "M" }) {
+			keys.add(SourceCache.getKey(Chromosome.of(chromosome), 100, 100));
+			keys.add(SourceCache.getKey(Chromosome.of(chromosome), 100, 101));
+			keys.add(SourceCache.getKey(Chromosome.of(chromosome), 101, 100));
+			keys.add(SourceCache.getKey(Chromosome.of(chromosome), 248_956_422, 248_956_422));
+		}
+		Assert.assertEquals(7 * 4, keys.size());
+		Assert.assertFalse(keys.contains(SourceCache.NO_KEY));
+
+		Assert.assertEquals(SourceCache.getKey(Chromosome.of("M"), 1, 1), SourceCache.getKey(Chromosome.of("MT"), 1, 1));
+		Assert.assertEquals(SourceCache.NO_KEY, SourceCache.getKey(Chromosome.of("GL000192.1"), 1, 1));
+		Assert.assertEquals(SourceCache.NO_KEY, SourceCache.getKey(Chromosome.of("23"), 1, 1));
+		Assert.assertEquals(SourceCache.NO_KEY, SourceCache.getKey(Chromosome.of("1"), 1 << 29, 1));
+	}
+
+	@Test
+	public void boundedByWeight() throws ExecutionException {
+		JSONArray value = new JSONArray();
+		JSONObject item = new JSONObject();
+		item.put("rs", "rs1234567890");
+		item.put("af", 0.5d);
+		value.add(item);
+		long weight = SourceCache.estimate(value);
+		Assert.assertTrue(weight > 0);
+
+		SourceCache cache = new SourceCache(weight * 100);
+		AtomicInteger loads = new AtomicInteger();
+		for (int i = 1; i <= 1000; i++) {
+			cache.get(SourceCache.getKey(Chromosome.of("1"), i, i), () -> {
+				loads.incrementAndGet();
+				return Optional.of(value);
+			});
+		}
+		Assert.assertEquals(1000, loads.get());
+		Assert.assertTrue(cache.size() < 100);
+		Assert.assertTrue(cache.stats().evictionCount() > 900);
+
+		long key = SourceCache.getKey(Chromosome.of("1"), 1000, 1000);
+		Assert.assertSame(value, cache.get(key, () -> Optional.empty()).get());
+		Assert.assertEquals(1, cache.stats().hitCount());
+		Assert.assertEquals(1000, cache.stats().missCount());
+	}
+
+	@Test
+	public void getAll() throws ExecutionException {
+		SourceCache cache = new SourceCache(1024 * 1024);
+		long key1 = SourceCache.getKey(Chromosome.of("1"), 1, 1);
+		long key2 = SourceCache.getKey(Chromosome.of("1"), 2, 2);
+		cache.put(key1, Optional.of("cached"));
+
+		//Ключ, уже попавший в кеш, в пакетный запрос не входит
+		List<List<Long>> batches = new ArrayList<>();
+		List<Optional<Object>> values = cache.getAll(Arrays.asList(key1, key2), keys -> {
+			batches.add(keys);
+			return keys.stream().map(key -> Optional.<Object>of("loaded")).collect(Collectors.toList());
+		});
+		Assert.assertEquals(Arrays.asList(Optional.of("cached"), Optional.of("loaded")), values);
+		Assert.assertEquals(Arrays.asList(Arrays.asList(key2)), batches);
+		Assert.assertEquals(Optional.of("loaded"), cache.getIfPresent(key2));
+	}
+}
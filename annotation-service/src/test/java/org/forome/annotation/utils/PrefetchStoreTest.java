@@ -0,0 +1,82 @@
+/*
+ Copyright (c) 2019. Vladimir Ulitin, Partners Healthcare and members of Forome Association
+
+ Developed by Vladimir Ulitin and Michael Bouzinier
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+	 http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+*/
+
+package org.forome.annotation.utils;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+public class PrefetchStoreTest {
+
+	@Test
+	public void scope() {
+		PrefetchStore<String, Integer> store = new PrefetchStore<>();
+
+		PrefetchScope scope = store.put(new HashMap<String, Integer>() {{
+			put("a", 1);
+			put("b", 2);
+		}});
+		Assert.assertEquals(Integer.valueOf(1), store.get("a"));
+		Assert.assertEquals(Integer.valueOf(2), store.get("b"));
+		Assert.assertNull(store.get("c"));
+
+		scope.close();
+		Assert.assertNull(store.get("a"));
+		Assert.assertEquals(0, store.size());
+	}
+
+	@Test
+	public void overlap() {
+		PrefetchStore<String, Integer> store = new PrefetchStore<>();
+
+		PrefetchScope scope1 = store.put(Collections.singletonMap("a", 1));
+		PrefetchScope scope2 = store.put(new HashMap<String, Integer>() {{
+			put("a", 10);
+			put("b", 20);
+		}});
+
+		//Первый пакет не должен удалить значение, перезаписанное вторым
+		scope1.close();
+		Assert.assertEquals(Integer.valueOf(10), store.get("a"));
+
+		scope2.close();
+		Assert.assertEquals(0, store.size());
+	}
+
+	@Test
+	public void composite() {
+		PrefetchStore<String, Integer> store1 = new PrefetchStore<>();
+		PrefetchStore<String, Integer> store2 = new PrefetchStore<>();
+
+		Map<String, Integer> values = Collections.singletonMap("a", 1);
+		PrefetchScope scope = PrefetchScope.of(Arrays.asList(
+				store1.put(values), store2.put(values), PrefetchScope.EMPTY
+		));
+		Assert.assertEquals(1, store1.size());
+		Assert.assertEquals(1, store2.size());
+
+		scope.close();
+		Assert.assertEquals(0, store1.size());
+		Assert.assertEquals(0, store2.size());
+	}
+}
@@ -0,0 +1,114 @@
+/*
+ Copyright (c) 2019. Vladimir Ulitin, Partners Healthcare and members of Forome Association
+
+ Developed by Vladimir Ulitin and Michael Bouzinier
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+	 http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+*/
+
+package org.forome.annotation.iterator.vcf;
+
+import htsjdk.samtools.util.BlockCompressedOutputStream;
+import htsjdk.samtools.util.CloseableIterator;
+import htsjdk.variant.variantcontext.VariantContext;
+import htsjdk.variant.vcf.VCFFileReader;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Позиционное чтение (VCFPositionalIterator) дает те же записи, что и htsjdk VCFFileReader,
+ * на несжатом и bgzip-файле, в том числе после продолжения чтения с позиции
+ */
+public class VCFPositionalIteratorEquivalenceTest {
+
+	private static final String[] VCF_FILES = {
+			"bch0004/bch0004_wgs.vcf.gz",
+			"bch0004/bch0004_wgs_seq_a_boo_regions.vcf.gz"
+	};
+
+	private static final int RESUME_INTERVAL = 500;
+
+	@Test
+	public void equivalence() throws Exception {
+		for (String vcfFile : VCF_FILES) {
+			Path pathVcf = Paths.get(getClass().getClassLoader().getResource(vcfFile).toURI());
+			List<String> expected = readVCFFileReader(pathVcf);
+			Assert.assertFalse(expected.isEmpty());
+
+			Path dir = Files.createTempDirectory("positional");
+			try {
+				Path plain = dir.resolve("plain.vcf");
+				Path bgzip = dir.resolve("bgzip.vcf.gz");
+				try (InputStream is = new GZIPInputStream(Files.newInputStream(pathVcf))) {
+					Files.copy(is, plain);
+				}
+				try (OutputStream os = new BlockCompressedOutputStream(bgzip.toFile())) {
+					Files.copy(plain, os);
+				}
+
+				assertEquivalence(expected, plain);
+				assertEquivalence(expected, bgzip);
+			} finally {
+				Files.deleteIfExists(dir.resolve("plain.vcf"));
+				Files.deleteIfExists(dir.resolve("bgzip.vcf.gz"));
+				Files.delete(dir);
+			}
+		}
+	}
+
+	private static void assertEquivalence(List<String> expected, Path pathVcf) {
+		List<Long> positions = new ArrayList<>();
+		try (VCFPositionalIterator iterator = new VCFPositionalIterator(pathVcf, 0)) {
+			for (int i = 0; i < expected.size(); i++) {
+				if (i % RESUME_INTERVAL == 0) {
+					positions.add(iterator.getPosition());
+				}
+				Assert.assertTrue(iterator.hasNext());
+				Assert.assertEquals(pathVcf + ", record: " + i, expected.get(i), toString(iterator.next()));
+			}
+			Assert.assertFalse(iterator.hasNext());
+		}
+
+		//Продолжение чтения с сохраненных позиций
+		for (int i = 0; i < positions.size(); i++) {
+			int index = i * RESUME_INTERVAL;
+			try (VCFPositionalIterator iterator = new VCFPositionalIterator(pathVcf, positions.get(i))) {
+				Assert.assertEquals(pathVcf + ", resume record: " + index, expected.get(index), toString(iterator.next()));
+			}
+		}
+	}
+
+	private static List<String> readVCFFileReader(Path pathVcf) {
+		List<String> records = new ArrayList<>();
+		try (VCFFileReader vcfFileReader = new VCFFileReader(pathVcf, false);
+			 CloseableIterator<VariantContext> iterator = vcfFileReader.iterator()) {
+			while (iterator.hasNext()) {
+				records.add(toString(iterator.next()));
+			}
+		}
+		return records;
+	}
+
+	private static String toString(VariantContext variantContext) {
+		return variantContext.toStringDecodeGenotypes();
+	}
+}
@@ -0,0 +1,152 @@
+/*
+ Copyright (c) 2019. Vladimir Ulitin, Partners Healthcare and members of Forome Association
+
+ Developed by Vladimir Ulitin and Michael Bouzinier
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+	 http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+*/
+
+package org.forome.annotation.annotator.executor;
+
+import org.forome.annotation.iterator.vcf.VCFFileIterator;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.NoSuchElementException;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * Сравнение затрат CPU на декодирование vcf-файла: каждый поток со своим VCFFileIterator (как было раньше)
+ * против единственного SourceReader, из очереди которого записи забирают потоки.
+ * Ожидается, что для SourceReader затраты не растут с увеличением кол-ва потоков.
+ */
+public class SourceReaderDecodeTest {
+
+	private final static Logger log = LoggerFactory.getLogger(SourceReaderDecodeTest.class);
+
+	private static final int COUNT_RECORDS = 20000;
+	private static final int COUNT_SAMPLES = 50;
+
+	private static final int[] THREADS = { 1, 4, 16, 64 };
+
+	private Path pathVcf;
+	private Path pathVepJson;
+
+	@Before
+	public void init() throws IOException {
+		pathVcf = Files.createTempFile("decode", ".vcf");
+		pathVepJson = Files.createTempFile("decode", ".vep.json");
+		Random random = new Random(0);
+		try (BufferedWriter writer = Files.newBufferedWriter(pathVcf, StandardCharsets.UTF_8)) {
+			writer.write("##fileformat=VCFv4.2\n");
+			writer.write("##contig=<ID=1,length=249250621>\n");
+			writer.write("##FORMAT=<ID=GT,Number=1,Type=String,Description=\"Genotype\">\n");
+			writer.write("##FORMAT=<ID=AD,Number=R,Type=Integer,Description=\"Allelic depths\">\n");
+			writer.write("##FORMAT=<ID=DP,Number=1,Type=Integer,Description=\"Read depth\">\n");
+			writer.write("##FORMAT=<ID=GQ,Number=1,Type=Integer,Description=\"Genotype quality\">\n");
+			writer.write("#CHROM\tPOS\tID\tREF\tALT\tQUAL\tFILTER\tINFO\tFORMAT");
+			for (int i = 0; i < COUNT_SAMPLES; i++) {
+				writer.write("\tS" + i);
+			}
+			writer.write('\n');
+			for (int i = 0; i < COUNT_RECORDS; i++) {
+				writer.write("1\t" + (10000 + i * 10) + "\t.\tA\tG\t100\tPASS\t.\tGT:AD:DP:GQ");
+				for (int j = 0; j < COUNT_SAMPLES; j++) {
+					int ad = random.nextInt(30);
+					writer.write("\t" + (random.nextBoolean() ? "0/1" : "0/0") + ":" + ad + "," + (30 - ad) + ":30:99");
+				}
+				writer.write('\n');
+			}
+		}
+		try (BufferedWriter writer = Files.newBufferedWriter(pathVepJson, StandardCharsets.UTF_8)) {
+			for (int i = 0; i < COUNT_RECORDS; i++) {
+				writer.write("{\"input\":\"1\\t" + (10000 + i * 10) + "\\t.\\tA\\tG\",\"seq_region_name\":\"1\"}\n");
+			}
+		}
+	}
+
+	@Test
+	public void test() throws Exception {
+		for (int thread : THREADS) {
+			long cpuIterators = measure(() -> iteratorPerThread(thread));
+			long cpuReader = measure(() -> singleReader(thread));
+			log.debug("threads: {}, cpu iterator per thread: {} ms, cpu single reader: {} ms",
+					thread, cpuIterators / 1_000_000L, cpuReader / 1_000_000L
+			);
+		}
+	}
+
+	private void iteratorPerThread(int thread) throws InterruptedException {
+		CountDownLatch latch = new CountDownLatch(thread);
+		for (int i = 0; i < thread; i++) {
+			new Thread(() -> {
+				try (VCFFileIterator vcfFileIterator = new VCFFileIterator(pathVcf)) {
+					while (true) {
+						vcfFileIterator.next();
+					}
+				} catch (NoSuchElementException ignore) {
+				} finally {
+					latch.countDown();
+				}
+			}).start();
+		}
+		latch.await();
+	}
+
+	private void singleReader(int thread) throws Exception {
+		try (SourceReader sourceReader = new SourceReader(pathVcf, pathVepJson, (Path) null, 0, null, thread, PipelineConfig.DEFAULT_WINDOW_SPAN, PipelineConfig.DEFAULT_WINDOW_RECORDS, (t, e) -> log.error("Exception", e))) {
+			for (int i = 0; i < thread; i++) {
+				new Thread(() -> {
+					try {
+						while (true) {
+							sourceReader.takeTask().result.future.complete(Collections.emptyList());
+						}
+					} catch (NoSuchElementException | InterruptedException ignore) {
+					}
+				}).start();
+			}
+			while (sourceReader.takeResult().future.get() != null) {
+			}
+		}
+	}
+
+	private static long measure(Execution execution) throws Exception {
+		com.sun.management.OperatingSystemMXBean osBean =
+				(com.sun.management.OperatingSystemMXBean) ManagementFactory.getOperatingSystemMXBean();
+		long t1 = osBean.getProcessCpuTime();
+		execution.run();
+		return osBean.getProcessCpuTime() - t1;
+	}
+
+	@After
+	public void destroy() throws IOException {
+		Files.deleteIfExists(pathVcf);
+		Files.deleteIfExists(pathVepJson);
+	}
+
+	@FunctionalInterface
+	private interface Execution {
+		void run() throws Exception;
+	}
+}
@@ -0,0 +1,116 @@
+/*
+ Copyright (c) 2019. Vladimir Ulitin, Partners Healthcare and members of Forome Association
+
+ Developed by Vladimir Ulitin and Michael Bouzinier
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+	 http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+*/
+
+package org.forome.annotation.output;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Сравнение скорости сжатия выходного файла аннотации: GZIPOutputStream (как было раньше)
+ * против ParallelGZIPOutputStream с разным кол-вом потоков
+ */
+public class ParallelGZIPOutputStreamSpeedTest {
+
+	private final static Logger log = LoggerFactory.getLogger(ParallelGZIPOutputStreamSpeedTest.class);
+
+	private static final int COUNT_LINES = 200000;
+
+	private static final int[] THREADS = { 1, 2, 4, 8 };
+
+	private byte[][] lines;
+	private long size;
+
+	@Before
+	public void init() {
+		//Строки, похожие на записи anfisa.json
+		Random random = new Random(0);
+		lines = new byte[COUNT_LINES][];
+		size = 0;
+		for (int i = 0; i < COUNT_LINES; i++) {
+			StringBuilder line = new StringBuilder()
+					.append("{\"record_type\":\"variant\",\"_filters\":{\"chromosome\":\"chr1\",\"start\":").append(10000 + i * 10)
+					.append(",\"end\":").append(10000 + i * 10)
+					.append(",\"gnomad_af\":").append(random.nextDouble())
+					.append(",\"qd\":").append(random.nextInt(40))
+					.append("},\"data\":{\"seq_region_name\":\"1\",\"id\":\"").append(Long.toHexString(random.nextLong()))
+					.append("\",\"transcript_consequences\":[");
+			for (int j = 0; j < 5; j++) {
+				line.append("{\"gene_symbol\":\"G").append(random.nextInt(20000))
+						.append("\",\"consequence_terms\":[\"missense_variant\"],\"polyphen_score\":").append(random.nextDouble())
+						.append("},");
+			}
+			line.append("{}]}}\n");
+			lines[i] = line.toString().getBytes(StandardCharsets.UTF_8);
+			size += lines[i].length;
+		}
+	}
+
+	@Test
+	public void test() throws IOException {
+		log.debug("size: {} MB", size / (1024 * 1024));
+
+		long t1 = System.nanoTime();
+		CountingOutputStream gzipCounting = new CountingOutputStream();
+		write(new GZIPOutputStream(gzipCounting, 64 * 1024));
+		log.debug("GZIPOutputStream: {} MB/s, compressed: {} bytes", speed(t1), gzipCounting.count);
+
+		for (int thread : THREADS) {
+			long t2 = System.nanoTime();
+			CountingOutputStream parallelCounting = new CountingOutputStream();
+			write(new ParallelGZIPOutputStream(parallelCounting, thread));
+			log.debug("ParallelGZIPOutputStream, threads: {}: {} MB/s, compressed: {} bytes", thread, speed(t2), parallelCounting.count);
+		}
+	}
+
+	private void write(OutputStream os) throws IOException {
+		try (OutputStream out = os) {
+			for (byte[] line : lines) {
+				out.write(line);
+			}
+		}
+	}
+
+	private long speed(long start) {
+		long nanos = System.nanoTime() - start;
+		return size * 1_000_000_000L / nanos / (1024 * 1024);
+	}
+
+	private static class CountingOutputStream extends OutputStream {
+
+		private long count;
+
+		@Override
+		public void write(int b) {
+			count++;
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) {
+			count += len;
+		}
+	}
+}
@@ -0,0 +1,68 @@
+/*
+ Copyright (c) 2019. Vladimir Ulitin, Partners Healthcare and members of Forome Association
+
+ Developed by Vladimir Ulitin and Michael Bouzinier
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+	 http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+*/
+
+package org.forome.annotation.processing.graphql;
+
+import graphql.GraphQL;
+import graphql.annotations.AnnotationsSchemaCreator;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Сравнение времени выполнения запроса на вариант: graphql-java (как было раньше, с кешем разобранного запроса)
+ * против скомпилированного плана CompiledQuery
+ */
+public class CompiledQuerySpeedTest {
+
+	private final static Logger log = LoggerFactory.getLogger(CompiledQuerySpeedTest.class);
+
+	private static final int COUNT_VARIANTS = 200000;
+
+	private static final int ROUNDS = 3;
+
+	@Test
+	public void test() {
+		GraphQL graphQL = GraphQL.newGraphQL(
+				AnnotationsSchemaCreator.newAnnotationsSchema().query(CompiledQueryTest.TRecord.class).build()
+		)
+				.preparsedDocumentProvider(new PreparsedDocumentCache())
+				.build();
+		CompiledQuery compiledQuery = CompiledQuery.compile(CompiledQueryTest.TRecord.class, CompiledQueryTest.QUERY);
+
+		long count = 0;
+		for (int round = 0; round < ROUNDS; round++) {
+			long t1 = System.nanoTime();
+			for (int i = 0; i < COUNT_VARIANTS; i++) {
+				count += CompiledQueryTest.executeGraphQL(graphQL, new CompiledQueryTest.TContext(i & 3)).size();
+			}
+			long timeGraphQL = System.nanoTime() - t1;
+
+			long t2 = System.nanoTime();
+			for (int i = 0; i < COUNT_VARIANTS; i++) {
+				count += compiledQuery.execute(new CompiledQueryTest.TContext(i & 3)).size();
+			}
+			long timeCompiled = System.nanoTime() - t2;
+
+			log.debug("round: {}, graphql-java: {} ns/variant, compiled: {} ns/variant",
+					round, timeGraphQL / COUNT_VARIANTS, timeCompiled / COUNT_VARIANTS
+			);
+		}
+		log.debug("count fields: {}", count);
+	}
+}
@@ -0,0 +1,124 @@
+/*
+ Copyright (c) 2019. Vladimir Ulitin, Partners Healthcare and members of Forome Association
+
+ Developed by Vladimir Ulitin and Michael Bouzinier
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+	 http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+*/
+
+package org.forome.annotation.processing.utils;
+
+import net.minidev.json.JSONObject;
+import net.minidev.json.JSONStyle;
+import net.minidev.json.parser.JSONParser;
+import net.minidev.json.parser.ParseException;
+import org.junit.Before;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Сравнение аллокаций при слиянии результата GraphQL: сериализация + повторный разбор (как было раньше)
+ * против JSONMerge
+ */
+public class JSONMergeAllocationTest {
+
+	private final static Logger log = LoggerFactory.getLogger(JSONMergeAllocationTest.class);
+
+	private static final int COUNT_RECORDS = 20000;
+
+	private List<Map<String, Object>> records;
+
+	@Before
+	public void init() {
+		//Деревья, похожие на результат запроса patient.hg19.graphql
+		Random random = new Random(0);
+		records = new ArrayList<>(COUNT_RECORDS);
+		for (int i = 0; i < COUNT_RECORDS; i++) {
+			Map<String, Object> filters = new LinkedHashMap<>();
+			filters.put("chromosome", "chr1");
+			filters.put("start", 10000 + i * 10);
+			filters.put("gnomad_af", random.nextDouble());
+			filters.put("qd", random.nextInt(40));
+			filters.put("has_variant", Arrays.asList("proband", "mother"));
+
+			List<Object> transcripts = new ArrayList<>();
+			for (int j = 0; j < 5; j++) {
+				Map<String, Object> transcript = new LinkedHashMap<>();
+				transcript.put("gene_symbol", "G" + random.nextInt(20000));
+				transcript.put("consequence_terms", Arrays.asList("missense_variant"));
+				transcript.put("polyphen_score", random.nextDouble());
+				transcripts.add(transcript);
+			}
+			Map<String, Object> view = new LinkedHashMap<>();
+			view.put("transcripts", transcripts);
+
+			Map<String, Object> data = new LinkedHashMap<>();
+			data.put("_filters", filters);
+			data.put("view", view);
+			records.add(data);
+		}
+	}
+
+	@Test
+	public void test() throws ParseException {
+		//Прогрев
+		runReparse();
+		runMerge();
+
+		long t1 = System.nanoTime();
+		long allocatedReparse = runReparse();
+		long timeReparse = System.nanoTime() - t1;
+
+		long t2 = System.nanoTime();
+		long allocatedMerge = runMerge();
+		long timeMerge = System.nanoTime() - t2;
+
+		log.debug("reparse: {} bytes/record, {} ns/record", allocatedReparse / COUNT_RECORDS, timeReparse / COUNT_RECORDS);
+		log.debug("merge: {} bytes/record, {} ns/record", allocatedMerge / COUNT_RECORDS, timeMerge / COUNT_RECORDS);
+	}
+
+	private long runReparse() throws ParseException {
+		long start = allocatedBytes();
+		for (Map<String, Object> data : records) {
+			JSONObject result = new JSONObject();
+			JSONObject graphQLResult = (JSONObject) new JSONParser(JSONParser.DEFAULT_PERMISSIVE_MODE).parse(
+					new JSONObject(data).toJSONString(JSONStyle.NO_COMPRESS)
+			);
+			result.merge(graphQLResult);
+		}
+		return allocatedBytes() - start;
+	}
+
+	private long runMerge() {
+		long start = allocatedBytes();
+		for (Map<String, Object> data : records) {
+			JSONObject result = new JSONObject();
+			JSONMerge.merge(result, data);
+		}
+		return allocatedBytes() - start;
+	}
+
+	private static long allocatedBytes() {
+		return ((com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean())
+				.getThreadAllocatedBytes(Thread.currentThread().getId());
+	}
+}